@@ -24,6 +24,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
 
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -36,6 +37,12 @@ import com.google.common.collect.Iterators;
  * An abstract class to provide common implementation for the framework
  * counter group in both mapred and mapreduce packages.
  *
+ * The values of the counters are kept in an array indexed by the ordinal of
+ * the counter enum, so a group which is only read, written and aggregated, as
+ * in the AM, does not need an object per counter. Counter objects are created
+ * on demand and share their value with the group. Reading the group, through
+ * its iterator or equals, does not create or keep any counter in it.
+ *
  * @param <T> type of the counter enum class
  * @param <C> type of the counter
  */
@@ -44,7 +51,9 @@ public abstract class FrameworkCounterGroup<T extends Enum<T>,
     C extends TezCounter> implements CounterGroupBase<C> {
 
   private final Class<T> enumClass; // for Enum.valueOf
-  private final Object[] counters;  // local casts are OK and save a class ref
+  private final long[] values;
+  private final BitSet present = new BitSet(); // counters which have been added
+  private Object[] counters;  // created on demand, local casts save a class ref
   private String displayName = null;
 
   /**
@@ -55,11 +64,20 @@ public abstract class FrameworkCounterGroup<T extends Enum<T>,
   public static class FrameworkCounter<T extends Enum<T>> extends AbstractCounter {
     final T key;
     final String groupName;
-    private long value;
+    // the value is values[index], where values are those of the whole group
+    // for the counters of a group
+    private final long[] values;
+    private final int index;
 
     public FrameworkCounter(T ref, String groupName) {
+      this(ref, groupName, new long[1], 0);
+    }
+
+    FrameworkCounter(T ref, String groupName, long[] values, int index) {
       key = ref;
       this.groupName = groupName; // this is interned in the fmap/i2s of CounterGroupFactory
+      this.values = values;
+      this.index = index;
     }
 
     @Override
@@ -74,17 +92,17 @@ public abstract class FrameworkCounterGroup<T extends Enum<T>,
 
     @Override
     public long getValue() {
-      return value;
+      return values[index];
     }
 
     @Override
     public void setValue(long value) {
-      this.value = value;
+      values[index] = value;
     }
 
     @Override
     public void increment(long incr) {
-      value += incr;
+      values[index] += incr;
     }
 
     @Override
@@ -106,7 +124,7 @@ public abstract class FrameworkCounterGroup<T extends Enum<T>,
   public FrameworkCounterGroup(Class<T> enumClass) {
     this.enumClass = enumClass;
     T[] enums = enumClass.getEnumConstants();
-    counters = new Object[enums.length];
+    values = new long[enums.length];
   }
 
   @Override
@@ -133,8 +151,9 @@ public abstract class FrameworkCounterGroup<T extends Enum<T>,
 
   @Override
   public void addCounter(C counter) {
-    C ours = findCounter(counter.getName());
-    ours.setValue(counter.getValue());
+    T key = valueOf(counter.getName());
+    present.set(key.ordinal());
+    values[key.ordinal()] = counter.getValue();
   }
 
   @Override
@@ -165,29 +184,55 @@ public abstract class FrameworkCounterGroup<T extends Enum<T>,
     return findCounter(valueOf(counterName));
   }
 
-  @SuppressWarnings("unchecked")
   private C findCounter(T key) {
-    int i = key.ordinal();
+    present.set(key.ordinal());
+    return getCounter(key.ordinal());
+  }
+
+  @SuppressWarnings("unchecked")
+  private C getCounter(int i) {
+    if (counters == null) {
+      counters = new Object[values.length];
+    }
     if (counters[i] == null) {
-      counters[i] = newCounter(key);
+      counters[i] = newCounter(enumClass.getEnumConstants()[i]);
     }
     return (C) counters[i];
   }
 
+  /**
+   * Get the counter of an ordinal which has been created by findCounter, or
+   * else a new view on its value which is not kept by the group.
+   */
+  @SuppressWarnings("unchecked")
+  private C getCounterView(int i, T[] keys) {
+    Object[] created = counters;
+    if (created != null && created[i] != null) {
+      return (C) created[i];
+    }
+    return newCounter(keys[i]);
+  }
+
   /**
    * Abstract factory method for new framework counter
    * @param key for the enum value of a counter
-   * @return a new counter for the key
+   * @return a new counter for the key, which should be created with
+   *         {@link #newFrameworkCounter(Enum)} to share its value with the group
    */
   protected abstract C newCounter(T key);
 
+  /**
+   * Create a framework counter whose value is kept by this group.
+   * @param key for the enum value of a counter
+   * @return a new counter for the key
+   */
+  protected FrameworkCounter<T> newFrameworkCounter(T key) {
+    return new FrameworkCounter<T>(key, getName(), values, key.ordinal());
+  }
+
   @Override
   public int size() {
-    int n = 0;
-    for (int i = 0; i < counters.length; ++i) {
-      if (counters[i] != null) ++n;
-    }
-    return n;
+    return present.cardinality();
   }
 
   @SuppressWarnings("rawtypes")
@@ -195,6 +240,16 @@ public abstract class FrameworkCounterGroup<T extends Enum<T>,
   public void incrAllCounters(CounterGroupBase<C> other) {
     if (checkNotNull(other, "other counter group")
         instanceof FrameworkCounterGroup<?, ?>) {
+      FrameworkCounterGroup<?, ?> right = (FrameworkCounterGroup<?, ?>) other;
+      if (right.enumClass == enumClass) {
+        // add up the values without going through counter objects
+        for (int i = right.present.nextSetBit(0); i >= 0;
+             i = right.present.nextSetBit(i + 1)) {
+          present.set(i);
+          values[i] += right.values[i];
+        }
+        return;
+      }
       for (TezCounter counter : other) {
         findCounter(((FrameworkCounter) counter).key.name())
             .increment(counter.getValue());
@@ -206,15 +261,11 @@ public abstract class FrameworkCounterGroup<T extends Enum<T>,
    * FrameworkGroup ::= #counter (key value)*
    */
   @Override
-  @SuppressWarnings("unchecked")
   public void write(DataOutput out) throws IOException {
     WritableUtils.writeVInt(out, size());
-    for (int i = 0; i < counters.length; ++i) {
-      TezCounter counter = (C) counters[i];
-      if (counter != null) {
-        WritableUtils.writeVInt(out, i);
-        WritableUtils.writeVLong(out, counter.getValue());
-      }
+    for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1)) {
+      WritableUtils.writeVInt(out, i);
+      WritableUtils.writeVLong(out, values[i]);
     }
   }
 
@@ -222,39 +273,55 @@ public abstract class FrameworkCounterGroup<T extends Enum<T>,
   public void readFields(DataInput in) throws IOException {
     clear();
     int len = WritableUtils.readVInt(in);
-    T[] enums = enumClass.getEnumConstants();
     for (int i = 0; i < len; ++i) {
       int ord = WritableUtils.readVInt(in);
-      TezCounter counter = newCounter(enums[ord]);
-      counter.setValue(WritableUtils.readVLong(in));
-      counters[ord] = counter;
+      present.set(ord);
+      values[ord] = WritableUtils.readVLong(in);
     }
   }
 
   private void clear() {
-    for (int i = 0; i < counters.length; ++i) {
-      counters[i] = null;
-    }
+    present.clear();
+    Arrays.fill(values, 0);
   }
 
   @Override
   public Iterator<C> iterator() {
     return new AbstractIterator<C>() {
-      int i = 0;
+      int i = present.nextSetBit(0);
+      T[] keys;
       @Override
       protected C computeNext() {
-        while (i < counters.length) {
-          @SuppressWarnings("unchecked")
-          C counter = (C) counters[i++];
-          if (counter != null) return counter;
+        if (i < 0) {
+          return endOfData();
+        }
+        if (keys == null) {
+          keys = enumClass.getEnumConstants();
         }
-        return endOfData();
+        C counter = getCounterView(i, keys);
+        i = present.nextSetBit(i + 1);
+        return counter;
       }
     };
   }
 
   @Override
   public boolean equals(Object genericRight) {
+    if (genericRight instanceof FrameworkCounterGroup<?, ?>) {
+      FrameworkCounterGroup<?, ?> right = (FrameworkCounterGroup<?, ?>) genericRight;
+      if (right.enumClass == enumClass) {
+        // compare the values without going through counter objects
+        if (!present.equals(right.present)) {
+          return false;
+        }
+        for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1)) {
+          if (values[i] != right.values[i]) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }
     if (genericRight instanceof CounterGroupBase<?>) {
       @SuppressWarnings("unchecked")
       CounterGroupBase<C> right = (CounterGroupBase<C>) genericRight;
@@ -266,6 +333,6 @@ public abstract class FrameworkCounterGroup<T extends Enum<T>,
   @Override
   public synchronized int hashCode() {
     // need to be deep as counters is an array
-    return Arrays.deepHashCode(new Object[]{enumClass, counters, displayName});
+    return Arrays.deepHashCode(new Object[]{enumClass, values, present, displayName});
   }
 }
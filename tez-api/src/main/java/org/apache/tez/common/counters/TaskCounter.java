@@ -218,5 +218,24 @@ public enum TaskCounter {
    *
    * Represented in milliseconds
    */
-  LAST_EVENT_RECEIVED
+  LAST_EVENT_RECEIVED,
+
+  /**
+   * Time spent computing and verifying the checksums of IFile segments, while writing, merging
+   * and fetching them. This includes the checksum time of any thread working for the task.
+   *
+   * Represented in milliseconds
+   */
+  IFILE_CHECKSUM_TIME,
+
+  /**
+   * Number of Inputs which were fetched again from a replica, as the host they were being
+   * fetched from was much slower than its peers
+   */
+  NUM_HEDGED_SHUFFLE_INPUTS,
+
+  /**
+   * Number of bytes fetched for hedged Inputs which had already been fetched from another host
+   */
+  SHUFFLE_BYTES_HEDGE_WASTED
 }
\ No newline at end of file
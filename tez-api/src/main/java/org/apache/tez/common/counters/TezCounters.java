@@ -42,7 +42,7 @@ public class TezCounters extends AbstractCounters<TezCounter, CounterGroup> {
 
     @Override
     protected FrameworkCounter<T> newCounter(T key) {
-      return new FrameworkCounter<T>(key, getName());
+      return newFrameworkCounter(key);
     }
 
     @Override
@@ -268,6 +268,50 @@ public abstract class EdgeManagerPluginOnDemand extends EdgeManagerPlugin {
   public abstract @Nullable CompositeEventRouteMetadata routeCompositeDataMovementEventToDestination(
       int sourceTaskIndex, int destinationTaskIndex) throws Exception;
 
+  /**
+   * Batched version of {@link #routeCompositeDataMovementEventToDestination(int, int)}, which
+   * routes the {@link CompositeDataMovementEvent}s of a number of source tasks to the given
+   * destination task at once. The routing of the i-th source task is returned in the i-th
+   * element of counts, targets and sources, which correspond to the fields of
+   * {@link CompositeEventRouteMetadata}. A count of 0 means that the destination task does
+   * not read data from that source task.
+   *
+   * The default implementation calls
+   * {@link #routeCompositeDataMovementEventToDestination(int, int)} for every source task.
+   * Plugins can override it to route without creating metadata objects per event.
+   *
+   * @param sourceTaskIndices
+   *          Indices of the tasks in the source vertex of this edge that produced the events
+   * @param offset
+   *          Position of the first source task index to route
+   * @param length
+   *          Number of source task indices to route
+   * @param destinationTaskIndex
+   *          The index of the task in the destination vertex of this edge
+   * @param counts
+   *          Receives the number of inputs per source task, with at least length elements
+   * @param targets
+   *          Receives the first target input index per source task
+   * @param sources
+   *          Receives the first source output index per source task
+   * @throws Exception
+   */
+  public void routeCompositeDataMovementEventsToDestination(int[] sourceTaskIndices, int offset,
+      int length, int destinationTaskIndex, int[] counts, int[] targets, int[] sources)
+      throws Exception {
+    for (int i = 0; i < length; ++i) {
+      CompositeEventRouteMetadata routeMeta = routeCompositeDataMovementEventToDestination(
+          sourceTaskIndices[offset + i], destinationTaskIndex);
+      if (routeMeta != null) {
+        counts[i] = routeMeta.getCount();
+        targets[i] = routeMeta.getTarget();
+        sources[i] = routeMeta.getSource();
+      } else {
+        counts[i] = 0;
+      }
+    }
+  }
+
   /**
    * The method provides the {@link EventRouteMetadata} to route an
    * {@link InputFailedEvent} produced by the given source task to the given
@@ -191,6 +191,32 @@ public class TezConfiguration extends Configuration {
   @Private
   public static final int TEZ_AM_CONCURRENT_DISPATCHER_CONCURRENCY_DEFAULT = 10;
 
+  /**
+   * Boolean value. Whether the dispatchers of the AM queue events in bounded lock free ring
+   * buffers instead of linked blocking queues. Producers do not block when a ring buffer is
+   * full, the events are kept aside, which is reported as back pressure along with queue
+   * depth and latency statistics.
+   */
+  @Private
+  @ConfigurationScope(Scope.AM)
+  @ConfigurationProperty(type="boolean")
+  public static final String TEZ_AM_USE_RING_BUFFER_DISPATCHER = TEZ_AM_PREFIX
+      + "use.ring-buffer-dispatcher";
+  @Private
+  public static final boolean TEZ_AM_USE_RING_BUFFER_DISPATCHER_DEFAULT = false;
+
+  /**
+   * Integer value. Number of events each ring buffer of the AM dispatchers holds, rounded up to
+   * a power of two. Only used if {@link #TEZ_AM_USE_RING_BUFFER_DISPATCHER} is enabled.
+   */
+  @Private
+  @ConfigurationScope(Scope.AM)
+  @ConfigurationProperty(type="integer")
+  public static final String TEZ_AM_RING_BUFFER_DISPATCHER_CAPACITY = TEZ_AM_PREFIX
+      + "ring-buffer-dispatcher.capacity";
+  @Private
+  public static final int TEZ_AM_RING_BUFFER_DISPATCHER_CAPACITY_DEFAULT = 65536;
+
   /**
    * Boolean value. Execution mode for the Tez application. True implies session mode. If the client
    * code is written according to best practices then the same code can execute in either mode based
@@ -673,6 +699,9 @@ public class TezConfiguration extends Configuration {
 
   /**
    * String value. The class to be used for DAG Scheduling. Expert level setting.
+   * org.apache.tez.dag.app.dag.impl.DAGSchedulerCriticalPath prioritizes the
+   * vertices on the longest remaining path through the DAG instead of the
+   * ones closest to the root.
    */
   @ConfigurationScope(Scope.DAG)
   @ConfigurationProperty
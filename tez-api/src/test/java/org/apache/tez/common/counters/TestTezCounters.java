@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.common.counters;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTezCounters {
+
+  @Test(timeout = 5000)
+  public void testFrameworkCounters() {
+    TezCounters counters = new TezCounters();
+    TezCounter spilled = counters.findCounter(TaskCounter.SPILLED_RECORDS);
+    spilled.increment(5);
+    counters.findCounter(TaskCounter.class.getName(), TaskCounter.GC_TIME_MILLIS.name())
+        .setValue(7);
+    Assert.assertEquals(5, counters.findCounter(TaskCounter.SPILLED_RECORDS).getValue());
+
+    CounterGroup group = counters.getGroup(TaskCounter.class.getName());
+    Assert.assertEquals(2, group.size());
+    Iterator<TezCounter> iterator = group.iterator();
+    Assert.assertEquals(TaskCounter.SPILLED_RECORDS.name(), iterator.next().getName());
+    TezCounter gcTime = iterator.next();
+    Assert.assertEquals(TaskCounter.GC_TIME_MILLIS.name(), gcTime.getName());
+    Assert.assertEquals(7, gcTime.getValue());
+    Assert.assertFalse(iterator.hasNext());
+
+    TezCounters other = new TezCounters();
+    other.findCounter(TaskCounter.SPILLED_RECORDS).increment(10);
+    other.findCounter(TaskCounter.CPU_MILLISECONDS).increment(3);
+    counters.incrAllCounters(other);
+    Assert.assertEquals(15, spilled.getValue());
+    Assert.assertEquals(3, group.findCounter(TaskCounter.CPU_MILLISECONDS.name()).getValue());
+    Assert.assertEquals(3, group.size());
+    Assert.assertEquals(10, other.findCounter(TaskCounter.SPILLED_RECORDS).getValue());
+  }
+
+  @Test(timeout = 5000)
+  public void testReadFrameworkCounters() {
+    TezCounters counters = new TezCounters();
+    counters.findCounter(TaskCounter.SPILLED_RECORDS).increment(5);
+    TezCounters copy = new TezCounters();
+    copy.incrAllCounters(counters);
+    Assert.assertEquals(counters, copy);
+
+    // counters read from the iterator are views on the values of the group
+    CounterGroup group = copy.getGroup(TaskCounter.class.getName());
+    TezCounter view = group.iterator().next();
+    Assert.assertEquals(5, view.getValue());
+    copy.findCounter(TaskCounter.SPILLED_RECORDS).increment(1);
+    Assert.assertEquals(6, view.getValue());
+    Assert.assertNotEquals(counters, copy);
+    counters.findCounter(TaskCounter.SPILLED_RECORDS).increment(1);
+    Assert.assertEquals(counters, copy);
+    Assert.assertSame(copy.findCounter(TaskCounter.SPILLED_RECORDS), group.iterator().next());
+  }
+
+  @Test(timeout = 5000)
+  public void testSerialization() throws IOException {
+    TezCounters counters = new TezCounters();
+    counters.findCounter(TaskCounter.SPILLED_RECORDS).increment(5);
+    counters.findCounter(TaskCounter.GC_TIME_MILLIS);
+    counters.findCounter(DAGCounter.NUM_SUCCEEDED_TASKS).increment(2);
+    counters.findCounter("group", "counter").increment(3);
+
+    DataOutputBuffer out = new DataOutputBuffer();
+    counters.write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    TezCounters read = new TezCounters();
+    read.readFields(in);
+
+    Assert.assertEquals(counters, read);
+    Assert.assertEquals(4, read.countCounters());
+    Assert.assertEquals(5, read.findCounter(TaskCounter.SPILLED_RECORDS).getValue());
+    Assert.assertEquals(0, read.findCounter(TaskCounter.GC_TIME_MILLIS).getValue());
+    Assert.assertEquals(2, read.findCounter(DAGCounter.NUM_SUCCEEDED_TASKS).getValue());
+    Assert.assertEquals(3, read.findCounter("group", "counter").getValue());
+  }
+}
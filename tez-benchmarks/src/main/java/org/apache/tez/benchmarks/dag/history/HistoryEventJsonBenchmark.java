@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks.dag.history;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.NodeId;
+import org.apache.tez.common.counters.FileSystemCounter;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.api.oldrecords.TaskAttemptState;
+import org.apache.tez.dag.history.events.TaskAttemptFinishedEvent;
+import org.apache.tez.dag.history.logging.impl.HistoryEventJsonConversion;
+import org.apache.tez.dag.history.logging.impl.HistoryEventJsonWriter;
+import org.apache.tez.dag.records.TaskAttemptTerminationCause;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.dag.records.TezTaskID;
+import org.apache.tez.dag.records.TezVertexID;
+import org.codehaus.jettison.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of writing a task attempt finished event to the simple history log, as JSONObject
+ * trees by HistoryEventJsonConversion versus streamed by HistoryEventJsonWriter. The event
+ * carries all task counters, file system counters for a number of schemes and a number of
+ * custom counter groups, which is what dominates the size of the JSON.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class HistoryEventJsonBenchmark {
+
+  @Param({"0", "10", "100"})
+  public int customGroups;
+
+  private TaskAttemptFinishedEvent event;
+  private final HistoryEventJsonWriter writer = new HistoryEventJsonWriter();
+  private final DataOutputBuffer buffer = new DataOutputBuffer();
+  private final DataOutputStream out = new DataOutputStream(buffer);
+
+  @SuppressWarnings("deprecation")
+  @Setup(Level.Trial)
+  public void setup() {
+    TezCounters counters = new TezCounters();
+    long value = 1;
+    for (TaskCounter counter : TaskCounter.values()) {
+      counters.findCounter(counter).setValue(value++ * 1000003);
+    }
+    for (String scheme : new String[] {"FILE", "HDFS", "S3A"}) {
+      for (FileSystemCounter counter : FileSystemCounter.values()) {
+        counters.findCounter(scheme, counter).setValue(value++ * 1000003);
+      }
+    }
+    for (int i = 0; i < customGroups; i++) {
+      for (int j = 0; j < 10; j++) {
+        counters.findCounter("org.apache.tez.benchmarks.Group" + i, "COUNTER_" + j)
+            .setValue(value++);
+      }
+    }
+
+    ApplicationAttemptId applicationAttemptId = ApplicationAttemptId.newInstance(
+        ApplicationId.newInstance(1436907267600L, 195589), 1);
+    TezTaskAttemptID attemptId = TezTaskAttemptID.getInstance(TezTaskID.getInstance(
+        TezVertexID.getInstance(TezDAGID.getInstance(applicationAttemptId.getApplicationId(), 1),
+            2), 3), 0);
+    event = new TaskAttemptFinishedEvent(attemptId, "Map 1", 1436907300000L, 1436907360000L,
+        TaskAttemptState.SUCCEEDED, null, TaskAttemptTerminationCause.UNKNOWN_ERROR, "",
+        counters, null, null, 1436907290000L, null, 1436907295000L,
+        ContainerId.newInstance(applicationAttemptId, 1234), NodeId.newInstance("node", 8041),
+        "http://node:8042/node/containerlogs/container_1436907267600_195589_01_001234/user",
+        null, "node:8042");
+  }
+
+  @Benchmark
+  public int jsonObject() throws JSONException, IOException {
+    buffer.reset();
+    // as SimpleHistoryLoggingService wrote events before the streaming writer
+    out.writeBytes(HistoryEventJsonConversion.convertToJson(event).toString());
+    return buffer.getLength();
+  }
+
+  @Benchmark
+  public int streaming() throws JSONException, IOException {
+    buffer.reset();
+    writer.write(event, out);
+    return buffer.getLength();
+  }
+}
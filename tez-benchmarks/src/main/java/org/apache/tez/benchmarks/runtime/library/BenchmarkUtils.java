@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks.runtime.library;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.tez.common.TezRuntimeFrameworkConfigs;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.runtime.api.ExecutionContext;
+import org.apache.tez.runtime.api.OutputContext;
+import org.apache.tez.runtime.api.OutputStatisticsReporter;
+import org.apache.tez.runtime.api.impl.ExecutionContextImpl;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.comparator.TezBytesComparator;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.partitioner.HashPartitioner;
+
+/**
+ * Shared setup for the runtime-library benchmarks. Contexts are mocked in the same
+ * way as the unit tests so that sorters and mergers can be driven without a running DAG.
+ */
+public final class BenchmarkUtils {
+
+  private BenchmarkUtils() {
+  }
+
+  public static Path createWorkDir(FileSystem localFs, String name) throws IOException {
+    Path workDir = new Path(System.getProperty("java.io.tmpdir"),
+        "tez-benchmarks-" + name + "-" + UUID.randomUUID())
+        .makeQualified(localFs.getUri(), localFs.getWorkingDirectory());
+    localFs.mkdirs(workDir);
+    return workDir;
+  }
+
+  /**
+   * Configuration for BytesWritable keys and values compared with
+   * {@link TezBytesComparator}, which is what Hive uses for its shuffle keys.
+   */
+  public static Configuration createConf(Path workDir, boolean compress) {
+    Configuration conf = new Configuration();
+    conf.set("fs.defaultFS", "file:///");
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_KEY_CLASS, BytesWritable.class.getName());
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_VALUE_CLASS, BytesWritable.class.getName());
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_KEY_COMPARATOR_CLASS,
+        TezBytesComparator.class.getName());
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_PARTITIONER_CLASS,
+        HashPartitioner.class.getName());
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS, compress);
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_CODEC, DefaultCodec.class.getName());
+    conf.setStrings(TezRuntimeFrameworkConfigs.LOCAL_DIRS, workDir.toString());
+    return conf;
+  }
+
+  public static OutputContext createOutputContext(Configuration conf, Path workDir,
+      TezCounters counters) throws IOException {
+    String uniqueId = UUID.randomUUID().toString();
+    String auxiliaryService = conf.get(TezConfiguration.TEZ_AM_SHUFFLE_AUXILIARY_SERVICE_ID,
+        TezConfiguration.TEZ_AM_SHUFFLE_AUXILIARY_SERVICE_ID_DEFAULT);
+    // stubOnly, so that invocations made by the sorters are not recorded for verification
+    OutputContext outputContext = mock(OutputContext.class, withSettings().stubOnly());
+    ExecutionContext execContext = new ExecutionContextImpl("localhost");
+
+    DataOutputBuffer serviceProviderMetaData = new DataOutputBuffer();
+    serviceProviderMetaData.writeInt(80);
+    doReturn(ByteBuffer.wrap(serviceProviderMetaData.getData())).when(outputContext)
+        .getServiceProviderMetaData(auxiliaryService);
+
+    doReturn(execContext).when(outputContext).getExecutionContext();
+    doReturn(mock(OutputStatisticsReporter.class, withSettings().stubOnly())).when(outputContext)
+        .getStatisticsReporter();
+    doReturn(counters).when(outputContext).getCounters();
+    doReturn(ApplicationId.newInstance(10000, 1)).when(outputContext).getApplicationId();
+    doReturn(1).when(outputContext).getDAGAttemptNumber();
+    doReturn("dagName").when(outputContext).getDAGName();
+    doReturn("destinationVertexName").when(outputContext).getDestinationVertexName();
+    doReturn(1).when(outputContext).getOutputIndex();
+    doReturn(1).when(outputContext).getTaskAttemptNumber();
+    doReturn(1).when(outputContext).getTaskIndex();
+    doReturn(1).when(outputContext).getTaskVertexIndex();
+    doReturn("vertexName").when(outputContext).getTaskVertexName();
+    doReturn(uniqueId).when(outputContext).getUniqueIdentifier();
+    doReturn(new String[] { new Path(workDir, "outDir_" + uniqueId).toString() })
+        .when(outputContext).getWorkDirs();
+    return outputContext;
+  }
+
+  /**
+   * Serialized size of a record as it is laid out in the sort buffer and in IFile,
+   * excluding the vint length prefixes.
+   */
+  public static long serializedBytes(BytesWritable[] keys, BytesWritable[] values) {
+    long bytes = 0;
+    for (int i = 0; i < keys.length; i++) {
+      // BytesWritable writes a 4 byte length followed by the payload
+      bytes += 8 + keys[i].getLength() + values[i].getLength();
+    }
+    return bytes;
+  }
+
+  public static CompressionCodec createCodec(Configuration conf, boolean compress) {
+    return compress ? ReflectionUtils.newInstance(DefaultCodec.class, conf) : null;
+  }
+
+  /**
+   * Sort records the way the sorters would order them, i.e. by comparing the serialized
+   * keys with the configured raw comparator.
+   */
+  public static void sortRecords(BytesWritable[] keys, BytesWritable[] values)
+      throws IOException {
+    final RawComparator comparator = new TezBytesComparator();
+    final byte[][] serialized = new byte[keys.length][];
+    Integer[] order = new Integer[keys.length];
+    DataOutputBuffer buffer = new DataOutputBuffer();
+    for (int i = 0; i < keys.length; i++) {
+      buffer.reset();
+      keys[i].write(buffer);
+      serialized[i] = Arrays.copyOf(buffer.getData(), buffer.getLength());
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        byte[] k1 = serialized[o1];
+        byte[] k2 = serialized[o2];
+        return comparator.compare(k1, 0, k1.length, k2, 0, k2.length);
+      }
+    });
+    BytesWritable[] sortedKeys = new BytesWritable[keys.length];
+    BytesWritable[] sortedValues = new BytesWritable[values.length];
+    for (int i = 0; i < order.length; i++) {
+      sortedKeys[i] = keys[order[i]];
+      sortedValues[i] = values[order[i]];
+    }
+    System.arraycopy(sortedKeys, 0, keys, 0, keys.length);
+    System.arraycopy(sortedValues, 0, values, 0, values.length);
+  }
+
+  /**
+   * Write the records into an in-memory IFile, including header and checksum.
+   */
+  public static byte[] writeIFile(Configuration conf, BytesWritable[] keys,
+      BytesWritable[] values, CompressionCodec codec) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    IFile.Writer writer = new IFile.Writer(conf, new FSDataOutputStream(out, null),
+        BytesWritable.class, BytesWritable.class, codec, null, null);
+    for (int i = 0; i < keys.length; i++) {
+      writer.append(keys[i], values[i]);
+    }
+    writer.close();
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks.runtime.library;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.tez.runtime.library.utils.BufferUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Raw key comparison cost for the FastByteComparisons based BufferUtils path versus the
+ * Hadoop WritableComparator path. Keys differ only in the last byte, which is the worst
+ * case for a lexicographic compare.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ByteComparisonBenchmark {
+
+  @Param({"4", "16", "64", "256"})
+  public int keyLength;
+
+  private final DataOutputBuffer key1 = new DataOutputBuffer();
+  private final DataOutputBuffer key2 = new DataOutputBuffer();
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    Random random = new Random(42);
+    byte[] bytes = new byte[keyLength];
+    random.nextBytes(bytes);
+    key1.reset();
+    key1.write(bytes, 0, keyLength);
+    bytes[keyLength - 1]++;
+    key2.reset();
+    key2.write(bytes, 0, keyLength);
+  }
+
+  @Benchmark
+  public int fastByteComparisons() {
+    return BufferUtils.compare(key1, key2);
+  }
+
+  @Benchmark
+  public int writableComparator() {
+    return WritableComparator.compareBytes(key1.getData(), 0, key1.getLength(),
+        key2.getData(), 0, key2.getLength());
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks.runtime.library;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link IFile.Writer} serialization and {@link IFile.Reader} scans over an
+ * in-memory stream, so that checksum, compression and record framing costs are not
+ * hidden behind disk IO.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class IFileBenchmark {
+
+  @Param({"SMALL_KEYS", "WIDE_ROWS", "SKEWED_PARTITIONS"})
+  public KeyValueDistribution distribution;
+
+  @Param({"false", "true"})
+  public boolean compress;
+
+  @Param({"false", "true"})
+  public boolean adaptiveCompression;
+
+  @Param({"CRC32", "CRC32C"})
+  public String checksumType;
+
+  @Param({"200000"})
+  public int numRecords;
+
+  private FileSystem localFs;
+  private Path workDir;
+  private Configuration conf;
+  private CompressionCodec codec;
+  private BytesWritable[] keys;
+  private BytesWritable[] values;
+  private long recordBytes;
+  private byte[] ifileData;
+  private int bufferSize;
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Throughput {
+    public long records;
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      records = 0;
+      bytes = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    localFs = FileSystem.getLocal(new Configuration());
+    workDir = BenchmarkUtils.createWorkDir(localFs, "ifile");
+    conf = BenchmarkUtils.createConf(workDir, compress);
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_ENABLED,
+        adaptiveCompression);
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_IFILE_CHECKSUM_TYPE, checksumType);
+    codec = BenchmarkUtils.createCodec(conf, compress);
+    bufferSize = conf.getInt("io.file.buffer.size",
+        TezRuntimeConfiguration.TEZ_RUNTIME_IFILE_BUFFER_SIZE_DEFAULT);
+    BytesWritable[][] data = distribution.generate(numRecords, 42);
+    keys = data[0];
+    values = data[1];
+    recordBytes = BenchmarkUtils.serializedBytes(keys, values);
+    ifileData = BenchmarkUtils.writeIFile(conf, keys, values, codec);
+  }
+
+  @TearDown(Level.Trial)
+  public void cleanup() throws IOException {
+    localFs.delete(workDir, true);
+  }
+
+  @Benchmark
+  public byte[] write(Throughput throughput) throws IOException {
+    byte[] result = BenchmarkUtils.writeIFile(conf, keys, values, codec);
+    throughput.records += keys.length;
+    throughput.bytes += recordBytes;
+    return result;
+  }
+
+  @Benchmark
+  public void read(Throughput throughput, Blackhole blackhole) throws IOException {
+    IFile.Reader reader = new IFile.Reader(new ByteArrayInputStream(ifileData),
+        ifileData.length, codec, null, null, false, 0, bufferSize);
+    DataInputBuffer key = new DataInputBuffer();
+    DataInputBuffer value = new DataInputBuffer();
+    long records = 0;
+    while (reader.nextRawKey(key)) {
+      reader.nextRawValue(value);
+      blackhole.consume(key);
+      blackhole.consume(value);
+      records++;
+    }
+    reader.close();
+    throughput.records += records;
+    throughput.bytes += recordBytes;
+  }
+}
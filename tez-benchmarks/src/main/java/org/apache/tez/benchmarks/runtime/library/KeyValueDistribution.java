@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks.runtime.library;
+
+import java.util.Random;
+
+import org.apache.hadoop.io.BytesWritable;
+
+/**
+ * Synthetic key/value shapes used by the runtime-library benchmarks.
+ */
+public enum KeyValueDistribution {
+
+  /** Short keys with small values, e.g. ids or counters. */
+  SMALL_KEYS(8, 16, 16, 0),
+  /** Medium keys with wide (1 KB) rows. */
+  WIDE_ROWS(32, 32, 1024, 0),
+  /**
+   * Most records share a handful of hot keys so that a few partitions receive the
+   * bulk of the data.
+   */
+  SKEWED_PARTITIONS(16, 16, 64, 16);
+
+  private static final float HOT_KEY_FRACTION = 0.8f;
+
+  private final int minKeyLength;
+  private final int maxKeyLength;
+  private final int valueLength;
+  private final int numHotKeys;
+
+  KeyValueDistribution(int minKeyLength, int maxKeyLength, int valueLength, int numHotKeys) {
+    this.minKeyLength = minKeyLength;
+    this.maxKeyLength = maxKeyLength;
+    this.valueLength = valueLength;
+    this.numHotKeys = numHotKeys;
+  }
+
+  /**
+   * Generate <code>numRecords</code> keys and values. Values are filled with a small
+   * alphabet so that they remain compressible, similar to typical row data.
+   *
+   * @return an array of {keys, values}
+   */
+  public BytesWritable[][] generate(int numRecords, long seed) {
+    Random random = new Random(seed);
+    BytesWritable[] hotKeys = new BytesWritable[numHotKeys];
+    for (int i = 0; i < numHotKeys; i++) {
+      hotKeys[i] = randomBytes(random, maxKeyLength, 256);
+    }
+    BytesWritable[] keys = new BytesWritable[numRecords];
+    BytesWritable[] values = new BytesWritable[numRecords];
+    for (int i = 0; i < numRecords; i++) {
+      if (numHotKeys > 0 && random.nextFloat() < HOT_KEY_FRACTION) {
+        keys[i] = hotKeys[random.nextInt(numHotKeys)];
+      } else {
+        int keyLength = minKeyLength + random.nextInt(maxKeyLength - minKeyLength + 1);
+        keys[i] = randomBytes(random, keyLength, 256);
+      }
+      values[i] = randomBytes(random, valueLength, 16);
+    }
+    return new BytesWritable[][] { keys, values };
+  }
+
+  private static BytesWritable randomBytes(Random random, int length, int alphabet) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) random.nextInt(alphabet);
+    }
+    return new BytesWritable(bytes);
+  }
+}
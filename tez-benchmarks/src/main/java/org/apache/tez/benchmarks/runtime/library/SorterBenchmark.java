@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks.runtime.library;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.sort.impl.ExternalSorter;
+import org.apache.tez.runtime.library.common.sort.impl.PipelinedSorter;
+import org.apache.tez.runtime.library.common.sort.impl.dflt.DefaultSorter;
+import org.apache.tez.runtime.library.conf.OrderedPartitionedKVOutputConfig.SorterImpl;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link PipelinedSorter} and {@link DefaultSorter} end to end: serializing
+ * records into the sort buffer, spilling and the final merge. Each invocation writes
+ * the same pre-generated records into a fresh sorter.
+ *
+ * Records/sec and bytes/sec are reported via the auxiliary counters; run with
+ * <code>-prof gc</code> to get the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SorterBenchmark {
+
+  @Param({"PIPELINED", "LEGACY"})
+  public SorterImpl sorterImpl;
+
+  @Param({"SMALL_KEYS", "WIDE_ROWS", "SKEWED_PARTITIONS"})
+  public KeyValueDistribution distribution;
+
+  @Param({"false", "true"})
+  public boolean compress;
+
+  @Param({"500000"})
+  public int numRecords;
+
+  @Param({"50"})
+  public int numPartitions;
+
+  @Param({"128"})
+  public int sortMb;
+
+  /** Only used by the PIPELINED sorter. */
+  @Param({"false"})
+  public boolean radixSort;
+
+  /** Only used by the LEGACY sorter. */
+  @Param({"1"})
+  public int legacySpillThreads;
+
+  private FileSystem localFs;
+  private Path workDir;
+  private Configuration conf;
+  private BytesWritable[] keys;
+  private BytesWritable[] values;
+  private long recordBytes;
+
+  private ExternalSorter sorter;
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Throughput {
+    public long records;
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      records = 0;
+      bytes = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setupTrial() throws IOException {
+    localFs = FileSystem.getLocal(new Configuration());
+    workDir = BenchmarkUtils.createWorkDir(localFs, "sorter");
+    conf = BenchmarkUtils.createConf(workDir, compress);
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_SORTER_CLASS, sorterImpl.name());
+    conf.setInt(TezRuntimeConfiguration.TEZ_RUNTIME_IO_SORT_MB, sortMb);
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_PIPELINED_SORTER_RADIX_SORT_ENABLED,
+        radixSort);
+    conf.setInt(TezRuntimeConfiguration.TEZ_RUNTIME_LEGACY_SORTER_SPILL_THREADS,
+        legacySpillThreads);
+    BytesWritable[][] data = distribution.generate(numRecords, 42);
+    keys = data[0];
+    values = data[1];
+    recordBytes = BenchmarkUtils.serializedBytes(keys, values);
+  }
+
+  @Setup(Level.Invocation)
+  public void setupSorter() throws IOException {
+    Configuration sorterConf = new Configuration(conf);
+    TezCounters counters = new TezCounters();
+    long initialMemory = ((long) sortMb) << 20;
+    if (sorterImpl == SorterImpl.PIPELINED) {
+      sorter = new PipelinedSorter(BenchmarkUtils.createOutputContext(sorterConf, workDir,
+          counters), sorterConf, numPartitions, initialMemory);
+    } else {
+      sorter = new DefaultSorter(BenchmarkUtils.createOutputContext(sorterConf, workDir,
+          counters), sorterConf, numPartitions, initialMemory);
+    }
+  }
+
+  @TearDown(Level.Invocation)
+  public void cleanupOutput() throws IOException {
+    sorter = null;
+    localFs.delete(workDir, true);
+    localFs.mkdirs(workDir);
+  }
+
+  @TearDown(Level.Trial)
+  public void cleanupTrial() throws IOException {
+    localFs.delete(workDir, true);
+  }
+
+  @Benchmark
+  public ExternalSorter sortAndSpill(Throughput throughput) throws IOException {
+    for (int i = 0; i < keys.length; i++) {
+      sorter.write(keys[i], values[i]);
+    }
+    sorter.flush();
+    sorter.close();
+    throughput.records += keys.length;
+    throughput.bytes += recordBytes;
+    return sorter;
+  }
+}
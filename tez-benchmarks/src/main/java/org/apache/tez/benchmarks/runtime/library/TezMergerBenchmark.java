@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.benchmarks.runtime.library;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.util.Progress;
+import org.apache.hadoop.util.Progressable;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.comparator.TezBytesComparator;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.common.sort.impl.TezMerger;
+import org.apache.tez.runtime.library.common.sort.impl.TezRawKeyValueIterator;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures a single pass k-way {@link TezMerger} merge over pre-sorted IFile segments,
+ * which is the shape of the final merge in the sorters and of the reducer side merges in
+ * MergeManager.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class TezMergerBenchmark {
+
+  @Param({"SMALL_KEYS", "WIDE_ROWS", "SKEWED_PARTITIONS"})
+  public KeyValueDistribution distribution;
+
+  @Param({"false", "true"})
+  public boolean compress;
+
+  @Param({"10", "100"})
+  public int numSegments;
+
+  @Param({"500000"})
+  public int numRecords;
+
+  // heap of the PriorityQueue, or a tournament tree with cached key prefixes
+  @Param({"false", "true"})
+  public boolean loserTree;
+
+  private FileSystem localFs;
+  private Path workDir;
+  private Configuration conf;
+  private CompressionCodec codec;
+  private RawComparator comparator;
+  private byte[][] segmentData;
+  private long recordBytes;
+  private int bufferSize;
+
+  private static final Progressable NULL_PROGRESSABLE = new Progressable() {
+    @Override
+    public void progress() {
+    }
+  };
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Throughput {
+    public long records;
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      records = 0;
+      bytes = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    localFs = FileSystem.getLocal(new Configuration());
+    workDir = BenchmarkUtils.createWorkDir(localFs, "merger");
+    conf = BenchmarkUtils.createConf(workDir, compress);
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_MERGE_LOSER_TREE_ENABLED, loserTree);
+    codec = BenchmarkUtils.createCodec(conf, compress);
+    comparator = new TezBytesComparator();
+    bufferSize = conf.getInt("io.file.buffer.size",
+        TezRuntimeConfiguration.TEZ_RUNTIME_IFILE_BUFFER_SIZE_DEFAULT);
+
+    BytesWritable[][] data = distribution.generate(numRecords, 42);
+    recordBytes = BenchmarkUtils.serializedBytes(data[0], data[1]);
+    segmentData = new byte[numSegments][];
+    int recordsPerSegment = (numRecords + numSegments - 1) / numSegments;
+    for (int i = 0; i < numSegments; i++) {
+      int start = Math.min(numRecords, i * recordsPerSegment);
+      int end = Math.min(numRecords, start + recordsPerSegment);
+      BytesWritable[] keys = Arrays.copyOfRange(data[0], start, end);
+      BytesWritable[] values = Arrays.copyOfRange(data[1], start, end);
+      BenchmarkUtils.sortRecords(keys, values);
+      segmentData[i] = BenchmarkUtils.writeIFile(conf, keys, values, codec);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void cleanup() throws IOException {
+    localFs.delete(workDir, true);
+  }
+
+  @Benchmark
+  public void merge(Throughput throughput, Blackhole blackhole)
+      throws IOException, InterruptedException {
+    List<TezMerger.Segment> segments = new ArrayList<TezMerger.Segment>(numSegments);
+    for (byte[] data : segmentData) {
+      IFile.Reader reader = new IFile.Reader(new ByteArrayInputStream(data), data.length,
+          codec, null, null, false, 0, bufferSize);
+      segments.add(new TezMerger.Segment(reader, null));
+    }
+    TezCounters counters = new TezCounters();
+    TezRawKeyValueIterator iterator = TezMerger.merge(conf, localFs, BytesWritable.class,
+        BytesWritable.class, segments, numSegments, workDir, comparator, NULL_PROGRESSABLE,
+        counters.findCounter("merger", "reads"), counters.findCounter("merger", "writes"),
+        counters.findCounter("merger", "bytesRead"), new Progress());
+    long records = 0;
+    while (iterator.next()) {
+      blackhole.consume(iterator.getKey());
+      blackhole.consume(iterator.getValue());
+      records++;
+    }
+    iterator.close();
+    throughput.records += records;
+    throughput.bytes += recordBytes;
+  }
+}
@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.dag.app.rm;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.api.protocolrecords.RegisterApplicationMasterResponse;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.FinalApplicationStatus;
+import org.apache.hadoop.yarn.api.records.LocalResource;
+import org.apache.hadoop.yarn.api.records.NodeId;
+import org.apache.hadoop.yarn.api.records.Priority;
+import org.apache.hadoop.yarn.api.records.Resource;
+import org.apache.hadoop.yarn.client.api.impl.AMRMClientImpl;
+import org.apache.tez.common.ContainerSignatureMatcher;
+import org.apache.tez.common.TezUtils;
+import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.dag.app.rm.YarnTaskSchedulerService.CookieContainerRequest;
+import org.apache.tez.serviceplugins.api.TaskSchedulerContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of matching many pending task requests to reused containers in YarnTaskSchedulerService,
+ * as in a session AM running a large DAG on a fixed set of containers. Every tenth request is
+ * affinitized to a container, the others to a host. Each invocation runs all the requests,
+ * every completed task freeing its container for the next one.
+ *
+ * The benchmark is in the package of the scheduler to construct it with an AMRMClient which
+ * does not talk to a ResourceManager.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class TaskSchedulerReuseBenchmark {
+
+  private static final int NUM_HOSTS = 10;
+
+  @Param({"1000"})
+  public int numContainers;
+
+  @Param({"10000", "50000"})
+  public int numRequests;
+
+  private YarnTaskSchedulerService scheduler;
+  private List<Container> containers;
+
+  @Setup(Level.Invocation)
+  public void setup() throws Exception {
+    Configuration conf = new Configuration(false);
+    conf.setLong(TezConfiguration.TEZ_AM_CONTAINER_REUSE_LOCALITY_DELAY_ALLOCATION_MILLIS, 0);
+    conf.setLong(TezConfiguration.TEZ_AM_CONTAINER_IDLE_RELEASE_TIMEOUT_MIN_MILLIS, 100000);
+    conf.setLong(TezConfiguration.TEZ_AM_CONTAINER_IDLE_RELEASE_TIMEOUT_MAX_MILLIS, 100000);
+    scheduler = new YarnTaskSchedulerService(createContext(conf),
+        new LocalAMRMClientAsync(new LocalAMRMClient()));
+    scheduler.initialize();
+    scheduler.start();
+
+    Resource resource = Resource.newInstance(1024, 1);
+    Priority priority1 = Priority.newInstance(1);
+    Priority priority2 = Priority.newInstance(2);
+    String[] racks = {"/default-rack"};
+    Object signature = new Object();
+    ApplicationAttemptId appAttemptId =
+        ApplicationAttemptId.newInstance(ApplicationId.newInstance(1, 1), 1);
+
+    // a first wave of tasks takes all the containers
+    containers = new ArrayList<Container>(numContainers);
+    for (int i = 0; i < numContainers; i++) {
+      String host = "host" + (i % NUM_HOSTS);
+      scheduler.allocateTask(Integer.valueOf(i), resource, new String[] {host}, racks,
+          priority1, signature, null);
+      containers.add(Container.newInstance(ContainerId.newInstance(appAttemptId, i + 1),
+          NodeId.newInstance(host, 0), host + ":0", resource, priority1, null));
+    }
+    scheduler.onContainersAllocated(new ArrayList<Container>(containers));
+    while (true) {
+      synchronized (scheduler) {
+        if (scheduler.taskAllocations.size() == numContainers) {
+          break;
+        }
+      }
+      Thread.sleep(1);
+    }
+
+    for (int i = 0; i < numRequests; i++) {
+      Object task = Integer.valueOf(numContainers + i);
+      if (i % 10 == 0) {
+        ContainerId containerId = containers.get((i / 10) % numContainers).getId();
+        scheduler.allocateTask(task, resource, containerId, priority2, signature, null);
+      } else {
+        scheduler.allocateTask(task, resource, new String[] {"host" + (i % NUM_HOSTS)},
+            racks, priority2, signature, null);
+      }
+    }
+  }
+
+  @TearDown(Level.Invocation)
+  public void tearDown() throws InterruptedException {
+    scheduler.shutdown();
+  }
+
+  @Benchmark
+  public int reuseContainers() {
+    int numAssigned = 0;
+    while (numAssigned < numRequests) {
+      int numAssignedInRound = 0;
+      for (Container container : containers) {
+        Object task;
+        synchronized (scheduler) {
+          task = scheduler.containerAssignments.get(container.getId());
+          if (!scheduler.taskAllocations.containsKey(task)) {
+            continue;
+          }
+        }
+        scheduler.deallocateTask(task, true, null, null);
+        synchronized (scheduler) {
+          if (scheduler.taskAllocations.containsKey(
+              scheduler.containerAssignments.get(container.getId()))) {
+            numAssignedInRound++;
+          }
+        }
+      }
+      if (numAssignedInRound == 0) {
+        throw new IllegalStateException("No container was reused after " + numAssigned
+            + " of " + numRequests + " requests");
+      }
+      numAssigned += numAssignedInRound;
+    }
+    return numAssigned;
+  }
+
+  private static TaskSchedulerContext createContext(Configuration conf) throws IOException {
+    // stub only, the context is called for every allocation
+    TaskSchedulerContext context = mock(TaskSchedulerContext.class, withSettings().stubOnly());
+    when(context.getAppHostName()).thenReturn("host");
+    when(context.getAppClientPort()).thenReturn(0);
+    when(context.getAppTrackingUrl()).thenReturn("");
+    when(context.getAMState()).thenReturn(TaskSchedulerContext.AMState.RUNNING_APP);
+    when(context.getInitialUserPayload()).thenReturn(TezUtils.createUserPayloadFromConf(conf));
+    when(context.isSession()).thenReturn(true);
+    when(context.getContainerSignatureMatcher()).thenReturn(new AlwaysMatchesContainerMatcher());
+    return context;
+  }
+
+  private static class LocalAMRMClient extends AMRMClientImpl<CookieContainerRequest> {
+    LocalAMRMClient() {
+      this.clusterAvailableResources = Resource.newInstance(4000, 4);
+      this.clusterNodeCount = NUM_HOSTS;
+    }
+
+    @Override
+    protected void serviceStart() {
+    }
+
+    @Override
+    protected void serviceStop() {
+    }
+  }
+
+  private static class LocalAMRMClientAsync extends TezAMRMClientAsync<CookieContainerRequest> {
+    LocalAMRMClientAsync(LocalAMRMClient client) {
+      // the scheduler is called directly, not from heartbeats
+      super(client, 100, null);
+    }
+
+    @Override
+    public RegisterApplicationMasterResponse registerApplicationMaster(String appHostName,
+        int appHostPort, String appTrackingUrl) {
+      RegisterApplicationMasterResponse response =
+          mock(RegisterApplicationMasterResponse.class, withSettings().stubOnly());
+      when(response.getMaximumResourceCapability())
+          .thenReturn(Resource.newInstance(4096, 4));
+      return response;
+    }
+
+    @Override
+    public void unregisterApplicationMaster(FinalApplicationStatus appStatus,
+        String appMessage, String appTrackingUrl) {
+    }
+
+    @Override
+    protected void serviceStart() {
+    }
+
+    @Override
+    protected void serviceStop() {
+    }
+  }
+
+  private static class AlwaysMatchesContainerMatcher implements ContainerSignatureMatcher {
+    @Override
+    public boolean isSuperSet(Object cs1, Object cs2) {
+      return true;
+    }
+
+    @Override
+    public boolean isExactMatch(Object cs1, Object cs2) {
+      return true;
+    }
+
+    @Override
+    public Map<String, LocalResource> getAdditionalResources(Map<String, LocalResource> lr1,
+        Map<String, LocalResource> lr2) {
+      return new HashMap<String, LocalResource>();
+    }
+
+    @Override
+    public Object union(Object cs1, Object cs2) {
+      return cs1;
+    }
+  }
+}
@@ -50,8 +50,13 @@ public class AsyncDispatcher extends CompositeService implements Dispatcher {
 
   private static final Logger LOG = LoggerFactory.getLogger(AsyncDispatcher.class);
 
+  // maximum number of events taken off the queue at once
+  private static final int MAX_DRAIN_BATCH_SIZE = 1024;
+
   private final String name;
   private final BlockingQueue<Event> eventQueue;
+  // capacity of the ring buffers of the dispatchers created by this one, 0 if not used
+  private final int ringBufferCapacity;
   private volatile boolean stopped = false;
 
   // Configuration flag for enabling/disabling draining dispatcher's events on
@@ -81,15 +86,29 @@ public class AsyncDispatcher extends CompositeService implements Dispatcher {
   }
 
   public AsyncDispatcher(String name, BlockingQueue<Event> eventQueue) {
+    this(name, eventQueue, 0);
+  }
+
+  /**
+   * Create a dispatcher which queues events in a {@link RingBufferEventQueue}, as do the
+   * dispatchers which are created through this one.
+   */
+  public AsyncDispatcher(String name, int ringBufferCapacity) {
+    this(name, new RingBufferEventQueue<Event>(ringBufferCapacity), ringBufferCapacity);
+  }
+
+  private AsyncDispatcher(String name, BlockingQueue<Event> eventQueue, int ringBufferCapacity) {
     super(name);
     this.name = name;
     this.eventQueue = eventQueue;
+    this.ringBufferCapacity = ringBufferCapacity;
   }
 
   public Runnable createThread() {
     return new Runnable() {
       @Override
       public void run() {
+        List<Event> batch = new ArrayList<Event>();
         while (!stopped && !Thread.currentThread().isInterrupted()) {
           drained = eventQueue.isEmpty();
           // blockNewEvents is only set when dispatcher is draining to stop,
@@ -114,6 +133,13 @@ public class AsyncDispatcher extends CompositeService implements Dispatcher {
           if (event != null) {
             dispatch(event);
           }
+          // dispatch the events which queued up meanwhile without going through take() for each
+          eventQueue.drainTo(batch, MAX_DRAIN_BATCH_SIZE);
+          for (int i = 0; i < batch.size()
+              && !stopped && !Thread.currentThread().isInterrupted(); i++) {
+            dispatch(batch.get(i));
+          }
+          batch.clear();
         }
       }
     };
@@ -160,6 +186,10 @@ public class AsyncDispatcher extends CompositeService implements Dispatcher {
         LOG.warn("Interrupted Exception while stopping", ie);
       }
     }
+    String queueStatistics = getQueueStatistics();
+    if (queueStatistics != null) {
+      LOG.info("Event queue of dispatcher {" + name + "}: " + queueStatistics);
+    }
 
     // stop all the components
     super.serviceStop();
@@ -264,7 +294,9 @@ public class AsyncDispatcher extends CompositeService implements Dispatcher {
     checkForExistingDispatchers(true, eventType);
     LOG.info(
           "Registering " + eventType + " for independent dispatch using: " + handler.getClass());
-    AsyncDispatcher dispatcher = new AsyncDispatcher(dispatcherName);
+    AsyncDispatcher dispatcher = ringBufferCapacity > 0 ?
+        new AsyncDispatcher(dispatcherName, ringBufferCapacity) :
+        new AsyncDispatcher(dispatcherName);
     dispatcher.register(eventType, handler);
     eventDispatchers.put(eventType, dispatcher);
     addIfService(dispatcher);
@@ -278,7 +310,8 @@ public class AsyncDispatcher extends CompositeService implements Dispatcher {
     checkForExistingDispatchers(true, eventType);
     LOG.info(
           "Registering " + eventType + " for concurrent dispatch using: " + handler.getClass());
-    AsyncDispatcherConcurrent dispatcher = new AsyncDispatcherConcurrent(dispatcherName, numThreads);
+    AsyncDispatcherConcurrent dispatcher = new AsyncDispatcherConcurrent(dispatcherName, numThreads,
+        ringBufferCapacity);
     if (exitOnDispatchException) {
       dispatcher.enableExitOnDispatchException();
     }
@@ -393,4 +426,16 @@ public class AsyncDispatcher extends CompositeService implements Dispatcher {
   public int getQueueSize() {
     return eventQueue.size();
   }
+
+  /**
+   * @return depth, latency and back pressure statistics of the event queue, or null if the
+   *         queue does not collect any
+   */
+  @Private
+  public String getQueueStatistics() {
+    if (eventQueue instanceof RingBufferEventQueue) {
+      return ((RingBufferEventQueue<Event>) eventQueue).getStatistics();
+    }
+    return null;
+  }
 }
@@ -21,6 +21,7 @@ package org.apache.tez.common;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -54,8 +55,11 @@ public class AsyncDispatcherConcurrent extends CompositeService implements Dispa
 
   private static final Logger LOG = LoggerFactory.getLogger(AsyncDispatcher.class);
 
+  // maximum number of events taken off a queue at once
+  private static final int MAX_DRAIN_BATCH_SIZE = 1024;
+
   private final String name;
-  private final ArrayList<LinkedBlockingQueue<Event>> eventQueues;
+  private final ArrayList<BlockingQueue<Event>> eventQueues;
   private volatile boolean stopped = false;
 
   // Configuration flag for enabling/disabling draining dispatcher's events on
@@ -74,6 +78,8 @@ public class AsyncDispatcherConcurrent extends CompositeService implements Dispa
 
   private ExecutorService execService;
   private final int numThreads;
+  // capacity of the ring buffer per thread, 0 to use linked queues
+  private final int ringBufferCapacity;
   
   protected final Map<Class<? extends Enum>, EventHandler> eventHandlers = Maps.newHashMap();
   protected final Map<Class<? extends Enum>, AsyncDispatcherConcurrent> eventDispatchers = 
@@ -81,22 +87,28 @@ public class AsyncDispatcherConcurrent extends CompositeService implements Dispa
   private boolean exitOnDispatchException = false;
 
   AsyncDispatcherConcurrent(String name, int numThreads) {
+    this(name, numThreads, 0);
+  }
+
+  AsyncDispatcherConcurrent(String name, int numThreads, int ringBufferCapacity) {
     super(name);
     Preconditions.checkArgument(numThreads > 0);
     this.name = name;
     this.eventQueues = Lists.newArrayListWithCapacity(numThreads);
     this.numThreads = numThreads;
+    this.ringBufferCapacity = ringBufferCapacity;
   }
   
   class DispatchRunner implements Runnable {
-    final LinkedBlockingQueue<Event> queue;
+    final BlockingQueue<Event> queue;
     
-    public DispatchRunner(LinkedBlockingQueue<Event> queue) {
+    public DispatchRunner(BlockingQueue<Event> queue) {
       this.queue = queue;
     }
     
     @Override
     public void run() {
+      List<Event> batch = new ArrayList<Event>();
       while (!stopped && !Thread.currentThread().isInterrupted()) {
         drained = queue.isEmpty();
         // blockNewEvents is only set when dispatcher is draining to stop,
@@ -121,6 +133,13 @@ public class AsyncDispatcherConcurrent extends CompositeService implements Dispa
         if (event != null) {
           dispatch(event);
         }
+        // dispatch the events which queued up meanwhile without going through take() for each
+        queue.drainTo(batch, MAX_DRAIN_BATCH_SIZE);
+        for (int i = 0; i < batch.size()
+            && !stopped && !Thread.currentThread().isInterrupted(); i++) {
+          dispatch(batch.get(i));
+        }
+        batch.clear();
       }
     }
   };
@@ -135,7 +154,8 @@ public class AsyncDispatcherConcurrent extends CompositeService implements Dispa
     execService = Executors.newFixedThreadPool(numThreads, new ThreadFactoryBuilder().setDaemon(true)
         .setNameFormat("Dispatcher {" + this.name + "} #%d").build());
     for (int i=0; i<numThreads; ++i) {
-      eventQueues.add(new LinkedBlockingQueue<Event>());
+      eventQueues.add(ringBufferCapacity > 0 ?
+          new RingBufferEventQueue<Event>(ringBufferCapacity) : new LinkedBlockingQueue<Event>());
     }
     for (int i=0; i<numThreads; ++i) {
       execService.execute(new DispatchRunner(eventQueues.get(i)));
@@ -165,8 +185,10 @@ public class AsyncDispatcherConcurrent extends CompositeService implements Dispa
       stopped = true;
 
       for (int i=0; i<numThreads; ++i) {
-        LOG.info("AsyncDispatcher stopping with events: " + eventQueues.get(i).size()
-            + " in queue: " + i);
+        BlockingQueue<Event> queue = eventQueues.get(i);
+        LOG.info("AsyncDispatcher stopping with events: " + queue.size()
+            + " in queue: " + i + (queue instanceof RingBufferEventQueue ?
+            ", " + ((RingBufferEventQueue<Event>) queue).getStatistics() : ""));
       }
       execService.shutdownNow();
     }
@@ -262,7 +284,8 @@ public class AsyncDispatcherConcurrent extends CompositeService implements Dispa
     checkForExistingDispatchers(true, eventType);
     LOG.info(
           "Registering " + eventType + " for independent dispatch using: " + handler.getClass());
-    AsyncDispatcherConcurrent dispatcher = new AsyncDispatcherConcurrent(dispatcherName, numThreads);
+    AsyncDispatcherConcurrent dispatcher = new AsyncDispatcherConcurrent(dispatcherName, numThreads,
+        ringBufferCapacity);
     dispatcher.register(eventType, handler);
     eventDispatchers.put(eventType, dispatcher);
     addIfService(dispatcher);
@@ -312,7 +335,7 @@ public class AsyncDispatcherConcurrent extends CompositeService implements Dispa
       int index = numThreads > 1 ? event.getSerializingHash() % numThreads : 0;
 
      // no registered dispatcher. use internal dispatcher.
-      LinkedBlockingQueue<Event> queue = eventQueues.get(index);
+      BlockingQueue<Event> queue = eventQueues.get(index);
       /* all this method does is enqueue all the events onto the queue */
       int qSize = queue.size();
       if (qSize !=0 && qSize %1000 == 0) {
@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package org.apache.tez.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience.Private;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.common.counters.TezCounters;
+
+/**
+ * An updater that tracks the amount of time this task has spent computing and verifying the
+ * checksums of intermediate data. Like the time spent in GC, the time is accumulated for the
+ * whole JVM, by the threads which compute the checksums, and the tasks of a container take the
+ * time spent while they run.
+ */
+@Private
+public class ChecksumTimeUpdater {
+  private static final AtomicLong cumulativeChecksumNanos = new AtomicLong();
+
+  private long lastChecksumNanos;
+  private final TezCounters counters;
+
+  public ChecksumTimeUpdater(TezCounters counters) {
+    this.lastChecksumNanos = getCumulativeChecksumNanos();
+    this.counters = counters;
+  }
+
+  /**
+   * Adds time spent on checksums by any thread.
+   */
+  public static void addChecksumTime(long nanos) {
+    cumulativeChecksumNanos.addAndGet(nanos);
+  }
+
+  public static long getCumulativeChecksumNanos() {
+    return cumulativeChecksumNanos.get();
+  }
+
+  /**
+   * Increment the checksum time counter by the time spent since the last call. This is not
+   * thread safe.
+   */
+  public void incrementChecksumCounter() {
+    if (null == counters) {
+      return; // nothing to do.
+    }
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(
+        getCumulativeChecksumNanos() - lastChecksumNanos);
+    // the remainder of a millisecond is left for the next call
+    lastChecksumNanos += TimeUnit.MILLISECONDS.toNanos(elapsedMillis);
+
+    TezCounter checksumCounter = counters.findCounter(TaskCounter.IFILE_CHECKSUM_TIME);
+    if (null != checksumCounter) {
+      checksumCounter.increment(elapsedMillis);
+    }
+  }
+}
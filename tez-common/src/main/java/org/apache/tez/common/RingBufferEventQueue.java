@@ -0,0 +1,367 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.common;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.hadoop.classification.InterfaceAudience.Private;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Event queue for a dispatcher thread, built on a bounded ring buffer which producers claim
+ * slots in with a single compare-and-set, instead of taking a lock and allocating a node per
+ * event like a {@link java.util.concurrent.LinkedBlockingQueue}.
+ *
+ * There must be a single consumer thread. Producers never block: when the ring buffer is full,
+ * events go to an unbounded overflow list, and are handed to the consumer in the same order as
+ * if they had been put into the ring buffer. Blocking would risk a deadlock, since event
+ * handlers send events while holding locks that the consumer may need, and the consumer sends
+ * events to its own queue. How often that happens is tracked as back pressure.
+ *
+ * The consumer also keeps histograms of the queue depth, sampled whenever events are drained,
+ * and of the time events spend in the queue.
+ */
+@Private
+public class RingBufferEventQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+  private static final int NUM_HISTOGRAM_BUCKETS = 32;
+  private static final int SPINS_BEFORE_PARK = 64;
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private static class OverflowEvent<E> {
+    final E event;
+    // position in the ring buffer the event would have taken
+    final long sequence;
+    final long enqueueTime;
+
+    OverflowEvent(E event, long sequence, long enqueueTime) {
+      this.event = event;
+      this.sequence = sequence;
+      this.enqueueTime = enqueueTime;
+    }
+  }
+
+  private final int capacity;
+  private final int mask;
+  private final AtomicReferenceArray<E> slots;
+  private final long[] enqueueTimes;
+  private final AtomicLong tail = new AtomicLong();
+  // only advanced by the consumer
+  private volatile long head = 0;
+  private final ConcurrentLinkedQueue<OverflowEvent<E>> overflowEvents =
+      new ConcurrentLinkedQueue<OverflowEvent<E>>();
+  private final AtomicLong numOverflowEvents = new AtomicLong();
+  private final AtomicLong totalOverflowEvents = new AtomicLong();
+  private volatile Thread waitingConsumer;
+
+  // statistics are only updated by the consumer, and read without synchronization for reporting
+  private final long[] depthHistogram = new long[NUM_HISTOGRAM_BUCKETS];
+  private final long[] latencyHistogram = new long[NUM_HISTOGRAM_BUCKETS];
+  private volatile long maxDepth = 0;
+
+  /**
+   * @param capacity size of the ring buffer, rounded up to a power of two
+   */
+  public RingBufferEventQueue(int capacity) {
+    Preconditions.checkArgument(capacity > 0 && capacity <= (1 << 30),
+        "Invalid capacity: " + capacity);
+    int roundedCapacity = Integer.highestOneBit(capacity);
+    this.capacity = roundedCapacity < capacity ? roundedCapacity << 1 : roundedCapacity;
+    this.mask = this.capacity - 1;
+    this.slots = new AtomicReferenceArray<E>(this.capacity);
+    this.enqueueTimes = new long[this.capacity];
+  }
+
+  @VisibleForTesting
+  int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Adds the event without ever blocking, and always succeeds.
+   */
+  @Override
+  public boolean offer(E e) {
+    Preconditions.checkNotNull(e);
+    long now = System.nanoTime();
+    while (true) {
+      long sequence = tail.get();
+      if (sequence - head >= capacity) {
+        numOverflowEvents.incrementAndGet();
+        totalOverflowEvents.incrementAndGet();
+        overflowEvents.add(new OverflowEvent<E>(e, sequence, now));
+        break;
+      }
+      if (tail.compareAndSet(sequence, sequence + 1)) {
+        int index = (int) (sequence & mask);
+        enqueueTimes[index] = now;
+        // a volatile write, so that it cannot be reordered with reading the waiting consumer
+        slots.set(index, e);
+        break;
+      }
+    }
+    Thread waiter = waitingConsumer;
+    if (waiter != null) {
+      LockSupport.unpark(waiter);
+    }
+    return true;
+  }
+
+  @Override
+  public void put(E e) {
+    offer(e);
+  }
+
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit) {
+    return offer(e);
+  }
+
+  /**
+   * May only be called by the consumer. Returns null while an event which has been added
+   * before the available ones is still being added.
+   */
+  @Override
+  public E poll() {
+    long sequence = head;
+    OverflowEvent<E> overflowEvent = overflowEvents.peek();
+    if (overflowEvent != null && overflowEvent.sequence <= sequence) {
+      overflowEvents.poll();
+      numOverflowEvents.decrementAndGet();
+      recordLatency(overflowEvent.enqueueTime);
+      return overflowEvent.event;
+    }
+    int index = (int) (sequence & mask);
+    E e = slots.get(index);
+    if (e == null) {
+      return null;
+    }
+    long enqueueTime = enqueueTimes[index];
+    slots.lazySet(index, null);
+    head = sequence + 1;
+    recordLatency(enqueueTime);
+    return e;
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    return poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    int spins = 0;
+    while (true) {
+      E e = poll();
+      if (e != null) {
+        return e;
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return null;
+      }
+      if (spins < SPINS_BEFORE_PARK) {
+        ++spins;
+        Thread.yield();
+        continue;
+      }
+      waitingConsumer = Thread.currentThread();
+      try {
+        // check again, a producer may have missed the waiting consumer
+        e = poll();
+        if (e != null) {
+          return e;
+        }
+        LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+      } finally {
+        waitingConsumer = null;
+      }
+    }
+  }
+
+  /**
+   * Returns the event {@link #poll()} would return, without removing it. Other threads than the
+   * consumer may see an event which is being taken at the same time.
+   */
+  @Override
+  public E peek() {
+    OverflowEvent<E> overflowEvent = overflowEvents.peek();
+    if (overflowEvent != null && overflowEvent.sequence <= head) {
+      return overflowEvent.event;
+    }
+    return slots.get((int) (head & mask));
+  }
+
+  /**
+   * May only be called by the consumer.
+   */
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    recordDepth(size());
+    int numDrained = 0;
+    E e;
+    while (numDrained < maxElements && (e = poll()) != null) {
+      c.add(e);
+      ++numDrained;
+    }
+    return numDrained;
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int size() {
+    long size = tail.get() - head + numOverflowEvents.get();
+    return (int) Math.min(Integer.MAX_VALUE, Math.max(0, size));
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * @return the number of events which can be added before the ring buffer is full. Events
+   *         added beyond that do not block, but go to the overflow list.
+   */
+  @Override
+  public int remainingCapacity() {
+    return (int) Math.max(0, capacity - (tail.get() - head));
+  }
+
+  /**
+   * @return a weakly consistent snapshot of the events, in the order the consumer takes them.
+   *         It may miss events which are added or taken concurrently, and does not support
+   *         removal.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    List<E> events = new ArrayList<E>();
+    long sequence = head;
+    long end = Math.min(tail.get(), sequence + capacity);
+    Iterator<OverflowEvent<E>> overflowIterator = overflowEvents.iterator();
+    OverflowEvent<E> overflowEvent = overflowIterator.hasNext() ? overflowIterator.next() : null;
+    for (; sequence < end; sequence++) {
+      // overflowed events go before the event which took their position in the ring buffer
+      while (overflowEvent != null && overflowEvent.sequence <= sequence) {
+        events.add(overflowEvent.event);
+        overflowEvent = overflowIterator.hasNext() ? overflowIterator.next() : null;
+      }
+      E e = slots.get((int) (sequence & mask));
+      if (e != null) {
+        events.add(e);
+      }
+    }
+    while (overflowEvent != null) {
+      events.add(overflowEvent.event);
+      overflowEvent = overflowIterator.hasNext() ? overflowIterator.next() : null;
+    }
+    return Collections.unmodifiableList(events).iterator();
+  }
+
+  private static int bucket(long value) {
+    return Math.min(NUM_HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+  }
+
+  private void recordDepth(int depth) {
+    depthHistogram[bucket(depth)]++;
+    if (depth > maxDepth) {
+      maxDepth = depth;
+    }
+  }
+
+  private void recordLatency(long enqueueTime) {
+    long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - enqueueTime);
+    latencyHistogram[bucket(Math.max(0, micros))]++;
+  }
+
+  /**
+   * @return the number of events which did not fit into the ring buffer so far
+   */
+  public long getOverflowCount() {
+    return totalOverflowEvents.get();
+  }
+
+  public long getMaxDepth() {
+    return maxDepth;
+  }
+
+  /**
+   * @return counts of the sampled queue depths. Bucket i counts depths below 2^i, which are at
+   *         least 2^(i-1).
+   */
+  public long[] getDepthHistogram() {
+    return depthHistogram.clone();
+  }
+
+  /**
+   * @return counts of the microseconds events spent in the queue, bucketed like the depths
+   */
+  public long[] getLatencyHistogram() {
+    return latencyHistogram.clone();
+  }
+
+  /**
+   * @return upper bound of the given percentile of the histogram
+   */
+  @VisibleForTesting
+  static long getPercentile(long[] histogram, double percentile) {
+    long total = 0;
+    for (long count : histogram) {
+      total += count;
+    }
+    long threshold = (long) Math.ceil(total * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < histogram.length; i++) {
+      seen += histogram[i];
+      if (seen >= threshold && seen > 0) {
+        return i == 0 ? 0 : (1L << i) - 1;
+      }
+    }
+    return 0;
+  }
+
+  public String getStatistics() {
+    long[] depths = getDepthHistogram();
+    long[] latencies = getLatencyHistogram();
+    return "depth[p50<=" + getPercentile(depths, 50) + ", p99<=" + getPercentile(depths, 99)
+        + ", max=" + maxDepth + "], latencyMicros[p50<=" + getPercentile(latencies, 50)
+        + ", p99<=" + getPercentile(latencies, 99) + "], overflows=" + getOverflowCount();
+  }
+}
@@ -97,6 +97,54 @@ public class TestAsyncDispatcher {
     central.close();
   }
   
+  @SuppressWarnings("unchecked")
+  @Test (timeout=5000)
+  public void testRingBuffer() throws Exception {
+    CountDownLatch latch = new CountDownLatch(4);
+    CountDownEventHandler.latch = latch;
+
+    AsyncDispatcher central = new AsyncDispatcher("Type1", 4);
+    central.register(TestEventType1.class, new TestEventHandler1());
+    central.registerAndCreateDispatcher(TestEventType2.class, new TestEventHandler2(), "Type2");
+    central.registerAndCreateDispatcher(TestEventType3.class, new TestEventHandler3(), "Type3");
+
+    central.init(new Configuration());
+    central.start();
+    central.getEventHandler().handle(new TestEvent1(TestEventType1.TYPE1));
+    central.getEventHandler().handle(new TestEvent2(TestEventType2.TYPE2));
+    central.getEventHandler().handle(new TestEvent3(TestEventType3.TYPE3));
+    latch.countDown();
+    latch.await();
+    Assert.assertNotNull(central.getQueueStatistics());
+    central.close();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test (timeout=5000)
+  public void testRingBufferEventsFromHandler() throws Exception {
+    final int numEvents = 100;
+    final CountDownLatch latch = new CountDownLatch(numEvents);
+    final AsyncDispatcher central = new AsyncDispatcher("Type1", 4);
+    central.register(TestEventType1.class, new EventHandler<TestEvent1>() {
+      @Override
+      public void handle(TestEvent1 event) {
+        if (latch.getCount() == numEvents) {
+          // more events than fit into the ring buffer, sent by its own consumer
+          for (int i = 1; i < numEvents; i++) {
+            central.getEventHandler().handle(new TestEvent1(TestEventType1.TYPE1));
+          }
+        }
+        latch.countDown();
+      }
+    });
+    central.init(new Configuration());
+    central.start();
+    central.getEventHandler().handle(new TestEvent1(TestEventType1.TYPE1));
+    latch.await();
+    Assert.assertTrue(central.getQueueStatistics().contains("overflows=" + (numEvents - 5)));
+    central.close();
+  }
+
   @Test (timeout=5000)
   public void testMultipleRegisterFail() throws Exception {
     AsyncDispatcher central = new AsyncDispatcher("Type1");
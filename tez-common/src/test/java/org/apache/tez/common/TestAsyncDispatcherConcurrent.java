@@ -132,6 +132,25 @@ public class TestAsyncDispatcherConcurrent {
     central.close();
   }
   
+  @Test (timeout=5000)
+  public void testMultiThreadsRingBuffer() throws Exception {
+    CountDownLatch latch = new CountDownLatch(4);
+    CountDownEventHandler.init(latch);
+
+    AsyncDispatcher central = new AsyncDispatcher("Type1", 4);
+    central.registerAndCreateDispatcher(TestEventType1.class, new TestEventHandler1(), "Type1", 3);
+
+    central.init(new Configuration());
+    central.start();
+    // 3 threads in the same dispatcher will handle 3 events
+    central.getEventHandler().handle(new TestEvent1(TestEventType1.TYPE1, 0));
+    central.getEventHandler().handle(new TestEvent1(TestEventType1.TYPE1, 1));
+    central.getEventHandler().handle(new TestEvent1(TestEventType1.TYPE1, 2));
+    // wait for all events to be run in parallel
+    CountDownEventHandler.checkParallelCountersDoneAndFinish();
+    central.close();
+  }
+
   @Test (timeout=5000)
   public void testMultipleRegisterFail() throws Exception {
     AsyncDispatcher central = new AsyncDispatcher("Type1");
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRingBufferEventQueue {
+
+  @Test (timeout=5000)
+  public void testCapacity() {
+    Assert.assertEquals(1, new RingBufferEventQueue<Integer>(1).getCapacity());
+    Assert.assertEquals(4, new RingBufferEventQueue<Integer>(3).getCapacity());
+    Assert.assertEquals(1024, new RingBufferEventQueue<Integer>(1024).getCapacity());
+  }
+
+  @Test (timeout=5000)
+  public void testOverflowOrder() throws Exception {
+    RingBufferEventQueue<Integer> queue = new RingBufferEventQueue<Integer>(4);
+    for (int i = 0; i < 10; i++) {
+      queue.put(i);
+    }
+    Assert.assertEquals(10, queue.size());
+    Assert.assertEquals(0, queue.remainingCapacity());
+    Assert.assertEquals(6, queue.getOverflowCount());
+
+    Assert.assertEquals(0, queue.take().intValue());
+    Assert.assertEquals(1, queue.take().intValue());
+    // ring buffer has room again, but the event has to go after the overflowed ones
+    queue.put(10);
+    List<Integer> drained = new ArrayList<Integer>();
+    Assert.assertEquals(5, queue.drainTo(drained, 5));
+    Assert.assertEquals(4, queue.drainTo(drained));
+    for (int i = 0; i < drained.size(); i++) {
+      Assert.assertEquals(i + 2, drained.get(i).intValue());
+    }
+    Assert.assertTrue(queue.isEmpty());
+    Assert.assertNull(queue.poll());
+    Assert.assertEquals(9, queue.getMaxDepth());
+  }
+
+  @Test (timeout=5000)
+  public void testPeekAndIterate() throws Exception {
+    RingBufferEventQueue<Integer> queue = new RingBufferEventQueue<Integer>(4);
+    Assert.assertNull(queue.peek());
+    Assert.assertFalse(queue.iterator().hasNext());
+    for (int i = 0; i < 10; i++) {
+      queue.put(i);
+    }
+    Assert.assertEquals(0, queue.take().intValue());
+    Assert.assertEquals(1, queue.take().intValue());
+    queue.put(10);
+
+    // the snapshot and peek follow the order the events are taken in, including the
+    // overflowed ones
+    List<Integer> events = new ArrayList<Integer>(queue);
+    Assert.assertEquals(9, events.size());
+    for (int i = 0; i < events.size(); i++) {
+      Assert.assertEquals(i + 2, events.get(i).intValue());
+    }
+    Assert.assertTrue(queue.contains(7));
+    Assert.assertFalse(queue.contains(1));
+    Assert.assertEquals("[2, 3, 4, 5, 6, 7, 8, 9, 10]", queue.toString());
+    for (int i = 2; i <= 10; i++) {
+      Assert.assertEquals(i, queue.peek().intValue());
+      Assert.assertEquals(i, queue.take().intValue());
+    }
+    Assert.assertNull(queue.peek());
+    Assert.assertEquals("[]", queue.toString());
+  }
+
+  @Test (timeout=20000)
+  public void testConcurrentProducers() throws Exception {
+    final int numProducers = 4;
+    final int numEvents = 50000;
+    final RingBufferEventQueue<long[]> queue = new RingBufferEventQueue<long[]>(64);
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> producers = new ArrayList<Thread>();
+    for (int p = 0; p < numProducers; p++) {
+      final int producer = p;
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < numEvents; i++) {
+            queue.put(new long[] {producer, i});
+          }
+        }
+      });
+      thread.start();
+      producers.add(thread);
+    }
+    start.countDown();
+
+    // events of each producer arrive in the order they have been put
+    int[] nextEvent = new int[numProducers];
+    List<long[]> batch = new ArrayList<long[]>();
+    for (int received = 0; received < numProducers * numEvents; ) {
+      batch.add(queue.take());
+      queue.drainTo(batch, 100);
+      for (long[] event : batch) {
+        Assert.assertEquals(nextEvent[(int) event[0]]++, event[1]);
+      }
+      received += batch.size();
+      batch.clear();
+    }
+    for (Thread thread : producers) {
+      thread.join();
+    }
+    Assert.assertTrue(queue.isEmpty());
+    Assert.assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+  }
+
+  @Test (timeout=5000)
+  public void testTakeWaitsForProducer() throws Exception {
+    final RingBufferEventQueue<Integer> queue = new RingBufferEventQueue<Integer>(16);
+    Thread producer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(200);
+        } catch (InterruptedException e) {
+          return;
+        }
+        queue.offer(42);
+      }
+    });
+    producer.start();
+    Assert.assertEquals(42, queue.take().intValue());
+    producer.join();
+
+    Thread.currentThread().interrupt();
+    try {
+      queue.take();
+      Assert.fail();
+    } catch (InterruptedException e) {
+      // expected
+    }
+  }
+
+  @Test (timeout=5000)
+  public void testPercentile() {
+    long[] histogram = new long[32];
+    Assert.assertEquals(0, RingBufferEventQueue.getPercentile(histogram, 50));
+    // 90 values in [4, 8) and 10 values in [512, 1024)
+    histogram[3] = 90;
+    histogram[10] = 10;
+    Assert.assertEquals(7, RingBufferEventQueue.getPercentile(histogram, 50));
+    Assert.assertEquals(7, RingBufferEventQueue.getPercentile(histogram, 90));
+    Assert.assertEquals(1023, RingBufferEventQueue.getPercentile(histogram, 99));
+  }
+}
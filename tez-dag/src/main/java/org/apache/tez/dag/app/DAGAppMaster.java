@@ -669,6 +669,14 @@ public class DAGAppMaster extends AbstractService {
   
   @VisibleForTesting
   protected AsyncDispatcher createDispatcher() {
+    boolean useRingBuffer = amConf.getBoolean(TezConfiguration.TEZ_AM_USE_RING_BUFFER_DISPATCHER,
+        TezConfiguration.TEZ_AM_USE_RING_BUFFER_DISPATCHER_DEFAULT);
+    LOG.info("Using ring buffer dispatcher: " + useRingBuffer);
+    if (useRingBuffer) {
+      int capacity = amConf.getInt(TezConfiguration.TEZ_AM_RING_BUFFER_DISPATCHER_CAPACITY,
+          TezConfiguration.TEZ_AM_RING_BUFFER_DISPATCHER_CAPACITY_DEFAULT);
+      return new AsyncDispatcher("Central", capacity);
+    }
     return new AsyncDispatcher("Central");
   }
 
@@ -820,6 +828,10 @@ public class DAGAppMaster extends AbstractService {
           if (!sessionStopped.get()) {
             LOG.info("Central Dispatcher queue size after DAG completion, before cleanup: " +
                 dispatcher.getQueueSize());
+            String queueStatistics = dispatcher.getQueueStatistics();
+            if (queueStatistics != null) {
+              LOG.info("Central Dispatcher queue statistics: " + queueStatistics);
+            }
             LOG.info("Waiting for next DAG to be submitted.");
 
             // Sending this via the event queue, in case there are pending events which need to be
@@ -198,6 +198,13 @@ public interface Vertex extends Comparable<Vertex> {
   public long getFinishTime();
 
   void reportTaskStartTime(long taskStartTime);
+
+  /**
+   * Notify the vertex that the state or progress of a task may have changed,
+   * so that it is taken into account by the next status request.
+   * @param taskId the task
+   */
+  void reportTaskStatusChanged(TezTaskID taskId);
   public long getFirstTaskStartTime();
   public long getLastTaskFinishTime();
 
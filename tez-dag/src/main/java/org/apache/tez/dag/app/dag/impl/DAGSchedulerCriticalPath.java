@@ -0,0 +1,269 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.apache.tez.dag.app.dag.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.apache.hadoop.yarn.event.EventHandler;
+import org.apache.tez.dag.api.oldrecords.TaskAttemptState;
+import org.apache.tez.dag.app.dag.DAG;
+import org.apache.tez.dag.app.dag.DAGScheduler;
+import org.apache.tez.dag.app.dag.TaskAttempt;
+import org.apache.tez.dag.app.dag.Vertex;
+import org.apache.tez.dag.app.dag.event.DAGEventSchedulerUpdate;
+import org.apache.tez.dag.app.dag.event.TaskAttemptEventSchedule;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Prioritizes the task attempts of the vertices on the longest remaining path
+ * through the DAG, so that a long chain of vertices is not starved by wide but
+ * shallow branches, as with the natural order by distance from root.
+ *
+ * The remaining span of a vertex, the time it still takes with enough
+ * containers, is estimated as the average duration of its successful
+ * attempts, or of the successful attempts of all vertices until one of its
+ * attempts succeeds, and 0 once all its tasks have succeeded. The number of
+ * tasks does not count, since they run in parallel: a wide vertex with a lot
+ * of work does not outrank a long narrow chain. The rank of a vertex is its
+ * remaining span plus the highest rank of its output vertices, and vertices
+ * get priorities in the order of their ranks.
+ * Upstream vertices rank at least as high as their downstream vertices, so the
+ * order stays topological. Ranks are recomputed after attempts complete, and
+ * attempts get the priority of their vertex at the time they are scheduled.
+ *
+ * Since pending attempts keep the priority they were scheduled with, a vertex
+ * only moves within the priorities seen so far for its ancestors and
+ * descendants. Attempts of a vertex never get a higher priority than attempts
+ * of its ancestors, which could otherwise hold the containers the ancestors
+ * need.
+ */
+@SuppressWarnings("rawtypes")
+public class DAGSchedulerCriticalPath extends DAGScheduler {
+
+  private static final Logger LOG =
+                            LoggerFactory.getLogger(DAGSchedulerCriticalPath.class);
+
+  private final DAG dag;
+  private final EventHandler handler;
+
+  private static class VertexRank {
+    final Vertex vertex;
+    final Set<VertexRank> ancestors = new HashSet<VertexRank>();
+    final Set<VertexRank> descendants = new HashSet<VertexRank>();
+    long totalAttemptDuration;
+    int numSuccessfulAttempts;
+    double rank;
+    // version of the order the priority was computed with
+    int orderVersion = -1;
+    int priorityLowLimit;
+    // range of the priorities of the scheduled attempts
+    int minScheduledPriority = Integer.MAX_VALUE;
+    int maxScheduledPriority = Integer.MIN_VALUE;
+
+    VertexRank(Vertex vertex) {
+      this.vertex = vertex;
+    }
+  }
+
+  private Map<Vertex, VertexRank> vertexRanks;
+  private List<VertexRank> order;
+  private int orderVersion = 0;
+  private boolean orderOutdated = true;
+  private long totalAttemptDuration;
+  private int numSuccessfulAttempts;
+
+  public DAGSchedulerCriticalPath(DAG dag, EventHandler dispatcher) {
+    this.dag = dag;
+    this.handler = dispatcher;
+  }
+
+  @Override
+  public void scheduleTaskEx(DAGEventSchedulerUpdate event) {
+    TaskAttempt attempt = event.getAttempt();
+    Vertex vertex = dag.getVertex(attempt.getVertexID());
+    VertexRank state = getVertexRank(vertex);
+    if (orderOutdated) {
+      computeOrder();
+    }
+    if (state.orderVersion != orderVersion) {
+      state.priorityLowLimit = computePriority(state);
+      state.orderVersion = orderVersion;
+    }
+    int priorityLowLimit = state.priorityLowLimit;
+    int priorityHighLimit = priorityLowLimit - 2;
+    state.minScheduledPriority = Math.min(state.minScheduledPriority, priorityLowLimit);
+    state.maxScheduledPriority = Math.max(state.maxScheduledPriority, priorityLowLimit);
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Scheduling " + attempt.getID() + " with rank: " + state.rank
+          + " between priorityLow: " + priorityLowLimit
+          + " and priorityHigh: " + priorityHighLimit);
+    }
+
+    TaskAttemptEventSchedule attemptEvent = new TaskAttemptEventSchedule(
+        attempt.getID(), priorityLowLimit, priorityHighLimit);
+
+    sendEvent(attemptEvent);
+  }
+
+  @Override
+  public void taskCompletedEx(DAGEventSchedulerUpdate event) {
+    TaskAttempt attempt = event.getAttempt();
+    // remaining tasks change as well, so the order is recomputed either way
+    orderOutdated = true;
+    if (attempt.getState() != TaskAttemptState.SUCCEEDED) {
+      return;
+    }
+    long duration = attempt.getFinishTime() - attempt.getLaunchTime();
+    if (attempt.getLaunchTime() <= 0 || duration < 0) {
+      return;
+    }
+    VertexRank state = getVertexRank(dag.getVertex(attempt.getVertexID()));
+    state.totalAttemptDuration += duration;
+    state.numSuccessfulAttempts++;
+    totalAttemptDuration += duration;
+    numSuccessfulAttempts++;
+  }
+
+  private VertexRank getVertexRank(Vertex vertex) {
+    if (vertexRanks == null) {
+      initVertexRanks();
+    }
+    return vertexRanks.get(vertex);
+  }
+
+  private void initVertexRanks() {
+    vertexRanks = new HashMap<Vertex, VertexRank>();
+    for (Vertex vertex : dag.getVertices().values()) {
+      vertexRanks.put(vertex, new VertexRank(vertex));
+    }
+    for (VertexRank state : vertexRanks.values()) {
+      List<Vertex> toVisit = new ArrayList<Vertex>(state.vertex.getOutputVertices().keySet());
+      while (!toVisit.isEmpty()) {
+        VertexRank descendant = vertexRanks.get(toVisit.remove(toVisit.size() - 1));
+        if (state.descendants.add(descendant)) {
+          descendant.ancestors.add(state);
+          toVisit.addAll(descendant.vertex.getOutputVertices().keySet());
+        }
+      }
+    }
+  }
+
+  @VisibleForTesting
+  double getRank(Vertex vertex) {
+    if (orderOutdated) {
+      computeOrder();
+    }
+    return getVertexRank(vertex).rank;
+  }
+
+  private void computeOrder() {
+    if (vertexRanks == null) {
+      initVertexRanks();
+    }
+    List<VertexRank> states = new ArrayList<VertexRank>(vertexRanks.values());
+    // output vertices are further from root, rank them first
+    Collections.sort(states, new Comparator<VertexRank>() {
+      @Override
+      public int compare(VertexRank s1, VertexRank s2) {
+        return s2.vertex.getDistanceFromRoot() - s1.vertex.getDistanceFromRoot();
+      }
+    });
+    double defaultDuration = numSuccessfulAttempts == 0 ? 1
+        : (double) totalAttemptDuration / numSuccessfulAttempts;
+    for (VertexRank state : states) {
+      double maxOutputRank = 0;
+      for (Vertex output : state.vertex.getOutputVertices().keySet()) {
+        maxOutputRank = Math.max(maxOutputRank, vertexRanks.get(output).rank);
+      }
+      double duration = state.numSuccessfulAttempts == 0 ? defaultDuration
+          : (double) state.totalAttemptDuration / state.numSuccessfulAttempts;
+      state.rank = (hasRemainingTasks(state.vertex) ? duration : 0) + maxOutputRank;
+    }
+    // ties are broken towards upstream vertices to keep the order topological
+    Collections.sort(states, new Comparator<VertexRank>() {
+      @Override
+      public int compare(VertexRank s1, VertexRank s2) {
+        int result = Double.compare(s2.rank, s1.rank);
+        if (result == 0) {
+          result = s1.vertex.getDistanceFromRoot() - s2.vertex.getDistanceFromRoot();
+        }
+        if (result == 0) {
+          result = s1.vertex.getVertexId().getId() - s2.vertex.getVertexId().getId();
+        }
+        return result;
+      }
+    });
+    order = states;
+    orderVersion++;
+    orderOutdated = false;
+  }
+
+  private static boolean hasRemainingTasks(Vertex vertex) {
+    int totalTasks = vertex.getTotalTasks();
+    // parallelism may not be determined yet
+    return totalTasks < 0 || vertex.getSucceededTasks() < totalTasks;
+  }
+
+  private int computePriority(VertexRank state) {
+    // spaced out like the natural order, which leaves room below each vertex
+    // for the vertices which have to stay between scheduled ones
+    int spacing = (dag.getTotalVertices() + 1) * 3;
+    int priority = (order.indexOf(state) + 1) * spacing;
+    int lowest = 3;
+    for (VertexRank ancestor : state.ancestors) {
+      if (ancestor.maxScheduledPriority != Integer.MIN_VALUE) {
+        lowest = Math.max(lowest, ancestor.maxScheduledPriority + 3);
+      }
+    }
+    int highest = Integer.MAX_VALUE;
+    for (VertexRank descendant : state.descendants) {
+      if (descendant.minScheduledPriority != Integer.MAX_VALUE) {
+        highest = Math.min(highest, descendant.minScheduledPriority - 3);
+      }
+    }
+    if (priority > highest) {
+      priority = highest;
+    }
+    if (priority < lowest) {
+      if (lowest > highest) {
+        LOG.warn("Vertex: " + state.vertex.getLogIdentifier() + " is scheduled"
+            + " after its downstream vertices, at priority: " + lowest);
+      }
+      priority = lowest;
+    }
+    return priority;
+  }
+
+  @SuppressWarnings("unchecked")
+  void sendEvent(TaskAttemptEventSchedule event) {
+    handler.handle(event);
+  }
+
+}
@@ -683,6 +683,51 @@ public class Edge {
     return true;
   }
 
+  /**
+   * Route a range of {@link CompositeDataMovementEvent}s of this edge to a destination task
+   * with a single call to the edge manager. Each of them is routed to at most one event, so
+   * the caller limits the range to the space left in the list.
+   */
+  public void addCompositeTezEventsForDestinationTask(OnDemandRouteEvents routeEvents,
+      int fromEventId, int numEvents, TezTaskAttemptID attemptID, List<TezEvent> listToAdd)
+          throws AMUserCodeException {
+    if (!routingNeeded) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Not routing events since destination vertex has 0 tasks" +
+            generateCommonDebugString(routeEvents.getSrcTaskIndex(fromEventId),
+                routeEvents.getEvent(fromEventId)));
+      }
+      return;
+    }
+    int[] counts = new int[numEvents];
+    int[] targets = new int[numEvents];
+    int[] sources = new int[numEvents];
+    try {
+      ((EdgeManagerPluginOnDemand) edgeManager).routeCompositeDataMovementEventsToDestination(
+          routeEvents.getSrcTaskIndices(), fromEventId, numEvents,
+          attemptID.getTaskID().getId(), counts, targets, sources);
+    } catch (Exception e) {
+      TezEvent tezEvent = routeEvents.getEvent(fromEventId);
+      throw new AMUserCodeException(Source.EdgeManager,
+          "Fail to addCompositeTezEventsForDestinationTask, event:" + tezEvent.getEvent()
+          + ", sourceInfo:" + tezEvent.getSourceInfo() + ", numEvents:" + numEvents + ", "
+          + getEdgeInfo(), e);
+    }
+    for (int i = 0; i < numEvents; ++i) {
+      if (counts[i] == 0) {
+        continue;
+      }
+      TezEvent tezEvent = routeEvents.getEvent(fromEventId + i);
+      CompositeDataMovementEvent compEvent = (CompositeDataMovementEvent) tezEvent.getEvent();
+      CompositeRoutedDataMovementEvent edme = CompositeRoutedDataMovementEvent.create(
+          sources[i], targets[i], counts[i], compEvent.getVersion(), compEvent.getUserPayload());
+      TezEvent tezEventToSend = new TezEvent(edme, tezEvent.getSourceInfo(),
+          tezEvent.getEventReceivedTime());
+      tezEventToSend.setDestinationInfo(destinationMetaInfo);
+      listToAdd.add(tezEventToSend);
+    }
+  }
+
   private void sendEventToTask(Task task, TezEvent tezEvent) {
     task.registerTezEvent(tezEvent);
   }
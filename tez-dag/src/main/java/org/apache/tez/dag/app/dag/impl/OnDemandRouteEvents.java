@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.dag.app.dag.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+
+import org.apache.tez.runtime.api.impl.TezEvent;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Events of a vertex which are routed to its tasks on demand, in the order they have been
+ * received. The position of an event in this list is its event id.
+ *
+ * The events are kept in parallel arrays rather than in an object per event, so that the
+ * source task indices of a range of events can be handed to the edge manager as they are.
+ * For every edge, the events of each source task are chained, latest first, so that the
+ * events of a failed source task can be found without walking all events.
+ *
+ * Not thread safe, the vertex guards access with its on demand routing lock.
+ */
+class OnDemandRouteEvents {
+
+  static final int NO_EVENT = -1;
+
+  private TezEvent[] events;
+  private Edge[] edges;
+  private int[] srcTaskIndices;
+  // previous event of the same edge and source task
+  private int[] prevEventsOfSrcTask;
+  private final BitSet obsoleteEvents = new BitSet();
+  // latest event of each source task, per edge
+  private final Map<Edge, int[]> lastEventsOfSrcTask = Maps.newHashMap();
+  private int size = 0;
+
+  OnDemandRouteEvents(int initialCapacity) {
+    events = new TezEvent[initialCapacity];
+    edges = new Edge[initialCapacity];
+    srcTaskIndices = new int[initialCapacity];
+    prevEventsOfSrcTask = new int[initialCapacity];
+  }
+
+  /**
+   * @return the event id of the added event
+   */
+  int add(TezEvent tezEvent, Edge edge, int srcTaskIndex) {
+    if (size == events.length) {
+      int newCapacity = Math.max(16, size << 1);
+      events = Arrays.copyOf(events, newCapacity);
+      edges = Arrays.copyOf(edges, newCapacity);
+      srcTaskIndices = Arrays.copyOf(srcTaskIndices, newCapacity);
+      prevEventsOfSrcTask = Arrays.copyOf(prevEventsOfSrcTask, newCapacity);
+    }
+    int eventId = size++;
+    events[eventId] = tezEvent;
+    edges[eventId] = edge;
+    srcTaskIndices[eventId] = srcTaskIndex;
+
+    int[] lastEvents = lastEventsOfSrcTask.get(edge);
+    if (lastEvents == null || lastEvents.length <= srcTaskIndex) {
+      int oldLength = lastEvents == null ? 0 : lastEvents.length;
+      int newLength = Math.max(srcTaskIndex + 1, oldLength << 1);
+      lastEvents = lastEvents == null ? new int[newLength] : Arrays.copyOf(lastEvents, newLength);
+      Arrays.fill(lastEvents, oldLength, newLength, NO_EVENT);
+      lastEventsOfSrcTask.put(edge, lastEvents);
+    }
+    prevEventsOfSrcTask[eventId] = lastEvents[srcTaskIndex];
+    lastEvents[srcTaskIndex] = eventId;
+    return eventId;
+  }
+
+  int size() {
+    return size;
+  }
+
+  TezEvent getEvent(int eventId) {
+    return events[eventId];
+  }
+
+  Edge getEdge(int eventId) {
+    return edges[eventId];
+  }
+
+  int getSrcTaskIndex(int eventId) {
+    return srcTaskIndices[eventId];
+  }
+
+  /**
+   * @return the source task index of every event, indexed by event id. Only valid until the
+   *         next event is added.
+   */
+  int[] getSrcTaskIndices() {
+    return srcTaskIndices;
+  }
+
+  boolean isObsolete(int eventId) {
+    return obsoleteEvents.get(eventId);
+  }
+
+  void setObsolete(int eventId) {
+    obsoleteEvents.set(eventId);
+  }
+
+  /**
+   * @return the id of the latest event of the source task on the edge, or {@link #NO_EVENT}
+   */
+  int getLastEventOfSrcTask(Edge edge, int srcTaskIndex) {
+    int[] lastEvents = lastEventsOfSrcTask.get(edge);
+    if (lastEvents == null || lastEvents.length <= srcTaskIndex) {
+      return NO_EVENT;
+    }
+    return lastEvents[srcTaskIndex];
+  }
+
+  /**
+   * @return the id of the event of the same edge and source task which was added before the
+   *         given event, or {@link #NO_EVENT}
+   */
+  int getPrevEventOfSrcTask(int eventId) {
+    return prevEventsOfSrcTask[eventId];
+  }
+}
@@ -121,6 +121,17 @@ public class ScatterGatherEdgeManager extends EdgeManagerPluginOnDemand {
         sourceIndices[destinationTaskIndex][0]);
   }
 
+  @Override
+  public void routeCompositeDataMovementEventsToDestination(int[] sourceTaskIndices, int offset,
+      int length, int destinationTaskIndex, int[] counts, int[] targets, int[] sources) {
+    // the n-th source task becomes the n-th physical input on the task
+    for (int i = 0; i < length; ++i) {
+      counts[i] = 1;
+      targets[i] = sourceTaskIndices[offset + i];
+      sources[i] = destinationTaskIndex;
+    }
+  }
+
   @Override
   public EventRouteMetadata routeInputSourceTaskFailedEventToDestination(
       int sourceTaskIndex, int destinationTaskIndex) throws Exception {
@@ -1577,6 +1577,7 @@ public class TaskAttemptImpl implements TaskAttempt,
       ta.reportedStatus.progress = statusEvent.getProgress();
       ta.reportedStatus.counters = statusEvent.getCounters();
       ta.statistics = statusEvent.getStatistics();
+      ta.vertex.reportTaskStatusChanged(ta.getTaskID());
       if (statusEvent.getProgressNotified()) {
         ta.lastNotifyProgressTimestamp = ta.clock.getTime();
       } else {
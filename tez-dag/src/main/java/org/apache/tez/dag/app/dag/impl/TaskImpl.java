@@ -833,6 +833,8 @@ public class TaskImpl implements Task, EventHandler<TaskEvent> {
               + event.getType());
         }
       }
+      // attempt events can change the progress without a state change
+      vertex.reportTaskStatusChanged(taskId);
     } finally {
       writeLock.unlock();
     }
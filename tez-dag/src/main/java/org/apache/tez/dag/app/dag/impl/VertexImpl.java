@@ -234,6 +234,25 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
   private TezCounters fullCounters = null;
   private TezCounters cachedCounters = null;
   private long cachedCountersTimestamp = 0;
+  // counters of completed tasks do not change any more, so they are rolled up
+  // once instead of on every request for the counters of the running vertex
+  private final BitSet completedTasks = new BitSet();
+  private final Object completedTaskCountersLock = new Object();
+  private BitSet rolledUpTasks = new BitSet();
+  private TezCounters completedTaskCounters = new TezCounters();
+  // tasks which have reported a status and are not rolled up yet, which are
+  // the only ones aggregated per request
+  private final Set<TezTaskID> unrolledTasks =
+      Collections.newSetFromMap(new ConcurrentHashMap<TezTaskID, Boolean>());
+  // progress and running state of the tasks as of the last status request,
+  // which are only updated for the tasks reported as changed since
+  private final Set<TezTaskID> changedTasks =
+      Collections.newSetFromMap(new ConcurrentHashMap<TezTaskID, Boolean>());
+  private final Object taskStatusLock = new Object();
+  private float[] taskProgress;
+  private double totalTaskProgress;
+  private BitSet runningTaskIndexes;
+  private int runningTaskCount;
   private Resource taskResource;
 
   // Merged/combined vertex level config
@@ -728,7 +747,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
   private boolean tasksNotYetScheduled = true;
   // must be a random access structure
   
-  private final List<EventInfo> onDemandRouteEvents = Lists.newArrayListWithCapacity(1000);
+  private final OnDemandRouteEvents onDemandRouteEvents = new OnDemandRouteEvents(1000);
   // Do not send any events if attempt is failed due to INPUT_FAILED_EVENTS.
   private final Set<TezTaskAttemptID> failedTaskAttemptIDs = Sets.newHashSet();
   private final ReadWriteLock onDemandRouteEventsReadWriteLock = new ReentrantReadWriteLock();
@@ -770,18 +789,6 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
   @VisibleForTesting
   VertexStatisticsImpl completedTasksStatsCache;
 
-  static class EventInfo {
-    final TezEvent tezEvent;
-    final Edge eventEdge;
-    final int eventTaskIndex;
-    boolean isObsolete = false;
-    EventInfo(TezEvent tezEvent, Edge eventEdge, int eventTaskIndex) {
-      this.tezEvent = tezEvent;
-      this.eventEdge = eventEdge;
-      this.eventTaskIndex = eventTaskIndex;
-    }
-  }
-
   private VertexStatisticsImpl finalStatistics;
 
   
@@ -1166,12 +1173,10 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
   public int getRunningTasks() {
     readLock.lock();
     try {
-      int num=0;
-      for (Task task : tasks.values()) {
-        if(task.getState() == TaskState.RUNNING)
-          num++;
+      synchronized (taskStatusLock) {
+        updateTaskStatus();
+        return runningTaskCount;
       }
-      return num;
     } finally {
       readLock.unlock();
     }
@@ -1188,8 +1193,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
         return fullCounters;
       }
 
-      TezCounters counters = new TezCounters();
-      return incrTaskCounters(counters, tasks.values());
+      return aggregateTaskCounters();
 
     } finally {
       readLock.unlock();
@@ -1216,8 +1220,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
         return fullCounters;
       }
 
-      TezCounters counters = new TezCounters();
-      cachedCounters = incrTaskCounters(counters, tasks.values());
+      cachedCounters = aggregateTaskCounters();
       return cachedCounters;
     } finally {
       readLock.unlock();
@@ -1320,6 +1323,49 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
     return false;
   }
 
+  private TezCounters aggregateTaskCounters() {
+    TezCounters counters = new TezCounters();
+    synchronized (completedTaskCountersLock) {
+      try {
+        Iterator<TezTaskID> unrolled = unrolledTasks.iterator();
+        while (unrolled.hasNext()) {
+          TezTaskID taskId = unrolled.next();
+          int index = taskId.getId();
+          Task task = tasks.get(taskId);
+          if (task == null || rolledUpTasks.get(index)) {
+            unrolled.remove();
+            continue;
+          }
+          if (completedTasks.get(index)) {
+            completedTaskCounters.incrAllCounters(task.getCounters());
+            rolledUpTasks.set(index);
+            unrolled.remove();
+          } else {
+            counters.incrAllCounters(task.getCounters());
+          }
+        }
+      } catch (LimitExceededException e) {
+        resetCompletedTaskCounters();
+        throw e;
+      }
+      counters.incrAllCounters(completedTaskCounters);
+    }
+    return counters;
+  }
+
+  private void resetCompletedTaskCounters() {
+    synchronized (completedTaskCountersLock) {
+      rolledUpTasks = new BitSet();
+      completedTaskCounters = new TezCounters();
+      unrolledTasks.addAll(tasks.keySet());
+    }
+  }
+
+  @VisibleForTesting
+  int getUnrolledTaskCount() {
+    return unrolledTasks.size();
+  }
+
   public static TezCounters incrTaskCounters(
       TezCounters counters, Collection<Task> tasks) {
     for (Task task : tasks) {
@@ -1459,7 +1505,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
   }
 
   @VisibleForTesting
-  List<EventInfo> getOnDemandRouteEvents() {
+  OnDemandRouteEvents getOnDemandRouteEvents() {
     return onDemandRouteEvents;
   }
   
@@ -1467,11 +1513,11 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
     this.readLock.lock();
     try {
       float progress = 0f;
-      for (Task task : this.tasks.values()) {
-        progress += (task.getProgress());
-      }
-      if (this.numTasks != 0) {
-        progress /= this.numTasks;
+      synchronized (taskStatusLock) {
+        updateTaskStatus();
+        if (this.numTasks != 0) {
+          progress = (float) Math.min(1.0, Math.max(0.0, totalTaskProgress / this.numTasks));
+        }
       }
       this.progress = progress;
     } finally {
@@ -1479,6 +1525,53 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
     }
   }
 
+  @Override
+  public void reportTaskStatusChanged(TezTaskID taskId) {
+    changedTasks.add(taskId);
+    unrolledTasks.add(taskId);
+  }
+
+  // always called with the taskStatusLock held
+  private void updateTaskStatus() {
+    if (taskProgress == null || taskProgress.length != tasks.size()) {
+      // the tasks have been (re)created
+      changedTasks.clear();
+      taskProgress = new float[tasks.size()];
+      totalTaskProgress = 0;
+      runningTaskIndexes = new BitSet();
+      runningTaskCount = 0;
+      for (Task task : tasks.values()) {
+        updateTaskStatus(task);
+      }
+      return;
+    }
+    Iterator<TezTaskID> changed = changedTasks.iterator();
+    while (changed.hasNext()) {
+      TezTaskID taskId = changed.next();
+      // removed before reading the task, so that later changes are seen again
+      changed.remove();
+      Task task = tasks.get(taskId);
+      if (task != null) {
+        updateTaskStatus(task);
+      }
+    }
+  }
+
+  private void updateTaskStatus(Task task) {
+    int index = task.getTaskId().getId();
+    if (index >= taskProgress.length) {
+      return;
+    }
+    float progress = task.getProgress();
+    totalTaskProgress += progress - taskProgress[index];
+    taskProgress[index] = progress;
+    boolean running = task.getState() == TaskState.RUNNING;
+    if (running != runningTaskIndexes.get(index)) {
+      runningTaskIndexes.set(index, running);
+      runningTaskCount += running ? 1 : -1;
+    }
+  }
+
   @Override
   public Map<TezTaskID, Task> getTasks() {
     synchronized (tasksSyncHandle) {
@@ -3518,6 +3611,7 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
       vertex.completedTaskCount++;
       VertexEventTaskCompleted taskEvent = (VertexEventTaskCompleted) event;
       Task task = vertex.tasks.get(taskEvent.getTaskID());
+      vertex.completedTasks.set(taskEvent.getTaskID().getId());
       if (taskEvent.getState() == TaskState.SUCCEEDED) {
         taskSucceeded(vertex, task);
         if (!vertex.completedTasksStatsCache.containsTask(task.getTaskId())) {
@@ -3574,6 +3668,8 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
       vertex.completedTaskCount--;
       vertex.succeededTaskCount--;
       vertex.resetCompletedTaskStatsCache(true);
+      vertex.completedTasks.clear(((VertexEventTaskReschedule) event).getTaskID().getId());
+      vertex.resetCompletedTaskCounters();
     }
   }
 
@@ -3773,20 +3869,19 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
             if (events.size() == maxEvents) {
               break;
             }
-            EventInfo eventInfo = onDemandRouteEvents.get(nextFromEventId);
-            if (eventInfo.isObsolete) {
+            if (onDemandRouteEvents.isObsolete(nextFromEventId)) {
               // ignore obsolete events
               firstEventObsoleted = true;
               continue;
             }
-            TezEvent tezEvent = eventInfo.tezEvent;
+            TezEvent tezEvent = onDemandRouteEvents.getEvent(nextFromEventId);
             switch(tezEvent.getEventType()) {
             case INPUT_FAILED_EVENT:
             case DATA_MOVEMENT_EVENT:
             case COMPOSITE_DATA_MOVEMENT_EVENT:
               {
-                int srcTaskIndex = eventInfo.eventTaskIndex;
-                Edge srcEdge = eventInfo.eventEdge;
+                int srcTaskIndex = onDemandRouteEvents.getSrcTaskIndex(nextFromEventId);
+                Edge srcEdge = onDemandRouteEvents.getEdge(nextFromEventId);
                 PendingEventRouteMetadata pendingRoute = null;
                 if (isFirstEvent) {
                   // the first event is the one that can have pending routes because its expanded
@@ -3804,8 +3899,22 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
                     }
                   }
                 }
-                if (!srcEdge.maybeAddTezEventForDestinationTask(tezEvent, attemptID, srcTaskIndex,
-                    events, maxEvents, pendingRoute)) {
+                if (tezEvent.getEventType() == EventType.COMPOSITE_DATA_MOVEMENT_EVENT) {
+                  // route the following composite events of the edge along with this one
+                  int endEventId = nextFromEventId + 1;
+                  int maxEndEventId = nextFromEventId + maxEvents - events.size();
+                  while (endEventId < currEventCount && endEventId < maxEndEventId
+                      && onDemandRouteEvents.getEdge(endEventId) == srcEdge
+                      && onDemandRouteEvents.getEvent(endEventId).getEventType()
+                          == EventType.COMPOSITE_DATA_MOVEMENT_EVENT
+                      && !onDemandRouteEvents.isObsolete(endEventId)) {
+                    ++endEventId;
+                  }
+                  srcEdge.addCompositeTezEventsForDestinationTask(onDemandRouteEvents,
+                      nextFromEventId, endEventId - nextFromEventId, attemptID, events);
+                  nextFromEventId = endEventId - 1;
+                } else if (!srcEdge.maybeAddTezEventForDestinationTask(tezEvent, attemptID,
+                    srcTaskIndex, events, maxEvents, pendingRoute)) {
                   // not enough space left for this iteration events.
                   // Exit and start from here next time
                   earlyExit = true;
@@ -4025,20 +4134,22 @@ public class VertexImpl implements org.apache.tez.dag.app.dag.Vertex, EventHandl
           return;
         }
       }
-      onDemandRouteEvents.add(new EventInfo(tezEvent, srcEdge, srcTaskIndex));
+      int eventId = onDemandRouteEvents.add(tezEvent, srcEdge, srcTaskIndex);
       if (tezEvent.getEventType() == EventType.INPUT_FAILED_EVENT) {
-        for (EventInfo eventInfo : onDemandRouteEvents) {
-          if (eventInfo.eventEdge == srcEdge 
-              && eventInfo.tezEvent.getSourceInfo().getTaskAttemptID().equals(
+        // only the events of the same edge and source task need to be looked at
+        for (int prevEventId = onDemandRouteEvents.getPrevEventOfSrcTask(eventId);
+            prevEventId != OnDemandRouteEvents.NO_EVENT;
+            prevEventId = onDemandRouteEvents.getPrevEventOfSrcTask(prevEventId)) {
+          TezEvent prevEvent = onDemandRouteEvents.getEvent(prevEventId);
+          if (prevEvent.getSourceInfo().getTaskAttemptID().equals(
                  tezEvent.getSourceInfo().getTaskAttemptID())
-              && (eventInfo.tezEvent.getEventType() == EventType.DATA_MOVEMENT_EVENT
-                  || eventInfo.tezEvent
-                      .getEventType() == EventType.COMPOSITE_DATA_MOVEMENT_EVENT)) {
+              && (prevEvent.getEventType() == EventType.DATA_MOVEMENT_EVENT
+                  || prevEvent.getEventType() == EventType.COMPOSITE_DATA_MOVEMENT_EVENT)) {
             // any earlier data movement events from the same source
             // edge+task
             // can be obsoleted by an input failed event from the
             // same source edge+task
-            eventInfo.isObsolete = true;
+            onDemandRouteEvents.setObsolete(prevEventId);
             failedTaskAttemptIDs.add(tezEvent.getSourceInfo().getTaskAttemptID());
           }
         }
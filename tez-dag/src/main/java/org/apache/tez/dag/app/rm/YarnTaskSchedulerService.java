@@ -26,10 +26,12 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -99,6 +101,16 @@ public class YarnTaskSchedulerService extends TaskScheduler
   // type is linked hash map to maintain order of incoming requests
   Map<Object, CookieContainerRequest> taskRequests =
                   new LinkedHashMap<Object, CookieContainerRequest>();
+  /**
+   * Pending requests by priority, in the order they were made, and by the
+   * container they are affinitized to. Kept in sync with taskRequests so that
+   * matching does not need to walk all pending requests. Lookups by location
+   * and capability are done by the AMRMClient.
+   */
+  TreeMap<Priority, Set<CookieContainerRequest>> taskRequestsByPriority =
+                  new TreeMap<Priority, Set<CookieContainerRequest>>();
+  Map<ContainerId, Set<CookieContainerRequest>> taskRequestsByAffinitizedContainer =
+                  new HashMap<ContainerId, Set<CookieContainerRequest>>();
   // LinkedHashMap is need in getProgress()
   LinkedHashMap<Object, Container> taskAllocations =
                   new LinkedHashMap<Object, Container>();
@@ -1178,26 +1190,17 @@ public class YarnTaskSchedulerService extends TaskScheduler
       }
       assert freeResources.getMemory() >= 0;
   
-      CookieContainerRequest highestPriRequest = null;
-      int numHighestPriRequests = 0;
-      for(CookieContainerRequest request : taskRequests.values()) {
-        if(highestPriRequest == null) {
-          highestPriRequest = request;
-          numHighestPriRequests = 1;
-        } else if(isHigherPriority(request.getPriority(),
-                                     highestPriRequest.getPriority())){
-          highestPriRequest = request;
-          numHighestPriRequests = 1;
-        } else if (request.getPriority().equals(highestPriRequest.getPriority())) {
-          numHighestPriRequests++;
-        }
-      }
-      
-      if (highestPriRequest == null) {
+      // Priority ordering is reversed, the last entry is the highest priority
+      Entry<Priority, Set<CookieContainerRequest>> highestPriRequests =
+          taskRequestsByPriority.lastEntry();
+      if (highestPriRequests == null) {
         // nothing pending
         resetHighestWaitingPriority(null);
         return true;
       }
+      CookieContainerRequest highestPriRequest =
+          highestPriRequests.getValue().iterator().next();
+      int numHighestPriRequests = highestPriRequests.getValue().size();
       
       // reset the wait time when waiting priority changes to prevent carry over of the value
       if (highestWaitingRequestPriority == null ||
@@ -1419,23 +1422,22 @@ public class YarnTaskSchedulerService extends TaskScheduler
   }
 
   private void maybeRescheduleContainerAtPriority(Priority priority) {
-    for (Map.Entry<Object, CookieContainerRequest> entry : taskRequests.entrySet()) {
-      Object task = entry.getKey();
-      CookieContainerRequest request = entry.getValue();
-      if (request.getPriority().equals(priority)) {
-        LOG.info("Resending request for task again: " + task);
-        deallocateTask(task, true, null, null);
-        allocateTask(task, request.getCapability(),
-            (request.getNodes() == null ? null :
-              request.getNodes().toArray(new String[request.getNodes().size()])),
-              (request.getRacks() == null ? null :
-                request.getRacks().toArray(new String[request.getRacks().size()])),
-                request.getPriority(),
-                request.getCookie().getContainerSignature(),
-                request.getCookie().getAppCookie());
-        break;
-      }
+    Set<CookieContainerRequest> requests = taskRequestsByPriority.get(priority);
+    if (requests == null) {
+      return;
     }
+    CookieContainerRequest request = requests.iterator().next();
+    Object task = getTask(request);
+    LOG.info("Resending request for task again: " + task);
+    deallocateTask(task, true, null, null);
+    allocateTask(task, request.getCapability(),
+        (request.getNodes() == null ? null :
+          request.getNodes().toArray(new String[request.getNodes().size()])),
+          (request.getRacks() == null ? null :
+            request.getRacks().toArray(new String[request.getRacks().size()])),
+            request.getPriority(),
+            request.getCookie().getContainerSignature(),
+            request.getCookie().getAppCookie());
   }
 
   private boolean fitsIn(Resource toFit, Resource resource) {
@@ -1480,54 +1482,62 @@ public class YarnTaskSchedulerService extends TaskScheduler
     if (pRequestsList == null || pRequestsList.isEmpty()) {
       return null;
     }
-    CookieContainerRequest firstMatch = null;
+    if (considerContainerAffinity) {
+      // look for a container level match first
+      Set<CookieContainerRequest> affinitizedRequests =
+          taskRequestsByAffinitizedContainer.get(container.getId());
+      if (affinitizedRequests != null) {
+        for (CookieContainerRequest cookieContainerRequest : affinitizedRequests) {
+          if (isMatchingRequest(pRequestsList, cookieContainerRequest) &&
+              canAssignTaskToContainer(cookieContainerRequest, container)) {
+            if (LOG.isDebugEnabled()) {
+              LOG.debug("Matching with affinity for request: "
+                  + cookieContainerRequest + " container: " + container.getId());
+            }
+            return cookieContainerRequest;
+          }
+        }
+      }
+    }
     for (Collection<CookieContainerRequest> requests : pRequestsList) {
       for (CookieContainerRequest cookieContainerRequest : requests) {
-        if (firstMatch == null || // we dont have a match. So look for one 
-            // we have a match but are looking for a better container level match.
-            // skip the expensive canAssignTaskToContainer() if the request is 
-            // not affinitized to the container
-            container.getId().equals(cookieContainerRequest.getAffinitizedContainer())
-            ) {
-          if (canAssignTaskToContainer(cookieContainerRequest, container)) {
-            // request matched to container
-            if (!considerContainerAffinity) {
-              return cookieContainerRequest;
-            }
-            ContainerId affCId = cookieContainerRequest.getAffinitizedContainer();
-            boolean canMatchTaskWithAffinity = true;
-            if (affCId == null || 
-                !heldContainers.containsKey(affCId) ||
-                inUseContainers.contains(affCId)) {
-              // affinity not specified
-              // affinitized container is no longer held
-              // affinitized container is in use
-              canMatchTaskWithAffinity = false;
-            }
-            if (canMatchTaskWithAffinity) {
-              if (container.getId().equals(
-                  cookieContainerRequest.getAffinitizedContainer())) {
-                // container level match
-                if (LOG.isDebugEnabled()) {
-                  LOG.debug("Matching with affinity for request: "
-                      + cookieContainerRequest + " container: " + affCId);
-                }
-                return cookieContainerRequest;
-              }
-              if (LOG.isDebugEnabled()) {
-                LOG.debug("Skipping request for container " + container.getId()
-                    + " due to affinity. Request: " + cookieContainerRequest
-                    + " affContainer: " + affCId);
-              }
-            } else {
-              firstMatch = cookieContainerRequest;
-            }
+        if (considerContainerAffinity &&
+            isAffinitizedToAvailableContainer(cookieContainerRequest)) {
+          // the request waits for its own container, or did not fit in this
+          // one above
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Skipping request for container " + container.getId()
+                + " due to affinity. Request: " + cookieContainerRequest
+                + " affContainer: " + cookieContainerRequest.getAffinitizedContainer());
           }
+          continue;
+        }
+        if (canAssignTaskToContainer(cookieContainerRequest, container)) {
+          return cookieContainerRequest;
         }
       }
     }
-    
-    return firstMatch;
+    return null;
+  }
+
+  private static boolean isMatchingRequest(
+      List<? extends Collection<CookieContainerRequest>> requestsList,
+      CookieContainerRequest request) {
+    // the collections are sets in the AMRMClient
+    for (Collection<CookieContainerRequest> requests : requestsList) {
+      if (requests.contains(request)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isAffinitizedToAvailableContainer(CookieContainerRequest request) {
+    ContainerId affCId = request.getAffinitizedContainer();
+    // affinity is ignored if not specified, or if the affinitized container is
+    // no longer held or is in use
+    return affCId != null && heldContainers.containsKey(affCId)
+        && !inUseContainers.contains(affCId);
   }
 
   private boolean canAssignTaskToContainer(
@@ -1639,6 +1649,7 @@ public class YarnTaskSchedulerService extends TaskScheduler
     if(request != null) {
       // remove all references of the request from AMRMClient
       amRmClient.removeContainerRequest(request);
+      removeFromIndex(request);
     }
     return request;
   }
@@ -1649,8 +1660,40 @@ public class YarnTaskSchedulerService extends TaskScheduler
     if (oldRequest != null) {
       // remove all references of the request from AMRMClient
       amRmClient.removeContainerRequest(oldRequest);
+      removeFromIndex(oldRequest);
     }
     amRmClient.addContainerRequest(request);
+    addToIndex(taskRequestsByPriority, request.getPriority(), request);
+    if (request.getAffinitizedContainer() != null) {
+      addToIndex(taskRequestsByAffinitizedContainer, request.getAffinitizedContainer(),
+          request);
+    }
+  }
+
+  private void removeFromIndex(CookieContainerRequest request) {
+    removeFromIndex(taskRequestsByPriority, request.getPriority(), request);
+    if (request.getAffinitizedContainer() != null) {
+      removeFromIndex(taskRequestsByAffinitizedContainer, request.getAffinitizedContainer(),
+          request);
+    }
+  }
+
+  private static <K> void addToIndex(Map<K, Set<CookieContainerRequest>> index, K key,
+      CookieContainerRequest request) {
+    Set<CookieContainerRequest> requests = index.get(key);
+    if (requests == null) {
+      requests = new LinkedHashSet<CookieContainerRequest>();
+      index.put(key, requests);
+    }
+    requests.add(request);
+  }
+
+  private static <K> void removeFromIndex(Map<K, Set<CookieContainerRequest>> index, K key,
+      CookieContainerRequest request) {
+    Set<CookieContainerRequest> requests = index.get(key);
+    if (requests != null && requests.remove(request) && requests.isEmpty()) {
+      index.remove(key);
+    }
   }
 
   private Container doBookKeepingForTaskDeallocate(Object task) {
@@ -0,0 +1,932 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.dag.history.logging.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.tez.common.ATSConstants;
+import org.apache.tez.common.counters.CounterGroup;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.api.EdgeProperty;
+import org.apache.tez.dag.history.HistoryEvent;
+import org.apache.tez.dag.history.HistoryEventType;
+import org.apache.tez.dag.history.events.AMLaunchedEvent;
+import org.apache.tez.dag.history.events.AMStartedEvent;
+import org.apache.tez.dag.history.events.AppLaunchedEvent;
+import org.apache.tez.dag.history.events.ContainerLaunchedEvent;
+import org.apache.tez.dag.history.events.ContainerStoppedEvent;
+import org.apache.tez.dag.history.events.DAGFinishedEvent;
+import org.apache.tez.dag.history.events.DAGInitializedEvent;
+import org.apache.tez.dag.history.events.DAGRecoveredEvent;
+import org.apache.tez.dag.history.events.DAGStartedEvent;
+import org.apache.tez.dag.history.events.DAGSubmittedEvent;
+import org.apache.tez.dag.history.events.TaskAttemptFinishedEvent;
+import org.apache.tez.dag.history.events.TaskAttemptStartedEvent;
+import org.apache.tez.dag.history.events.TaskFinishedEvent;
+import org.apache.tez.dag.history.events.TaskStartedEvent;
+import org.apache.tez.dag.history.events.VertexConfigurationDoneEvent;
+import org.apache.tez.dag.history.events.VertexFinishedEvent;
+import org.apache.tez.dag.history.events.VertexInitializedEvent;
+import org.apache.tez.dag.history.events.VertexStartedEvent;
+import org.apache.tez.dag.history.logging.EntityTypes;
+import org.apache.tez.dag.history.utils.DAGUtils;
+import org.apache.tez.dag.records.TezVertexID;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * Writes history events as JSON directly to a stream, without building the
+ * {@link JSONObject} trees of {@link HistoryEventJsonConversion}, most of which
+ * are counters.
+ *
+ * The output has the same fields in the same order as the JSON of
+ * {@link HistoryEventJsonConversion}, and is the same text as long as the
+ * strings are ASCII. Other characters are escaped, so the output is always
+ * ASCII. Each event is written to a buffer which is reused for the next one,
+ * and copied to the stream once complete, so that an event which fails to
+ * convert is not partially written. A writer is not thread safe.
+ */
+public class HistoryEventJsonWriter {
+
+  private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  private byte[] buffer = new byte[4096];
+  private int length;
+  // whether the next value or field in the current object or array is not the first
+  private boolean needSeparator;
+
+  /**
+   * Write the JSON of an event to the stream.
+   * @param historyEvent the event
+   * @param out the stream
+   * @throws JSONException if the event can not be represented in JSON
+   * @throws IOException if writing to the stream fails
+   */
+  public void write(HistoryEvent historyEvent, OutputStream out)
+      throws JSONException, IOException {
+    length = 0;
+    needSeparator = false;
+    writeEvent(historyEvent);
+    out.write(buffer, 0, length);
+  }
+
+  /**
+   * Write the JSON of an event to a string, e.g. for tests.
+   * @param historyEvent the event
+   * @return the JSON
+   * @throws JSONException if the event can not be represented in JSON
+   */
+  public String toString(HistoryEvent historyEvent) throws JSONException {
+    length = 0;
+    needSeparator = false;
+    writeEvent(historyEvent);
+    return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+  }
+
+  private void writeEvent(HistoryEvent historyEvent) throws JSONException {
+    if (!historyEvent.isHistoryEvent()) {
+      throw new UnsupportedOperationException("Invalid Event, does not support history"
+          + ", eventType=" + historyEvent.getEventType());
+    }
+    switch (historyEvent.getEventType()) {
+      case APP_LAUNCHED:
+        writeAppLaunchedEvent((AppLaunchedEvent) historyEvent);
+        break;
+      case AM_LAUNCHED:
+        writeAMLaunchedEvent((AMLaunchedEvent) historyEvent);
+        break;
+      case AM_STARTED:
+        writeAMStartedEvent((AMStartedEvent) historyEvent);
+        break;
+      case CONTAINER_LAUNCHED:
+        writeContainerLaunchedEvent((ContainerLaunchedEvent) historyEvent);
+        break;
+      case CONTAINER_STOPPED:
+        writeContainerStoppedEvent((ContainerStoppedEvent) historyEvent);
+        break;
+      case DAG_SUBMITTED:
+        writeDAGSubmittedEvent((DAGSubmittedEvent) historyEvent);
+        break;
+      case DAG_INITIALIZED:
+        writeDAGInitializedEvent((DAGInitializedEvent) historyEvent);
+        break;
+      case DAG_STARTED:
+        writeDAGStartedEvent((DAGStartedEvent) historyEvent);
+        break;
+      case DAG_FINISHED:
+        writeDAGFinishedEvent((DAGFinishedEvent) historyEvent);
+        break;
+      case VERTEX_INITIALIZED:
+        writeVertexInitializedEvent((VertexInitializedEvent) historyEvent);
+        break;
+      case VERTEX_STARTED:
+        writeVertexStartedEvent((VertexStartedEvent) historyEvent);
+        break;
+      case VERTEX_FINISHED:
+        writeVertexFinishedEvent((VertexFinishedEvent) historyEvent);
+        break;
+      case TASK_STARTED:
+        writeTaskStartedEvent((TaskStartedEvent) historyEvent);
+        break;
+      case TASK_FINISHED:
+        writeTaskFinishedEvent((TaskFinishedEvent) historyEvent);
+        break;
+      case TASK_ATTEMPT_STARTED:
+        writeTaskAttemptStartedEvent((TaskAttemptStartedEvent) historyEvent);
+        break;
+      case TASK_ATTEMPT_FINISHED:
+        writeTaskAttemptFinishedEvent((TaskAttemptFinishedEvent) historyEvent);
+        break;
+      case VERTEX_CONFIGURE_DONE:
+        writeVertexReconfigureDoneEvent((VertexConfigurationDoneEvent) historyEvent);
+        break;
+      case DAG_RECOVERED:
+        writeDAGRecoveredEvent((DAGRecoveredEvent) historyEvent);
+        break;
+      case VERTEX_COMMIT_STARTED:
+      case VERTEX_GROUP_COMMIT_STARTED:
+      case VERTEX_GROUP_COMMIT_FINISHED:
+      case DAG_COMMIT_STARTED:
+        throw new UnsupportedOperationException("Invalid Event, does not support history"
+            + ", eventType=" + historyEvent.getEventType());
+      default:
+        throw new UnsupportedOperationException("Unhandled Event"
+            + ", eventType=" + historyEvent.getEventType());
+    }
+  }
+
+  private void writeDAGRecoveredEvent(DAGRecoveredEvent event) {
+    startObject();
+    writeEntity(event.getDagID().toString(), EntityTypes.TEZ_DAG_ID.name());
+
+    fieldName(ATSConstants.EVENTS);
+    startArray();
+    startObject();
+    field(ATSConstants.TIMESTAMP, event.getRecoveredTime());
+    field(ATSConstants.EVENT_TYPE, HistoryEventType.DAG_RECOVERED.name());
+    fieldName(ATSConstants.EVENT_INFO);
+    startObject();
+    field(ATSConstants.APPLICATION_ATTEMPT_ID, event.getApplicationAttemptId().toString());
+    if (event.getRecoveredDagState() != null) {
+      field(ATSConstants.DAG_STATE, event.getRecoveredDagState().name());
+    }
+    field(ATSConstants.RECOVERY_FAILURE_REASON, event.getRecoveryFailureReason());
+    endObject();
+    endObject();
+    endArray();
+
+    endObject();
+  }
+
+  private void writeAppLaunchedEvent(AppLaunchedEvent event) throws JSONException {
+    startObject();
+    writeEntity("tez_" + event.getApplicationId().toString(),
+        EntityTypes.TEZ_APPLICATION.name());
+
+    fieldName(ATSConstants.OTHER_INFO);
+    startObject();
+    field(ATSConstants.USER, event.getUser());
+    fieldName(ATSConstants.CONFIG);
+    writeValue(DAGUtils.convertConfigurationToATSMap(event.getConf()));
+    endObject();
+
+    endObject();
+  }
+
+  private void writeAMLaunchedEvent(AMLaunchedEvent event) {
+    startObject();
+    writeEntity("tez_" + event.getApplicationAttemptId().toString(),
+        EntityTypes.TEZ_APPLICATION_ATTEMPT.name());
+
+    fieldName(ATSConstants.RELATED_ENTITIES);
+    startArray();
+    writeRelatedEntity(event.getApplicationAttemptId().getApplicationId().toString(),
+        ATSConstants.APPLICATION_ID);
+    writeRelatedEntity(event.getApplicationAttemptId().toString(),
+        ATSConstants.APPLICATION_ATTEMPT_ID);
+    endArray();
+
+    writeEvents(event.getLaunchTime(), HistoryEventType.AM_LAUNCHED);
+
+    fieldName(ATSConstants.OTHER_INFO);
+    startObject();
+    field(ATSConstants.APP_SUBMIT_TIME, event.getAppSubmitTime());
+    endObject();
+
+    endObject();
+  }
+
+  private void writeAMStartedEvent(AMStartedEvent event) {
+    startObject();
+    writeEntity("tez_" + event.getApplicationAttemptId().toString(),
+        EntityTypes.TEZ_APPLICATION_ATTEMPT.name());
+
+    fieldName(ATSConstants.RELATED_ENTITIES);
+    startArray();
+    writeRelatedEntity(event.getApplicationAttemptId().getApplicationId().toString(),
+        ATSConstants.APPLICATION_ID);
+    writeRelatedEntity(event.getApplicationAttemptId().toString(),
+        ATSConstants.APPLICATION_ATTEMPT_ID);
+    endArray();
+
+    writeEvents(event.getStartTime(), HistoryEventType.AM_STARTED);
+
+    endObject();
+  }
+
+  private void writeContainerLaunchedEvent(ContainerLaunchedEvent event) {
+    startObject();
+    writeEntity("tez_" + event.getContainerId().toString(),
+        EntityTypes.TEZ_CONTAINER_ID.name());
+
+    fieldName(ATSConstants.RELATED_ENTITIES);
+    startArray();
+    writeRelatedEntity(event.getApplicationAttemptId().toString(),
+        EntityTypes.TEZ_APPLICATION_ATTEMPT.name());
+    writeRelatedEntity(event.getContainerId().toString(), ATSConstants.CONTAINER_ID);
+    endArray();
+
+    writeEvents(event.getLaunchTime(), HistoryEventType.CONTAINER_LAUNCHED);
+
+    endObject();
+  }
+
+  private void writeContainerStoppedEvent(ContainerStoppedEvent event) {
+    startObject();
+    writeEntity("tez_" + event.getContainerId().toString(),
+        EntityTypes.TEZ_CONTAINER_ID.name());
+
+    fieldName(ATSConstants.RELATED_ENTITIES);
+    startArray();
+    writeRelatedEntity(event.getApplicationAttemptId().toString(),
+        EntityTypes.TEZ_APPLICATION_ATTEMPT.name());
+    writeRelatedEntity(event.getContainerId().toString(), ATSConstants.CONTAINER_ID);
+    endArray();
+
+    writeEvents(event.getStoppedTime(), HistoryEventType.CONTAINER_STOPPED);
+
+    fieldName(ATSConstants.OTHER_INFO);
+    startObject();
+    field(ATSConstants.EXIT_STATUS, event.getExitStatus());
+    endObject();
+
+    endObject();
+  }
+
+  private void writeDAGFinishedEvent(DAGFinishedEvent event) {
+    startObject();
+    writeEntity(event.getDagID().toString(), EntityTypes.TEZ_DAG_ID.name());
+
+    writeEvents(event.getFinishTime(), HistoryEventType.DAG_FINISHED);
+
+    fieldName(ATSConstants.OTHER_INFO);
+    startObject();
+    field(ATSConstants.START_TIME, event.getStartTime());
+    field(ATSConstants.FINISH_TIME, event.getFinishTime());
+    field(ATSConstants.TIME_TAKEN, (event.getFinishTime() - event.getStartTime()));
+    field(ATSConstants.STATUS, event.getState().name());
+    field(ATSConstants.DIAGNOSTICS, event.getDiagnostics());
+    fieldName(ATSConstants.COUNTERS);
+    writeCounters(event.getTezCounters());
+    field(ATSConstants.COMPLETION_APPLICATION_ATTEMPT_ID,
+        event.getApplicationAttemptId().toString());
+    writeTaskStats(event.getDagTaskStats());
+    endObject();
+
+    endObject();
+  }
+
+  private void writeDAGInitializedEvent(DAGInitializedEvent event) throws JSONException {
+    startObject();
+    writeEntity(event.getDagID().toString(), EntityTypes.TEZ_DAG_ID.name());
+
+    writeEvents(event.getInitTime(), HistoryEventType.DAG_INITIALIZED);
+
+    fieldName(ATSConstants.OTHER_INFO);
+    startObject();
+    if (event.getVertexNameIDMap() != null) {
+      Map<String, String> nameIdStrMap = new TreeMap<String, String>();
+      for (Entry<String, TezVertexID> entry : event.getVertexNameIDMap().entrySet()) {
+        nameIdStrMap.put(entry.getKey(), entry.getValue().toString());
+      }
+      fieldName(ATSConstants.VERTEX_NAME_ID_MAPPING);
+      writeValue(nameIdStrMap);
+    }
+    endObject();
+
+    endObject();
+  }
+
+  private void writeDAGStartedEvent(DAGStartedEvent event) {
+    startObject();
+    writeEntity(event.getDagID().toString(), EntityTypes.TEZ_DAG_ID.name());
+
+    writeEvents(event.getStartTime(), HistoryEventType.DAG_STARTED);
+
+    endObject();
+  }
+
+  private void writeDAGSubmittedEvent(DAGSubmittedEvent event) throws JSONException {
+    startObject();
+    writeEntity(event.getDagID().toString(), EntityTypes.TEZ_DAG_ID.name());
+
+    fieldName(ATSConstants.RELATED_ENTITIES);
+    startArray();
+    writeRelatedEntity("tez_" + event.getApplicationAttemptId().getApplicationId().toString(),
+        EntityTypes.TEZ_APPLICATION.name());
+    writeRelatedEntity("tez_" + event.getApplicationAttemptId().toString(),
+        EntityTypes.TEZ_APPLICATION_ATTEMPT.name());
+    writeRelatedEntity(event.getApplicationAttemptId().getApplicationId().toString(),
+        ATSConstants.APPLICATION_ID);
+    writeRelatedEntity(event.getApplicationAttemptId().toString(),
+        ATSConstants.APPLICATION_ATTEMPT_ID);
+    writeRelatedEntity(event.getUser(), ATSConstants.USER);
+    endArray();
+
+    boolean hasCallerContext = event.getDAGPlan().hasCallerContext()
+        && event.getDAGPlan().getCallerContext().hasCallerId()
+        && event.getDAGPlan().getCallerContext().hasCallerType();
+
+    fieldName(ATSConstants.PRIMARY_FILTERS);
+    startObject();
+    field(ATSConstants.DAG_NAME, event.getDAGName());
+    if (hasCallerContext) {
+      field(ATSConstants.CALLER_CONTEXT_ID,
+          event.getDAGPlan().getCallerContext().getCallerId());
+      field(ATSConstants.CALLER_CONTEXT_TYPE,
+          event.getDAGPlan().getCallerContext().getCallerType());
+    }
+    field(ATSConstants.DAG_QUEUE_NAME, event.getQueueName());
+    endObject();
+
+    writeEvents(event.getSubmitTime(), HistoryEventType.DAG_SUBMITTED);
+
+    fieldName(ATSConstants.OTHER_INFO);
+    startObject();
+    fieldName(ATSConstants.DAG_PLAN);
+    writeValue(DAGUtils.generateSimpleJSONPlan(event.getDAGPlan()));
+    if (hasCallerContext) {
+      field(ATSConstants.CALLER_CONTEXT_ID,
+          event.getDAGPlan().getCallerContext().getCallerId());
+      field(ATSConstants.CALLER_CONTEXT_TYPE,
+          event.getDAGPlan().getCallerContext().getCallerType());
+    }
+    field(ATSConstants.DAG_QUEUE_NAME, event.getQueueName());
+    endObject();
+
+    endObject();
+  }
+
+  private void writeTaskAttemptFinishedEvent(TaskAttemptFinishedEvent event)
+      throws JSONException {
+    startObject();
+    writeEntity(event.getTaskAttemptID().toString(), EntityTypes.TEZ_TASK_ATTEMPT_ID.name());
+
+    writeEvents(event.getFinishTime(), HistoryEventType.TASK_ATTEMPT_FINISHED);
+
+    fieldName(ATSConstants.OTHER_INFO);
+    startObject();
+    field(ATSConstants.CREATION_TIME, event.getCreationTime());
+    field(ATSConstants.ALLOCATION_TIME, event.getAllocationTime());
+    field(ATSConstants.START_TIME, event.getStartTime());
+    field(ATSConstants.FINISH_TIME, event.getFinishTime());
+    field(ATSConstants.TIME_TAKEN, (event.getFinishTime() - event.getStartTime()));
+    if (event.getCreationCausalTA() != null) {
+      field(ATSConstants.CREATION_CAUSAL_ATTEMPT, event.getCreationCausalTA().toString());
+    }
+    field(ATSConstants.STATUS, event.getState().name());
+    if (event.getTaskAttemptError() != null) {
+      field(ATSConstants.TASK_ATTEMPT_ERROR_ENUM, event.getTaskAttemptError().name());
+    }
+    if (event.getTaskFailureType() != null) {
+      field(ATSConstants.TASK_FAILURE_TYPE, event.getTaskFailureType().name());
+    }
+    field(ATSConstants.DIAGNOSTICS, event.getDiagnostics());
+    fieldName(ATSConstants.COUNTERS);
+    writeCounters(event.getCounters());
+    if (event.getDataEvents() != null && !event.getDataEvents().isEmpty()) {
+      fieldName(ATSConstants.LAST_DATA_EVENTS);
+      writeValue(DAGUtils.convertDataEventDependecyInfoToATS(event.getDataEvents()));
+    }
+    if (event.getNodeId() != null) {
+      field(ATSConstants.NODE_ID, event.getNodeId().toString());
+    }
+    if (event.getContainerId() != null) {
+      field(ATSConstants.CONTAINER_ID, event.getContainerId().toString());
+    }
+    field(ATSConstants.IN_PROGRESS_LOGS_URL, event.getInProgressLogsUrl());
+    field(ATSConstants.COMPLETED_LOGS_URL, event.getCompletedLogsUrl());
+    field(ATSConstants.NODE_HTTP_ADDRESS, event.getNodeHttpAddress());
+    endObject();
+
+    endObject();
+  }
+
+  private void writeTaskAttemptStartedEvent(TaskAttemptStartedEvent event) {
+    startObject();
+    writeEntity(event.getTaskAttemptID().toString(), EntityTypes.TEZ_TASK_ATTEMPT_ID.name());
+
+    fieldName(ATSConstants.RELATED_ENTITIES);
+    startArray();
+    writeRelatedEntity(event.getNodeId().toString(), ATSConstants.NODE_ID);
+    writeRelatedEntity(event.getContainerId().toString(), ATSConstants.CONTAINER_ID);
+    writeRelatedEntity(event.getTaskAttemptID().getTaskID().toString(),
+        EntityTypes.TEZ_TASK_ID.name());
+    endArray();
+
+    writeEvents(event.getStartTime(), HistoryEventType.TASK_ATTEMPT_STARTED);
+
+    fieldName(ATSConstants.OTHER_INFO);
+    startObject();
+    field(ATSConstants.IN_PROGRESS_LOGS_URL, event.getInProgressLogsUrl());
+    field(ATSConstants.COMPLETED_LOGS_URL, event.getCompletedLogsUrl());
+    endObject();
+
+    endObject();
+  }
+
+  private void writeTaskFinishedEvent(TaskFinishedEvent event) {
+    startObject();
+    writeEntity(event.getTaskID().toString(), EntityTypes.TEZ_TASK_ID.name());
+
+    writeEvents(event.getFinishTime(), HistoryEventType.TASK_FINISHED);
+
+    fieldName(ATSConstants.OTHER_INFO);
+    startObject();
+    field(ATSConstants.START_TIME, event.getStartTime());
+    field(ATSConstants.FINISH_TIME, event.getFinishTime());
+    field(ATSConstants.TIME_TAKEN, (event.getFinishTime() - event.getStartTime()));
+    field(ATSConstants.STATUS, event.getState().name());
+    field(ATSConstants.DIAGNOSTICS, event.getDiagnostics());
+    fieldName(ATSConstants.COUNTERS);
+    writeCounters(event.getTezCounters());
+    if (event.getSuccessfulAttemptID() != null) {
+      field(ATSConstants.SUCCESSFUL_ATTEMPT_ID, event.getSuccessfulAttemptID().toString());
+    }
+    endObject();
+
+    endObject();
+  }
+
+  private void writeTaskStartedEvent(TaskStartedEvent event) {
+    startObject();
+    writeEntity(event.getTaskID().toString(), EntityTypes.TEZ_TASK_ID.name());
+
+    fieldName(ATSConstants.RELATED_ENTITIES);
+    startArray();
+    writeRelatedEntity(event.getTaskID().getVertexID().toString(),
+        EntityTypes.TEZ_VERTEX_ID.name());
+    endArray();
+
+    writeEvents(event.getStartTime(), HistoryEventType.TASK_STARTED);
+
+    fieldName(ATSConstants.OTHER_INFO);
+    startObject();
+    field(ATSConstants.START_TIME, event.getStartTime());
+    field(ATSConstants.SCHEDULED_TIME, event.getScheduledTime());
+    endObject();
+
+    endObject();
+  }
+
+  private void writeVertexFinishedEvent(VertexFinishedEvent event) throws JSONException {
+    startObject();
+    writeEntity(event.getVertexID().toString(), EntityTypes.TEZ_VERTEX_ID.name());
+
+    writeEvents(event.getFinishTime(), HistoryEventType.VERTEX_FINISHED);
+
+    fieldName(ATSConstants.OTHER_INFO);
+    startObject();
+    field(ATSConstants.FINISH_TIME, event.getFinishTime());
+    field(ATSConstants.TIME_TAKEN, (event.getFinishTime() - event.getStartTime()));
+    field(ATSConstants.STATUS, event.getState().name());
+    field(ATSConstants.DIAGNOSTICS, event.getDiagnostics());
+    fieldName(ATSConstants.COUNTERS);
+    writeCounters(event.getTezCounters());
+    fieldName(ATSConstants.STATS);
+    writeValue(DAGUtils.convertVertexStatsToATSMap(event.getVertexStats()));
+    writeTaskStats(event.getVertexTaskStats());
+    if (event.getServicePluginInfo() != null) {
+      fieldName(ATSConstants.SERVICE_PLUGIN);
+      writeValue(DAGUtils.convertServicePluginToATSMap(event.getServicePluginInfo()));
+    }
+    endObject();
+
+    endObject();
+  }
+
+  private void writeVertexReconfigureDoneEvent(VertexConfigurationDoneEvent event)
+      throws JSONException {
+    startObject();
+    writeEntity(event.getVertexID().toString(), EntityTypes.TEZ_VERTEX_ID.name());
+
+    fieldName(ATSConstants.EVENTS);
+    startArray();
+    startObject();
+    field(ATSConstants.TIMESTAMP, event.getReconfigureDoneTime());
+    field(ATSConstants.EVENT_TYPE, HistoryEventType.VERTEX_CONFIGURE_DONE.name());
+    fieldName(ATSConstants.EVENT_INFO);
+    startObject();
+    field(ATSConstants.NUM_TASKS, event.getNumTasks());
+    if (event.getSourceEdgeProperties() != null && !event.getSourceEdgeProperties().isEmpty()) {
+      fieldName(ATSConstants.UPDATED_EDGE_MANAGERS);
+      startObject();
+      for (Entry<String, EdgeProperty> entry : event.getSourceEdgeProperties().entrySet()) {
+        fieldName(entry.getKey());
+        writeValue(DAGUtils.convertEdgeProperty(entry.getValue()));
+      }
+      endObject();
+    }
+    endObject();
+    endObject();
+    endArray();
+
+    fieldName(ATSConstants.OTHER_INFO);
+    startObject();
+    endObject();
+
+    endObject();
+  }
+
+  private void writeVertexInitializedEvent(VertexInitializedEvent event) throws JSONException {
+    startObject();
+    writeEntity(event.getVertexID().toString(), EntityTypes.TEZ_VERTEX_ID.name());
+
+    fieldName(ATSConstants.RELATED_ENTITIES);
+    startArray();
+    writeRelatedEntity(event.getVertexID().getDAGId().toString(),
+        EntityTypes.TEZ_DAG_ID.name());
+    endArray();
+
+    writeEvents(event.getInitedTime(), HistoryEventType.VERTEX_INITIALIZED);
+
+    fieldName(ATSConstants.OTHER_INFO);
+    startObject();
+    field(ATSConstants.VERTEX_NAME, event.getVertexName());
+    field(ATSConstants.INIT_REQUESTED_TIME, event.getInitRequestedTime());
+    field(ATSConstants.INIT_TIME, event.getInitedTime());
+    field(ATSConstants.NUM_TASKS, event.getNumTasks());
+    field(ATSConstants.PROCESSOR_CLASS_NAME, event.getProcessorName());
+    if (event.getServicePluginInfo() != null) {
+      fieldName(ATSConstants.SERVICE_PLUGIN);
+      writeValue(DAGUtils.convertServicePluginToATSMap(event.getServicePluginInfo()));
+    }
+    endObject();
+
+    endObject();
+  }
+
+  private void writeVertexStartedEvent(VertexStartedEvent event) {
+    startObject();
+    writeEntity(event.getVertexID().toString(), EntityTypes.TEZ_VERTEX_ID.name());
+
+    fieldName(ATSConstants.RELATED_ENTITIES);
+    startArray();
+    writeRelatedEntity(event.getVertexID().getDAGId().toString(),
+        EntityTypes.TEZ_DAG_ID.name());
+    endArray();
+
+    writeEvents(event.getStartTime(), HistoryEventType.VERTEX_STARTED);
+
+    fieldName(ATSConstants.OTHER_INFO);
+    startObject();
+    field(ATSConstants.START_REQUESTED_TIME, event.getStartRequestedTime());
+    field(ATSConstants.START_TIME, event.getStartTime());
+    endObject();
+
+    endObject();
+  }
+
+  private void writeEntity(String entity, String entityType) {
+    field(ATSConstants.ENTITY, entity);
+    field(ATSConstants.ENTITY_TYPE, entityType);
+  }
+
+  private void writeRelatedEntity(String entity, String entityType) {
+    startObject();
+    writeEntity(entity, entityType);
+    endObject();
+  }
+
+  private void writeEvents(long timestamp, HistoryEventType eventType) {
+    fieldName(ATSConstants.EVENTS);
+    startArray();
+    startObject();
+    field(ATSConstants.TIMESTAMP, timestamp);
+    field(ATSConstants.EVENT_TYPE, eventType.name());
+    endObject();
+    endArray();
+  }
+
+  private void writeTaskStats(Map<String, Integer> taskStats) {
+    if (taskStats != null) {
+      for (Entry<String, Integer> entry : taskStats.entrySet()) {
+        field(entry.getKey(), entry.getValue().intValue());
+      }
+    }
+  }
+
+  // same as DAGUtils.convertCountersToATSMap, without the intermediate maps
+  private void writeCounters(TezCounters counters) {
+    startObject();
+    if (counters != null) {
+      boolean hasGroups = false;
+      for (CounterGroup group : counters) {
+        if (!hasNonZeroCounter(group)) {
+          continue;
+        }
+        if (!hasGroups) {
+          fieldName(ATSConstants.COUNTER_GROUPS);
+          startArray();
+          hasGroups = true;
+        }
+        startObject();
+        field(ATSConstants.COUNTER_GROUP_NAME, group.getName());
+        if (!group.getDisplayName().equals(group.getName())) {
+          field(ATSConstants.COUNTER_GROUP_DISPLAY_NAME, group.getDisplayName());
+        }
+        fieldName(ATSConstants.COUNTERS);
+        startArray();
+        for (TezCounter counter : group) {
+          if (counter.getValue() != 0) {
+            startObject();
+            field(ATSConstants.COUNTER_NAME, counter.getName());
+            if (!counter.getDisplayName().equals(counter.getName())) {
+              field(ATSConstants.COUNTER_DISPLAY_NAME, counter.getDisplayName());
+            }
+            field(ATSConstants.COUNTER_VALUE, counter.getValue());
+            endObject();
+          }
+        }
+        endArray();
+        endObject();
+      }
+      if (hasGroups) {
+        endArray();
+      }
+    }
+    endObject();
+  }
+
+  private static boolean hasNonZeroCounter(CounterGroup group) {
+    for (TezCounter counter : group) {
+      if (counter.getValue() != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Generic values, as they are written by JSONObject.toString
+
+  private void writeValue(Object value) throws JSONException {
+    if (value == null) {
+      writeSeparator();
+      append("null");
+    } else if (value instanceof String) {
+      writeSeparator();
+      appendQuoted((String) value);
+    } else if (value instanceof Integer || value instanceof Long
+        || value instanceof Short || value instanceof Byte) {
+      writeSeparator();
+      appendLong(((Number) value).longValue());
+    } else if (value instanceof Number) {
+      writeSeparator();
+      appendNumber((Number) value);
+    } else if (value instanceof Boolean) {
+      writeSeparator();
+      append(value.toString());
+    } else if (value instanceof Map<?, ?>) {
+      startObject();
+      // unlike fields of the events, null values in maps are written
+      for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        fieldName(entry.getKey().toString());
+        writeValue(entry.getValue());
+      }
+      endObject();
+    } else if (value instanceof Collection<?>) {
+      startArray();
+      for (Object element : (Collection<?>) value) {
+        writeValue(element);
+      }
+      endArray();
+    } else if (value instanceof JSONObject || value instanceof JSONArray) {
+      writeSeparator();
+      appendEscapingNonAscii(value.toString());
+    } else {
+      writeSeparator();
+      appendQuoted(value.toString());
+    }
+  }
+
+  // Structure
+
+  private void startObject() {
+    writeSeparator();
+    append('{');
+    needSeparator = false;
+  }
+
+  private void endObject() {
+    append('}');
+    needSeparator = true;
+  }
+
+  private void startArray() {
+    writeSeparator();
+    append('[');
+    needSeparator = false;
+  }
+
+  private void endArray() {
+    append(']');
+    needSeparator = true;
+  }
+
+  private void fieldName(String name) {
+    writeSeparator();
+    appendQuoted(name);
+    append(':');
+    needSeparator = false;
+  }
+
+  // a null value leaves out the field, like JSONObject.put
+  private void field(String name, String value) {
+    if (value != null) {
+      fieldName(name);
+      appendQuoted(value);
+      needSeparator = true;
+    }
+  }
+
+  private void field(String name, long value) {
+    fieldName(name);
+    appendLong(value);
+    needSeparator = true;
+  }
+
+  private void writeSeparator() {
+    if (needSeparator) {
+      append(',');
+    }
+    needSeparator = true;
+  }
+
+  // Text
+
+  private void ensureCapacity(int extra) {
+    if (length + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+    }
+  }
+
+  private void append(char c) {
+    ensureCapacity(1);
+    buffer[length++] = (byte) c;
+  }
+
+  private void append(String s) {
+    ensureCapacity(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      buffer[length++] = (byte) s.charAt(i);
+    }
+  }
+
+  private void appendLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      append(Long.toString(value));
+      return;
+    }
+    ensureCapacity(20);
+    if (value < 0) {
+      buffer[length++] = '-';
+      value = -value;
+    }
+    int start = length;
+    do {
+      buffer[length++] = (byte) ('0' + (value % 10));
+      value /= 10;
+    } while (value != 0);
+    // digits were written in reverse
+    for (int i = start, j = length - 1; i < j; i++, j--) {
+      byte digit = buffer[i];
+      buffer[i] = buffer[j];
+      buffer[j] = digit;
+    }
+  }
+
+  private void appendNumber(Number value) throws JSONException {
+    double d = value.doubleValue();
+    if (Double.isInfinite(d) || Double.isNaN(d)) {
+      throw new JSONException("JSON does not allow non-finite numbers.");
+    }
+    String s = value.toString();
+    // trailing zeros are dropped, as by JSONObject.numberToString
+    if (s.indexOf('.') > 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
+      int end = s.length();
+      while (s.charAt(end - 1) == '0') {
+        end--;
+      }
+      if (s.charAt(end - 1) == '.') {
+        end--;
+      }
+      s = s.substring(0, end);
+    }
+    append(s);
+  }
+
+  // escapes as JSONObject.quote, and all characters which are not ASCII
+  private void appendQuoted(String s) {
+    ensureCapacity(s.length() + 2);
+    buffer[length++] = '"';
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+          ensureCapacity(2 + s.length() - i);
+          buffer[length++] = '\\';
+          buffer[length++] = (byte) c;
+          break;
+        case '\b':
+          appendEscape('b', s.length() - i);
+          break;
+        case '\t':
+          appendEscape('t', s.length() - i);
+          break;
+        case '\n':
+          appendEscape('n', s.length() - i);
+          break;
+        case '\f':
+          appendEscape('f', s.length() - i);
+          break;
+        case '\r':
+          appendEscape('r', s.length() - i);
+          break;
+        default:
+          if (c < ' ' || c > '~') {
+            appendUnicodeEscape(c, s.length() - i);
+          } else {
+            buffer[length++] = (byte) c;
+          }
+      }
+    }
+    ensureCapacity(1);
+    buffer[length++] = '"';
+  }
+
+  private void appendEscape(char c, int remaining) {
+    ensureCapacity(2 + remaining);
+    buffer[length++] = '\\';
+    buffer[length++] = (byte) c;
+  }
+
+  private void appendUnicodeEscape(char c, int remaining) {
+    ensureCapacity(6 + remaining);
+    buffer[length++] = '\\';
+    buffer[length++] = 'u';
+    buffer[length++] = HEX_DIGITS[(c >> 12) & 0xf];
+    buffer[length++] = HEX_DIGITS[(c >> 8) & 0xf];
+    buffer[length++] = HEX_DIGITS[(c >> 4) & 0xf];
+    buffer[length++] = HEX_DIGITS[c & 0xf];
+  }
+
+  // JSON text, in which characters beyond ASCII can only occur in strings
+  private void appendEscapingNonAscii(String json) {
+    ensureCapacity(json.length());
+    for (int i = 0; i < json.length(); i++) {
+      char c = json.charAt(i);
+      if (c > '~') {
+        appendUnicodeEscape(c, json.length() - i);
+      } else {
+        buffer[length++] = (byte) c;
+      }
+    }
+  }
+}
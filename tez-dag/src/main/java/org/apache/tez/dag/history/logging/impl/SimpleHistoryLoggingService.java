@@ -33,7 +33,6 @@ import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.dag.history.DAGHistoryEvent;
 import org.apache.tez.dag.history.logging.HistoryLoggingService;
 import org.codehaus.jettison.json.JSONException;
-import org.codehaus.jettison.json.JSONObject;
 
 public class SimpleHistoryLoggingService extends HistoryLoggingService {
 
@@ -52,6 +51,8 @@ public class SimpleHistoryLoggingService extends HistoryLoggingService {
   private int consecutiveErrors = 0;
   private int maxErrors;
   private boolean loggingDisabled = false;
+  // events are written one at a time, by handleEvent
+  private final HistoryEventJsonWriter jsonWriter = new HistoryEventJsonWriter();
 
   public SimpleHistoryLoggingService() {
     super(SimpleHistoryLoggingService.class.getName());
@@ -153,8 +154,7 @@ public class SimpleHistoryLoggingService extends HistoryLoggingService {
     }
     try {
       try {
-        JSONObject eventJson = HistoryEventJsonConversion.convertToJson(event.getHistoryEvent());
-        outputStream.writeBytes(eventJson.toString());
+        jsonWriter.write(event.getHistoryEvent(), outputStream);
         outputStream.writeBytes(RECORD_SEPARATOR);
       } catch (JSONException e) {
         LOG.warn("Failed to convert event to json", e);
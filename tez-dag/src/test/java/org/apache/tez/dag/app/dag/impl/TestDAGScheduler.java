@@ -19,6 +19,7 @@
 package org.apache.tez.dag.app.dag.impl;
 
 import org.apache.hadoop.yarn.event.EventHandler;
+import org.apache.tez.dag.api.oldrecords.TaskAttemptState;
 import org.apache.tez.dag.app.dag.DAG;
 import org.apache.tez.dag.app.dag.DAGScheduler;
 import org.apache.tez.dag.app.dag.TaskAttempt;
@@ -35,7 +36,9 @@ import com.google.common.collect.Lists;
 
 import static org.mockito.Mockito.*;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class TestDAGScheduler {
 
@@ -252,4 +255,92 @@ public class TestDAGScheduler {
         mockEventHandler.events.get(0).getTaskAttemptID()); // matches order
   }
 
+  @Test(timeout=5000)
+  public void testDAGSchedulerCriticalPath() {
+    MockEventHandler mockEventHandler = new MockEventHandler();
+    DAG mockDag = mock(DAG.class);
+    when(mockDag.getTotalVertices()).thenReturn(5);
+    // a chain of 4 vertices with 10 tasks each, and a wide vertex with 1000 tasks, which has
+    // more work than the whole chain but finishes sooner with enough containers
+    Map<TezVertexID, Vertex> vertices = new HashMap<TezVertexID, Vertex>();
+    Vertex[] mockVertices = new Vertex[5];
+    for (int i = 0; i < 5; i++) {
+      TezVertexID vId = TezVertexID.fromString("vertex_1436907267600_195589_1_0" + i);
+      mockVertices[i] = mock(Vertex.class);
+      when(mockVertices[i].getVertexId()).thenReturn(vId);
+      when(mockVertices[i].getDistanceFromRoot()).thenReturn(i == 4 ? 0 : i);
+      when(mockVertices[i].getTotalTasks()).thenReturn(i == 4 ? 1000 : 10);
+      when(mockDag.getVertex(vId)).thenReturn(mockVertices[i]);
+      vertices.put(vId, mockVertices[i]);
+    }
+    for (int i = 0; i < 5; i++) {
+      Map<Vertex, Edge> outputs = new HashMap<Vertex, Edge>();
+      if (i < 3) {
+        outputs.put(mockVertices[i + 1], mock(Edge.class));
+      }
+      when(mockVertices[i].getOutputVertices()).thenReturn(outputs);
+    }
+    when(mockDag.getVertices()).thenReturn(vertices);
+
+    DAGSchedulerCriticalPath scheduler = new DAGSchedulerCriticalPath(mockDag,
+        mockEventHandler);
+    Assert.assertEquals(4, scheduler.getRank(mockVertices[0]), 0);
+    Assert.assertEquals(1, scheduler.getRank(mockVertices[4]), 0);
+    // the chain goes before the wide vertex, unlike in the natural order
+    scheduler.scheduleTaskEx(createScheduleEvent(mockVertices[0], 0));
+    Assert.assertEquals(18, mockEventHandler.event.getPriorityLowLimit());
+    Assert.assertEquals(16, mockEventHandler.event.getPriorityHighLimit());
+    scheduler.scheduleTaskEx(createScheduleEvent(mockVertices[1], 0));
+    Assert.assertEquals(36, mockEventHandler.event.getPriorityLowLimit());
+    scheduler.scheduleTaskEx(createScheduleEvent(mockVertices[4], 0));
+    Assert.assertEquals(72, mockEventHandler.event.getPriorityLowLimit());
+
+    // the tasks of the wide vertex turn out to be longer than the whole chain
+    scheduler.taskCompletedEx(createCompletedEvent(mockVertices[4], 0, 1000, 1100));
+    when(mockVertices[4].getSucceededTasks()).thenReturn(1);
+    for (int i = 0; i < 4; i++) {
+      scheduler.taskCompletedEx(createCompletedEvent(mockVertices[i], 9, 1000, 1001));
+      when(mockVertices[i].getSucceededTasks()).thenReturn(1);
+    }
+    Assert.assertEquals(100, scheduler.getRank(mockVertices[4]), 0.01);
+    Assert.assertEquals(4, scheduler.getRank(mockVertices[0]), 0.01);
+    // a vertex whose tasks have all succeeded adds nothing to the path
+    when(mockVertices[3].getSucceededTasks()).thenReturn(10);
+    scheduler.taskCompletedEx(createCompletedEvent(mockVertices[3], 8, 1000, 1001));
+    Assert.assertEquals(3, scheduler.getRank(mockVertices[0]), 0.01);
+    scheduler.scheduleTaskEx(createScheduleEvent(mockVertices[4], 1));
+    Assert.assertEquals(18, mockEventHandler.event.getPriorityLowLimit());
+    // stays above the pending attempts of its downstream vertex
+    scheduler.scheduleTaskEx(createScheduleEvent(mockVertices[0], 1));
+    Assert.assertEquals(33, mockEventHandler.event.getPriorityLowLimit());
+    scheduler.scheduleTaskEx(createScheduleEvent(mockVertices[2], 0));
+    Assert.assertEquals(72, mockEventHandler.event.getPriorityLowLimit());
+    scheduler.scheduleTaskEx(createScheduleEvent(mockVertices[1], 1));
+    Assert.assertEquals(54, mockEventHandler.event.getPriorityLowLimit());
+  }
+
+  private static DAGEventSchedulerUpdate createScheduleEvent(Vertex vertex, int taskId) {
+    TezVertexID vId = vertex.getVertexId();
+    TaskAttempt mockAttempt = mock(TaskAttempt.class);
+    when(mockAttempt.getVertexID()).thenReturn(vId);
+    when(mockAttempt.getID()).thenReturn(TezTaskAttemptID.getInstance(
+        TezTaskID.getInstance(vId, taskId), 0));
+    return new DAGEventSchedulerUpdate(DAGEventSchedulerUpdate.UpdateType.TA_SCHEDULE,
+        mockAttempt);
+  }
+
+  private static DAGEventSchedulerUpdate createCompletedEvent(Vertex vertex, int taskId,
+      long launchTime, long finishTime) {
+    TezVertexID vId = vertex.getVertexId();
+    TaskAttempt mockAttempt = mock(TaskAttempt.class);
+    when(mockAttempt.getVertexID()).thenReturn(vId);
+    when(mockAttempt.getID()).thenReturn(TezTaskAttemptID.getInstance(
+        TezTaskID.getInstance(vId, taskId), 0));
+    when(mockAttempt.getState()).thenReturn(TaskAttemptState.SUCCEEDED);
+    when(mockAttempt.getLaunchTime()).thenReturn(launchTime);
+    when(mockAttempt.getFinishTime()).thenReturn(finishTime);
+    return new DAGEventSchedulerUpdate(DAGEventSchedulerUpdate.UpdateType.TA_COMPLETED,
+        mockAttempt);
+  }
+
 }
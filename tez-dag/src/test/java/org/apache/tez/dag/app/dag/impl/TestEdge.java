@@ -65,6 +65,7 @@ import org.apache.tez.dag.records.TezTaskAttemptID;
 import org.apache.tez.dag.records.TezTaskID;
 import org.apache.tez.dag.records.TezVertexID;
 import org.apache.tez.runtime.api.events.CompositeDataMovementEvent;
+import org.apache.tez.runtime.api.events.CompositeRoutedDataMovementEvent;
 import org.apache.tez.runtime.api.events.DataMovementEvent;
 import org.apache.tez.runtime.api.events.InputReadErrorEvent;
 import org.apache.tez.runtime.api.impl.EventMetaData;
@@ -211,6 +212,67 @@ public class TestEdge {
     verifyEvents(srcTAID, destTasks);
   }
 
+  @Test (timeout = 5000)
+  public void testBatchedCompositeEventRouting() throws Exception {
+    EdgeProperty edgeProp = EdgeProperty.create(DataMovementType.SCATTER_GATHER,
+        DataSourceType.PERSISTED, SchedulingType.SEQUENTIAL, mock(OutputDescriptor.class),
+        mock(InputDescriptor.class));
+    Edge edge = new Edge(edgeProp, mock(EventHandler.class), new TezConfiguration());
+
+    TezVertexID srcVertexID = createVertexID(1);
+    TezVertexID destVertexID = createVertexID(2);
+    LinkedHashMap<TezTaskID, Task> srcTasks = mockTasks(srcVertexID, 3);
+    LinkedHashMap<TezTaskID, Task> destTasks = mockTasks(destVertexID, 2);
+    edge.setSourceVertex(mockVertex("src", srcVertexID, srcTasks));
+    edge.setDestinationVertex(mockVertex("dest", destVertexID, destTasks));
+    edge.initialize();
+    edge.routingToBegin();
+
+    OnDemandRouteEvents routeEvents = new OnDemandRouteEvents(1);
+    for (TezTaskID srcTaskID : srcTasks.keySet()) {
+      TezTaskAttemptID srcTAID = createTAIDForTest(srcTaskID, 1);
+      CompositeDataMovementEvent cdmEvent = CompositeDataMovementEvent.create(0,
+          destTasks.size(), ByteBuffer.wrap("bytes".getBytes()));
+      cdmEvent.setVersion(srcTAID.getId());
+      routeEvents.add(new TezEvent(cdmEvent, new EventMetaData(EventProducerConsumerType.OUTPUT,
+          "consumerVertex", "producerVertex", srcTAID)), edge, srcTaskID.getId());
+    }
+    assertEquals(3, routeEvents.size());
+
+    for (TezTaskID destTaskID : destTasks.keySet()) {
+      TezTaskAttemptID destTAID = createTAIDForTest(destTaskID, 0);
+      List<TezEvent> batched = new ArrayList<TezEvent>();
+      edge.addCompositeTezEventsForDestinationTask(routeEvents, 0, routeEvents.size(), destTAID,
+          batched);
+      List<TezEvent> single = new ArrayList<TezEvent>();
+      for (int i = 0; i < routeEvents.size(); i++) {
+        assertTrue(edge.maybeAddTezEventForDestinationTask(routeEvents.getEvent(i), destTAID,
+            routeEvents.getSrcTaskIndex(i), single, Integer.MAX_VALUE, null));
+      }
+      assertEquals(single.size(), batched.size());
+      for (int i = 0; i < single.size(); i++) {
+        CompositeRoutedDataMovementEvent expected =
+            (CompositeRoutedDataMovementEvent) single.get(i).getEvent();
+        CompositeRoutedDataMovementEvent actual =
+            (CompositeRoutedDataMovementEvent) batched.get(i).getEvent();
+        assertEquals(destTaskID.getId(), actual.getSourceIndex());
+        assertEquals(i, actual.getTargetIndex());
+        assertEquals(expected.getSourceIndex(), actual.getSourceIndex());
+        assertEquals(expected.getTargetIndex(), actual.getTargetIndex());
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(single.get(i).getSourceInfo(), batched.get(i).getSourceInfo());
+      }
+    }
+
+    // events of the same source task are chained, latest first
+    int eventId = routeEvents.add(routeEvents.getEvent(1), edge, 1);
+    assertEquals(eventId, routeEvents.getLastEventOfSrcTask(edge, 1));
+    assertEquals(1, routeEvents.getPrevEventOfSrcTask(eventId));
+    assertEquals(OnDemandRouteEvents.NO_EVENT, routeEvents.getPrevEventOfSrcTask(1));
+    assertEquals(OnDemandRouteEvents.NO_EVENT, routeEvents.getLastEventOfSrcTask(edge, 5));
+  }
+
   private void verifyEvents(TezTaskAttemptID srcTAID, LinkedHashMap<TezTaskID, Task> destTasks) {
     int count = 0;
 
@@ -56,6 +56,7 @@ import org.apache.hadoop.yarn.api.records.LocalResource;
 import org.apache.tez.common.DrainDispatcher;
 import org.apache.tez.common.TezCommonUtils;
 import org.apache.tez.common.counters.Limits;
+import org.apache.tez.common.counters.TaskCounter;
 import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.dag.api.TezConstants;
 import org.apache.tez.dag.api.records.DAGProtos.PlanLocalResource;
@@ -7100,6 +7101,83 @@ public class TestVertexImpl {
 
   }
 
+  @Test(timeout = 5000)
+  public void testCompletedTaskCountersRollUp() {
+    initAllVertices(VertexState.INITED);
+
+    VertexImpl v = vertices.get("vertex2");
+    startVertex(v);
+
+    TezTaskID t1 = TezTaskID.getInstance(v.getVertexId(), 0);
+    for (int i = 0; i < 2; ++i) {
+      TezCounters ctrs = new TezCounters();
+      ctrs.findCounter(TaskCounter.INPUT_RECORDS_PROCESSED).increment(i + 1);
+      ((TaskImpl) v.getTask(i)).setCounters(ctrs);
+    }
+    Assert.assertEquals(3,
+        v.getAllCounters().findCounter(TaskCounter.INPUT_RECORDS_PROCESSED).getValue());
+
+    dispatcher.getEventHandler().handle(
+        new VertexEventTaskCompleted(t1, TaskState.SUCCEEDED));
+    dispatcher.await();
+    Assert.assertEquals(VertexState.RUNNING, v.getState());
+    Assert.assertEquals(3,
+        v.getAllCounters().findCounter(TaskCounter.INPUT_RECORDS_PROCESSED).getValue());
+    // only the running task is left to aggregate per request
+    Assert.assertEquals(1, v.getUnrolledTaskCount());
+
+    // the counters of the completed task are not aggregated again
+    ((TaskImpl) v.getTask(0)).setCounters(new TezCounters());
+    v.reportTaskStatusChanged(t1);
+    Assert.assertEquals(3,
+        v.getAllCounters().findCounter(TaskCounter.INPUT_RECORDS_PROCESSED).getValue());
+
+    // unless the task is rescheduled
+    dispatcher.getEventHandler().handle(new VertexEventTaskReschedule(t1));
+    dispatcher.await();
+    Assert.assertEquals(VertexState.RUNNING, v.getState());
+    Assert.assertEquals(2,
+        v.getAllCounters().findCounter(TaskCounter.INPUT_RECORDS_PROCESSED).getValue());
+  }
+
+  @Test(timeout = 5000)
+  public void testIncrementalTaskStatus() {
+    initAllVertices(VertexState.INITED);
+
+    VertexImpl v = vertices.get("vertex2");
+    startVertex(v);
+
+    int numTasks = v.getTotalTasks();
+    Task[] mockTasks = new Task[numTasks];
+    for (int i = 0; i < numTasks; ++i) {
+      TezTaskID taskId = TezTaskID.getInstance(v.getVertexId(), i);
+      mockTasks[i] = mock(Task.class);
+      doReturn(taskId).when(mockTasks[i]).getTaskId();
+      doReturn(TaskState.SCHEDULED).when(mockTasks[i]).getState();
+      v.tasks.put(taskId, mockTasks[i]);
+    }
+    Assert.assertEquals(0, v.getRunningTasks());
+    Assert.assertEquals(0.0f, v.getProgress(), 0.0f);
+
+    doReturn(TaskState.RUNNING).when(mockTasks[0]).getState();
+    doReturn(0.5f).when(mockTasks[0]).getProgress();
+    // not seen until the task reports the change
+    Assert.assertEquals(0, v.getRunningTasks());
+    v.reportTaskStatusChanged(mockTasks[0].getTaskId());
+    Assert.assertEquals(1, v.getRunningTasks());
+    Assert.assertEquals(0.5f / numTasks, v.getProgress(), 0.0001f);
+    Assert.assertEquals(1, v.getVertexProgress().getRunningTaskCount());
+
+    doReturn(TaskState.SUCCEEDED).when(mockTasks[0]).getState();
+    doReturn(1.0f).when(mockTasks[0]).getProgress();
+    doReturn(TaskState.RUNNING).when(mockTasks[1]).getState();
+    doReturn(0.25f).when(mockTasks[1]).getProgress();
+    v.reportTaskStatusChanged(mockTasks[0].getTaskId());
+    v.reportTaskStatusChanged(mockTasks[1].getTaskId());
+    Assert.assertEquals(1, v.getRunningTasks());
+    Assert.assertEquals(1.25f / numTasks, v.getProgress(), 0.0001f);
+  }
+
   @Test(timeout = 5000)
   public void testFirstTaskStartTime() {
     VertexImpl v = vertices.get("vertex1");
@@ -1703,6 +1703,103 @@ public class TestTaskScheduler {
     verify(mockRMClient, times(3)).addContainerRequest(requestCaptor.capture());
   }
 
+  @Test(timeout = 10000)
+  public void testTaskSchedulerReuseWithIndexedRequests() throws Exception {
+    // a session AM reusing containers for more pending requests than containers, some of
+    // which are affinitized to containers. TaskSchedulerReuseBenchmark in tez-benchmarks
+    // runs this at scale.
+    final int numHosts = 2;
+    final int numContainers = 10;
+    final int numRequests = 100;
+    TezAMRMClientAsync<CookieContainerRequest> amrmClient =
+        new AMRMClientAsyncForTest(new AMRMClientForTest(), 100);
+
+    Configuration conf = new Configuration();
+    conf.setLong(TezConfiguration.TEZ_AM_CONTAINER_REUSE_LOCALITY_DELAY_ALLOCATION_MILLIS, 0);
+    conf.setLong(TezConfiguration.TEZ_AM_CONTAINER_IDLE_RELEASE_TIMEOUT_MIN_MILLIS, 100000);
+    conf.setLong(TezConfiguration.TEZ_AM_CONTAINER_IDLE_RELEASE_TIMEOUT_MAX_MILLIS, 100000);
+
+    TaskSchedulerContext mockApp = setupMockTaskSchedulerContext(DEFAULT_APP_HOST,
+        DEFAULT_APP_PORT, DEFAULT_APP_URL, true, conf);
+    final TaskSchedulerContextDrainable drainableAppCallback = createDrainableContext(mockApp);
+    TaskSchedulerWithDrainableContext scheduler =
+        new TaskSchedulerWithDrainableContext(drainableAppCallback, amrmClient);
+    scheduler.initialize();
+    scheduler.start();
+    drainableAppCallback.drain();
+
+    Resource resource = Resource.newInstance(1024, 1);
+    Priority priority1 = Priority.newInstance(1);
+    Priority priority2 = Priority.newInstance(2);
+    String[] racks = {"/default-rack"};
+    Object signature = new Object();
+
+    List<Container> containers = new ArrayList<Container>(numContainers);
+    for (int i = 0; i < numContainers; i++) {
+      String host = "host" + (i % numHosts);
+      scheduler.allocateTask(Integer.valueOf(i), resource, new String[] {host}, racks,
+          priority1, signature, null);
+      containers.add(createContainer(i + 1, host, resource, priority1));
+    }
+    scheduler.onContainersAllocated(new ArrayList<Container>(containers));
+    while (true) {
+      synchronized (scheduler) {
+        if (scheduler.taskAllocations.size() == numContainers) {
+          break;
+        }
+      }
+      Thread.sleep(10);
+    }
+
+    for (int i = 0; i < numRequests; i++) {
+      Object task = Integer.valueOf(numContainers + i);
+      if (i % 10 == 0) {
+        ContainerId containerId = containers.get((i / 10) % numContainers).getId();
+        scheduler.allocateTask(task, resource, containerId, priority2, signature, null);
+      } else {
+        scheduler.allocateTask(task, resource, new String[] {"host" + (i % numHosts)}, racks,
+            priority2, signature, null);
+      }
+    }
+    assertEquals(numRequests, scheduler.taskRequests.size());
+
+    assertEquals(numRequests / 10, scheduler.taskRequestsByAffinitizedContainer.size());
+    assertEquals(numRequests, scheduler.taskRequestsByPriority.get(priority2).size());
+
+    // run the tasks, each completed task frees its container for the next one
+    int numAssigned = 0;
+    while (numAssigned < numRequests) {
+      int numAssignedInRound = 0;
+      for (Container container : containers) {
+        Object task;
+        synchronized (scheduler) {
+          task = scheduler.containerAssignments.get(container.getId());
+          if (!scheduler.taskAllocations.containsKey(task)) {
+            continue;
+          }
+        }
+        scheduler.deallocateTask(task, true, null, null);
+        synchronized (scheduler) {
+          if (scheduler.taskAllocations.containsKey(
+              scheduler.containerAssignments.get(container.getId()))) {
+            numAssignedInRound++;
+          }
+        }
+      }
+      assertTrue("No container was reused in a round", numAssignedInRound > 0);
+      numAssigned += numAssignedInRound;
+    }
+    assertEquals(0, scheduler.taskRequests.size());
+    assertTrue(scheduler.taskRequestsByPriority.isEmpty());
+    assertTrue(scheduler.taskRequestsByAffinitizedContainer.isEmpty());
+
+    AppFinalStatus finalStatus = new AppFinalStatus(
+        FinalApplicationStatus.SUCCEEDED, SUCCEED_APP_MESSAGE, DEFAULT_APP_URL);
+    when(mockApp.getFinalAppStatus()).thenReturn(finalStatus);
+    scheduler.shutdown();
+    drainableAppCallback.drain();
+  }
+
   private Container createContainer(int id, String host, Resource resource,
       Priority priority) {
     ContainerId containerID = ContainerId.newInstance(
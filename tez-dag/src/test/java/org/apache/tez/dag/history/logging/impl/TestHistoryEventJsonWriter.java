@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.dag.history.logging.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.api.records.NodeId;
+import org.apache.tez.common.ATSConstants;
+import org.apache.tez.common.counters.DAGCounter;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.dag.api.EdgeManagerPluginDescriptor;
+import org.apache.tez.dag.api.EdgeProperty;
+import org.apache.tez.dag.api.EdgeProperty.DataSourceType;
+import org.apache.tez.dag.api.EdgeProperty.SchedulingType;
+import org.apache.tez.dag.api.InputDescriptor;
+import org.apache.tez.dag.api.OutputDescriptor;
+import org.apache.tez.dag.api.oldrecords.TaskAttemptState;
+import org.apache.tez.dag.api.oldrecords.TaskState;
+import org.apache.tez.dag.api.records.DAGProtos.CallerContextProto;
+import org.apache.tez.dag.api.records.DAGProtos.DAGPlan;
+import org.apache.tez.dag.app.dag.DAGState;
+import org.apache.tez.dag.app.dag.VertexState;
+import org.apache.tez.dag.app.dag.impl.ServicePluginInfo;
+import org.apache.tez.dag.app.dag.impl.TaskAttemptImpl.DataEventDependencyInfo;
+import org.apache.tez.dag.app.dag.impl.VertexStats;
+import org.apache.tez.dag.history.HistoryEvent;
+import org.apache.tez.dag.history.events.AMLaunchedEvent;
+import org.apache.tez.dag.history.events.AMStartedEvent;
+import org.apache.tez.dag.history.events.AppLaunchedEvent;
+import org.apache.tez.dag.history.events.ContainerLaunchedEvent;
+import org.apache.tez.dag.history.events.ContainerStoppedEvent;
+import org.apache.tez.dag.history.events.DAGCommitStartedEvent;
+import org.apache.tez.dag.history.events.DAGFinishedEvent;
+import org.apache.tez.dag.history.events.DAGInitializedEvent;
+import org.apache.tez.dag.history.events.DAGRecoveredEvent;
+import org.apache.tez.dag.history.events.DAGStartedEvent;
+import org.apache.tez.dag.history.events.DAGSubmittedEvent;
+import org.apache.tez.dag.history.events.TaskAttemptFinishedEvent;
+import org.apache.tez.dag.history.events.TaskAttemptStartedEvent;
+import org.apache.tez.dag.history.events.TaskFinishedEvent;
+import org.apache.tez.dag.history.events.TaskStartedEvent;
+import org.apache.tez.dag.history.events.VertexConfigurationDoneEvent;
+import org.apache.tez.dag.history.events.VertexFinishedEvent;
+import org.apache.tez.dag.history.events.VertexInitializedEvent;
+import org.apache.tez.dag.history.events.VertexStartedEvent;
+import org.apache.tez.dag.records.TaskAttemptTerminationCause;
+import org.apache.tez.dag.records.TezDAGID;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.dag.records.TezTaskID;
+import org.apache.tez.dag.records.TezVertexID;
+import org.apache.tez.runtime.api.TaskFailureType;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestHistoryEventJsonWriter {
+
+  private ApplicationAttemptId applicationAttemptId;
+  private ApplicationId applicationId;
+  private String user = "user";
+  private TezDAGID tezDAGID;
+  private TezVertexID tezVertexID;
+  private TezTaskID tezTaskID;
+  private TezTaskAttemptID tezTaskAttemptID;
+  private DAGPlan dagPlan;
+  private ContainerId containerId;
+  private NodeId nodeId;
+  private TezCounters counters;
+  private Map<String, Integer> taskStats;
+  private ServicePluginInfo servicePluginInfo;
+
+  @SuppressWarnings("deprecation")
+  @Before
+  public void setup() {
+    applicationId = ApplicationId.newInstance(9999l, 1);
+    applicationAttemptId = ApplicationAttemptId.newInstance(applicationId, 1);
+    tezDAGID = TezDAGID.getInstance(applicationId, 1);
+    tezVertexID = TezVertexID.getInstance(tezDAGID, 2);
+    tezTaskID = TezTaskID.getInstance(tezVertexID, 3);
+    tezTaskAttemptID = TezTaskAttemptID.getInstance(tezTaskID, 4);
+    dagPlan = DAGPlan.newBuilder().setName("DAGPlanMock")
+        .setCallerContext(CallerContextProto.newBuilder().setContext("ctx")
+            .setCallerId("callerId").setCallerType("callerType"))
+        .build();
+    containerId = ContainerId.newInstance(applicationAttemptId, 111);
+    nodeId = NodeId.newInstance("node", 13435);
+
+    counters = new TezCounters();
+    counters.findCounter(TaskCounter.SPILLED_RECORDS).increment(5);
+    counters.findCounter(TaskCounter.GC_TIME_MILLIS);
+    counters.findCounter(TaskCounter.CPU_MILLISECONDS).increment(-3);
+    counters.findCounter(DAGCounter.NUM_SUCCEEDED_TASKS).increment(Long.MAX_VALUE);
+    counters.findCounter("group \"1\"", "counter\t/1").increment(Long.MIN_VALUE);
+    // groups without non-zero counters are left out
+    counters.findCounter("group2", "counter2");
+
+    taskStats = new HashMap<String, Integer>();
+    taskStats.put(ATSConstants.NUM_COMPLETED_TASKS, 10);
+    taskStats.put(ATSConstants.NUM_FAILED_TASKS, 0);
+
+    servicePluginInfo = new ServicePluginInfo().setContainerLauncherName("launcher")
+        .setTaskSchedulerName("scheduler").setTaskCommunicatorName("communicator");
+  }
+
+  private List<HistoryEvent> createEvents() {
+    List<HistoryEvent> events = new ArrayList<HistoryEvent>();
+    Configuration conf = new Configuration(false);
+    conf.set("key/1", "value\\1\n\u0001");
+    conf.setInt("key2", 2);
+    events.add(new AppLaunchedEvent(applicationId, 1, 2, user, conf, null));
+    events.add(new AMLaunchedEvent(applicationAttemptId, 1, 2, user));
+    events.add(new AMStartedEvent(applicationAttemptId, 1, user));
+    events.add(new DAGSubmittedEvent(tezDAGID, 1, dagPlan, applicationAttemptId,
+        null, user, null, null, "queue"));
+    events.add(new DAGSubmittedEvent(tezDAGID, 1, DAGPlan.newBuilder().setName("plan").build(),
+        applicationAttemptId, null, user, null, null, null));
+    Map<String, TezVertexID> vertexNameIDMap = new HashMap<String, TezVertexID>();
+    vertexNameIDMap.put("v2", TezVertexID.getInstance(tezDAGID, 2));
+    vertexNameIDMap.put("v1", TezVertexID.getInstance(tezDAGID, 1));
+    events.add(new DAGInitializedEvent(tezDAGID, 1, user, dagPlan.getName(), vertexNameIDMap));
+    events.add(new DAGInitializedEvent(tezDAGID, 1, user, dagPlan.getName(), null));
+    events.add(new DAGStartedEvent(tezDAGID, 1, user, dagPlan.getName()));
+    events.add(new DAGFinishedEvent(tezDAGID, 1, 5, DAGState.SUCCEEDED, "diag", counters,
+        user, dagPlan.getName(), taskStats, applicationAttemptId, dagPlan));
+    events.add(new DAGFinishedEvent(tezDAGID, 1, 5, DAGState.ERROR, null, null,
+        user, dagPlan.getName(), null, applicationAttemptId, dagPlan));
+    events.add(new VertexInitializedEvent(tezVertexID, "v1", 1, 2, 3, "proc", null, null,
+        servicePluginInfo));
+    events.add(new VertexStartedEvent(tezVertexID, 1, 2));
+    Map<String, EdgeProperty> edgeManagers = new HashMap<String, EdgeProperty>();
+    edgeManagers.put("a", EdgeProperty.create(EdgeManagerPluginDescriptor.create("a.class")
+        .setHistoryText("text"), DataSourceType.PERSISTED, SchedulingType.SEQUENTIAL,
+        OutputDescriptor.create("Out"), InputDescriptor.create("In")));
+    events.add(new VertexConfigurationDoneEvent(tezVertexID, 0L, 1, null, edgeManagers, null,
+        true));
+    events.add(new VertexConfigurationDoneEvent(tezVertexID, 0L, 1, null, null, null, true));
+    VertexStats vertexStats = new VertexStats();
+    vertexStats.setFirstTaskStartTime(7);
+    events.add(new VertexFinishedEvent(tezVertexID, "v1", 1, 2, 3, 4, 5, 6, VertexState.SUCCEEDED,
+        "diag", counters, vertexStats, taskStats, servicePluginInfo));
+    events.add(new TaskStartedEvent(tezTaskID, "v1", 1, 2));
+    events.add(new TaskFinishedEvent(tezTaskID, "v1", 1, 2, tezTaskAttemptID, TaskState.SUCCEEDED,
+        "", counters, 0));
+    events.add(new TaskFinishedEvent(tezTaskID, "v1", 1, 2, null, TaskState.FAILED,
+        null, null, 1));
+    events.add(new TaskAttemptStartedEvent(tezTaskAttemptID, "v1", 1, containerId, nodeId,
+        "http://inProgress", "http://completed", "nodeHttpAddress"));
+    List<DataEventDependencyInfo> dataEvents = new ArrayList<DataEventDependencyInfo>();
+    dataEvents.add(new DataEventDependencyInfo(3, tezTaskAttemptID));
+    events.add(new TaskAttemptFinishedEvent(tezTaskAttemptID, "v1", 1, 2,
+        TaskAttemptState.FAILED, TaskFailureType.NON_FATAL,
+        TaskAttemptTerminationCause.APPLICATION_ERROR, "diag", counters, dataEvents, null, 0,
+        tezTaskAttemptID, 1, containerId, nodeId, "http://inProgress", "http://completed",
+        "nodeHttpAddress"));
+    events.add(new TaskAttemptFinishedEvent(tezTaskAttemptID, "v1", 1, 2,
+        TaskAttemptState.KILLED, null, TaskAttemptTerminationCause.TERMINATED_BY_CLIENT,
+        null, null, null, null, 0, null, 0, null, null, null, null, null));
+    events.add(new ContainerLaunchedEvent(containerId, 1, applicationAttemptId));
+    events.add(new ContainerStoppedEvent(containerId, 1, -1, applicationAttemptId));
+    events.add(new DAGRecoveredEvent(applicationAttemptId, tezDAGID, dagPlan.getName(), user,
+        1l, DAGState.RUNNING, "reason", null));
+    events.add(new DAGRecoveredEvent(applicationAttemptId, tezDAGID, dagPlan.getName(), user,
+        1l, null));
+    return events;
+  }
+
+  @Test(timeout = 5000)
+  public void testSameJsonAsConversion() throws Exception {
+    HistoryEventJsonWriter writer = new HistoryEventJsonWriter();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (HistoryEvent event : createEvents()) {
+      String expected = HistoryEventJsonConversion.convertToJson(event).toString();
+      Assert.assertEquals("Unexpected json for " + event.getEventType(),
+          expected, writer.toString(event));
+      // the buffer is reused for every event
+      out.reset();
+      writer.write(event, out);
+      Assert.assertEquals(expected, out.toString("US-ASCII"));
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void testNonAsciiEscaped() throws Exception {
+    HistoryEventJsonWriter writer = new HistoryEventJsonWriter();
+    String diagnostics = "déjà vu 漢字";
+    TaskFinishedEvent event = new TaskFinishedEvent(tezTaskID, "v1", 1, 2, null,
+        TaskState.FAILED, diagnostics, null, 1);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writer.write(event, out);
+    for (byte b : out.toByteArray()) {
+      Assert.assertTrue(b >= 0);
+    }
+    String json = out.toString("US-ASCII");
+    Assert.assertTrue(json.contains("d\\u00e9j\\u00e0 vu \\u6f22\\u5b57"));
+    Assert.assertEquals(diagnostics, new JSONObject(json).getJSONObject(ATSConstants.OTHER_INFO)
+        .getString(ATSConstants.DIAGNOSTICS));
+  }
+
+  @Test(timeout = 5000)
+  public void testUnsupportedEvent() throws JSONException {
+    try {
+      new HistoryEventJsonWriter().toString(new DAGCommitStartedEvent());
+      Assert.fail("Expected an exception for an event without history");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.auxservices;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.tez.runtime.library.api.PushShuffleService;
+import org.apache.tez.runtime.library.common.shuffle.PushShuffle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link PushShuffleService} which appends the segments pushed for a partition to one file
+ * in a local directory. It stands in for a remote merge service in tests and on single node
+ * clusters, as producers and consumers have to share the directory. The directory has to be
+ * set with {@link #LOCAL_DIR}, there is no default: the temporary directory of a task is
+ * private to its container.
+ *
+ * Each segment is appended as a block: an int magic number, the path component of the output
+ * as UTF, longs for the raw and part lengths, and the bytes of the segment. Appends are
+ * serialized with a lock on the file, and a failed append is truncated away. Readers only take
+ * complete blocks, so they do not need the lock.
+ *
+ * The files of a shuffle are deleted by the {@link ShuffleHandler} when its DAG is deleted, or
+ * its application stops, if {@link #LOCAL_DIR} is set for the NodeManager as well.
+ */
+public class LocalPushShuffleService implements PushShuffleService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LocalPushShuffleService.class);
+
+  public static final String LOCAL_DIR = "tez.shuffle.push.local.dir";
+
+  static final int BLOCK_MAGIC = 0x54505342;
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+  // file locks are held by the JVM, pushes from the same JVM are serialized with these
+  private static final Object[] pushLocks = new Object[64];
+  static {
+    for (int i = 0; i < pushLocks.length; i++) {
+      pushLocks[i] = new Object();
+    }
+  }
+
+  private File localDir;
+  // blocks read so far from each partition file
+  private final Map<File, PartitionFile> partitionFiles = new HashMap<File, PartitionFile>();
+
+  private static class PartitionFile {
+    long scannedLength;
+    final Map<String, Segment> segments = new HashMap<String, Segment>();
+  }
+
+  @Override
+  public void initialize(Configuration conf) throws IOException {
+    String dir = conf.getTrimmed(LOCAL_DIR);
+    if (dir == null || dir.isEmpty()) {
+      throw new IOException(LOCAL_DIR + " has to be set to a directory shared by the producers"
+          + " and consumers of the shuffles");
+    }
+    localDir = new File(dir);
+  }
+
+  @Override
+  public void push(String shuffleId, int partition, String pathComponent, InputStream segment,
+      long rawLength, long partLength) throws IOException {
+    File file = getPartitionFile(shuffleId, partition);
+    File dir = file.getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+      throw new IOException("Unable to create " + dir);
+    }
+    DataOutputBuffer header = new DataOutputBuffer();
+    header.writeInt(BLOCK_MAGIC);
+    header.writeUTF(pathComponent);
+    header.writeLong(rawLength);
+    header.writeLong(partLength);
+
+    synchronized (pushLocks[(file.hashCode() & Integer.MAX_VALUE) % pushLocks.length]) {
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        FileChannel channel = raf.getChannel();
+        FileLock lock = channel.lock();
+        try {
+          long start = channel.size();
+          try {
+            long position = write(channel, ByteBuffer.wrap(header.getData(), 0,
+                header.getLength()), start);
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long remaining = partLength;
+            while (remaining > 0) {
+              int n = segment.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+              if (n < 0) {
+                throw new EOFException("Segment of " + pathComponent + " ended "
+                    + remaining + " bytes early");
+              }
+              position = write(channel, ByteBuffer.wrap(buffer, 0, n), position);
+              remaining -= n;
+            }
+          } catch (IOException e) {
+            channel.truncate(start);
+            throw e;
+          }
+        } finally {
+          lock.release();
+        }
+      } finally {
+        raf.close();
+      }
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Pushed " + partLength + " bytes of " + pathComponent + " to " + file);
+    }
+  }
+
+  private static long write(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+    return position;
+  }
+
+  @Override
+  public synchronized Segment locate(String shuffleId, int partition, String pathComponent)
+      throws IOException {
+    File file = getPartitionFile(shuffleId, partition);
+    PartitionFile partitionFile = partitionFiles.get(file);
+    if (partitionFile == null) {
+      partitionFile = new PartitionFile();
+      partitionFiles.put(file, partitionFile);
+    }
+    Segment segment = partitionFile.segments.get(pathComponent);
+    if (segment == null && file.exists()) {
+      scan(file, partitionFile);
+      segment = partitionFile.segments.get(pathComponent);
+    }
+    return segment;
+  }
+
+  /**
+   * Reads the blocks appended to the file since it was last scanned.
+   */
+  private static void scan(File file, PartitionFile partitionFile) throws IOException {
+    Path path = new Path(file.getAbsolutePath());
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      long length = raf.length();
+      raf.seek(partitionFile.scannedLength);
+      while (raf.getFilePointer() < length) {
+        String pathComponent;
+        long rawLength;
+        long partLength;
+        try {
+          int magic = raf.readInt();
+          if (magic != BLOCK_MAGIC) {
+            throw new IOException("Corrupt block at " + partitionFile.scannedLength + " of "
+                + file);
+          }
+          pathComponent = raf.readUTF();
+          rawLength = raf.readLong();
+          partLength = raf.readLong();
+        } catch (EOFException e) {
+          // a block being appended
+          break;
+        }
+        long offset = raf.getFilePointer();
+        if (offset + partLength > length) {
+          break;
+        }
+        partitionFile.segments.put(pathComponent,
+            new Segment(path, offset, rawLength, partLength));
+        partitionFile.scannedLength = offset + partLength;
+        raf.seek(partitionFile.scannedLength);
+      }
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Deletes the files of all the shuffles of a DAG.
+   */
+  public void deleteDag(ApplicationId applicationId, int dagIdentifier) {
+    deleteShuffles(PushShuffle.getShuffleIdPrefix(applicationId, dagIdentifier));
+  }
+
+  /**
+   * Deletes the files of all the shuffles of an application.
+   */
+  public void deleteApplication(ApplicationId applicationId) {
+    deleteShuffles(PushShuffle.getShuffleIdPrefix(applicationId));
+  }
+
+  private synchronized void deleteShuffles(String shuffleIdPrefix) {
+    File[] shuffleDirs = localDir.listFiles();
+    if (shuffleDirs == null) {
+      return;
+    }
+    String prefix;
+    try {
+      prefix = URLEncoder.encode(shuffleIdPrefix, "UTF-8");
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    for (File shuffleDir : shuffleDirs) {
+      if (shuffleDir.getName().startsWith(prefix)) {
+        if (FileUtil.fullyDelete(shuffleDir)) {
+          LOG.info("Deleted pushed shuffle " + shuffleDir);
+        } else {
+          LOG.warn("Failed to delete pushed shuffle " + shuffleDir);
+        }
+      }
+    }
+    partitionFiles.clear();
+  }
+
+  File getPartitionFile(String shuffleId, int partition) throws IOException {
+    return new File(new File(localDir, URLEncoder.encode(shuffleId, "UTF-8")),
+        "partition_" + partition);
+  }
+
+  @Override
+  public synchronized void close() {
+    partitionFiles.clear();
+  }
+
+  @Override
+  public String toString() {
+    return "LocalPushShuffleService [localDir=" + localDir + "]";
+  }
+}
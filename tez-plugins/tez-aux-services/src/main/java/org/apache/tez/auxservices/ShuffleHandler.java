@@ -70,6 +70,7 @@ import org.apache.tez.common.security.JobTokenIdentifier;
 import org.apache.tez.common.security.JobTokenSecretManager;
 import org.apache.tez.runtime.library.common.Constants;
 import org.apache.tez.runtime.library.common.security.SecureShuffleUtils;
+import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.BatchedShuffleHeader;
 import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.ShuffleHeader;
 import org.apache.hadoop.metrics2.MetricsSystem;
 import org.apache.hadoop.metrics2.annotation.Metric;
@@ -201,6 +202,9 @@ public class ShuffleHandler extends AuxiliaryService {
 
   private DB stateDb = null;
 
+  // deletes the outputs pushed with LocalPushShuffleService, null if it is not configured
+  private LocalPushShuffleService pushShuffleService;
+
   public static final String TEZ_SHUFFLE_SERVICEID =
       "tez_shuffle";
 
@@ -333,11 +337,13 @@ public class ShuffleHandler extends AuxiliaryService {
     private String jobId;
     private String dagId;
     private final boolean keepAlive;
+    private final boolean batched;
 
     public ReduceContext(List<String> mapIds, Range reduceRange,
                          ChannelHandlerContext context, String usr,
                          Map<String, Shuffle.MapOutputInfo> mapOutputInfoMap,
-                         String jobId, String dagId, boolean keepAlive) {
+                         String jobId, String dagId, boolean keepAlive,
+                         boolean batched) {
 
       this.mapIds = mapIds;
       this.reduceRange = reduceRange;
@@ -360,6 +366,7 @@ public class ShuffleHandler extends AuxiliaryService {
       this.infoMap = mapOutputInfoMap;
       this.jobId = jobId;
       this.keepAlive = keepAlive;
+      this.batched = batched;
     }
 
     public Range getReduceRange() {
@@ -397,6 +404,10 @@ public class ShuffleHandler extends AuxiliaryService {
     public boolean getKeepAlive() {
       return keepAlive;
     }
+
+    public boolean isBatched() {
+      return batched;
+    }
   }
 
   ShuffleHandler(MetricsSystem ms) {
@@ -483,6 +494,9 @@ public class ShuffleHandler extends AuxiliaryService {
       LOG.error("Error during stopApp", e);
       // TODO add API to AuxiliaryServices to report failures
     }
+    if (pushShuffleService != null) {
+      pushShuffleService.deleteApplication(appId);
+    }
   }
 
   @Override
@@ -511,6 +525,11 @@ public class ShuffleHandler extends AuxiliaryService {
     maxSessionOpenFiles = conf.getInt(SHUFFLE_MAX_SESSION_OPEN_FILES,
         DEFAULT_SHUFFLE_MAX_SESSION_OPEN_FILES);
 
+    if (conf.getTrimmed(LocalPushShuffleService.LOCAL_DIR) != null) {
+      pushShuffleService = new LocalPushShuffleService();
+      pushShuffleService.initialize(conf);
+    }
+
     final String BOSS_THREAD_NAME_PREFIX = "Tez Shuffle Handler Boss #";
     NioServerBossPool bossPool = new NioServerBossPool(Executors.newCachedThreadPool(), 1, new ThreadNameDeterminer() {
       @Override
@@ -589,6 +608,9 @@ public class ShuffleHandler extends AuxiliaryService {
     if (stateDb != null) {
       stateDb.close();
     }
+    if (pushShuffleService != null) {
+      pushShuffleService.close();
+    }
     super.serviceStop();
   }
 
@@ -1008,6 +1030,9 @@ public class ShuffleHandler extends AuxiliaryService {
             + " : " + keepAliveParam);
         }
       }
+      final List<String> batchQ = q.get(BatchedShuffleHeader.HTTP_PARAM_NAME);
+      final boolean batched = batchQ != null && batchQ.size() == 1
+          && Boolean.parseBoolean(batchQ.get(0));
       final List<String> mapIds = splitMaps(q.get("map"));
       final Range reduceRange = splitReduces(q.get("reduce"));
       final List<String> jobQ = q.get("job");
@@ -1018,7 +1043,8 @@ public class ShuffleHandler extends AuxiliaryService {
             "\n  reduceId: " + reduceRange +
             "\n  jobId: " + jobQ +
             "\n  dagId: " + dagIdQ +
-            "\n  keepAlive: " + keepAliveParam);
+            "\n  keepAlive: " + keepAliveParam +
+            "\n  batched: " + batched);
       }
       // If the request is for Dag Deletion, process the request and send OK.
       if (deleteDagDirectories(evt, dagCompletedQ, jobQ, dagIdQ))  {
@@ -1078,7 +1104,7 @@ public class ShuffleHandler extends AuxiliaryService {
 
       try {
         populateHeaders(mapIds, jobId, dagId, user, reduceRange,
-          response, keepAliveParam, mapOutputInfoMap);
+            response, keepAliveParam, mapOutputInfoMap, batched);
       } catch(IOException e) {
         ch.write(response);
         LOG.error("Shuffle error in populating headers :", e);
@@ -1090,7 +1116,7 @@ public class ShuffleHandler extends AuxiliaryService {
       //Initialize one ReduceContext object per messageReceived call
       boolean keepAlive = keepAliveParam || connectionKeepAliveEnabled;
       ReduceContext reduceContext = new ReduceContext(mapIds, reduceRange, ctx,
-          user, mapOutputInfoMap, jobId, dagId, keepAlive);
+          user, mapOutputInfoMap, jobId, dagId, keepAlive, batched);
       for (int i = 0; i < Math.min(maxSessionOpenFiles, mapIds.size()); i++) {
         ChannelFuture nextMap = sendMap(reduceContext);
         if(nextMap == null) {
@@ -1116,6 +1142,16 @@ public class ShuffleHandler extends AuxiliaryService {
         } catch (IOException e) {
           LOG.warn("Encountered exception during dag delete "+ e);
         }
+        if (pushShuffleService != null) {
+          try {
+            JobID jobID = JobID.forName(jobQ.get(0));
+            pushShuffleService.deleteDag(ApplicationId.newInstance(
+                Long.parseLong(jobID.getJtIdentifier()), jobID.getId()),
+                Integer.parseInt(dagIdQ.get(0)));
+          } catch (IllegalArgumentException e) {
+            LOG.warn("Encountered exception during pushed shuffle delete " + e);
+          }
+        }
         evt.getChannel().write(new DefaultHttpResponse(HTTP_1_1, OK));
         evt.getChannel().close();
         return true;
@@ -1149,11 +1185,19 @@ public class ShuffleHandler extends AuxiliaryService {
                 reduceContext.getJobId(),
                 reduceContext.getUser());
           }
-          nextMap = sendMapOutput(
-              reduceContext.getCtx(),
-              reduceContext.getCtx().getChannel(),
-              reduceContext.getUser(), mapId,
-              reduceContext.getReduceRange(), info);
+          if (reduceContext.isBatched()) {
+            nextMap = sendMapOutput(
+                reduceContext.getCtx(),
+                reduceContext.getCtx().getChannel(),
+                reduceContext.getUser(), mapId,
+                reduceContext.getReduceRange(), info, true);
+          } else {
+            nextMap = sendMapOutput(
+                reduceContext.getCtx(),
+                reduceContext.getCtx().getChannel(),
+                reduceContext.getUser(), mapId,
+                reduceContext.getReduceRange(), info);
+          }
           if (null == nextMap) {
             sendError(reduceContext.getCtx(), NOT_FOUND);
             return null;
@@ -1238,13 +1282,15 @@ public class ShuffleHandler extends AuxiliaryService {
                                    Range reduceRange,
                                    HttpResponse response,
                                    boolean keepAliveParam,
-                                   Map<String, MapOutputInfo> mapOutputInfoMap)
+                                   Map<String, MapOutputInfo> mapOutputInfoMap,
+                                   boolean batched)
         throws IOException {
 
       long contentLength = 0;
       // Content-Length only needs calculated for keep-alive keep alive
       if (connectionKeepAliveEnabled || keepAliveParam) {
-        contentLength = getContentLength(mapIds, jobId, dagId, user, reduceRange, mapOutputInfoMap);
+        contentLength = getContentLength(mapIds, jobId, dagId, user, reduceRange,
+            mapOutputInfoMap, batched);
       }
 
       // Now set the response headers.
@@ -1252,6 +1298,15 @@ public class ShuffleHandler extends AuxiliaryService {
     }
 
     long getContentLength(List<String> mapIds, String jobId, String dagId, String user, Range reduceRange, Map<String, MapOutputInfo> mapOutputInfoMap) throws IOException {
+      return getContentLength(mapIds, jobId, dagId, user, reduceRange, mapOutputInfoMap, false);
+    }
+
+    long getContentLength(List<String> mapIds, String jobId, String dagId, String user,
+        Range reduceRange, Map<String, MapOutputInfo> mapOutputInfoMap, boolean batched)
+        throws IOException {
+      if (batched) {
+        return getBatchedContentLength(mapIds, jobId, dagId, user, reduceRange, mapOutputInfoMap);
+      }
       long contentLength = 0;
       // Reduce count is written once per mapId
       int reduceCountVSize = WritableUtils.getVIntSize(reduceRange.getLast() - reduceRange.getFirst() + 1);
@@ -1273,6 +1328,35 @@ public class ShuffleHandler extends AuxiliaryService {
       return contentLength;
     }
 
+    private long getBatchedContentLength(List<String> mapIds, String jobId, String dagId,
+        String user, Range reduceRange, Map<String, MapOutputInfo> mapOutputInfoMap)
+        throws IOException {
+      long contentLength = 0;
+      for (String mapId : mapIds) {
+        MapOutputInfo outputInfo = getMapOutputInfo(dagId, mapId, jobId, user);
+        if (mapOutputInfoMap.size() < mapOutputMetaInfoCacheSize) {
+          mapOutputInfoMap.put(mapId, outputInfo);
+        }
+        BatchedShuffleHeader header = createBatchedHeader(mapId, reduceRange, outputInfo);
+        contentLength += header.writeLength();
+        for (int reduce = reduceRange.getFirst(); reduce <= reduceRange.getLast(); reduce++) {
+          contentLength += outputInfo.spillRecord.getIndex(reduce).getPartLength();
+        }
+      }
+      return contentLength;
+    }
+
+    private BatchedShuffleHeader createBatchedHeader(String mapId, Range reduceRange,
+        MapOutputInfo outputInfo) {
+      BatchedShuffleHeader header = new BatchedShuffleHeader(mapId, reduceRange.getFirst(),
+          reduceRange.getLast() - reduceRange.getFirst() + 1);
+      for (int reduce = reduceRange.getFirst(); reduce <= reduceRange.getLast(); reduce++) {
+        TezIndexRecord indexRecord = outputInfo.spillRecord.getIndex(reduce);
+        header.setPartition(reduce, indexRecord.getPartLength(), indexRecord.getRawLength());
+      }
+      return header;
+    }
+
     protected void setResponseHeaders(HttpResponse response, boolean keepAliveParam, long contentLength) {
       if (connectionKeepAliveEnabled || keepAliveParam) {
         response.setHeader(HttpHeaders.Names.CONTENT_LENGTH, String.valueOf(contentLength));
@@ -1343,13 +1427,22 @@ public class ShuffleHandler extends AuxiliaryService {
     protected ChannelFuture sendMapOutput(ChannelHandlerContext ctx, Channel ch,
                                           String user, String mapId, Range reduceRange, MapOutputInfo outputInfo)
         throws IOException {
+      return sendMapOutput(ctx, ch, user, mapId, reduceRange, outputInfo, false);
+    }
+
+    /**
+     * Send the partitions in reduceRange of a map output. The headers of all partitions go out
+     * in a single write, followed by one transfer of the contiguous partition bodies.
+     * @param batched describe the partitions with one {@link BatchedShuffleHeader} instead of
+     *                a {@link ShuffleHeader} per partition
+     */
+    protected ChannelFuture sendMapOutput(ChannelHandlerContext ctx, Channel ch,
+                                          String user, String mapId, Range reduceRange,
+                                          MapOutputInfo outputInfo, boolean batched)
+        throws IOException {
       TezIndexRecord firstIndex = null;
       TezIndexRecord lastIndex = null;
 
-      DataOutputBuffer dobRange = new DataOutputBuffer();
-      // Indicate how many record to be written
-      WritableUtils.writeVInt(dobRange, reduceRange.getLast() - reduceRange.getFirst() + 1);
-      ch.write(wrappedBuffer(dobRange.getData(), 0, dobRange.getLength()));
       for (int reduce = reduceRange.getFirst(); reduce <= reduceRange.getLast(); reduce++) {
         TezIndexRecord index = outputInfo.spillRecord.getIndex(reduce);
         // Records are only valid if they have a non-zero part length
@@ -1359,11 +1452,24 @@ public class ShuffleHandler extends AuxiliaryService {
           }
           lastIndex = index;
         }
+      }
 
-        ShuffleHeader header = new ShuffleHeader(mapId, index.getPartLength(), index.getRawLength(), reduce);
-        DataOutputBuffer dob = new DataOutputBuffer();
-        header.write(dob);
-        ch.write(wrappedBuffer(dob.getData(), 0, dob.getLength()));
+      DataOutputBuffer dob = new DataOutputBuffer();
+      if (batched) {
+        createBatchedHeader(mapId, reduceRange, outputInfo).write(dob);
+      } else {
+        // Indicate how many record to be written
+        WritableUtils.writeVInt(dob, reduceRange.getLast() - reduceRange.getFirst() + 1);
+        for (int reduce = reduceRange.getFirst(); reduce <= reduceRange.getLast(); reduce++) {
+          TezIndexRecord index = outputInfo.spillRecord.getIndex(reduce);
+          ShuffleHeader header = new ShuffleHeader(mapId, index.getPartLength(), index.getRawLength(), reduce);
+          header.write(dob);
+        }
+      }
+      ChannelFuture headerFuture = ch.write(wrappedBuffer(dob.getData(), 0, dob.getLength()));
+      if (firstIndex == null) {
+        // All partitions are empty, the headers are all there is to send
+        return headerFuture;
       }
 
       final long rangeOffset = firstIndex.getStartOffset();
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.auxservices;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.tez.runtime.library.api.PushShuffleService.Segment;
+import org.apache.tez.runtime.library.common.shuffle.PushShuffle;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLocalPushShuffleService {
+
+  private static final String SHUFFLE_ID = "application_1_0001_1_Map 1_Reducer 2";
+
+  private File localDir;
+  private LocalPushShuffleService producer;
+  private LocalPushShuffleService consumer;
+
+  @Before
+  public void setup() throws IOException {
+    localDir = new File(System.getProperty("test.build.data",
+        System.getProperty("java.io.tmpdir")), TestLocalPushShuffleService.class.getName());
+    FileUtils.deleteDirectory(localDir);
+    Configuration conf = new Configuration();
+    conf.set(LocalPushShuffleService.LOCAL_DIR, localDir.getAbsolutePath());
+    producer = new LocalPushShuffleService();
+    producer.initialize(conf);
+    consumer = new LocalPushShuffleService();
+    consumer.initialize(conf);
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    producer.close();
+    consumer.close();
+    FileUtils.deleteDirectory(localDir);
+  }
+
+  @Test(timeout = 5000)
+  public void testPushAndLocate() throws IOException {
+    byte[] first = "first segment".getBytes("UTF-8");
+    byte[] second = "second".getBytes("UTF-8");
+    push("attempt_0", 3, first);
+    push("attempt_1", 3, second);
+
+    Segment segment = consumer.locate(SHUFFLE_ID, 3, "attempt_1");
+    assertNotNull(segment);
+    assertEquals(second.length, segment.getPartLength());
+    assertEquals(2 * second.length, segment.getRawLength());
+    assertArrayEquals(second, read(segment));
+    assertArrayEquals(first, read(consumer.locate(SHUFFLE_ID, 3, "attempt_0")));
+
+    // segments of other partitions and outputs which were not pushed
+    assertNull(consumer.locate(SHUFFLE_ID, 3, "attempt_2"));
+    assertNull(consumer.locate(SHUFFLE_ID, 4, "attempt_0"));
+
+    // segments pushed after the file was scanned are found as well
+    byte[] third = "third".getBytes("UTF-8");
+    push("attempt_2", 3, third);
+    assertArrayEquals(third, read(consumer.locate(SHUFFLE_ID, 3, "attempt_2")));
+  }
+
+  @Test(timeout = 5000)
+  public void testFailedPush() throws IOException {
+    byte[] first = "first segment".getBytes("UTF-8");
+    push("attempt_0", 0, first);
+    File file = producer.getPartitionFile(SHUFFLE_ID, 0);
+    long length = file.length();
+
+    try {
+      producer.push(SHUFFLE_ID, 0, "attempt_1", new ByteArrayInputStream(new byte[10]), 20, 20);
+      fail("Expected the push of a short segment to fail");
+    } catch (IOException e) {
+      // expected
+    }
+    assertEquals(length, file.length());
+    assertNull(consumer.locate(SHUFFLE_ID, 0, "attempt_1"));
+
+    byte[] second = "second".getBytes("UTF-8");
+    push("attempt_1", 0, second);
+    assertArrayEquals(first, read(consumer.locate(SHUFFLE_ID, 0, "attempt_0")));
+    assertArrayEquals(second, read(consumer.locate(SHUFFLE_ID, 0, "attempt_1")));
+  }
+
+  @Test(timeout = 5000)
+  public void testIncompleteBlock() throws IOException {
+    byte[] first = "first segment".getBytes("UTF-8");
+    push("attempt_0", 0, first);
+    File file = producer.getPartitionFile(SHUFFLE_ID, 0);
+    long length = file.length();
+    byte[] second = "second".getBytes("UTF-8");
+    push("attempt_1", 0, second);
+
+    // a block which is still being appended is not taken
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(file.length() - 1);
+      assertNull(consumer.locate(SHUFFLE_ID, 0, "attempt_1"));
+      raf.setLength(length + 5);
+      assertNull(consumer.locate(SHUFFLE_ID, 0, "attempt_1"));
+    } finally {
+      raf.close();
+    }
+    assertArrayEquals(first, read(consumer.locate(SHUFFLE_ID, 0, "attempt_0")));
+  }
+
+  @Test(timeout = 5000)
+  public void testLocalDirRequired() {
+    try {
+      new LocalPushShuffleService().initialize(new Configuration());
+      fail("Expected the service to require a local dir");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains(LocalPushShuffleService.LOCAL_DIR));
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void testDelete() throws IOException {
+    ApplicationId appId = ApplicationId.newInstance(1, 1);
+    ApplicationId otherAppId = ApplicationId.newInstance(1, 10);
+    String dag1 = PushShuffle.getShuffleId(appId, 1, "Map 1", "Reducer 2");
+    String dag10 = PushShuffle.getShuffleId(appId, 10, "Map 1", "Reducer 2");
+    String otherApp = PushShuffle.getShuffleId(otherAppId, 1, "Map 1", "Reducer 2");
+    byte[] data = "segment".getBytes("UTF-8");
+    for (String shuffleId : new String[] { dag1, dag10, otherApp }) {
+      producer.push(shuffleId, 0, "attempt_0", new ByteArrayInputStream(data), data.length,
+          data.length);
+      assertNotNull(consumer.locate(shuffleId, 0, "attempt_0"));
+    }
+
+    consumer.deleteDag(appId, 1);
+    assertFalse(producer.getPartitionFile(dag1, 0).getParentFile().exists());
+    assertNull(consumer.locate(dag1, 0, "attempt_0"));
+    assertNotNull(consumer.locate(dag10, 0, "attempt_0"));
+    assertNotNull(consumer.locate(otherApp, 0, "attempt_0"));
+
+    consumer.deleteApplication(appId);
+    assertFalse(producer.getPartitionFile(dag10, 0).getParentFile().exists());
+    assertNotNull(consumer.locate(otherApp, 0, "attempt_0"));
+  }
+
+  private void push(String pathComponent, int partition, byte[] data) throws IOException {
+    producer.push(SHUFFLE_ID, partition, pathComponent, new ByteArrayInputStream(data),
+        2 * data.length, data.length);
+  }
+
+  private static byte[] read(Segment segment) throws IOException {
+    byte[] data = new byte[(int) segment.getPartLength()];
+    RandomAccessFile raf = new RandomAccessFile(segment.getPath().toUri().getPath(), "r");
+    try {
+      raf.seek(segment.getOffset());
+      raf.readFully(data);
+    } finally {
+      raf.close();
+    }
+    return data;
+  }
+}
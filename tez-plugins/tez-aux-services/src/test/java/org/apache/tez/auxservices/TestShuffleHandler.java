@@ -29,6 +29,7 @@ import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.File;
@@ -55,6 +56,7 @@ import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.mapred.JobID;
 import org.apache.hadoop.mapred.MapTask;
@@ -62,7 +64,11 @@ import org.apache.hadoop.mapreduce.TypeConverter;
 import org.apache.tez.runtime.library.common.security.SecureShuffleUtils;
 import org.apache.tez.common.security.JobTokenIdentifier;
 import org.apache.tez.common.security.JobTokenSecretManager;
+import org.apache.tez.runtime.library.common.shuffle.PushShuffle;
+import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.BatchedShuffleHeader;
 import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.ShuffleHeader;
+import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
 import org.apache.hadoop.metrics2.MetricsSystem;
 import org.apache.hadoop.metrics2.impl.MetricsSystemImpl;
 import org.apache.hadoop.security.UserGroupInformation;
@@ -121,7 +127,8 @@ public class TestShuffleHandler {
                                        String dagId, String user, Range reduceRange,
                                        HttpResponse response,
                                        boolean keepAliveParam,
-                                       Map<String, MapOutputInfo> infoMap) throws IOException {
+                                       Map<String, MapOutputInfo> infoMap,
+                                       boolean batched) throws IOException {
           // Do nothing.
         }
         @Override
@@ -245,7 +252,8 @@ public class TestShuffleHandler {
                                          String dagId, String user, Range reduceRange,
                                          HttpResponse response,
                                          boolean keepAliveParam,
-                                         Map<String, MapOutputInfo> infoMap) throws IOException {
+                                         Map<String, MapOutputInfo> infoMap,
+                                         boolean batched) throws IOException {
             // Only set response headers and skip everything else
             // send some dummy value for content-length
             super.setResponseHeaders(response, keepAliveParam, 100);
@@ -361,7 +369,7 @@ public class TestShuffleHandler {
                                          Range reduceRange,
                                          HttpResponse response,
                                          boolean keepAliveParam,
-                                         Map<String, MapOutputInfo> infoMap)
+                                         Map<String, MapOutputInfo> infoMap, boolean batched)
               throws IOException {
             // Send some dummy data (populate content length details)
             ShuffleHeader header =
@@ -578,7 +586,8 @@ public class TestShuffleHandler {
                                          String dagId, String user, Range reduceRange,
                                          HttpResponse response,
                                          boolean keepAliveParam,
-                                         Map<String, MapOutputInfo> infoMap) throws IOException {
+                                         Map<String, MapOutputInfo> infoMap,
+                                         boolean batched) throws IOException {
             // Do nothing.
           }
           @Override
@@ -748,6 +757,132 @@ public class TestShuffleHandler {
     }
   }
 
+  /**
+   * Fetch a range of partitions with and without batched framing, both carrying the same
+   * partition bodies.
+   */
+  @Test(timeout = 10000)
+  public void testBatchedMapOutput() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(ShuffleHandler.SHUFFLE_PORT_CONFIG_KEY, 0);
+    conf.set(CommonConfigurationKeysPublic.HADOOP_SECURITY_AUTHENTICATION,
+        "simple");
+    UserGroupInformation.setConfiguration(conf);
+    File absLogDir = new File("target", TestShuffleHandler.class.
+        getSimpleName() + "LocDir").getAbsoluteFile();
+    conf.set(YarnConfiguration.NM_LOCAL_DIRS, absLogDir.getAbsolutePath());
+    ApplicationId appId = ApplicationId.newInstance(12345, 1);
+    String appAttemptId = "attempt_12345_1_m_1_0";
+    String user = "randomUser";
+    File appAttemptDir = new File(StringUtils.join(Path.SEPARATOR,
+        new String[] { absLogDir.getAbsolutePath(), ShuffleHandler.USERCACHE, user,
+            ShuffleHandler.APPCACHE, appId.toString(), "dag_1/output", appAttemptId }));
+    appAttemptDir.mkdirs();
+    // three partitions, the middle one empty
+    byte[] data = new byte[30];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    FileOutputStream out = new FileOutputStream(new File(appAttemptDir, "file.out"));
+    out.write(data);
+    out.close();
+    TezSpillRecord spillRecord = new TezSpillRecord(3);
+    spillRecord.putIndex(new TezIndexRecord(0, 15, 10), 0);
+    spillRecord.putIndex(new TezIndexRecord(10, 0, 0), 1);
+    spillRecord.putIndex(new TezIndexRecord(10, 25, 20), 2);
+    spillRecord.writeToFile(
+        new Path(new File(appAttemptDir, "file.out.index").getAbsolutePath()), conf);
+
+    ShuffleHandler shuffleHandler = new ShuffleHandler() {
+      @Override
+      protected Shuffle getShuffle(Configuration conf) {
+        // replace the shuffle handler with one stubbed for testing
+        return new Shuffle(conf) {
+          @Override
+          protected void verifyRequest(String appid, ChannelHandlerContext ctx,
+              HttpRequest request, HttpResponse response, URL requestUri)
+              throws IOException {
+            // Do nothing.
+          }
+        };
+      }
+    };
+    shuffleHandler.init(conf);
+    try {
+      shuffleHandler.start();
+      DataOutputBuffer outputBuffer = new DataOutputBuffer();
+      Token<JobTokenIdentifier> jt =
+          new Token<JobTokenIdentifier>("identifier".getBytes(),
+              "password".getBytes(), new Text(user), new Text("shuffleService"));
+      jt.write(outputBuffer);
+      shuffleHandler
+          .initializeApplication(new ApplicationInitializationContext(user,
+              appId, ByteBuffer.wrap(outputBuffer.getData(), 0,
+              outputBuffer.getLength())));
+      String baseUrl = "http://127.0.0.1:"
+          + shuffleHandler.getConfig().get(ShuffleHandler.SHUFFLE_PORT_CONFIG_KEY)
+          + "/mapOutput?job=job_12345_0001&dag=1&reduce=0-2&keepAlive=true";
+
+      DataInputStream is = fetchMapOutput(new URL(baseUrl + "&"
+          + BatchedShuffleHeader.HTTP_PARAM_NAME + "=true&map=" + appAttemptId));
+      int count = WritableUtils.readVInt(is);
+      Assert.assertTrue(BatchedShuffleHeader.isBatched(count));
+      BatchedShuffleHeader batchedHeader = new BatchedShuffleHeader();
+      batchedHeader.readFields(is, count);
+      Assert.assertEquals(appAttemptId, batchedHeader.getMapId());
+      Assert.assertEquals(0, batchedHeader.getFirstPartition());
+      Assert.assertEquals(3, batchedHeader.getPartitionCount());
+      long[][] lengths = { {10, 15}, {0, 0}, {20, 25} };
+      for (int i = 0; i < 3; i++) {
+        ShuffleHeader header = batchedHeader.getHeader(i);
+        Assert.assertEquals(i, header.getPartition());
+        Assert.assertEquals(lengths[i][0], header.getCompressedLength());
+        Assert.assertEquals(lengths[i][1], header.getUncompressedLength());
+      }
+      byte[] body = new byte[data.length];
+      is.readFully(body);
+      Assert.assertArrayEquals(data, body);
+      Assert.assertEquals(0, is.available());
+      is.close();
+
+      is = fetchMapOutput(new URL(baseUrl + "&map=" + appAttemptId));
+      Assert.assertEquals(3, WritableUtils.readVInt(is));
+      for (int i = 0; i < 3; i++) {
+        ShuffleHeader header = new ShuffleHeader();
+        header.readFields(is);
+        Assert.assertEquals(appAttemptId, header.getMapId());
+        Assert.assertEquals(i, header.getPartition());
+        Assert.assertEquals(lengths[i][0], header.getCompressedLength());
+      }
+      is.readFully(body);
+      Assert.assertArrayEquals(data, body);
+      Assert.assertEquals(0, is.available());
+      is.close();
+    } finally {
+      shuffleHandler.stop();
+      FileUtil.fullyDelete(absLogDir);
+    }
+  }
+
+  /**
+   * @return the complete response body, whose length matches the content length
+   */
+  private static DataInputStream fetchMapOutput(URL url) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    conn.setRequestProperty(ShuffleHeader.HTTP_HEADER_NAME,
+        ShuffleHeader.DEFAULT_HTTP_HEADER_NAME);
+    conn.setRequestProperty(ShuffleHeader.HTTP_HEADER_VERSION,
+        ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION);
+    conn.connect();
+    Assert.assertEquals(HttpURLConnection.HTTP_OK, conn.getResponseCode());
+    byte[] response = new byte[conn.getContentLength()];
+    DataInputStream is = new DataInputStream(conn.getInputStream());
+    is.readFully(response);
+    is.close();
+    conn.disconnect();
+    return new DataInputStream(new ByteArrayInputStream(response));
+  }
+
   private static void createShuffleHandlerFiles(File logDir, String user,
       String appId, String appAttemptId, Configuration conf,
       List<File> fileMap) throws IOException {
@@ -1004,7 +1139,9 @@ public class TestShuffleHandler {
           protected void populateHeaders(List<String> mapIds,
                                          String outputBaseStr, String dagId, String user, Range reduceRange,
                                          HttpResponse response,
-                                         boolean keepAliveParam, Map<String, MapOutputInfo> infoMap)
+                                         boolean keepAliveParam,
+                                         Map<String, MapOutputInfo> infoMap,
+                                         boolean batched)
               throws IOException {
             // Only set response headers and skip everything else
             // send some dummy value for content-length
@@ -1092,12 +1229,22 @@ public class TestShuffleHandler {
     File absLogDir = new File("target", TestShuffleHandler.class.
         getSimpleName() + "LocDir").getAbsoluteFile();
     conf.set(YarnConfiguration.NM_LOCAL_DIRS, absLogDir.getAbsolutePath());
+    File pushDir = new File(absLogDir, "push");
+    conf.set(LocalPushShuffleService.LOCAL_DIR, pushDir.getAbsolutePath());
     ApplicationId appId = ApplicationId.newInstance(12345, 1);
     String appAttemptId = "attempt_12345_1_m_1_0";
     String user = "randomUser";
     List<File> fileMap = new ArrayList<File>();
     createShuffleHandlerFiles(absLogDir, user, appId.toString(), appAttemptId,
         conf, fileMap);
+    LocalPushShuffleService pushService = new LocalPushShuffleService();
+    pushService.initialize(conf);
+    File dag1PushDir = pushService.getPartitionFile(
+        PushShuffle.getShuffleId(appId, 1, "Map 1", "Reducer 2"), 0).getParentFile();
+    File dag2PushDir = pushService.getPartitionFile(
+        PushShuffle.getShuffleId(appId, 2, "Map 1", "Reducer 2"), 0).getParentFile();
+    Assert.assertTrue(dag1PushDir.mkdirs());
+    Assert.assertTrue(dag2PushDir.mkdirs());
     ShuffleHandler shuffleHandler = new ShuffleHandler() {
       @Override
       protected Shuffle getShuffle(Configuration conf) {
@@ -1150,6 +1297,8 @@ public class TestShuffleHandler {
         DataInputStream is = new DataInputStream(conn.getInputStream());
         is.close();
         Assert.assertFalse("Dag Directory was not deleted!", dagDir.exists());
+        Assert.assertFalse("Pushed shuffle was not deleted!", dag1PushDir.exists());
+        Assert.assertTrue("Pushed shuffle of another dag was deleted!", dag2PushDir.exists());
       } catch (EOFException e) {
         // ignore
       }
@@ -30,6 +30,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileSystem.Statistics;
 import org.apache.hadoop.yarn.util.ResourceCalculatorProcessTree;
+import org.apache.tez.common.ChecksumTimeUpdater;
 import org.apache.tez.common.GcTimeUpdater;
 import org.apache.tez.common.counters.TaskCounter;
 import org.apache.tez.common.counters.TezCounters;
@@ -54,6 +55,7 @@ public class TaskCounterUpdater {
   private Map<String, FileSystemStatisticUpdater> statisticUpdaters =
      new HashMap<String, FileSystemStatisticUpdater>();
   protected final GcTimeUpdater gcUpdater;
+  private final ChecksumTimeUpdater checksumUpdater;
   private ResourceCalculatorProcessTree pTree;
   private long initCpuCumulativeTime = 0;
   private final String pid;
@@ -62,6 +64,7 @@ public class TaskCounterUpdater {
     this.tezCounters = counters;
     this.conf = conf;   
     this.gcUpdater = new GcTimeUpdater(tezCounters);
+    this.checksumUpdater = new ChecksumTimeUpdater(tezCounters);
     this.pid = pid;
     initResourceCalculatorPlugin();
     recordInitialCpuStats();
@@ -99,6 +102,7 @@ public class TaskCounterUpdater {
     }
 
     gcUpdater.incrementGcCounter();
+    checksumUpdater.incrementChecksumCounter();
     updateResourceCounters();
   }
   
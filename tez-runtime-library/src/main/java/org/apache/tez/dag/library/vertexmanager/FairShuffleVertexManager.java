@@ -40,7 +40,6 @@ import org.apache.tez.runtime.api.TaskAttemptIdentifier;
 import javax.annotation.Nullable;
 
 import java.io.IOException;
-import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -208,38 +207,6 @@ public class FairShuffleVertexManager extends ShuffleVertexManagerBase {
     return (a + (b - 1)) / b;
   }
 
-  public long[] estimatePartitionSize() {
-    boolean partitionStatsReported = false;
-    int numOfPartitions = pendingTasks.size();
-    long[] estimatedPartitionOutputSize = new long[numOfPartitions];
-    for (int i = 0; i < numOfPartitions; i++) {
-      if (getCurrentlyKnownStatsAtIndex(i) > 0) {
-        partitionStatsReported = true;
-        break;
-      }
-    }
-
-    if (!partitionStatsReported) {
-      // partition stats reporting isn't enabled at the source. Use
-      // expected source output size and assume all partitions are evenly
-      // distributed.
-      if (numOfPartitions > 0) {
-        long estimatedPerPartitionSize =
-                getExpectedTotalBipartiteSourceTasksOutputSize().divide(
-                        BigInteger.valueOf(numOfPartitions)).longValue();
-        for (int i = 0; i < numOfPartitions; i++) {
-          estimatedPartitionOutputSize[i] = estimatedPerPartitionSize;
-        }
-      }
-    } else {
-      for (int i = 0; i < numOfPartitions; i++) {
-        estimatedPartitionOutputSize[i] =
-            MB * getExpectedStatsAtIndex(i);
-      }
-    }
-    return estimatedPartitionOutputSize;
-  }
-
   /*
    * The class calculates how partitions and source tasks should be
    * grouped together. It allows a destination task to fetch a consecutive
@@ -261,10 +228,14 @@ public class FairShuffleVertexManager extends ShuffleVertexManagerBase {
    * each of which will fetch the large partition from a range
    * of source tasks.
    */
-  private class PartitionsGroupingCalculator
+  static class PartitionsGroupingCalculator
       implements Iterable<DestinationTaskInputsProperty> {
 
-    private final FairSourceVertexInfo sourceVertexInfo;
+    private final int numSourceTasks;
+    private final long desiredTaskInputDataSize;
+    // whether a partition larger than desiredTaskInputDataSize is split
+    // across destination tasks by source tasks
+    private final boolean splitPartitions;
 
     // Estimated aggregated partition output size when the job is done.
     private long[] estimatedPartitionOutputSize;
@@ -291,9 +262,12 @@ public class FairShuffleVertexManager extends ShuffleVertexManagerBase {
     private int numOfBaseSourceTasks = 0;
     private int numOfBaseDestinationTasks = 0;
     public PartitionsGroupingCalculator(long[] estimatedPartitionOutputSize,
-        FairSourceVertexInfo sourceVertexInfo) {
+        int numSourceTasks, long desiredTaskInputDataSize,
+        boolean splitPartitions) {
       this.estimatedPartitionOutputSize = estimatedPartitionOutputSize;
-      this.sourceVertexInfo = sourceVertexInfo;
+      this.numSourceTasks = numSourceTasks;
+      this.desiredTaskInputDataSize = desiredTaskInputDataSize;
+      this.splitPartitions = splitPartitions;
     }
 
     // Start the processing of the next group of partitions
@@ -332,7 +306,7 @@ public class FairShuffleVertexManager extends ShuffleVertexManagerBase {
     private boolean computeSourceTasksGrouping() {
       boolean finalizeCurrentPartitions = true;
       int groupCount = Ints.checkedCast(ceil(getCurrentAndNextPartitionSize(),
-          config.getDesiredTaskInputDataSize()));
+          desiredTaskInputDataSize));
       if (groupCount <= 1) {
         // There is no enough data so far to reach desiredTaskInputDataSize.
         addNextPartition();
@@ -340,7 +314,7 @@ public class FairShuffleVertexManager extends ShuffleVertexManagerBase {
           // We have reached the last partition.
           // Consume from all source tasks.
           this.numOfBaseDestinationTasks = 1;
-          this.numOfBaseSourceTasks = this.sourceVertexInfo.numTasks;
+          this.numOfBaseSourceTasks = this.numSourceTasks;
         } else {
           finalizeCurrentPartitions = false;
         }
@@ -348,22 +322,22 @@ public class FairShuffleVertexManager extends ShuffleVertexManagerBase {
         // The first partition in the current group exceeds
         // desiredTaskInputDataSize.
         addNextPartition();
-        if (mgrConfig.getFairRoutingType().reduceParallelismEnabled()) {
+        if (!splitPartitions) {
           // Consume from all source tasks
           this.numOfBaseDestinationTasks = 1;
-          this.numOfBaseSourceTasks = this.sourceVertexInfo.numTasks;
+          this.numOfBaseSourceTasks = this.numSourceTasks;
         } else {
-          // When groupCount > sourceVertexInfo.numTasks, it means
+          // When groupCount > numSourceTasks, it means
           // sizeOfPartitions is too big so that even if
           // we just have one destination task fetch from one source task the
           // input size still exceeds desiredTaskInputDataSize.
-          if ((this.sourceVertexInfo.numTasks >= groupCount)) {
+          if ((this.numSourceTasks >= groupCount)) {
             this.numOfBaseDestinationTasks = groupCount -
-                this.sourceVertexInfo.numTasks % groupCount;
+                this.numSourceTasks % groupCount;
             this.numOfBaseSourceTasks =
-                this.sourceVertexInfo.numTasks / groupCount;
+                this.numSourceTasks / groupCount;
           } else {
-            this.numOfBaseDestinationTasks = this.sourceVertexInfo.numTasks;
+            this.numOfBaseDestinationTasks = this.numSourceTasks;
             this.numOfBaseSourceTasks = 1;
           }
         }
@@ -373,7 +347,7 @@ public class FairShuffleVertexManager extends ShuffleVertexManagerBase {
         // Let us process the existing partitions in the current group. The
         // next partition will be processed in the next group.
         this.numOfBaseDestinationTasks = 1;
-        this.numOfBaseSourceTasks = this.sourceVertexInfo.numTasks;
+        this.numOfBaseSourceTasks = this.numSourceTasks;
       }
       return finalizeCurrentPartitions;
     }
@@ -393,7 +367,7 @@ public class FairShuffleVertexManager extends ShuffleVertexManagerBase {
 
         @Override
         public boolean hasNext() {
-          return j < sourceVertexInfo.numTasks || !visitedAtLeastOnce;
+          return j < numSourceTasks || !visitedAtLeastOnce;
         }
 
         @Override
@@ -411,7 +385,8 @@ public class FairShuffleVertexManager extends ShuffleVertexManagerBase {
       };
     }
 
-    public void compute() {
+    public void compute(Map<Integer, DestinationTaskInputsProperty>
+        destinationInputsProperties) {
       int destinationIndex = 0;
       while (hasPartitionsLeft()) {
         if (!computeSourceTasksGrouping()) {
@@ -419,8 +394,7 @@ public class FairShuffleVertexManager extends ShuffleVertexManagerBase {
         }
         Iterator<DestinationTaskInputsProperty> it = iterator();
         while(it.hasNext()) {
-          sourceVertexInfo.getDestinationInputsProperties().put(
-              destinationIndex,it.next());
+          destinationInputsProperties.put(destinationIndex, it.next());
           destinationIndex++;
         }
         startNextPartitionsGroup();
@@ -467,8 +441,10 @@ public class FairShuffleVertexManager extends ShuffleVertexManagerBase {
   private void computeParallelism(long[] estimatedPartitionOutputSize,
       FairSourceVertexInfo sourceVertexInfo) {
     PartitionsGroupingCalculator calculator = new PartitionsGroupingCalculator(
-        estimatedPartitionOutputSize, sourceVertexInfo);
-    calculator.compute();
+        estimatedPartitionOutputSize, sourceVertexInfo.numTasks,
+        config.getDesiredTaskInputDataSize(),
+        mgrConfig.getFairRoutingType().fairParallelismEnabled());
+    calculator.compute(sourceVertexInfo.getDestinationInputsProperties());
   }
 
   @Override
@@ -0,0 +1,348 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.dag.library.vertexmanager;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.apache.hadoop.classification.InterfaceAudience.Public;
+import org.apache.hadoop.classification.InterfaceStability.Evolving;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.tez.common.TezUtils;
+import org.apache.tez.dag.api.EdgeProperty;
+import org.apache.tez.dag.api.EdgeProperty.DataMovementType;
+import org.apache.tez.dag.api.InputDescriptor;
+import org.apache.tez.dag.api.TezUncheckedException;
+import org.apache.tez.dag.api.UserPayload;
+import org.apache.tez.dag.api.VertexManagerPlugin;
+import org.apache.tez.dag.api.VertexManagerPluginContext;
+import org.apache.tez.dag.api.VertexManagerPluginContext.ScheduleTaskRequest;
+import org.apache.tez.dag.api.VertexManagerPluginDescriptor;
+import org.apache.tez.dag.api.event.VertexState;
+import org.apache.tez.dag.api.event.VertexStateUpdate;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.InputSpecUpdate;
+import org.apache.tez.runtime.api.TaskAttemptIdentifier;
+import org.apache.tez.runtime.api.TaskIdentifier;
+import org.apache.tez.runtime.api.events.InputConfigureVertexTasksEvent;
+import org.apache.tez.runtime.api.events.InputDataInformationEvent;
+import org.apache.tez.runtime.api.events.InputUpdatePayloadEvent;
+import org.apache.tez.runtime.api.events.VertexManagerEvent;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.ConfigUtils;
+import org.apache.tez.runtime.library.partitioner.RangePartitioner;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.VertexManagerEventPayloadProto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Computes the split points of a {@link RangePartitioner} from the keys
+ * sampled by the source vertices, before the tasks of the vertex start, so
+ * that a sampling stage and a range partitioned stage run in the same DAG.
+ *
+ * The managed vertex is the one whose output is range partitioned, e.g. the
+ * map vertex of a total order sort. Its source vertices sample the keys, with
+ * {@link TezRuntimeConfiguration#TEZ_RUNTIME_REPORT_KEY_SAMPLES} set on their
+ * output to the managed vertex, typically from a fraction of the input. Each
+ * source task sends the same number of samples however many keys it wrote, so
+ * its samples are weighted by the number of records it reports. Once all the
+ * source vertices have succeeded, the split points are computed so that each
+ * task of the range partitioned destination vertex gets about the same number
+ * of records, and written to the path the RangePartitioner of the managed
+ * vertex reads them from. All the tasks are scheduled then.
+ *
+ * Events of the root inputs of the managed vertex are routed one to one, as
+ * by the default vertex manager of vertices with root inputs.
+ */
+@Public
+@Evolving
+public class RangePartitionVertexManager extends VertexManagerPlugin {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(RangePartitionVertexManager.class);
+
+  /**
+   * The path to write the split points to. The same path has to be set with
+   * {@link RangePartitioner#TEZ_RANGE_PARTITIONER_SPLIT_POINTS_PATH} for the
+   * partitioner of the managed vertex.
+   */
+  public static final String TEZ_RANGE_PARTITION_VERTEX_MANAGER_SPLIT_POINTS_PATH =
+      "tez.range-partition-vertex-manager.split-points.path";
+
+  /**
+   * The range partitioned destination vertex, whose parallelism is the number
+   * of partitions. Optional if the managed vertex has one scatter gather
+   * destination.
+   */
+  public static final String TEZ_RANGE_PARTITION_VERTEX_MANAGER_DESTINATION_VERTEX =
+      "tez.range-partition-vertex-manager.destination-vertex";
+
+  private Configuration conf;
+  private Path splitPointsPath;
+  private RawComparator<?> comparator;
+
+  private final Set<String> pendingSourceVertices = Sets.newHashSet();
+  private final Set<TaskIdentifier> tasksWithSamples = Sets.newHashSet();
+  private final List<byte[]> samples = Lists.newArrayList();
+  // the number of records each sample stands for
+  private final List<Double> sampleWeights = Lists.newArrayList();
+  private boolean started;
+  private boolean scheduled;
+
+  public RangePartitionVertexManager(VertexManagerPluginContext context) {
+    super(context);
+  }
+
+  @Override
+  public void initialize() {
+    try {
+      conf = TezUtils.createConfFromUserPayload(getContext().getUserPayload());
+    } catch (IOException e) {
+      throw new TezUncheckedException(e);
+    }
+    String path = conf.get(TEZ_RANGE_PARTITION_VERTEX_MANAGER_SPLIT_POINTS_PATH);
+    if (path == null) {
+      throw new TezUncheckedException(TEZ_RANGE_PARTITION_VERTEX_MANAGER_SPLIT_POINTS_PATH
+          + " is not set for vertex: " + getContext().getVertexName());
+    }
+    splitPointsPath = new Path(path);
+    comparator = ConfigUtils.getIntermediateOutputKeyComparator(conf);
+  }
+
+  @Override
+  public synchronized void onVertexStarted(List<TaskAttemptIdentifier> completions) {
+    for (String sourceVertex : getContext().getInputVertexEdgeProperties().keySet()) {
+      pendingSourceVertices.add(sourceVertex);
+      getContext().registerForVertexStateUpdates(sourceVertex,
+          EnumSet.of(VertexState.SUCCEEDED));
+    }
+    started = true;
+    LOG.info("Vertex: {} waits for keys sampled by {}", getContext().getVertexName(),
+        pendingSourceVertices);
+    scheduleTasksIfReady();
+  }
+
+  @Override
+  public synchronized void onVertexStateUpdated(VertexStateUpdate stateUpdate) {
+    if (stateUpdate.getVertexState() == VertexState.SUCCEEDED) {
+      pendingSourceVertices.remove(stateUpdate.getVertexName());
+      scheduleTasksIfReady();
+    }
+  }
+
+  @Override
+  public synchronized void onSourceTaskCompleted(TaskAttemptIdentifier attempt) {
+    // the samples come with the vertex manager events
+  }
+
+  @Override
+  public synchronized void onVertexManagerEventReceived(VertexManagerEvent vmEvent) {
+    // events from multiple attempts of the same task are the same samples
+    if (!tasksWithSamples.add(vmEvent.getProducerAttemptIdentifier().getTaskIdentifier())) {
+      return;
+    }
+    VertexManagerEventPayloadProto proto;
+    try {
+      proto = VertexManagerEventPayloadProto.parseFrom(
+          ByteString.copyFrom(vmEvent.getUserPayload()));
+    } catch (InvalidProtocolBufferException e) {
+      throw new TezUncheckedException(e);
+    }
+    int numSamples = proto.getKeySamplesCount();
+    if (numSamples == 0) {
+      return;
+    }
+    // without a record count, all the samples weigh the same
+    double weight = proto.hasNumRecord() ? (double) proto.getNumRecord() / numSamples : 1;
+    for (ByteString sample : proto.getKeySamplesList()) {
+      samples.add(sample.toByteArray());
+      sampleWeights.add(weight);
+    }
+  }
+
+  @Override
+  public synchronized void onRootVertexInitialized(String inputName,
+      InputDescriptor inputDescriptor, List<Event> events) {
+    List<InputDataInformationEvent> dataInformationEvents = Lists.newLinkedList();
+    for (Event event : events) {
+      if (event instanceof InputConfigureVertexTasksEvent) {
+        InputConfigureVertexTasksEvent cEvent = (InputConfigureVertexTasksEvent) event;
+        Map<String, InputSpecUpdate> rootInputSpecUpdate = new HashMap<String, InputSpecUpdate>();
+        rootInputSpecUpdate.put(inputName, cEvent.getInputSpecUpdate() == null ?
+            InputSpecUpdate.getDefaultSinglePhysicalInputSpecUpdate() :
+            cEvent.getInputSpecUpdate());
+        getContext().reconfigureVertex(rootInputSpecUpdate, cEvent.getLocationHint(),
+            cEvent.getNumTasks());
+      } else if (event instanceof InputUpdatePayloadEvent) {
+        inputDescriptor.setUserPayload(UserPayload.create(
+            ((InputUpdatePayloadEvent) event).getUserPayload()));
+      } else if (event instanceof InputDataInformationEvent) {
+        InputDataInformationEvent dEvent = (InputDataInformationEvent) event;
+        dEvent.setTargetIndex(dEvent.getSourceIndex());
+        dataInformationEvents.add(dEvent);
+      }
+    }
+    getContext().addRootInputEvents(inputName, dataInformationEvents);
+  }
+
+  private void scheduleTasksIfReady() {
+    if (!started || scheduled || !pendingSourceVertices.isEmpty()) {
+      return;
+    }
+    int numPartitions = getNumPartitions();
+    double[] weights = new double[sampleWeights.size()];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = sampleWeights.get(i);
+    }
+    List<byte[]> splitPoints = RangePartitioner.computeSplitPoints(samples, weights,
+        comparator, numPartitions);
+    try {
+      RangePartitioner.writeSplitPoints(splitPoints, splitPointsPath, conf);
+    } catch (IOException e) {
+      throw new TezUncheckedException("Unable to write split points to " + splitPointsPath, e);
+    }
+    LOG.info("Wrote {} split points for {} partitions from {} samples to {}",
+        splitPoints.size(), numPartitions, samples.size(), splitPointsPath);
+    samples.clear();
+    sampleWeights.clear();
+    scheduled = true;
+
+    int numTasks = getContext().getVertexNumTasks(getContext().getVertexName());
+    List<ScheduleTaskRequest> tasks = Lists.newArrayListWithCapacity(numTasks);
+    for (int i = 0; i < numTasks; ++i) {
+      tasks.add(ScheduleTaskRequest.create(i, null));
+    }
+    getContext().scheduleTasks(tasks);
+  }
+
+  private int getNumPartitions() {
+    String destinationVertex = conf.get(TEZ_RANGE_PARTITION_VERTEX_MANAGER_DESTINATION_VERTEX);
+    if (destinationVertex == null) {
+      for (Map.Entry<String, EdgeProperty> entry :
+          getContext().getOutputVertexEdgeProperties().entrySet()) {
+        if (entry.getValue().getDataMovementType() == DataMovementType.SCATTER_GATHER) {
+          if (destinationVertex != null) {
+            throw new TezUncheckedException(
+                TEZ_RANGE_PARTITION_VERTEX_MANAGER_DESTINATION_VERTEX + " has to be set for"
+                    + " vertex: " + getContext().getVertexName() + " since it has more than"
+                    + " one scatter gather destination");
+          }
+          destinationVertex = entry.getKey();
+        }
+      }
+      if (destinationVertex == null) {
+        throw new TezUncheckedException("Vertex: " + getContext().getVertexName()
+            + " has no scatter gather destination");
+      }
+    }
+    int numPartitions = getContext().getVertexNumTasks(destinationVertex);
+    if (numPartitions <= 0) {
+      throw new TezUncheckedException("Parallelism of vertex: " + destinationVertex
+          + " has to be known before the tasks of vertex: " + getContext().getVertexName()
+          + " start, but is " + numPartitions);
+    }
+    return numPartitions;
+  }
+
+  /**
+   * Create a {@link VertexManagerPluginDescriptor} builder that can be used to
+   * configure the plugin.
+   *
+   * @param conf
+   *          {@link Configuration} May be modified in place. May be null if the
+   *          configuration parameters are to be set only via code. If
+   *          configuration values may be changed at runtime via a config file
+   *          then pass in a {@link Configuration} that is initialized from a
+   *          config file. The parameters that are not overridden in code will
+   *          be derived from the Configuration object.
+   * @return {@link RangePartitionVertexManagerConfigBuilder}
+   */
+  public static RangePartitionVertexManagerConfigBuilder createConfigBuilder(
+      @Nullable Configuration conf) {
+    return new RangePartitionVertexManagerConfigBuilder(conf);
+  }
+
+  /**
+   * Helper class to configure RangePartitionVertexManager
+   */
+  public static final class RangePartitionVertexManagerConfigBuilder {
+    private final Configuration conf;
+
+    private RangePartitionVertexManagerConfigBuilder(@Nullable Configuration conf) {
+      if (conf == null) {
+        this.conf = new Configuration(false);
+      } else {
+        this.conf = conf;
+      }
+    }
+
+    public RangePartitionVertexManagerConfigBuilder setSplitPointsPath(String path) {
+      conf.set(TEZ_RANGE_PARTITION_VERTEX_MANAGER_SPLIT_POINTS_PATH, path);
+      return this;
+    }
+
+    public RangePartitionVertexManagerConfigBuilder setDestinationVertex(String vertexName) {
+      conf.set(TEZ_RANGE_PARTITION_VERTEX_MANAGER_DESTINATION_VERTEX, vertexName);
+      return this;
+    }
+
+    /**
+     * Sets the key class and the comparator the samples are sorted with, which
+     * have to match the ones of the range partitioned output.
+     *
+     * @param keyClassName the key class name
+     * @param keyComparatorClassName the key comparator class name, or null to use the
+     *                               comparator of the key class
+     */
+    public RangePartitionVertexManagerConfigBuilder setKeyClassName(String keyClassName,
+        @Nullable String keyComparatorClassName) {
+      conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_KEY_CLASS, keyClassName);
+      if (keyComparatorClassName != null) {
+        conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_KEY_COMPARATOR_CLASS,
+            keyComparatorClassName);
+      }
+      return this;
+    }
+
+    public VertexManagerPluginDescriptor build() {
+      VertexManagerPluginDescriptor desc =
+          VertexManagerPluginDescriptor.create(
+              RangePartitionVertexManager.class.getName());
+
+      try {
+        return desc.setUserPayload(TezUtils.createUserPayloadFromConf(this.conf));
+      } catch (IOException e) {
+        throw new TezUncheckedException(e);
+      }
+    }
+  }
+}
@@ -50,6 +50,7 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -89,6 +90,23 @@ public class ShuffleVertexManager extends ShuffleVertexManagerBase {
       "tez.shuffle-vertex-manager.min-task-parallelism";
   public static final int TEZ_SHUFFLE_VERTEX_MANAGER_MIN_TASK_PARALLELISM_DEFAULT = 1;
 
+  /**
+   * Automatic parallelism determination may increase parallelism up to this
+   * value, when the expected input of the configured tasks is larger than the
+   * desired task input size. Partitions larger than the desired task input
+   * size are then split across several tasks, each of which processes the
+   * partition from a range of the source tasks, while small partitions are
+   * still combined. Hence the records of a key may be processed by several
+   * tasks, which only suits consumers which do not need all of them in one
+   * task. Configuring the vertex with more tasks than expected keeps the
+   * partitions small, so that fewer of them need to be split. Only works when
+   * there is one bipartite edge. A value which is not greater than the
+   * configured parallelism disables the increase.
+   */
+  public static final String TEZ_SHUFFLE_VERTEX_MANAGER_MAX_TASK_PARALLELISM =
+      "tez.shuffle-vertex-manager.max-task-parallelism";
+  public static final int TEZ_SHUFFLE_VERTEX_MANAGER_MAX_TASK_PARALLELISM_DEFAULT = -1;
+
 
   /**
    * In case of a ScatterGather connection, the fraction of source tasks which
@@ -114,6 +132,8 @@ public class ShuffleVertexManager extends ShuffleVertexManagerBase {
   private int[][] targetIndexes;
   private int basePartitionRange;
   private int remainderRangeForLastShuffler;
+  // routing of the destination tasks when parallelism has been increased
+  private HashMap<Integer, DestinationTaskInputsProperty> scaleUpRouting;
 
 
   public ShuffleVertexManager(VertexManagerPluginContext context) {
@@ -122,17 +142,24 @@ public class ShuffleVertexManager extends ShuffleVertexManagerBase {
 
   static class ShuffleVertexManagerConfig extends ShuffleVertexManagerBaseConfig {
     final int minTaskParallelism;
+    final int maxTaskParallelism;
     public ShuffleVertexManagerConfig(final boolean enableAutoParallelism,
         final long desiredTaskInputDataSize, final float slowStartMinFraction,
-        final float slowStartMaxFraction, final int minTaskParallelism) {
+        final float slowStartMaxFraction, final int minTaskParallelism,
+        final int maxTaskParallelism) {
       super(enableAutoParallelism, desiredTaskInputDataSize,
           slowStartMinFraction, slowStartMaxFraction);
       this.minTaskParallelism = minTaskParallelism;
-      LOG.info("minTaskParallelism {}", this.minTaskParallelism);
+      this.maxTaskParallelism = maxTaskParallelism;
+      LOG.info("minTaskParallelism {} maxTaskParallelism {}",
+          this.minTaskParallelism, this.maxTaskParallelism);
     }
     int getMinTaskParallelism() {
       return minTaskParallelism;
     }
+    int getMaxTaskParallelism() {
+      return maxTaskParallelism;
+    }
   }
 
   @Override
@@ -155,7 +182,9 @@ public class ShuffleVertexManager extends ShuffleVertexManagerBase {
             TEZ_SHUFFLE_VERTEX_MANAGER_MAX_SRC_FRACTION_DEFAULT)),
         Math.max(1, conf
             .getInt(TEZ_SHUFFLE_VERTEX_MANAGER_MIN_TASK_PARALLELISM,
-            TEZ_SHUFFLE_VERTEX_MANAGER_MIN_TASK_PARALLELISM_DEFAULT)));
+            TEZ_SHUFFLE_VERTEX_MANAGER_MIN_TASK_PARALLELISM_DEFAULT)),
+        conf.getInt(TEZ_SHUFFLE_VERTEX_MANAGER_MAX_TASK_PARALLELISM,
+            TEZ_SHUFFLE_VERTEX_MANAGER_MAX_TASK_PARALLELISM_DEFAULT));
     return mgrConfig;
   }
 
@@ -320,6 +349,23 @@ public class ShuffleVertexManager extends ShuffleVertexManagerBase {
           sourceIndices[destinationTaskIndex][0]);
     }
 
+    @Override
+    public void routeCompositeDataMovementEventsToDestination(int[] sourceTaskIndices,
+        int offset, int length, int destinationTaskIndex, int[] counts, int[] targets,
+        int[] sources) {
+      int partitionRange = basePartitionRange;
+      if (destinationTaskIndex == (numDestinationTasks-1)) {
+        partitionRange = remainderRangeForLastShuffler;
+      }
+      // same as the unbatched routing, without creating the target indices of the last task
+      int sourceIndex = destinationTaskIndex * basePartitionRange;
+      for (int i = 0; i < length; ++i) {
+        counts[i] = partitionRange;
+        targets[i] = sourceTaskIndices[offset + i] * partitionRange;
+        sources[i] = sourceIndex;
+      }
+    }
+
     @Override
     public EventRouteMetadata routeInputSourceTaskFailedEventToDestination(
         int sourceTaskIndex, int destinationTaskIndex) throws Exception {
@@ -475,6 +521,11 @@ public class ShuffleVertexManager extends ShuffleVertexManagerBase {
       desiredTaskParallelism = mgrConfig.getMinTaskParallelism();
     }
 
+    if (desiredTaskParallelism > currentParallelism &&
+        mgrConfig.getMaxTaskParallelism() > currentParallelism) {
+      return computeScaleUpRouting(currentParallelism);
+    }
+
     if(desiredTaskParallelism >= currentParallelism) {
       LOG.info("Not reducing auto parallelism for vertex: {}"
           + " since the desired parallelism of {} is greater than or equal"
@@ -525,9 +576,80 @@ public class ShuffleVertexManager extends ShuffleVertexManagerBase {
     return params;
   }
 
+  /**
+   * Increases parallelism by splitting the partitions larger than the desired
+   * task input size across destination tasks by source tasks, with
+   * {@link FairShuffleEdgeManager}. The desired task input size is raised if
+   * that would exceed the max task parallelism.
+   */
+  private ReconfigVertexParams computeScaleUpRouting(int currentParallelism) {
+    if (bipartiteSources > 1) {
+      LOG.info("Not increasing auto parallelism for vertex: {} since it has {}"
+          + " bipartite sources", getContext().getVertexName(), bipartiteSources);
+      return null;
+    }
+    Map.Entry<String, SourceVertexInfo> bipartiteSource =
+        getBipartiteInfo().iterator().next();
+    int numSourceTasks = bipartiteSource.getValue().numTasks;
+    int maxTaskParallelism = mgrConfig.getMaxTaskParallelism();
+    long[] estimatedPartitionOutputSize = estimatePartitionSize();
+
+    long desiredTaskInputDataSize = config.getDesiredTaskInputDataSize();
+    HashMap<Integer, DestinationTaskInputsProperty> routing;
+    while (true) {
+      routing = new HashMap<>();
+      new FairShuffleVertexManager.PartitionsGroupingCalculator(
+          estimatedPartitionOutputSize, numSourceTasks,
+          desiredTaskInputDataSize, true).compute(routing);
+      if (routing.size() <= maxTaskParallelism) {
+        break;
+      }
+      desiredTaskInputDataSize = FairShuffleVertexManager.ceil(
+          desiredTaskInputDataSize * routing.size(), maxTaskParallelism);
+    }
+
+    int finalTaskParallelism = routing.size();
+    if (finalTaskParallelism <= currentParallelism) {
+      LOG.info("Not increasing auto parallelism for vertex: {} since the"
+          + " partitions cannot be split into more than {} tasks",
+          getContext().getVertexName(), finalTaskParallelism);
+      return null;
+    }
+    LOG.info("Increasing auto parallelism for vertex: {} from {} to {} with"
+        + " task input size: {}", getContext().getVertexName(),
+        currentParallelism, finalTaskParallelism, desiredTaskInputDataSize);
+
+    FairEdgeConfiguration fairEdgeConfig =
+        new FairEdgeConfiguration(currentParallelism, routing);
+    EdgeManagerPluginDescriptor descriptor =
+        EdgeManagerPluginDescriptor.create(
+            FairShuffleEdgeManager.class.getName());
+    descriptor.setUserPayload(fairEdgeConfig.getBytePayload());
+    bipartiteSource.getValue().newDescriptor = descriptor;
+    scaleUpRouting = routing;
+    return new ReconfigVertexParams(finalTaskParallelism, null);
+  }
+
   @Override
   void postReconfigVertex() {
+    if (scaleUpRouting != null) {
+      configureScaleUpTargetMapping(pendingTasks.size());
+    } else {
       configureTargetMapping(pendingTasks.size());
+    }
+  }
+
+  private void configureScaleUpTargetMapping(int tasks) {
+    // the stats of a split partition are not split by source task, so the
+    // tasks which process it are ordered by the size of the whole partition
+    targetIndexes = new int[tasks][];
+    for (int idx = 0; idx < tasks; ++idx) {
+      DestinationTaskInputsProperty property = scaleUpRouting.get(idx);
+      targetIndexes[idx] = new int[property.getNumOfPartitions()];
+      for (int i = 0; i < targetIndexes[idx].length; ++i) {
+        targetIndexes[idx][i] = property.getFirstPartitionId() + i;
+      }
+    }
   }
 
   private void configureTargetMapping(int tasks) {
@@ -697,6 +819,13 @@ public class ShuffleVertexManager extends ShuffleVertexManagerBase {
       return this;
     }
 
+    public ShuffleVertexManagerConfigBuilder setMaxTaskParallelism(
+        int maxTaskParallelism) {
+      conf.setInt(TEZ_SHUFFLE_VERTEX_MANAGER_MAX_TASK_PARALLELISM,
+        maxTaskParallelism);
+      return this;
+    }
+
     public VertexManagerPluginDescriptor build() {
       VertexManagerPluginDescriptor desc =
           VertexManagerPluginDescriptor.create(
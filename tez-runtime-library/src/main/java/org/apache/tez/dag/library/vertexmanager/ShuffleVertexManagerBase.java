@@ -472,6 +472,43 @@ abstract class ShuffleVertexManagerBase extends VertexManagerPlugin {
     return stats;
   }
 
+  /**
+   * Estimates the size of each partition once all the source tasks have
+   * completed, from the partition stats reported so far, or from the output
+   * size of the source tasks if partition stats are not reported.
+   */
+  public long[] estimatePartitionSize() {
+    boolean partitionStatsReported = false;
+    int numOfPartitions = pendingTasks.size();
+    long[] estimatedPartitionOutputSize = new long[numOfPartitions];
+    for (int i = 0; i < numOfPartitions; i++) {
+      if (getCurrentlyKnownStatsAtIndex(i) > 0) {
+        partitionStatsReported = true;
+        break;
+      }
+    }
+
+    if (!partitionStatsReported) {
+      // partition stats reporting isn't enabled at the source. Use
+      // expected source output size and assume all partitions are evenly
+      // distributed.
+      if (numOfPartitions > 0) {
+        long estimatedPerPartitionSize =
+                getExpectedTotalBipartiteSourceTasksOutputSize().divide(
+                        BigInteger.valueOf(numOfPartitions)).longValue();
+        for (int i = 0; i < numOfPartitions; i++) {
+          estimatedPartitionOutputSize[i] = estimatedPerPartitionSize;
+        }
+      }
+    } else {
+      for (int i = 0; i < numOfPartitions; i++) {
+        estimatedPartitionOutputSize[i] =
+            MB * getExpectedStatsAtIndex(i);
+      }
+    }
+    return estimatedPartitionOutputSize;
+  }
+
   /**
    * Subclass might return null to indicate there is no new routing.
    */
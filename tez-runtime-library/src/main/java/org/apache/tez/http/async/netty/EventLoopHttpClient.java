@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.http.async.netty;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.providers.netty.NettyAsyncHttpProviderConfig;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.tez.http.HttpConnectionParams;
+import org.apache.tez.http.SSLFactory;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.SocketChannel;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link AsyncHttpClient} which runs all of its connections on a fixed, small number of
+ * netty IO threads. Unlike the client of {@link AsyncHttpConnection}, responses are meant to
+ * be consumed by an {@link com.ning.http.client.AsyncHandler} on the IO threads, so the
+ * client does not limit the number of connections per host and connects asynchronously.
+ * A handler which can not keep up with a response stops reading it with
+ * {@link #suspendReading()}, rather than blocking the IO thread.
+ */
+@InterfaceAudience.Private
+public class EventLoopHttpClient {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EventLoopHttpClient.class);
+
+  private static final String READING_CHANNEL_TRACKER_NAME = "tezReadingChannelTracker";
+  // the connection whose input is being handled by the calling IO thread
+  private static final ThreadLocal<Channel> READING_CHANNEL = new ThreadLocal<Channel>();
+  private static final ReadingChannelTracker READING_CHANNEL_TRACKER =
+      new ReadingChannelTracker();
+
+  private final ExecutorService bossExecutor;
+  private final ExecutorService workerExecutor;
+  private final NioClientSocketChannelFactory channelFactory;
+  private final AsyncHttpClient client;
+
+  /**
+   * @param ioThreads number of threads handling IO and response callbacks
+   * @param threadNamePrefix prefix for the names of the client threads
+   */
+  public EventLoopHttpClient(HttpConnectionParams httpConnParams, int ioThreads,
+      String threadNamePrefix) throws IOException {
+    Preconditions.checkArgument(ioThreads > 0, "ioThreads should be positive");
+    bossExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+        .setNameFormat(threadNamePrefix + " Boss #%d").build());
+    workerExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+        .setNameFormat(threadNamePrefix + " IO #%d").build());
+    channelFactory = new NioClientSocketChannelFactory(bossExecutor, workerExecutor, 1,
+        ioThreads) {
+      @Override
+      public SocketChannel newChannel(ChannelPipeline pipeline) {
+        if (pipeline.get(READING_CHANNEL_TRACKER_NAME) == null) {
+          pipeline.addFirst(READING_CHANNEL_TRACKER_NAME, READING_CHANNEL_TRACKER);
+        }
+        return super.newChannel(pipeline);
+      }
+    };
+
+    NettyAsyncHttpProviderConfig providerConfig = new NettyAsyncHttpProviderConfig();
+    providerConfig.addProperty(NettyAsyncHttpProviderConfig.SOCKET_CHANNEL_FACTORY, channelFactory);
+    // Do not block the caller until the connection has been established
+    providerConfig.addProperty(NettyAsyncHttpProviderConfig.EXECUTE_ASYNC_CONNECT, true);
+
+    AsyncHttpClientConfig.Builder builder = new AsyncHttpClientConfig.Builder();
+    if (httpConnParams.isSslShuffle()) {
+      SSLFactory sslFactory = httpConnParams.getSslFactory();
+      Preconditions.checkArgument(sslFactory != null, "SSLFactory can not be null");
+      sslFactory.configure(builder);
+    }
+    // The idle timeout applies to in-flight requests as well, which matches the semantics of
+    // the read timeout of a blocking connection. Long transfers are not cut off as a whole.
+    builder
+        .setAsyncHttpClientProviderConfig(providerConfig)
+        .setAllowPoolingConnection(httpConnParams.isKeepAlive())
+        .setAllowSslConnectionPool(httpConnParams.isKeepAlive())
+        .setCompressionEnabled(false)
+        .setMaximumConnectionsPerHost(-1)
+        .setMaximumConnectionsTotal(-1)
+        .setConnectionTimeoutInMs(httpConnParams.getConnectionTimeout())
+        .setIdleConnectionTimeoutInMs(httpConnParams.getReadTimeout())
+        .setRequestTimeoutInMs(-1)
+        .setUseRawUrl(true);
+    client = new AsyncHttpClient(builder.build());
+    LOG.info("Initialized event loop http client with " + ioThreads + " IO threads, "
+        + httpConnParams);
+  }
+
+  public AsyncHttpClient getClient() {
+    return client;
+  }
+
+  /**
+   * Stops reading the response which is being delivered to the calling {@link AsyncHandler},
+   * without blocking the IO thread. Bytes which have been read already are still delivered.
+   *
+   * @return resumes reading once run, on any thread, or null if the caller is not an
+   *         AsyncHandler callback on an IO thread of an EventLoopHttpClient
+   */
+  public static Runnable suspendReading() {
+    final Channel channel = READING_CHANNEL.get();
+    if (channel == null) {
+      return null;
+    }
+    channel.setReadable(false);
+    return new Runnable() {
+      @Override
+      public void run() {
+        channel.setReadable(true);
+      }
+    };
+  }
+
+  public void close() {
+    try {
+      client.close();
+    } finally {
+      // The client does not release channel factories it has been handed
+      channelFactory.releaseExternalResources();
+      bossExecutor.shutdownNow();
+      workerExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Makes the connection whose input is handled known to the AsyncHandler callbacks, which
+   * run on the IO thread while the message is passed up the pipeline.
+   */
+  @ChannelHandler.Sharable
+  private static class ReadingChannelTracker extends SimpleChannelUpstreamHandler {
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+      READING_CHANNEL.set(ctx.getChannel());
+      try {
+        ctx.sendUpstream(e);
+      } finally {
+        READING_CHANNEL.remove();
+      }
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.hadoop.classification.InterfaceAudience.Public;
+import org.apache.hadoop.classification.InterfaceStability.Unstable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * {@link PushShuffleService} is a service which the outputs of a shuffle are pushed to, so
+ * that consumers read their partitions from it instead of fetching them from every producer.
+ *
+ * Producers push each non-empty partition of their final output, an IFile segment, once the
+ * output is written. The service appends the segments pushed for a partition together, so
+ * that a consumer reads one sequential file per partition. Pushes are best effort: outputs are
+ * still served by the hosts of their producers, and consumers fetch from them if a push failed
+ * or a pushed segment cannot be read.
+ *
+ * The service is picked up with TEZ_RUNTIME_SHUFFLE_PUSH_SERVICE_CLASS in
+ * {@link TezRuntimeConfiguration}, and needs a 0 argument constructor. Instances are
+ * initialized with the configuration of the Input or Output, and may be used by several
+ * threads at the same time.
+ */
+@Public
+@Unstable
+public interface PushShuffleService extends Closeable {
+
+  void initialize(Configuration conf) throws IOException;
+
+  /**
+   * Pushes the segment of a partition of an output.
+   *
+   * @param shuffleId identifier of the shuffle, unique across DAGs
+   * @param partition the partition
+   * @param pathComponent identifier of the output of the producer
+   * @param segment the bytes of the segment
+   * @param rawLength uncompressed length of the segment
+   * @param partLength length of the segment
+   */
+  void push(String shuffleId, int partition, String pathComponent, InputStream segment,
+      long rawLength, long partLength) throws IOException;
+
+  /**
+   * @return where the pushed segment can be read from, or null if it has not been pushed
+   */
+  Segment locate(String shuffleId, int partition, String pathComponent) throws IOException;
+
+  /**
+   * A pushed segment in a file on the local file system of the consumer.
+   */
+  final class Segment {
+    private final Path path;
+    private final long offset;
+    private final long rawLength;
+    private final long partLength;
+
+    public Segment(Path path, long offset, long rawLength, long partLength) {
+      this.path = path;
+      this.offset = offset;
+      this.rawLength = rawLength;
+      this.partLength = partLength;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public long getRawLength() {
+      return rawLength;
+    }
+
+    public long getPartLength() {
+      return partLength;
+    }
+
+    @Override
+    public String toString() {
+      return "Segment [path=" + path + ", offset=" + offset + ", rawLength=" + rawLength
+          + ", partLength=" + partLength + "]";
+    }
+  }
+}
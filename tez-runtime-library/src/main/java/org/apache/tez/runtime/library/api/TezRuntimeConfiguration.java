@@ -103,6 +103,16 @@ public class TezRuntimeConfiguration {
       "io.sort.factor";
   public static final int TEZ_RUNTIME_IO_SORT_FACTOR_DEFAULT = 100;
 
+  /**
+   * Expert level setting. Merge segments with a tournament (loser) tree instead of a binary
+   * heap. This applies to the merges in the ordered outputs and in the ordered inputs. For the
+   * stock comparators of common key types, a prefix of each key is compared first.
+   */
+  @ConfigurationProperty(type = "boolean")
+  public static final String TEZ_RUNTIME_MERGE_LOSER_TREE_ENABLED = TEZ_RUNTIME_PREFIX +
+      "merge.loser-tree.enabled";
+  public static final boolean TEZ_RUNTIME_MERGE_LOSER_TREE_ENABLED_DEFAULT = false;
+
 
   @ConfigurationProperty(type = "float")
   public static final String TEZ_RUNTIME_SORT_SPILL_PERCENT = TEZ_RUNTIME_PREFIX +
@@ -128,6 +138,37 @@ public class TezRuntimeConfiguration {
       "combine.min.spills";
   public static final int TEZ_RUNTIME_COMBINE_MIN_SPILLS_DEFAULT = 3;
 
+  /**
+   * Boolean value. When a combiner is configured, aggregate records written to the ordered
+   * partitioned output in an in-memory hash table keyed by the serialized key, and run the
+   * combiner over each group before the records reach the sorter. The table is flushed into the
+   * sorter when it is full, and aggregation is turned off for the rest of the task when it does
+   * not reduce the number of records by at least
+   * {@link #TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MIN_REDUCTION}.
+   */
+  @ConfigurationProperty(type = "boolean")
+  public static final String TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_ENABLED = TEZ_RUNTIME_PREFIX +
+      "combine.hash-aggregation.enabled";
+  public static final boolean TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_ENABLED_DEFAULT = false;
+
+  /**
+   * Float value. Fraction of the memory assigned to the output which is used for the hash
+   * aggregation table, instead of the sort buffer.
+   */
+  @ConfigurationProperty(type = "float")
+  public static final String TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MEMORY_FRACTION =
+      TEZ_RUNTIME_PREFIX + "combine.hash-aggregation.memory.fraction";
+  public static final float TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MEMORY_FRACTION_DEFAULT = 0.1f;
+
+  /**
+   * Float value. Minimum fraction of the records that the hash aggregation has to combine away,
+   * checked whenever the table is flushed, for it to stay enabled.
+   */
+  @ConfigurationProperty(type = "float")
+  public static final String TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MIN_REDUCTION =
+      TEZ_RUNTIME_PREFIX + "combine.hash-aggregation.min-reduction";
+  public static final float TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MIN_REDUCTION_DEFAULT = 0.5f;
+
   /**
    * Tries to allocate @link{#TEZ_RUNTIME_IO_SORT_MB} in chunks specified in
    * this parameter.
@@ -172,6 +213,35 @@ public class TezRuntimeConfiguration {
       "pipelined.sorter.sort.threads";
   public static final int TEZ_RUNTIME_PIPELINED_SORTER_SORT_THREADS_DEFAULT = 2;
 
+  /**
+   * Setting this to true makes the PipelinedSorter sort each span with an in-place radix
+   * sort on the (partition, key prefix) word kept in the span metadata, and only compare
+   * the serialized keys when prefixes are equal.
+   *
+   * Only takes effect for comparators which provide an order preserving key prefix, i.e.
+   * implementations of
+   * {@link org.apache.tez.runtime.library.common.comparator.ProxyComparator} such as
+   * TezBytesComparator, or the default comparators of Text, IntWritable and LongWritable.
+   */
+  @ConfigurationProperty(type = "boolean")
+  public static final String TEZ_RUNTIME_PIPELINED_SORTER_RADIX_SORT_ENABLED =
+      TEZ_RUNTIME_PREFIX + "pipelined.sorter.radix-sort.enabled";
+  public static final boolean TEZ_RUNTIME_PIPELINED_SORTER_RADIX_SORT_ENABLED_DEFAULT = false;
+
+  /**
+   * Integer value. Number of threads used by the LEGACY (DefaultSorter) sorter to sort and
+   * write a single spill. With more than one thread, the records of a spill are split into
+   * contiguous partition ranges which are sorted and written concurrently, each into its own
+   * spill file. These files are combined by the regular final merge.
+   *
+   * Only takes effect when the final merge is enabled and no combiner is configured, since
+   * combiners are not required to be thread-safe.
+   */
+  @ConfigurationProperty(type = "integer")
+  public static final String TEZ_RUNTIME_LEGACY_SORTER_SPILL_THREADS = TEZ_RUNTIME_PREFIX +
+      "legacy.sorter.spill.threads";
+  public static final int TEZ_RUNTIME_LEGACY_SORTER_SPILL_THREADS_DEFAULT = 1;
+
   /**
    * Integer value. Percentage of buffer to be filled before we spill to disk. Default value is 0,
    * which will spill for every buffer.
@@ -196,6 +266,21 @@ public class TezRuntimeConfiguration {
   public static final String TEZ_RUNTIME_REPORT_PARTITION_STATS_DEFAULT =
       ReportPartitionStats.MEMORY_OPTIMIZED.getType();
 
+  /**
+   * Number of keys sampled from the output of a task, and reported to the
+   * vertex manager of the destination vertex along with the partition stats.
+   * The samples are used by
+   * {@link org.apache.tez.dag.library.vertexmanager.RangePartitionVertexManager}
+   * to compute split points for the
+   * {@link org.apache.tez.runtime.library.partitioner.RangePartitioner}.
+   * 0 disables sampling. Only used by OrderedPartitionedKVOutput, when final
+   * merge is enabled and pipelined shuffle is disabled.
+   */
+  @ConfigurationProperty(type = "integer")
+  public static final String TEZ_RUNTIME_REPORT_KEY_SAMPLES =
+      TEZ_RUNTIME_PREFIX + "report.key.samples";
+  public static final int TEZ_RUNTIME_REPORT_KEY_SAMPLES_DEFAULT = 0;
+
   /**
    * Size of the buffer to use if not writing directly to disk.
    */
@@ -434,6 +519,130 @@ public class TezRuntimeConfiguration {
       "shuffle.fetcher.use-shared-pool";
   public static final boolean TEZ_RUNTIME_SHUFFLE_FETCHER_USE_SHARED_POOL_DEFAULT = false;
 
+  /**
+   * Whether the ordered shuffle fetches from remote hosts with an event driven fetcher.
+   * Requests to all hosts share a small number of IO threads, and responses are copied into
+   * their memory or disk targets as they arrive, so the number of hosts fetched from
+   * concurrently is not bounded by the number of fetcher threads. Local disk fetches still
+   * run on the fetcher threads.
+   */
+  @Private
+  @Unstable
+  @ConfigurationProperty(type = "boolean")
+  public static final String TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_ENABLED = TEZ_RUNTIME_PREFIX +
+      "shuffle.event-driven.fetch.enabled";
+  public static final boolean TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_ENABLED_DEFAULT = false;
+
+  /**
+   * Maximum number of hosts the event driven fetcher has requests outstanding to.
+   */
+  @Private
+  @Unstable
+  @ConfigurationProperty(type = "integer")
+  public static final String TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_MAX_HOSTS = TEZ_RUNTIME_PREFIX +
+      "shuffle.event-driven.fetch.max-hosts";
+  public static final int TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_MAX_HOSTS_DEFAULT = 256;
+
+  /**
+   * Number of IO threads used by the event driven fetcher of an input.
+   */
+  @Private
+  @Unstable
+  @ConfigurationProperty(type = "integer")
+  public static final String TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_IO_THREADS = TEZ_RUNTIME_PREFIX +
+      "shuffle.event-driven.fetch.io-threads";
+  public static final int TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_IO_THREADS_DEFAULT = 2;
+
+  /**
+   * Whether the ordered shuffle hedges fetches from hosts which straggle. An Input which has
+   * another attempt on a different host, e.g. from a re-run of its producer, is only fetched
+   * from one of the hosts at a time. If the fetch of the Input is much slower than fetches from
+   * the other hosts, or fails, the other attempt is fetched as well, and whichever completes
+   * first is used.
+   */
+  @Private
+  @Unstable
+  @ConfigurationProperty(type = "boolean")
+  public static final String TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_ENABLED = TEZ_RUNTIME_PREFIX +
+      "shuffle.fetch.hedging.enabled";
+  public static final boolean TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_ENABLED_DEFAULT = false;
+
+  /**
+   * Fraction of the median transfer rate of the other hosts below which a host is considered to
+   * straggle, for hedged fetches. The rate of a host includes the time spent on its fetch in
+   * progress. A host which has not returned any output yet is considered to straggle once its
+   * fetch has taken longer than the median time of the other hosts per output divided by this
+   * fraction.
+   */
+  @Private
+  @Unstable
+  @ConfigurationProperty(type = "float")
+  public static final String TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_SLOW_HOST_FRACTION =
+      TEZ_RUNTIME_PREFIX + "shuffle.fetch.hedging.slow-host.fraction";
+  public static final float TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_SLOW_HOST_FRACTION_DEFAULT = 0.2f;
+
+  /**
+   * Minimum time in milliseconds an Input is fetched from a host before it is hedged.
+   */
+  @Private
+  @Unstable
+  @ConfigurationProperty(type = "integer")
+  public static final String TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_MIN_DELAY_MS =
+      TEZ_RUNTIME_PREFIX + "shuffle.fetch.hedging.min-delay.ms";
+  public static final int TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_MIN_DELAY_MS_DEFAULT = 5000;
+
+  /**
+   * Class of the {@link PushShuffleService} which the outputs of a shuffle are pushed to, in
+   * addition to being served by their producers. Consumers read the pushed outputs from the
+   * service, and fetch them from the producers if they cannot. Outputs are not pushed if this
+   * is not set, or with pipelined shuffle. Has to be set on both ends of the edge.
+   */
+  @Private
+  @Unstable
+  @ConfigurationProperty
+  public static final String TEZ_RUNTIME_SHUFFLE_PUSH_SERVICE_CLASS = TEZ_RUNTIME_PREFIX +
+      "shuffle.push.service.class";
+
+  /**
+   * Whether fetches of a range of partitions ask the ShuffleHandler to describe all partitions
+   * of a map output with a single index header, instead of sending a header per partition.
+   * Only applies when fetching from the Tez ShuffleHandler. Responses of handlers which do not
+   * support batching are still understood.
+   */
+  @Private
+  @Unstable
+  @ConfigurationProperty(type = "boolean")
+  public static final String TEZ_RUNTIME_SHUFFLE_BATCHED_FETCH_ENABLED = TEZ_RUNTIME_PREFIX +
+      "shuffle.batched.fetch.enabled";
+  public static final boolean TEZ_RUNTIME_SHUFFLE_BATCHED_FETCH_ENABLED_DEFAULT = false;
+
+  /**
+   * Whether shuffle data fetched into memory is held in pooled direct buffers instead of on
+   * the java heap. The buffers are accounted against the same shuffle memory as heap buffers,
+   * so the direct memory limit of the JVM (-XX:MaxDirectMemorySize) has to accommodate up to
+   * twice that amount, and the heap can be sized smaller accordingly.
+   */
+  @Private
+  @Unstable
+  @ConfigurationProperty(type = "boolean")
+  public static final String TEZ_RUNTIME_SHUFFLE_OFF_HEAP_BUFFERS_ENABLED = TEZ_RUNTIME_PREFIX +
+      "shuffle.off-heap.buffers.enabled";
+  public static final boolean TEZ_RUNTIME_SHUFFLE_OFF_HEAP_BUFFERS_ENABLED_DEFAULT = false;
+
+  /**
+   * Fraction of the maximum heap up to which sort and shuffle buffers are kept around after a
+   * task has completed, so that later tasks running in the same container can reuse them.
+   * The pool is shared by all tasks of the container and sized by the first task using it.
+   * Direct buffers of off-heap shuffle inputs are retained up to the same amount.
+   * 0 disables pooling.
+   */
+  @Private
+  @Unstable
+  @ConfigurationProperty(type = "float")
+  public static final String TEZ_RUNTIME_CONTAINER_BUFFER_POOL_FRACTION = TEZ_RUNTIME_PREFIX +
+      "container.buffer-pool.fraction";
+  public static final float TEZ_RUNTIME_CONTAINER_BUFFER_POOL_FRACTION_DEFAULT = 0.0f;
+
   @ConfigurationProperty(type = "float")
   public static final String TEZ_RUNTIME_INPUT_POST_MERGE_BUFFER_PERCENT = TEZ_RUNTIME_PREFIX +
       "task.input.post-merge.buffer.percent";
@@ -464,6 +673,86 @@ public class TezRuntimeConfiguration {
   @ConfigurationProperty
   public static final String TEZ_RUNTIME_COMPRESS_CODEC = TEZ_RUNTIME_PREFIX + "compress.codec";
 
+  /**
+   * Boolean value. When compression is enabled, choose the compression of each IFile segment
+   * written from a sample of its first bytes: none for data which does not compress, the
+   * configured codec, or {@link #TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_CODEC} for data which
+   * compresses much better with it. The choice is recorded in the segment header, and readers
+   * decode every segment accordingly. Writers of an output reuse a choice for
+   * {@link #TEZ_RUNTIME_COMPRESS_ADAPTIVE_SEGMENTS_PER_SAMPLE} segments.
+   */
+  @ConfigurationProperty(type = "boolean")
+  public static final String TEZ_RUNTIME_COMPRESS_ADAPTIVE_ENABLED = TEZ_RUNTIME_PREFIX +
+      "compress.adaptive.enabled";
+  public static final boolean TEZ_RUNTIME_COMPRESS_ADAPTIVE_ENABLED_DEFAULT = false;
+
+  /**
+   * String value. Codec which adaptive compression may choose over the configured one. Has to
+   * be one of DefaultCodec, GzipCodec, BZip2Codec, Lz4Codec and SnappyCodec of
+   * org.apache.hadoop.io.compress. Empty to only choose between no compression and the
+   * configured codec.
+   */
+  @ConfigurationProperty
+  public static final String TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_CODEC = TEZ_RUNTIME_PREFIX +
+      "compress.adaptive.strong.codec";
+  public static final String TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_CODEC_DEFAULT = "";
+
+  /**
+   * Float value. The strong codec is only chosen if compressing the sample with it takes at
+   * most this many times as long as with the configured codec.
+   */
+  @ConfigurationProperty(type = "float")
+  public static final String TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MAX_SLOWDOWN =
+      TEZ_RUNTIME_PREFIX + "compress.adaptive.strong.max-slowdown";
+  public static final float TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MAX_SLOWDOWN_DEFAULT = 3.0f;
+
+  /**
+   * Integer value. Number of segments written by an output with the codec chosen from one
+   * sample, before the next segment is sampled again.
+   */
+  @ConfigurationProperty(type = "integer")
+  public static final String TEZ_RUNTIME_COMPRESS_ADAPTIVE_SEGMENTS_PER_SAMPLE =
+      TEZ_RUNTIME_PREFIX + "compress.adaptive.segments-per-sample";
+  public static final int TEZ_RUNTIME_COMPRESS_ADAPTIVE_SEGMENTS_PER_SAMPLE_DEFAULT = 32;
+
+  /**
+   * Integer value. Number of uncompressed bytes at the start of each segment which adaptive
+   * compression samples.
+   */
+  @ConfigurationProperty(type = "integer")
+  public static final String TEZ_RUNTIME_COMPRESS_ADAPTIVE_SAMPLE_SIZE_BYTES = TEZ_RUNTIME_PREFIX +
+      "compress.adaptive.sample-size.bytes";
+  public static final int TEZ_RUNTIME_COMPRESS_ADAPTIVE_SAMPLE_SIZE_BYTES_DEFAULT = 64 * 1024;
+
+  /**
+   * Float value. Segments whose sample the configured codec compresses to more than this
+   * fraction of its size are written uncompressed by adaptive compression.
+   */
+  @ConfigurationProperty(type = "float")
+  public static final String TEZ_RUNTIME_COMPRESS_ADAPTIVE_MAX_RATIO = TEZ_RUNTIME_PREFIX +
+      "compress.adaptive.max-ratio";
+  public static final float TEZ_RUNTIME_COMPRESS_ADAPTIVE_MAX_RATIO_DEFAULT = 0.9f;
+
+  /**
+   * Float value. Adaptive compression chooses the strong codec when it compresses the sample
+   * to at least this fraction less than the configured codec.
+   */
+  @ConfigurationProperty(type = "float")
+  public static final String TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MIN_GAIN = TEZ_RUNTIME_PREFIX +
+      "compress.adaptive.strong.min-gain";
+  public static final float TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MIN_GAIN_DEFAULT = 0.25f;
+
+  /**
+   * String value. Checksum of the IFile segments which are written, CRC32 or CRC32C. CRC32C is
+   * computed with the CRC32 instructions of the CPU on Java 9 and later, but in pure Java, and
+   * much slower than CRC32, on Java 8. The checksum of a segment is named by its header, so
+   * readers handle either.
+   */
+  @ConfigurationProperty
+  public static final String TEZ_RUNTIME_IFILE_CHECKSUM_TYPE = TEZ_RUNTIME_PREFIX +
+      "ifile.checksum.type";
+  public static final String TEZ_RUNTIME_IFILE_CHECKSUM_TYPE_DEFAULT = "CRC32";
+
   // TODO Move this key to MapReduce
   @ConfigurationProperty
   public static final String TEZ_RUNTIME_KEY_SECONDARY_COMPARATOR_CLASS =
@@ -482,6 +771,27 @@ public class TezRuntimeConfiguration {
   public static final String TEZ_RUNTIME_OPTIMIZE_LOCAL_FETCH = TEZ_RUNTIME_PREFIX + "optimize.local.fetch";
   public static final boolean TEZ_RUNTIME_OPTIMIZE_LOCAL_FETCH_DEFAULT = true;
 
+  /**
+   * Expert level setting. When local inputs are read directly from disk (see
+   * {@link #TEZ_RUNTIME_OPTIMIZE_LOCAL_FETCH}), memory map uncompressed segments and read the
+   * records straight from the mapping, instead of going through buffered file streams.
+   * Compressed segments always use the stream based reader. Only applies to unordered inputs.
+   */
+  @ConfigurationProperty(type = "boolean")
+  public static final String TEZ_RUNTIME_LOCAL_FETCH_MMAP_ENABLED = TEZ_RUNTIME_PREFIX +
+      "local.fetch.mmap.enabled";
+  public static final boolean TEZ_RUNTIME_LOCAL_FETCH_MMAP_ENABLED_DEFAULT = false;
+
+  /**
+   * Expert level setting. Upper bound on the number of bytes an input keeps memory mapped when
+   * {@link #TEZ_RUNTIME_LOCAL_FETCH_MMAP_ENABLED} is set, across all its open segments. Local
+   * segments which do not fit within what is left are read through streams.
+   */
+  @ConfigurationProperty(type = "long")
+  public static final String TEZ_RUNTIME_LOCAL_FETCH_MMAP_MAX_BYTES = TEZ_RUNTIME_PREFIX +
+      "local.fetch.mmap.max-bytes";
+  public static final long TEZ_RUNTIME_LOCAL_FETCH_MMAP_MAX_BYTES_DEFAULT = 256L << 20;
+
   /**
    * Expert level setting. Enable pipelined shuffle in ordered outputs and in unordered
    * partitioned outputs. In ordered cases, it works with PipelinedSorter.
@@ -503,6 +813,25 @@ public class TezRuntimeConfiguration {
       TEZ_RUNTIME_PREFIX + "enable.final-merge.in.output";
   public static final boolean TEZ_RUNTIME_ENABLE_FINAL_MERGE_IN_OUTPUT_DEFAULT = true;
 
+  /**
+   * Expert level setting. Send the data of unordered outputs with a single partition (e.g.
+   * UnorderedKVOutput) in the DataMovementEvent itself, when it is no larger than
+   * {@link #TEZ_RUNTIME_TRANSFER_DATA_VIA_EVENTS_MAX_SIZE}. Inputs then do not have to fetch it.
+   */
+  @ConfigurationProperty(type = "boolean")
+  public static final String TEZ_RUNTIME_TRANSFER_DATA_VIA_EVENTS_ENABLED = TEZ_RUNTIME_PREFIX +
+      "transfer.data-via-events.enabled";
+  public static final boolean TEZ_RUNTIME_TRANSFER_DATA_VIA_EVENTS_ENABLED_DEFAULT = false;
+
+  /**
+   * Expert level setting. Maximum size in bytes of the (compressed) output which is sent in the
+   * DataMovementEvent, when {@link #TEZ_RUNTIME_TRANSFER_DATA_VIA_EVENTS_ENABLED} is set.
+   */
+  @ConfigurationProperty(type = "integer")
+  public static final String TEZ_RUNTIME_TRANSFER_DATA_VIA_EVENTS_MAX_SIZE = TEZ_RUNTIME_PREFIX +
+      "transfer.data-via-events.max-size";
+  public static final int TEZ_RUNTIME_TRANSFER_DATA_VIA_EVENTS_MAX_SIZE_DEFAULT = 512;
+
 
   /**
    * Share data fetched between tasks running on the same host if applicable
@@ -551,14 +880,20 @@ public class TezRuntimeConfiguration {
     tezRuntimeKeys.add(TEZ_RUNTIME_IFILE_READAHEAD_BYTES);
     tezRuntimeKeys.add(TEZ_RUNTIME_IO_FILE_BUFFER_SIZE);
     tezRuntimeKeys.add(TEZ_RUNTIME_IO_SORT_FACTOR);
+    tezRuntimeKeys.add(TEZ_RUNTIME_MERGE_LOSER_TREE_ENABLED);
     tezRuntimeKeys.add(TEZ_RUNTIME_SORT_SPILL_PERCENT);
     tezRuntimeKeys.add(TEZ_RUNTIME_IO_SORT_MB);
     tezRuntimeKeys.add(TEZ_RUNTIME_INDEX_CACHE_MEMORY_LIMIT_BYTES);
     tezRuntimeKeys.add(TEZ_RUNTIME_COMBINE_MIN_SPILLS);
+    tezRuntimeKeys.add(TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_ENABLED);
+    tezRuntimeKeys.add(TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MEMORY_FRACTION);
+    tezRuntimeKeys.add(TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MIN_REDUCTION);
     tezRuntimeKeys.add(TEZ_RUNTIME_PIPELINED_SORTER_SORT_THREADS);
     tezRuntimeKeys.add(
         TEZ_RUNTIME_PIPELINED_SORTER_MIN_BLOCK_SIZE_IN_MB);
     tezRuntimeKeys.add(TEZ_RUNTIME_PIPELINED_SORTER_LAZY_ALLOCATE_MEMORY);
+    tezRuntimeKeys.add(TEZ_RUNTIME_PIPELINED_SORTER_RADIX_SORT_ENABLED);
+    tezRuntimeKeys.add(TEZ_RUNTIME_LEGACY_SORTER_SPILL_THREADS);
     tezRuntimeKeys.add(TEZ_RUNTIME_UNORDERED_OUTPUT_BUFFER_SIZE_MB);
     tezRuntimeKeys.add(TEZ_RUNTIME_UNORDERED_OUTPUT_MAX_PER_BUFFER_SIZE_BYTES);
     tezRuntimeKeys.add(TEZ_RUNTIME_PARTITIONER_CLASS);
@@ -589,6 +924,7 @@ public class TezRuntimeConfiguration {
     tezRuntimeKeys.add(TEZ_RUNTIME_SHUFFLE_MIN_REQUIRED_PROGRESS_FRACTION);
     tezRuntimeKeys.add(TEZ_RUNTIME_SHUFFLE_FAILED_CHECK_SINCE_LAST_COMPLETION);
     tezRuntimeKeys.add(TEZ_RUNTIME_REPORT_PARTITION_STATS);
+    tezRuntimeKeys.add(TEZ_RUNTIME_REPORT_KEY_SAMPLES);
     tezRuntimeKeys.add(TEZ_RUNTIME_INPUT_POST_MERGE_BUFFER_PERCENT);
     tezRuntimeKeys.add(TEZ_RUNTIME_GROUP_COMPARATOR_CLASS);
     tezRuntimeKeys.add(TEZ_RUNTIME_INTERNAL_SORTER_CLASS);
@@ -597,18 +933,40 @@ public class TezRuntimeConfiguration {
     tezRuntimeKeys.add(TEZ_RUNTIME_VALUE_CLASS);
     tezRuntimeKeys.add(TEZ_RUNTIME_COMPRESS);
     tezRuntimeKeys.add(TEZ_RUNTIME_COMPRESS_CODEC);
+    tezRuntimeKeys.add(TEZ_RUNTIME_COMPRESS_ADAPTIVE_ENABLED);
+    tezRuntimeKeys.add(TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_CODEC);
+    tezRuntimeKeys.add(TEZ_RUNTIME_COMPRESS_ADAPTIVE_SAMPLE_SIZE_BYTES);
+    tezRuntimeKeys.add(TEZ_RUNTIME_COMPRESS_ADAPTIVE_MAX_RATIO);
+    tezRuntimeKeys.add(TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MIN_GAIN);
+    tezRuntimeKeys.add(TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MAX_SLOWDOWN);
+    tezRuntimeKeys.add(TEZ_RUNTIME_COMPRESS_ADAPTIVE_SEGMENTS_PER_SAMPLE);
+    tezRuntimeKeys.add(TEZ_RUNTIME_IFILE_CHECKSUM_TYPE);
     tezRuntimeKeys.add(TEZ_RUNTIME_KEY_SECONDARY_COMPARATOR_CLASS);
     tezRuntimeKeys.add(TEZ_RUNTIME_EMPTY_PARTITION_INFO_VIA_EVENTS_ENABLED);
     tezRuntimeKeys.add(TEZ_RUNTIME_PIPELINED_SHUFFLE_ENABLED);
     tezRuntimeKeys.add(TEZ_RUNTIME_ENABLE_FINAL_MERGE_IN_OUTPUT);
+    tezRuntimeKeys.add(TEZ_RUNTIME_TRANSFER_DATA_VIA_EVENTS_ENABLED);
+    tezRuntimeKeys.add(TEZ_RUNTIME_TRANSFER_DATA_VIA_EVENTS_MAX_SIZE);
     tezRuntimeKeys.add(TEZ_RUNTIME_RECORDS_BEFORE_PROGRESS);
     tezRuntimeKeys.add(TEZ_RUNTIME_OPTIMIZE_LOCAL_FETCH);
+    tezRuntimeKeys.add(TEZ_RUNTIME_LOCAL_FETCH_MMAP_ENABLED);
+    tezRuntimeKeys.add(TEZ_RUNTIME_LOCAL_FETCH_MMAP_MAX_BYTES);
     tezRuntimeKeys.add(TEZ_RUNTIME_OPTIMIZE_SHARED_FETCH);
     tezRuntimeKeys.add(TEZ_RUNTIME_CONVERT_USER_PAYLOAD_TO_HISTORY_TEXT);
     tezRuntimeKeys.add(TEZ_RUNTIME_SORTER_CLASS);
     tezRuntimeKeys.add(TEZ_RUNTIME_CLEANUP_FILES_ON_INTERRUPT);
     tezRuntimeKeys.add(TEZ_RUNTIME_UNORDERED_PARTITIONED_KVWRITER_BUFFER_MERGE_PERCENT);
     tezRuntimeKeys.add(TEZ_RUNTIME_SHUFFLE_FETCHER_USE_SHARED_POOL);
+    tezRuntimeKeys.add(TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_ENABLED);
+    tezRuntimeKeys.add(TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_MAX_HOSTS);
+    tezRuntimeKeys.add(TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_IO_THREADS);
+    tezRuntimeKeys.add(TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_ENABLED);
+    tezRuntimeKeys.add(TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_SLOW_HOST_FRACTION);
+    tezRuntimeKeys.add(TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_MIN_DELAY_MS);
+    tezRuntimeKeys.add(TEZ_RUNTIME_SHUFFLE_PUSH_SERVICE_CLASS);
+    tezRuntimeKeys.add(TEZ_RUNTIME_SHUFFLE_BATCHED_FETCH_ENABLED);
+    tezRuntimeKeys.add(TEZ_RUNTIME_SHUFFLE_OFF_HEAP_BUFFERS_ENABLED);
+    tezRuntimeKeys.add(TEZ_RUNTIME_CONTAINER_BUFFER_POOL_FRACTION);
 
     defaultConf.addResource("core-default.xml");
     defaultConf.addResource("core-site.xml");
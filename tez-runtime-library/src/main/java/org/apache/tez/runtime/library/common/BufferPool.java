@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.tez.runtime.api.ObjectRegistry;
+import org.apache.tez.runtime.api.TaskContext;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.shuffle.DirectBufferArena;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Buffers which outlive the task that allocated them, so that the next task running in the
+ * same container can take them over instead of allocating its sort and shuffle buffers again.
+ *
+ * There is a single pool per container, which is kept in the session scope of the
+ * {@link ObjectRegistry}. Its capacity is a fraction of the maximum heap, and is fixed by the
+ * first task which uses the pool. The running task leases what it has been assigned by the
+ * MemoryDistributor as usual, so retained buffers are memory on top of its budget.
+ *
+ * Heap buffers are leased by their exact size. When retaining a buffer would exceed the
+ * capacity, the buffers which have been returned the longest time ago are dropped. A lease
+ * which finds no buffer of its size drops all retained buffers, since they have been sized for
+ * another configuration than the one the task runs with, and would otherwise be held next to
+ * the buffers the task allocates. Direct buffers are shared through a {@link DirectBufferArena},
+ * which limits the buffers in use and retained together to the same capacity.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class BufferPool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BufferPool.class);
+
+  @VisibleForTesting
+  static final String REGISTRY_KEY = BufferPool.class.getName();
+
+  private final long capacity;
+  // most recently returned first
+  private final LinkedList<byte[]> retained = new LinkedList<byte[]>();
+  private long retainedBytes = 0;
+  private final DirectBufferArena directBufferArena;
+
+  @VisibleForTesting
+  BufferPool(long capacity) {
+    Preconditions.checkArgument(capacity >= 0, "capacity should not be negative");
+    this.capacity = capacity;
+    this.directBufferArena = new DirectBufferArena(capacity);
+  }
+
+  /**
+   * @return the pool of the container the task runs in, or null if pooling has not been
+   *         enabled or the task does not provide an {@link ObjectRegistry}
+   */
+  public static BufferPool get(TaskContext context, Configuration conf) {
+    float fraction = conf.getFloat(TezRuntimeConfiguration.TEZ_RUNTIME_CONTAINER_BUFFER_POOL_FRACTION,
+        TezRuntimeConfiguration.TEZ_RUNTIME_CONTAINER_BUFFER_POOL_FRACTION_DEFAULT);
+    if (fraction <= 0.0f) {
+      return null;
+    }
+    Preconditions.checkArgument(fraction <= 1.0f, "Invalid value for "
+        + TezRuntimeConfiguration.TEZ_RUNTIME_CONTAINER_BUFFER_POOL_FRACTION + ": " + fraction);
+    ObjectRegistry registry = context.getObjectRegistry();
+    if (registry == null) {
+      return null;
+    }
+    synchronized (BufferPool.class) {
+      Object pool = registry.get(REGISTRY_KEY);
+      if (pool instanceof BufferPool) {
+        return (BufferPool) pool;
+      }
+      long capacity = (long) (Runtime.getRuntime().maxMemory() * fraction);
+      BufferPool newPool = new BufferPool(capacity);
+      registry.cacheForSession(REGISTRY_KEY, newPool);
+      LOG.info("Created container buffer pool with capacity=" + capacity);
+      return newPool;
+    }
+  }
+
+  /**
+   * @return a buffer of exactly the given size. Its contents are undefined.
+   */
+  public byte[] lease(int size) {
+    synchronized (this) {
+      Iterator<byte[]> it = retained.iterator();
+      while (it.hasNext()) {
+        byte[] buffer = it.next();
+        if (buffer.length == size) {
+          it.remove();
+          retainedBytes -= size;
+          return buffer;
+        }
+      }
+      if (retainedBytes > 0) {
+        LOG.info("Dropping " + retained.size() + " retained buffers with " + retainedBytes
+            + " bytes, since none has the requested size=" + size);
+        retained.clear();
+        retainedBytes = 0;
+      }
+    }
+    return new byte[size];
+  }
+
+  /**
+   * Return a buffer for reuse. It must not be accessed afterwards.
+   */
+  public void release(byte[] buffer) {
+    if (buffer.length > capacity) {
+      return;
+    }
+    synchronized (this) {
+      retained.addFirst(buffer);
+      retainedBytes += buffer.length;
+      while (retainedBytes > capacity) {
+        retainedBytes -= retained.removeLast().length;
+      }
+    }
+  }
+
+  /**
+   * @return the arena shared by all tasks in the container. It must not be closed.
+   */
+  public DirectBufferArena getDirectBufferArena() {
+    return directBufferArena;
+  }
+
+  @VisibleForTesting
+  public synchronized long getRetainedBytes() {
+    return retainedBytes;
+  }
+}
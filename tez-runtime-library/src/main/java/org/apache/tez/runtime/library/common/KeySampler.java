@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import org.apache.hadoop.classification.InterfaceAudience.Private;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.events.VertexManagerEvent;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.VertexManagerEventPayloadProto;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Samples the keys written to an output, with reservoir sampling, so that each
+ * key has the same chance of being sampled. The samples are reported to the
+ * vertex manager of the destination vertex in the {@link VertexManagerEvent}
+ * of the output.
+ */
+@Private
+public class KeySampler {
+
+  private final int numSamples;
+  private final List<byte[]> samples;
+  private final Serializer<Object> keySerializer;
+  private final DataOutputBuffer keyBuffer = new DataOutputBuffer();
+  private final Random random = new Random();
+  private long numKeys;
+
+  @SuppressWarnings("unchecked")
+  public KeySampler(Configuration conf, int numSamples) throws IOException {
+    this.numSamples = numSamples;
+    this.samples = new ArrayList<byte[]>(numSamples);
+    SerializationFactory serializationFactory = new SerializationFactory(conf);
+    this.keySerializer = serializationFactory.getSerializer(
+        (Class<Object>) ConfigUtils.getIntermediateOutputKeyClass(conf));
+    this.keySerializer.open(keyBuffer);
+  }
+
+  public void sample(Object key) throws IOException {
+    numKeys++;
+    int index;
+    if (samples.size() < numSamples) {
+      index = samples.size();
+    } else {
+      // replace a sample with probability numSamples / numKeys
+      long candidate = (long) (random.nextDouble() * numKeys);
+      if (candidate >= numSamples) {
+        return;
+      }
+      index = (int) candidate;
+    }
+    // only the sampled keys are serialized
+    keyBuffer.reset();
+    keySerializer.serialize(key);
+    byte[] sample = new byte[keyBuffer.getLength()];
+    System.arraycopy(keyBuffer.getData(), 0, sample, 0, sample.length);
+    if (index == samples.size()) {
+      samples.add(sample);
+    } else {
+      samples.set(index, sample);
+    }
+  }
+
+  public List<byte[]> getSamples() {
+    return samples;
+  }
+
+  /**
+   * Adds the samples to the VertexManagerEvents in the list.
+   */
+  public void addSamples(List<Event> events) throws IOException {
+    ListIterator<Event> it = events.listIterator();
+    while (it.hasNext()) {
+      Event event = it.next();
+      if (event instanceof VertexManagerEvent) {
+        VertexManagerEvent vmEvent = (VertexManagerEvent) event;
+        VertexManagerEventPayloadProto.Builder builder = VertexManagerEventPayloadProto
+            .newBuilder().mergeFrom(ByteString.copyFrom(vmEvent.getUserPayload()));
+        for (byte[] sample : samples) {
+          builder.addKeySamples(ByteString.copyFrom(sample));
+        }
+        it.set(VertexManagerEvent.create(vmEvent.getTargetVertexName(),
+            builder.build().toByteString().asReadOnlyByteBuffer()));
+      }
+    }
+  }
+}
@@ -0,0 +1,501 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.combine;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.hadoop.classification.InterfaceAudience.Private;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.util.Progress;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.runtime.library.api.IOInterruptedException;
+import org.apache.tez.runtime.library.api.KeyValueWriter;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.ConfigUtils;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.common.sort.impl.TezRawKeyValueIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Aggregates records in front of a sorter. Records are grouped by their serialized key in an
+ * open addressing hash table, and when the table is full, or the records have all been written,
+ * the {@link Combiner} runs over the groups and its output is written to the sorter.
+ *
+ * Keys and values are kept serialized in a single byte array, and the groups and the values of
+ * each group in int arrays, which all count against the memory limit.
+ *
+ * Whenever the table is flushed, the fraction of records the combiner has been able to remove is
+ * checked, and if it is below
+ * {@link TezRuntimeConfiguration#TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MIN_REDUCTION}, records are
+ * written straight to the sorter from then on.
+ *
+ * The output records and bytes counters count what has been written to the aggregator, as they
+ * would without it. Records which go into the table are counted here, and the combiner output is
+ * written to the sorter without being counted again, while records which bypass the table are
+ * counted by the sorter as usual. The combiner counts the records it runs over and writes, as it
+ * does when the sorter runs it.
+ *
+ * Not thread safe.
+ */
+@Private
+public class HashAggregator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HashAggregator.class);
+
+  private static final int INITIAL_DATA_SIZE = 4096;
+  private static final int INITIAL_NUM_GROUPS = 64;
+  private static final int INITIAL_NUM_VALUES = 64;
+  // int arrays per group: key offset, key length, hash, first value, last value
+  private static final int BYTES_PER_GROUP = 5 * 4;
+  // int arrays per value: offset, length, next value
+  private static final int BYTES_PER_VALUE = 3 * 4;
+
+  private final Combiner combiner;
+  private final KeyValueWriter writer;
+  private final KeyValueWriter combinedWriter;
+  private final long memoryLimit;
+  private final float minReduction;
+  private final String name;
+
+  private final TezCounter outputRecordCounter;
+  private final TezCounter outputByteCounter;
+
+  private final DataOutputBuffer serializationBuffer = new DataOutputBuffer();
+  private final Serializer<Object> keySerializer;
+  private final Serializer<Object> valueSerializer;
+  private final CombineOutputWriter combineOutputWriter;
+
+  private byte[] data = new byte[INITIAL_DATA_SIZE];
+  private int dataLength;
+
+  private int[] groupKeyOffsets = new int[INITIAL_NUM_GROUPS];
+  private int[] groupKeyLengths = new int[INITIAL_NUM_GROUPS];
+  private int[] groupHashes = new int[INITIAL_NUM_GROUPS];
+  private int[] groupFirstValues = new int[INITIAL_NUM_GROUPS];
+  private int[] groupLastValues = new int[INITIAL_NUM_GROUPS];
+  private int numGroups;
+
+  private int[] valueOffsets = new int[INITIAL_NUM_VALUES];
+  private int[] valueLengths = new int[INITIAL_NUM_VALUES];
+  private int[] valueNext = new int[INITIAL_NUM_VALUES];
+  private int numValues;
+
+  // group index + 1, 0 for empty slots. At most half full.
+  private int[] slots = new int[2 * INITIAL_NUM_GROUPS];
+
+  private boolean aggregating = true;
+
+  // statistics
+  private long numInputRecords;
+  private long numCombinedRecords;
+  private long numOutputRecords;
+  private int numFlushes;
+
+  /**
+   * @param conf used for the intermediate output key and value classes, and the minimum reduction
+   * @param combiner combiner to run over the groups
+   * @param memoryLimit bytes which may be used for the table
+   * @param writer where the records which do not get aggregated are written to, which counts
+   *          them as output
+   * @param combinedWriter where the combined records are written to, which must not count them
+   *          as output, since they have been counted when they were written to the aggregator
+   * @param counters counters of the task, shared with the sorter the writers write to
+   * @param name used in log messages
+   */
+  public HashAggregator(Configuration conf, Combiner combiner, long memoryLimit,
+      KeyValueWriter writer, KeyValueWriter combinedWriter, TezCounters counters, String name)
+      throws IOException {
+    this.combiner = Preconditions.checkNotNull(combiner, "combiner");
+    this.writer = writer;
+    this.combinedWriter = combinedWriter;
+    this.memoryLimit = memoryLimit;
+    this.name = name;
+    this.outputRecordCounter = counters.findCounter(TaskCounter.OUTPUT_RECORDS);
+    this.outputByteCounter = counters.findCounter(TaskCounter.OUTPUT_BYTES);
+    this.minReduction = conf.getFloat(
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MIN_REDUCTION,
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MIN_REDUCTION_DEFAULT);
+    Preconditions.checkArgument(minReduction >= 0 && minReduction <= 1,
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MIN_REDUCTION
+            + " should be in the range [0, 1], but was " + minReduction);
+
+    Class<Object> keyClass = ConfigUtils.getIntermediateOutputKeyClass(conf);
+    Class<Object> valueClass = ConfigUtils.getIntermediateOutputValueClass(conf);
+    SerializationFactory serializationFactory = new SerializationFactory(conf);
+    this.keySerializer = serializationFactory.getSerializer(keyClass);
+    this.keySerializer.open(serializationBuffer);
+    this.valueSerializer = serializationFactory.getSerializer(valueClass);
+    this.valueSerializer.open(serializationBuffer);
+    this.combineOutputWriter = new CombineOutputWriter(
+        serializationFactory.getDeserializer(keyClass),
+        serializationFactory.getDeserializer(valueClass));
+
+    LOG.info(name + ": hash aggregation using memoryLimit=" + memoryLimit
+        + ", minReduction=" + minReduction);
+  }
+
+  public void write(Object key, Object value) throws IOException {
+    numInputRecords++;
+    if (!aggregating) {
+      writer.write(key, value);
+      return;
+    }
+
+    serializationBuffer.reset();
+    keySerializer.serialize(key);
+    int keyLength = serializationBuffer.getLength();
+    valueSerializer.serialize(value);
+    int valueLength = serializationBuffer.getLength() - keyLength;
+    byte[] record = serializationBuffer.getData();
+
+    int hash = hash(record, keyLength);
+    int slot = findSlot(record, keyLength, hash);
+    int group = slots[slot] - 1;
+    if (!ensureCapacity(group < 0 ? keyLength + valueLength : valueLength, group < 0)) {
+      flush();
+      if (!aggregating || !ensureCapacity(keyLength + valueLength, true)) {
+        // aggregation has been turned off, or the record alone exceeds the memory limit
+        writer.write(key, value);
+        return;
+      }
+      group = -1;
+    }
+
+    if (group < 0) {
+      // the table may have been flushed or rehashed
+      slot = findSlot(record, keyLength, hash);
+      group = numGroups++;
+      System.arraycopy(record, 0, data, dataLength, keyLength);
+      groupKeyOffsets[group] = dataLength;
+      groupKeyLengths[group] = keyLength;
+      groupHashes[group] = hash;
+      groupFirstValues[group] = -1;
+      dataLength += keyLength;
+      slots[slot] = group + 1;
+    }
+    int valueIndex = numValues++;
+    System.arraycopy(record, keyLength, data, dataLength, valueLength);
+    valueOffsets[valueIndex] = dataLength;
+    valueLengths[valueIndex] = valueLength;
+    valueNext[valueIndex] = -1;
+    dataLength += valueLength;
+    if (groupFirstValues[group] < 0) {
+      groupFirstValues[group] = valueIndex;
+    } else {
+      valueNext[groupLastValues[group]] = valueIndex;
+    }
+    groupLastValues[group] = valueIndex;
+    outputRecordCounter.increment(1);
+    outputByteCounter.increment(keyLength + valueLength);
+  }
+
+  /**
+   * Runs the combiner over the groups in the table, and empties it.
+   */
+  public void flush() throws IOException {
+    if (numGroups == 0) {
+      return;
+    }
+    numFlushes++;
+    long outputRecordsBefore = numOutputRecords;
+    try {
+      combiner.combine(new GroupIterator(), combineOutputWriter);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOInterruptedException("Combiner interrupted", e);
+    }
+    long combinedRecords = numOutputRecords - outputRecordsBefore;
+    numCombinedRecords += numValues;
+    float reduction = 1 - (float) combinedRecords / numValues;
+    if (aggregating && reduction < minReduction) {
+      LOG.info(name + ": turning off hash aggregation, as it reduced " + numValues
+          + " records to " + combinedRecords + " only");
+      aggregating = false;
+    }
+    clear();
+  }
+
+  /**
+   * Flushes the table, and releases its memory.
+   */
+  public void close() throws IOException {
+    flush();
+    aggregating = false;
+    data = null;
+    slots = null;
+    LOG.info(name + ": hash aggregation combined " + numCombinedRecords + " of "
+        + numInputRecords + " records into " + numOutputRecords + " records in " + numFlushes
+        + " flushes");
+  }
+
+  @VisibleForTesting
+  boolean isAggregating() {
+    return aggregating;
+  }
+
+  @VisibleForTesting
+  int getNumFlushes() {
+    return numFlushes;
+  }
+
+  @VisibleForTesting
+  long getMemoryUsed() {
+    return data.length + (long) groupKeyOffsets.length * BYTES_PER_GROUP
+        + (long) valueOffsets.length * BYTES_PER_VALUE + (long) slots.length * 4;
+  }
+
+  private void clear() {
+    Arrays.fill(slots, 0);
+    dataLength = 0;
+    numGroups = 0;
+    numValues = 0;
+  }
+
+  private static int hash(byte[] bytes, int length) {
+    int h = WritableComparator.hashBytes(bytes, 0, length);
+    // spread the bits, as slots are picked by the low bits
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * @return the slot holding the group of the key, or the empty slot it should go to
+   */
+  private int findSlot(byte[] key, int keyLength, int hash) {
+    int mask = slots.length - 1;
+    int slot = hash & mask;
+    while (true) {
+      int group = slots[slot] - 1;
+      if (group < 0) {
+        return slot;
+      }
+      if (groupHashes[group] == hash && groupKeyLengths[group] == keyLength
+          && WritableComparator.compareBytes(data, groupKeyOffsets[group], keyLength,
+              key, 0, keyLength) == 0) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Grows the table for another value of numBytes, and possibly another group, unless that
+   * takes it beyond the memory limit.
+   *
+   * @return whether the table has room
+   */
+  private boolean ensureCapacity(int numBytes, boolean newGroup) {
+    int newDataSize = data.length;
+    while (newDataSize - dataLength < numBytes) {
+      if (newDataSize >= (Integer.MAX_VALUE >> 1)) {
+        return false;
+      }
+      newDataSize <<= 1;
+    }
+    int newNumValues = valueOffsets.length;
+    if (numValues == newNumValues) {
+      newNumValues <<= 1;
+    }
+    int newNumGroups = groupKeyOffsets.length;
+    int newNumSlots = slots.length;
+    if (newGroup && numGroups == newNumGroups) {
+      newNumGroups <<= 1;
+      newNumSlots <<= 1;
+    }
+    long memoryNeeded = newDataSize + (long) newNumGroups * BYTES_PER_GROUP
+        + (long) newNumValues * BYTES_PER_VALUE + (long) newNumSlots * 4;
+    if (memoryNeeded > memoryLimit && memoryNeeded > getMemoryUsed()) {
+      return false;
+    }
+
+    if (newDataSize != data.length) {
+      data = Arrays.copyOf(data, newDataSize);
+    }
+    if (newNumValues != valueOffsets.length) {
+      valueOffsets = Arrays.copyOf(valueOffsets, newNumValues);
+      valueLengths = Arrays.copyOf(valueLengths, newNumValues);
+      valueNext = Arrays.copyOf(valueNext, newNumValues);
+    }
+    if (newNumGroups != groupKeyOffsets.length) {
+      groupKeyOffsets = Arrays.copyOf(groupKeyOffsets, newNumGroups);
+      groupKeyLengths = Arrays.copyOf(groupKeyLengths, newNumGroups);
+      groupHashes = Arrays.copyOf(groupHashes, newNumGroups);
+      groupFirstValues = Arrays.copyOf(groupFirstValues, newNumGroups);
+      groupLastValues = Arrays.copyOf(groupLastValues, newNumGroups);
+    }
+    if (newNumSlots != slots.length) {
+      rehash(newNumSlots);
+    }
+    return true;
+  }
+
+  private void rehash(int numSlots) {
+    slots = new int[numSlots];
+    int mask = numSlots - 1;
+    for (int group = 0; group < numGroups; group++) {
+      int slot = groupHashes[group] & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = group + 1;
+    }
+  }
+
+  /**
+   * Iterates over the values of each group in turn.
+   */
+  private class GroupIterator implements TezRawKeyValueIterator {
+
+    private final DataInputBuffer key = new DataInputBuffer();
+    private final DataInputBuffer value = new DataInputBuffer();
+    private final Progress progress = new Progress();
+    private int group = -1;
+    private int valueIndex = -1;
+    private boolean sameKey;
+
+    @Override
+    public DataInputBuffer getKey() {
+      return key;
+    }
+
+    @Override
+    public DataInputBuffer getValue() {
+      return value;
+    }
+
+    @Override
+    public boolean next() {
+      if (valueIndex >= 0 && valueNext[valueIndex] >= 0) {
+        valueIndex = valueNext[valueIndex];
+        sameKey = true;
+      } else {
+        if (++group >= numGroups) {
+          return false;
+        }
+        valueIndex = groupFirstValues[group];
+        sameKey = false;
+        key.reset(data, groupKeyOffsets[group], groupKeyLengths[group]);
+        progress.set((float) group / numGroups);
+      }
+      value.reset(data, valueOffsets[valueIndex], valueLengths[valueIndex]);
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Progress getProgress() {
+      return progress;
+    }
+
+    @Override
+    public boolean isSameKey() {
+      return sameKey;
+    }
+  }
+
+  /**
+   * Receives the output of the combiner, and writes it on as objects.
+   */
+  private class CombineOutputWriter extends IFile.Writer {
+
+    private final DataInputBuffer buffer = new DataInputBuffer();
+    private final Deserializer<Object> keyDeserializer;
+    private final Deserializer<Object> valueDeserializer;
+    private Object currentKey;
+    // reused for deserialized keys and values, while currentKey may be owned by the combiner
+    private Object deserializedKey;
+    private Object deserializedValue;
+
+    CombineOutputWriter(Deserializer<Object> keyDeserializer,
+        Deserializer<Object> valueDeserializer)
+        throws IOException {
+      super(null, null, false);
+      this.keyDeserializer = keyDeserializer;
+      this.keyDeserializer.open(buffer);
+      this.valueDeserializer = valueDeserializer;
+      this.valueDeserializer.open(buffer);
+    }
+
+    @Override
+    public void append(Object key, Object value) throws IOException {
+      if (key != IFile.REPEAT_KEY) {
+        currentKey = key;
+      }
+      appendValue(value);
+    }
+
+    @Override
+    public void append(DataInputBuffer key, DataInputBuffer value) throws IOException {
+      if (key != IFile.REPEAT_KEY) {
+        buffer.reset(key.getData(), key.getPosition(), key.getLength() - key.getPosition());
+        deserializedKey = keyDeserializer.deserialize(deserializedKey);
+        currentKey = deserializedKey;
+      }
+      appendValue(value);
+    }
+
+    @Override
+    public void appendValue(Object value) throws IOException {
+      numOutputRecords++;
+      combinedWriter.write(currentKey, value);
+    }
+
+    @Override
+    public void appendValue(DataInputBuffer value) throws IOException {
+      buffer.reset(value.getData(), value.getPosition(),
+          value.getLength() - value.getPosition());
+      deserializedValue = valueDeserializer.deserialize(deserializedValue);
+      appendValue(deserializedValue);
+    }
+
+    @Override
+    public <V> void appendValues(Iterator<V> valuesItr) throws IOException {
+      while (valuesItr.hasNext()) {
+        appendValue(valuesItr.next());
+      }
+    }
+
+    @Override
+    public <K, V> void appendKeyValues(K key, Iterator<V> valuesItr) throws IOException {
+      currentKey = key;
+      appendValues(valuesItr);
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
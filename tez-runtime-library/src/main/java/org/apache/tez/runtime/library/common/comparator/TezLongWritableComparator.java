@@ -0,0 +1,37 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.runtime.library.common.comparator;
+
+import org.apache.hadoop.classification.InterfaceAudience.Public;
+import org.apache.hadoop.classification.InterfaceStability.Unstable;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * {@link LongWritable.Comparator} with a proxy derived from the high bits of the value.
+ */
+@Public
+@Unstable
+public final class TezLongWritableComparator extends LongWritable.Comparator implements
+    ProxyComparator<LongWritable> {
+
+  @Override
+  public int getProxy(LongWritable key) {
+    // flip the sign bit to get an unsigned ordering, keep the top 31 bits
+    return (int) ((key.get() ^ Long.MIN_VALUE) >>> 33);
+  }
+}
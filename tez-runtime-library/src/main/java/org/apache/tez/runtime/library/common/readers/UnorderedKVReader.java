@@ -19,6 +19,7 @@
 package org.apache.tez.runtime.library.common.readers;
 
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.tez.runtime.api.InputContext;
@@ -32,14 +33,19 @@ import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.serializer.Deserializer;
 import org.apache.hadoop.io.serializer.SerializationFactory;
+import com.google.common.annotations.VisibleForTesting;
 import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.runtime.library.api.KeyValueReader;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.common.ConfigUtils;
 import org.apache.tez.runtime.library.common.shuffle.impl.ShuffleManager;
+import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.DirectInMemoryReader;
 import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.InMemoryReader;
 import org.apache.tez.runtime.library.common.sort.impl.IFile;
 import org.apache.tez.runtime.library.common.shuffle.FetchedInput;
 import org.apache.tez.runtime.library.common.shuffle.FetchedInput.Type;
+import org.apache.tez.runtime.library.common.shuffle.LocalDiskFetchedInput;
+import org.apache.tez.runtime.library.common.shuffle.MappedIFileReader;
 import org.apache.tez.runtime.library.common.shuffle.MemoryFetchedInput;
 
 @Unstable
@@ -61,6 +67,10 @@ public class UnorderedKVReader<K, V> extends KeyValueReader {
   private final boolean ifileReadAhead;
   private final int ifileReadAheadLength;
   private final int ifileBufferSize;
+  private final boolean localFetchMmap;
+  private final long localFetchMmapMaxBytes;
+  // bytes of the local segments which are memory mapped by open readers
+  private final AtomicLong mappedBytes = new AtomicLong(0);
   
   private final TezCounter inputRecordCounter;
   private final InputContext context;
@@ -89,6 +99,12 @@ public class UnorderedKVReader<K, V> extends KeyValueReader {
     this.ifileReadAheadLength = ifileReadAheadLength;
     this.ifileBufferSize = ifileBufferSize;
     this.inputRecordCounter = inputRecordCounter;
+    this.localFetchMmap = conf.getBoolean(
+        TezRuntimeConfiguration.TEZ_RUNTIME_LOCAL_FETCH_MMAP_ENABLED,
+        TezRuntimeConfiguration.TEZ_RUNTIME_LOCAL_FETCH_MMAP_ENABLED_DEFAULT);
+    this.localFetchMmapMaxBytes = conf.getLong(
+        TezRuntimeConfiguration.TEZ_RUNTIME_LOCAL_FETCH_MMAP_MAX_BYTES,
+        TezRuntimeConfiguration.TEZ_RUNTIME_LOCAL_FETCH_MMAP_MAX_BYTES_DEFAULT);
 
     this.keyClass = ConfigUtils.getIntermediateInputKeyClass(conf);
     this.valClass = ConfigUtils.getIntermediateInputValueClass(conf);
@@ -220,12 +236,57 @@ public class UnorderedKVReader<K, V> extends KeyValueReader {
     if (fetchedInput.getType() == Type.MEMORY) {
       MemoryFetchedInput mfi = (MemoryFetchedInput) fetchedInput;
 
+      if (mfi.getBuffer() != null) {
+        // the buffer is returned to the arena when the input is freed
+        return new DirectInMemoryReader(null, mfi.getInputAttemptIdentifier(),
+            mfi.getBuffer(), (int) mfi.getSize(), null);
+      }
       return new InMemoryReader(null, mfi.getInputAttemptIdentifier(),
           mfi.getBytes(), 0, (int) mfi.getSize());
     } else {
+      if (localFetchMmap && fetchedInput.getType() == Type.DISK_DIRECT
+          && reserveMappedBytes(fetchedInput.getSize())) {
+        MappedByteBuffer mapped = null;
+        MappedIFileReader reader = null;
+        try {
+          mapped = ((LocalDiskFetchedInput) fetchedInput).map();
+          if (!MappedIFileReader.isCompressed(mapped)) {
+            reader = new MappedIFileReader(mapped, mappedBytes);
+          }
+        } finally {
+          // the reader owns the mapping and its bytes once it is created, compressed
+          // segments are decompressed through the codec streams
+          if (reader == null) {
+            if (mapped != null) {
+              MappedIFileReader.unmap(mapped);
+            }
+            mappedBytes.addAndGet(-fetchedInput.getSize());
+          }
+        }
+        if (reader != null) {
+          return reader;
+        }
+      }
       return new IFile.Reader(fetchedInput.getInputStream(),
           fetchedInput.getSize(), codec, null, null, ifileReadAhead,
           ifileReadAheadLength, ifileBufferSize);
     }
   }
+
+  /**
+   * Reserve the bytes of a segment to be mapped, if they fit within the bytes the reader may
+   * keep mapped. Segments which do not fit are read through streams.
+   */
+  private boolean reserveMappedBytes(long size) {
+    if (mappedBytes.get() + size > localFetchMmapMaxBytes) {
+      return false;
+    }
+    mappedBytes.addAndGet(size);
+    return true;
+  }
+
+  @VisibleForTesting
+  long getMappedBytes() {
+    return mappedBytes.get();
+  }
 }
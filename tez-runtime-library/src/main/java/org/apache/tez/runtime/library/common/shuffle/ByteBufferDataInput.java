@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.shuffle;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * {@link DataInput} over the remaining bytes of a {@link ByteBuffer}, which advances the
+ * position of the buffer as it is read.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class ByteBufferDataInput implements DataInput {
+
+  private final ByteBuffer buf;
+
+  public ByteBufferDataInput(ByteBuffer buf) {
+    this.buf = buf;
+  }
+
+  private void ensureRemaining(int n) throws EOFException {
+    if (buf.remaining() < n) {
+      throw new EOFException("Requested " + n + " bytes, remaining " + buf.remaining());
+    }
+  }
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    ensureRemaining(len);
+    buf.get(b, off, len);
+  }
+
+  @Override
+  public int skipBytes(int n) throws IOException {
+    int skipped = Math.min(n, buf.remaining());
+    buf.position(buf.position() + skipped);
+    return skipped;
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    ensureRemaining(1);
+    return buf.get();
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return readByte() & 0xff;
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    ensureRemaining(2);
+    return buf.getShort();
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xffff;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    ensureRemaining(2);
+    return buf.getChar();
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    ensureRemaining(4);
+    return buf.getInt();
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    ensureRemaining(8);
+    return buf.getLong();
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    ensureRemaining(4);
+    return buf.getFloat();
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    ensureRemaining(8);
+    return buf.getDouble();
+  }
+
+  @Override
+  public String readLine() throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public String readUTF() throws IOException {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -0,0 +1,344 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.shuffle;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Pool of direct buffers which hold fetched shuffle data off the java heap.
+ *
+ * Buffers are handed out from power of two size classes, and are retained for reuse on
+ * {@link #release(ByteBuffer)} as long as the capacity of the buffers in use and the retained
+ * buffers together stays within the configured limit. Retained buffers are freed when new
+ * buffers are allocated beyond that limit. Anything released after {@link #close()} is freed
+ * right away instead of waiting for the garbage collector to get to it.
+ *
+ * The arena does not limit the buffers in use, that is left to the allocator which reserves
+ * the shuffle memory. Since a buffer can be up to twice as large as requested, the allocator
+ * has to reserve {@link #getCapacity(int)} rather than the requested size.
+ *
+ * Buffers are freed through the cleaner of the JVM, found by reflection. Where there is none,
+ * freed buffers are left to the garbage collector.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class DirectBufferArena {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DirectBufferArena.class);
+
+  @VisibleForTesting
+  static final int MIN_BUFFER_SHIFT = 12;
+  // larger buffers are allocated with their exact size and are never pooled
+  @VisibleForTesting
+  static final int MAX_BUFFER_SHIFT = 30;
+
+  private final long maxBytes;
+  private final ArrayDeque<ByteBuffer>[] freeBuffers;
+  // capacity of the buffers handed out and not released yet
+  private long usedBytes = 0;
+  private long retainedBytes = 0;
+  private boolean closed = false;
+
+  @SuppressWarnings("unchecked")
+  public DirectBufferArena(long maxBytes) {
+    Preconditions.checkArgument(maxBytes >= 0, "maxBytes should not be negative");
+    this.maxBytes = maxBytes;
+    this.freeBuffers = new ArrayDeque[MAX_BUFFER_SHIFT - MIN_BUFFER_SHIFT + 1];
+    for (int i = 0; i < freeBuffers.length; i++) {
+      freeBuffers[i] = new ArrayDeque<ByteBuffer>();
+    }
+  }
+
+  @VisibleForTesting
+  static int sizeClass(int size) {
+    if (size <= (1 << MIN_BUFFER_SHIFT)) {
+      return 0;
+    }
+    int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+    return shift > MAX_BUFFER_SHIFT ? -1 : shift - MIN_BUFFER_SHIFT;
+  }
+
+  /**
+   * @return the capacity of the buffer {@link #allocate(int)} returns for <code>size</code>
+   *         bytes, which is the direct memory it takes up
+   */
+  public static long getCapacity(int size) {
+    int sizeClass = sizeClass(size);
+    return sizeClass < 0 ? size : 1L << (sizeClass + MIN_BUFFER_SHIFT);
+  }
+
+  /**
+   * @return a direct buffer with position 0 and a limit of <code>size</code>. Its contents
+   *         are undefined.
+   */
+  public ByteBuffer allocate(int size) {
+    Preconditions.checkArgument(size >= 0, "size should not be negative");
+    int sizeClass = sizeClass(size);
+    long capacity = getCapacity(size);
+    ByteBuffer buffer = null;
+    synchronized (this) {
+      if (sizeClass >= 0) {
+        buffer = freeBuffers[sizeClass].pollFirst();
+      }
+      if (buffer != null) {
+        retainedBytes -= capacity;
+      } else {
+        // make room for the new buffer by freeing retained ones
+        freeRetained(maxBytes - usedBytes - capacity);
+      }
+      usedBytes += capacity;
+    }
+    if (buffer == null) {
+      buffer = ByteBuffer.allocateDirect((int) capacity);
+    }
+    buffer.limit(size);
+    return buffer;
+  }
+
+  /**
+   * Free retained buffers, largest first, until at most <code>maxRetained</code> bytes are
+   * retained.
+   */
+  private void freeRetained(long maxRetained) {
+    for (int i = freeBuffers.length - 1; i >= 0 && retainedBytes > maxRetained; i--) {
+      ByteBuffer buffer;
+      while (retainedBytes > maxRetained && (buffer = freeBuffers[i].pollFirst()) != null) {
+        retainedBytes -= buffer.capacity();
+        BufferCleaner.free(buffer);
+      }
+    }
+  }
+
+  /**
+   * Return a buffer obtained from {@link #allocate(int)}. The buffer must not be accessed
+   * after it has been released.
+   */
+  public void release(ByteBuffer buffer) {
+    int sizeClass = sizeClass(buffer.capacity());
+    synchronized (this) {
+      usedBytes -= buffer.capacity();
+      if (sizeClass >= 0 && buffer.capacity() == 1 << (sizeClass + MIN_BUFFER_SHIFT)
+          && !closed && usedBytes + retainedBytes + buffer.capacity() <= maxBytes) {
+        buffer.clear();
+        freeBuffers[sizeClass].addFirst(buffer);
+        retainedBytes += buffer.capacity();
+        return;
+      }
+    }
+    BufferCleaner.free(buffer);
+  }
+
+  /**
+   * Free all retained buffers. Buffers which are still in use can be released afterwards,
+   * they are freed right away.
+   */
+  public void close() {
+    long freed = 0;
+    synchronized (this) {
+      closed = true;
+      freed = retainedBytes;
+      freeRetained(0);
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Closed direct buffer arena, freed " + freed + " retained bytes");
+    }
+  }
+
+  @VisibleForTesting
+  synchronized long getRetainedBytes() {
+    return retainedBytes;
+  }
+
+  @VisibleForTesting
+  synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+
+  /**
+   * Frees the memory of a direct buffer, or unmaps a memory mapped one, right away. The buffer
+   * must not be used afterwards. Where the JVM has no cleaner, it is left to the garbage
+   * collector.
+   */
+  public static void free(ByteBuffer buffer) {
+    BufferCleaner.free(buffer);
+  }
+
+  /**
+   * @return a stream which reads the bytes between position and limit of the buffer, without
+   *         changing the buffer itself
+   */
+  public static InputStream newInputStream(ByteBuffer buffer) {
+    return new BufferInputStream(buffer.duplicate());
+  }
+
+  /**
+   * @return a stream which writes from position 0 up to the limit of the buffer, without
+   *         changing the buffer itself
+   */
+  public static OutputStream newOutputStream(ByteBuffer buffer) {
+    ByteBuffer target = buffer.duplicate();
+    target.position(0);
+    return new BufferOutputStream(target);
+  }
+
+  private static class BufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    BufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public long skip(long n) {
+      int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+
+  /**
+   * Frees the memory of a direct buffer right away. Uses Unsafe.invokeCleaner on java 9 and
+   * later, and the cleaner of the buffer on java 8.
+   */
+  private static final class BufferCleaner {
+    // Unsafe.invokeCleaner(ByteBuffer) and the Unsafe instance, on java 9 and later
+    private static final Method INVOKE_CLEANER;
+    private static final Object UNSAFE;
+    // DirectByteBuffer.cleaner() and Cleaner.clean(), on java 8
+    private static final Method CLEANER;
+    private static final Method CLEAN;
+
+    static {
+      Method invokeCleaner = null;
+      Object unsafe = null;
+      Method cleaner = null;
+      Method clean = null;
+      try {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+        unsafe = theUnsafe.get(null);
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (Throwable t) {
+        try {
+          ByteBuffer buffer = ByteBuffer.allocateDirect(1);
+          cleaner = buffer.getClass().getMethod("cleaner");
+          cleaner.setAccessible(true);
+          clean = cleaner.getReturnType().getMethod("clean");
+          clean.setAccessible(true);
+          clean.invoke(cleaner.invoke(buffer));
+        } catch (Throwable t2) {
+          LOG.warn("Direct buffers can not be freed explicitly, leaving them to the garbage"
+              + " collector", t2);
+          cleaner = null;
+          clean = null;
+        }
+      }
+      INVOKE_CLEANER = invokeCleaner;
+      UNSAFE = unsafe;
+      CLEANER = cleaner;
+      CLEAN = clean;
+    }
+
+    static void free(ByteBuffer buffer) {
+      if (!buffer.isDirect()) {
+        return;
+      }
+      try {
+        if (INVOKE_CLEANER != null) {
+          INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } else if (CLEANER != null) {
+          Object cleaner = CLEANER.invoke(buffer);
+          if (cleaner != null) {
+            CLEAN.invoke(cleaner);
+          }
+        }
+      } catch (Exception e) {
+        // the buffer is freed when it is garbage collected
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Could not free direct buffer", e);
+        }
+      }
+    }
+  }
+
+  private static class BufferOutputStream extends OutputStream {
+    private final ByteBuffer buffer;
+
+    BufferOutputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    private void ensureRemaining(int n) throws EOFException {
+      if (buffer.remaining() < n) {
+        throw new EOFException("Reaching the limit of the buffer.");
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      ensureRemaining(1);
+      buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      ensureRemaining(len);
+      buffer.put(b, off, len);
+    }
+  }
+}
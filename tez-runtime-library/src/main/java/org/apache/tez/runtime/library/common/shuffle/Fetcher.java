@@ -58,9 +58,11 @@ import org.apache.hadoop.yarn.api.records.ApplicationId;
 import org.apache.tez.common.CallableWithNdc;
 import org.apache.tez.common.security.JobTokenSecretManager;
 import org.apache.tez.dag.api.TezUncheckedException;
+import org.apache.tez.runtime.library.api.PushShuffleService;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.common.Constants;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.BatchedShuffleHeader;
 import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.ShuffleHeader;
 import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
 import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
@@ -187,9 +189,14 @@ public class Fetcher extends CallableWithNdc<FetchResult> {
 
   private final boolean asyncHttp;
   private final boolean compositeFetch;
+  private final boolean batchedFetch;
 
   private final boolean verifyDiskChecksum;
 
+  // reads the inputs assigned to the push shuffle service's host
+  private PushShuffleService pushShuffleService;
+  private String pushShuffleId;
+
   private final boolean isDebugEnabled = LOG.isDebugEnabled();
 
   private Fetcher(FetcherCallback fetcherCallback, HttpConnectionParams params,
@@ -225,6 +232,9 @@ public class Fetcher extends CallableWithNdc<FetchResult> {
     this.localHostname = localHostname;
     this.shufflePort = shufflePort;
     this.compositeFetch = compositeFetch;
+    this.batchedFetch = compositeFetch && conf.getBoolean(
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_BATCHED_FETCH_ENABLED,
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_BATCHED_FETCH_ENABLED_DEFAULT);
 
     try {
       if (this.sharedFetchEnabled) {
@@ -276,7 +286,9 @@ public class Fetcher extends CallableWithNdc<FetchResult> {
 
     HostFetchResult hostFetchResult;
 
-    if (localDiskFetchEnabled && host.equals(localHostname) && port == shufflePort) {
+    if (pushShuffleService != null && PushShuffle.isPushedInput(host, port)) {
+      hostFetchResult = doPushedFetch();
+    } else if (localDiskFetchEnabled && host.equals(localHostname) && port == shufflePort) {
       hostFetchResult = setupLocalDiskFetch();
     } else if (multiplex) {
       hostFetchResult = doSharedFetch();
@@ -489,7 +501,8 @@ public class Fetcher extends CallableWithNdc<FetchResult> {
   private HostFetchResult setupConnection(Collection<InputAttemptIdentifier> attempts) {
     try {
       StringBuilder baseURI = ShuffleUtils.constructBaseURIForShuffleHandler(host,
-          port, partition, partitionCount, appId.toString(), dagIdentifier, httpConnectionParams.isSslShuffle());
+          port, partition, partitionCount, appId.toString(), dagIdentifier,
+          httpConnectionParams.isSslShuffle(), batchedFetch);
       this.url = ShuffleUtils.constructInputURL(baseURI.toString(), attempts,
           httpConnectionParams.isKeepAlive());
 
@@ -728,6 +741,70 @@ public class Fetcher extends CallableWithNdc<FetchResult> {
         failedFetches, false);
   }
 
+  /**
+   * Reads the inputs pushed to the push shuffle service from the files it locates them in.
+   * Inputs which cannot be read are reported as failed, for the ShuffleManager to fetch them
+   * from their producers instead.
+   */
+  private HostFetchResult doPushedFetch() {
+    List<InputAttemptIdentifier> failedFetches = new ArrayList<InputAttemptIdentifier>();
+    Iterator<Entry<String, InputAttemptIdentifier>> iterator =
+        srcAttemptsRemaining.entrySet().iterator();
+    while (iterator.hasNext()) {
+      if (isShutDown.get()) {
+        if (isDebugEnabled) {
+          LOG.debug("Already shutdown. Skipping fetch for " + srcAttemptsRemaining.size()
+              + " inputs");
+        }
+        break;
+      }
+      InputAttemptIdentifier input = iterator.next().getValue();
+      try {
+        for (int curPartition = 0; curPartition < partitionCount; curPartition++) {
+          int reduceId = curPartition + partition;
+          InputAttemptIdentifier srcAttemptId =
+              pathToAttemptMap.get(new PathPartition(input.getPathComponent(), reduceId));
+          long startTime = System.currentTimeMillis();
+          PushShuffleService.Segment segment =
+              pushShuffleService.locate(pushShuffleId, reduceId, srcAttemptId.getPathComponent());
+          if (segment == null) {
+            throw new IOException("Output " + srcAttemptId.getPathComponent()
+                + " for partition " + reduceId + " has not been pushed to " + pushShuffleService);
+          }
+          FetchedInput fetchedInput = new LocalDiskFetchedInput(segment.getOffset(),
+              segment.getPartLength(), srcAttemptId, segment.getPath(), conf,
+              new FetchedInputCallback() {
+                @Override
+                public void fetchComplete(FetchedInput fetchedInput) {
+                }
+
+                @Override
+                public void fetchFailed(FetchedInput fetchedInput) {
+                }
+
+                @Override
+                public void freeResources(FetchedInput fetchedInput) {
+                }
+              });
+          long endTime = System.currentTimeMillis();
+          fetcherCallback.fetchSucceeded(host, srcAttemptId, fetchedInput,
+              segment.getPartLength(), segment.getRawLength(), (endTime - startTime));
+        }
+      } catch (IOException e) {
+        if (isShutDown.get()) {
+          break;
+        }
+        LOG.warn("Failed to read pushed output of " + input + ", fetching it from its producer",
+            e);
+        failedFetches.add(input);
+      }
+      iterator.remove();
+    }
+    return new HostFetchResult(new FetchResult(host, port, partition, partitionCount,
+        srcAttemptsRemaining.values()), failedFetches.isEmpty() ? null
+        : failedFetches.toArray(new InputAttemptIdentifier[failedFetches.size()]), false);
+  }
+
   @VisibleForTesting
   protected TezIndexRecord getTezIndexRecord(InputAttemptIdentifier srcAttemptId, int partition) throws
       IOException {
@@ -838,10 +915,16 @@ public class Fetcher extends CallableWithNdc<FetchResult> {
     try {
       long startTime = System.currentTimeMillis();
       int partitionCount = 1;
+      BatchedShuffleHeader batchedHeader = null;
 
       if (this.compositeFetch) {
         // Multiple partitions are fetched
         partitionCount = WritableUtils.readVInt(input);
+        if (BatchedShuffleHeader.isBatched(partitionCount)) {
+          // One index header describes all partitions
+          batchedHeader = new BatchedShuffleHeader();
+          partitionCount = -partitionCount;
+        }
       }
       ArrayList<MapOutputStat> mapOutputStats = new ArrayList<>(partitionCount);
       for (int mapOutputIndex = 0; mapOutputIndex < partitionCount; mapOutputIndex++) {
@@ -850,8 +933,16 @@ public class Fetcher extends CallableWithNdc<FetchResult> {
         // Read the shuffle header
         String pathComponent = null;
         try {
-          ShuffleHeader header = new ShuffleHeader();
-          header.readFields(input);
+          ShuffleHeader header;
+          if (batchedHeader != null) {
+            if (mapOutputIndex == 0) {
+              batchedHeader.readFields(input, -partitionCount);
+            }
+            header = batchedHeader.getHeader(mapOutputIndex);
+          } else {
+            header = new ShuffleHeader();
+            header.readFields(input);
+          }
           pathComponent = header.getMapId();
           if (!pathComponent.startsWith(InputAttemptIdentifier.PATH_PREFIX)) {
             throw new IllegalArgumentException("Invalid map id: " + header.getMapId() + ", expected to start with " +
@@ -947,10 +1038,18 @@ public class Fetcher extends CallableWithNdc<FetchResult> {
         }
 
         if (fetchedInput.getType() == Type.MEMORY) {
-          ShuffleUtils.shuffleToMemory(((MemoryFetchedInput) fetchedInput).getBytes(),
-              input, (int) decompressedLength, (int) compressedLength, codec,
-              ifileReadAhead, ifileReadAheadLength, LOG,
-              fetchedInput.getInputAttemptIdentifier());
+          MemoryFetchedInput memoryInput = (MemoryFetchedInput) fetchedInput;
+          if (memoryInput.getBuffer() != null) {
+            ShuffleUtils.shuffleToMemory(memoryInput.getBuffer(),
+                input, (int) decompressedLength, (int) compressedLength, codec,
+                ifileReadAhead, ifileReadAheadLength, LOG,
+                fetchedInput.getInputAttemptIdentifier());
+          } else {
+            ShuffleUtils.shuffleToMemory(memoryInput.getBytes(),
+                input, (int) decompressedLength, (int) compressedLength, codec,
+                ifileReadAhead, ifileReadAheadLength, LOG,
+                fetchedInput.getInputAttemptIdentifier());
+          }
         } else if (fetchedInput.getType() == Type.DISK) {
           ShuffleUtils.shuffleToDisk(((DiskFetchedInput) fetchedInput).getOutputStream(),
               (host + ":" + port), input, compressedLength, decompressedLength, LOG,
@@ -1147,6 +1246,13 @@ public class Fetcher extends CallableWithNdc<FetchResult> {
       return this;
     }
 
+    public FetcherBuilder setPushShuffleService(PushShuffleService pushShuffleService,
+        String shuffleId) {
+      fetcher.pushShuffleService = pushShuffleService;
+      fetcher.pushShuffleId = shuffleId;
+      return this;
+    }
+
     public FetcherBuilder assignWork(String host, int port, int partition, int partitionCount,
         List<InputAttemptIdentifier> inputs) {
       fetcher.host = host;
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tez.runtime.library.common.shuffle;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience.Private;
+
+/**
+ * Tracks the rate at which outputs are fetched from each host, to tell hosts which are much
+ * slower than their peers, e.g. because of a slow disk, apart from ones which are only busy.
+ * A host which has returned outputs is judged by its rate, including the time spent on its
+ * fetch in progress. A host which has not returned any output yet is judged by the time spent
+ * on its first fetch, against the median time the other hosts take per output.
+ *
+ * Not thread safe.
+ */
+@Private
+public class HostThroughputTracker {
+
+  private static class HostStats {
+    long bytes;
+    long millis;
+    int fetches;
+    long lastCompletionTime;
+  }
+
+  private final Map<HostPort, HostStats> hosts = new HashMap<HostPort, HostStats>();
+
+  /**
+   * Records an output fetched from the host.
+   *
+   * @param bytes size of the output, as transferred
+   * @param millis time taken to fetch the output
+   * @param now time at which the fetch completed
+   */
+  public void fetchCompleted(HostPort host, long bytes, long millis, long now) {
+    HostStats stats = hosts.get(host);
+    if (stats == null) {
+      stats = new HostStats();
+      hosts.put(host, stats);
+    }
+    stats.bytes += bytes;
+    // outputs copied within a millisecond still take some time
+    stats.millis += Math.max(1, millis);
+    stats.fetches++;
+    stats.lastCompletionTime = now;
+  }
+
+  /**
+   * @return the time at which the last output was fetched from the host, or 0 if none was
+   */
+  public long getLastCompletionTime(HostPort host) {
+    HostStats stats = hosts.get(host);
+    return stats == null ? 0 : stats.lastCompletionTime;
+  }
+
+  /**
+   * @param stalledMillis time spent on the fetch in progress, which is not reflected in the
+   *          completed fetches
+   * @return the rate of the host in bytes per millisecond
+   */
+  public double getRate(HostPort host, long stalledMillis) {
+    HostStats stats = hosts.get(host);
+    long bytes = stats == null ? 0 : stats.bytes;
+    long millis = (stats == null ? 0 : stats.millis) + Math.max(0, stalledMillis);
+    return millis == 0 ? 0 : (double) bytes / millis;
+  }
+
+  /**
+   * @return the median rate of the hosts other than the given one, or -1 if no output has
+   *         been fetched from any of them
+   */
+  public double getPeerMedianRate(HostPort host) {
+    double[] rates = new double[hosts.size()];
+    int numRates = 0;
+    for (Map.Entry<HostPort, HostStats> entry : hosts.entrySet()) {
+      if (!entry.getKey().equals(host)) {
+        rates[numRates++] = (double) entry.getValue().bytes / entry.getValue().millis;
+      }
+    }
+    return median(rates, numRates);
+  }
+
+  /**
+   * @return the median time per output of the hosts other than the given one, in
+   *         milliseconds, or -1 if no output has been fetched from any of them
+   */
+  public double getPeerMedianFetchTime(HostPort host) {
+    double[] times = new double[hosts.size()];
+    int numTimes = 0;
+    for (Map.Entry<HostPort, HostStats> entry : hosts.entrySet()) {
+      if (!entry.getKey().equals(host)) {
+        times[numTimes++] = (double) entry.getValue().millis / entry.getValue().fetches;
+      }
+    }
+    return median(times, numTimes);
+  }
+
+  private static double median(double[] values, int numValues) {
+    if (numValues == 0) {
+      return -1;
+    }
+    Arrays.sort(values, 0, numValues);
+    return (numValues % 2 == 1) ? values[numValues / 2]
+        : (values[numValues / 2 - 1] + values[numValues / 2]) / 2;
+  }
+
+  /**
+   * @param stalledMillis time spent on the fetch in progress from the host
+   * @param slowFraction fraction of the median rate of the peers below which a host straggles.
+   *          A host which has not returned any output yet straggles once its fetch has taken
+   *          longer than the median time of the peers per output divided by this fraction.
+   * @return whether the host is much slower than its peers
+   */
+  public boolean isStraggling(HostPort host, long stalledMillis, float slowFraction) {
+    if (!hosts.containsKey(host)) {
+      double medianTime = getPeerMedianFetchTime(host);
+      return medianTime > 0 && stalledMillis * slowFraction > medianTime;
+    }
+    double medianRate = getPeerMedianRate(host);
+    return medianRate > 0 && getRate(host, stalledMillis) < medianRate * slowFraction;
+  }
+}
@@ -18,9 +18,13 @@
 
 package org.apache.tez.runtime.library.common.shuffle;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
@@ -74,6 +78,21 @@ public class LocalDiskFetchedInput extends FetchedInput {
     return new BoundedInputStream(inputStream, getSize());
   }
 
+  /**
+   * Memory map the fetched range of the local file, read-only. The mapping stays valid after
+   * the file is closed, until it is released or garbage collected.
+   */
+  public MappedByteBuffer map() throws IOException {
+    Preconditions.checkState(getSize() <= Integer.MAX_VALUE,
+        "Cannot map " + getSize() + " bytes of " + inputFile);
+    RandomAccessFile file = new RandomAccessFile(new File(inputFile.toUri().getPath()), "r");
+    try {
+      return file.getChannel().map(FileChannel.MapMode.READ_ONLY, startOffset, getSize());
+    } finally {
+      file.close();
+    }
+  }
+
   @Override
   public void commit() {
     if (isState(State.PENDING)) {
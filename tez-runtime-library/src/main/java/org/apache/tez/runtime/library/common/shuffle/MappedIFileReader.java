@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.shuffle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.tez.common.ChecksumTimeUpdater;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+
+/**
+ * <code>IFile.Reader</code> over an uncompressed IFile segment which is memory mapped from
+ * local disk. Keys and values are copied straight out of the mapping, and the checksum is
+ * computed over the mapped bytes as records are consumed, so no stream buffers are involved.
+ *
+ * Compressed segments are not supported and have to be read with <code>IFile.Reader</code>.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class MappedIFileReader extends IFile.Reader {
+
+  // "TI" magic, the checksum version and the codec id
+  private static final int HEADER_LENGTH = 4;
+  private static final int CHECKSUM_SIZE = 4;
+  // consumed bytes are added to the checksum in chunks of at least this size
+  private static final int CHECKSUM_CHUNK_SIZE = 64 * 1024;
+
+  private MappedByteBuffer mapped;
+  private final AtomicLong mappedBytes;
+  // the record bytes, i.e. the segment without header and trailing checksum
+  private ByteBuffer data;
+  private ByteBuffer checksumView;
+  private ByteBufferDataInput dataIn;
+  private final long length;
+  private final int expectedChecksum;
+  private final CRC32 checksum = new CRC32();
+  private boolean checksumValidation = true;
+  private byte[] keyBytes = new byte[0];
+
+  /**
+   * @param mapped the complete IFile segment, including header and checksum. The reader
+   *               takes ownership of the mapping and unmaps it on close. If the constructor
+   *               throws, the mapping is still owned by the caller.
+   */
+  public MappedIFileReader(MappedByteBuffer mapped) throws IOException {
+    this(mapped, null);
+  }
+
+  /**
+   * @param mapped the complete IFile segment, see {@link #MappedIFileReader(MappedByteBuffer)}
+   * @param mappedBytes bytes kept mapped by the owner of the reader, which the length of the
+   *                    segment is subtracted from once it is unmapped, or null
+   */
+  public MappedIFileReader(MappedByteBuffer mapped, AtomicLong mappedBytes)
+      throws IOException {
+    super(null, mapped.capacity(), null, null, null, false, 0, -1);
+    this.mapped = mapped;
+    this.mappedBytes = mappedBytes;
+    this.length = mapped.capacity();
+    if (length < HEADER_LENGTH + CHECKSUM_SIZE) {
+      throw new IOException("Segment of length " + length + " is too short for an IFile");
+    }
+    if (isCompressed(mapped)) {
+      throw new IOException("Compressed IFile segments can not be read from a mapping");
+    }
+    expectedChecksum = mapped.getInt((int) length - CHECKSUM_SIZE);
+
+    ByteBuffer view = mapped.duplicate();
+    view.position(HEADER_LENGTH);
+    view.limit((int) length - CHECKSUM_SIZE);
+    data = view.slice();
+    checksumView = data.duplicate();
+    checksumView.limit(0);
+    dataIn = new ByteBufferDataInput(data);
+  }
+
+  /**
+   * Checks the IFile header of a mapped segment.
+   * @return true if the records are not stored as they are, i.e. the segment has been
+   *         written with a compression codec, or if it has a CRC32C
+   *         checksum, which is verified by the stream readers only
+   */
+  public static boolean isCompressed(ByteBuffer segment) throws IOException {
+    if (segment.capacity() < HEADER_LENGTH
+        || segment.get(0) != 'T' || segment.get(1) != 'I'
+        || (segment.get(2) != 'F' && segment.get(2) != 'C')) {
+      throw new IOException("Not a valid ifile header");
+    }
+    // zero for segments written without a codec, other values name the codec
+    return segment.get(2) != 'F' || segment.get(3) != 0;
+  }
+
+  /**
+   * Release a mapping without waiting for it to be garbage collected, where the JVM allows it.
+   */
+  public static void unmap(MappedByteBuffer buffer) {
+    DirectBufferArena.free(buffer);
+  }
+
+  @Override
+  public long getPosition() throws IOException {
+    // the data is not compressed, so this matches the position in the segment
+    return bytesRead;
+  }
+
+  @Override
+  public long getLength() {
+    return length - HEADER_LENGTH - CHECKSUM_SIZE;
+  }
+
+  @Override
+  public KeyState readRawKey(DataInputBuffer key) throws IOException {
+    checkOpen();
+    if (!positionToNextRecord(dataIn)) {
+      verifyChecksum();
+      return KeyState.NO_KEY;
+    }
+    if (currentKeyLength == IFile.RLE_MARKER) {
+      // get key length from original key
+      key.reset(keyBytes, originalKeyLength);
+      return KeyState.SAME_KEY;
+    }
+    if (keyBytes.length < currentKeyLength) {
+      keyBytes = createLargerArray(currentKeyLength);
+    }
+    readData(keyBytes, currentKeyLength);
+    key.reset(keyBytes, currentKeyLength);
+    bytesRead += currentKeyLength;
+    return KeyState.NEW_KEY;
+  }
+
+  @Override
+  public void nextRawValue(DataInputBuffer value) throws IOException {
+    checkOpen();
+    final byte[] valBytes;
+    if ((value.getData().length < currentValueLength) || (value.getData() == keyBytes)) {
+      valBytes = createLargerArray(currentValueLength);
+    } else {
+      valBytes = value.getData();
+    }
+    readData(valBytes, currentValueLength);
+    value.reset(valBytes, currentValueLength);
+    bytesRead += currentValueLength;
+    ++recNo;
+
+    if (data.position() - checksumView.position() >= CHECKSUM_CHUNK_SIZE) {
+      updateChecksum();
+    }
+  }
+
+  private void checkOpen() throws IOException {
+    // the memory of the mapping is released on close, it must not be read afterwards
+    if (mapped == null) {
+      throw new IOException("Reader is closed, the segment is no longer mapped");
+    }
+  }
+
+  private static byte[] createLargerArray(int len) {
+    // leave some room to grow, without overflowing the array size
+    return new byte[len > (Integer.MAX_VALUE - 8) / 2 ? len : len << 1];
+  }
+
+  private void readData(byte[] buf, int len) throws IOException {
+    if (data.remaining() < len) {
+      throw new IOException("Rec# " + recNo + ": Incomplete read. Expected " + len
+          + " bytes, but only " + data.remaining() + " bytes are left in the segment");
+    }
+    data.get(buf, 0, len);
+  }
+
+  private void updateChecksum() {
+    checksumView.limit(data.position());
+    long start = System.nanoTime();
+    checksum.update(checksumView);
+    ChecksumTimeUpdater.addChecksumTime(System.nanoTime() - start);
+  }
+
+  private void verifyChecksum() throws IOException {
+    if (!checksumValidation) {
+      return;
+    }
+    if (data.hasRemaining()) {
+      throw new IOException("Found EOF marker with " + data.remaining()
+          + " unread bytes in the segment");
+    }
+    updateChecksum();
+    if ((int) checksum.getValue() != expectedChecksum) {
+      throw new IOException("Checksum Error: CRC mismatch for mapped segment of length "
+          + length);
+    }
+  }
+
+  @Override
+  public void disableChecksumValidation() {
+    checksumValidation = false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (mapped != null) {
+      // no references to the mapping escape the reader, keys and values are copied out
+      data = null;
+      checksumView = null;
+      dataIn = null;
+      unmap(mapped);
+      mapped = null;
+      if (mappedBytes != null) {
+        mappedBytes.addAndGet(-length);
+      }
+    }
+  }
+}
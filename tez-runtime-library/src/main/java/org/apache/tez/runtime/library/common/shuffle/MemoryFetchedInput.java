@@ -20,6 +20,7 @@ package org.apache.tez.runtime.library.common.shuffle;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.apache.hadoop.io.BoundedByteArrayOutputStream;
 import org.apache.tez.common.io.NonSyncByteArrayInputStream;
@@ -30,12 +31,27 @@ import com.google.common.base.Preconditions;
 public class MemoryFetchedInput extends FetchedInput {
 
   private byte[] byteArray;
+  private ByteBuffer buffer;
+  private final DirectBufferArena arena;
 
   public MemoryFetchedInput(long actualSize,
       InputAttemptIdentifier inputAttemptIdentifier,
       FetchedInputCallback callbackHandler) {
     super(inputAttemptIdentifier, callbackHandler);
     this.byteArray = new byte[(int) actualSize];
+    this.arena = null;
+  }
+
+  /**
+   * Create an input which holds its data in a direct buffer from the arena. The buffer is
+   * returned to the arena once the input has been freed or aborted.
+   */
+  public MemoryFetchedInput(long actualSize,
+      InputAttemptIdentifier inputAttemptIdentifier,
+      FetchedInputCallback callbackHandler, DirectBufferArena arena) {
+    super(inputAttemptIdentifier, callbackHandler);
+    this.buffer = arena.allocate((int) actualSize);
+    this.arena = arena;
   }
 
   @Override
@@ -45,6 +61,9 @@ public class MemoryFetchedInput extends FetchedInput {
 
   @Override
   public long getSize() {
+    if (this.buffer != null) {
+      return this.buffer.limit();
+    }
     if (this.byteArray == null) {
       return 0;
     }
@@ -53,17 +72,33 @@ public class MemoryFetchedInput extends FetchedInput {
 
   @Override
   public OutputStream getOutputStream() {
+    if (buffer != null) {
+      return DirectBufferArena.newOutputStream(buffer);
+    }
     return new InMemoryBoundedByteArrayOutputStream(byteArray);
   }
 
   @Override
   public InputStream getInputStream() {
+    if (buffer != null) {
+      return DirectBufferArena.newInputStream(buffer);
+    }
     return new NonSyncByteArrayInputStream(byteArray);
   }
 
+  /**
+   * @return the data, or null if the input is held in a direct buffer
+   */
   public byte[] getBytes() {
     return byteArray;
   }
+
+  /**
+   * @return the direct buffer holding the data, or null if the input is held on the heap
+   */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
   
   @Override
   public void commit() {
@@ -78,6 +113,7 @@ public class MemoryFetchedInput extends FetchedInput {
     if (isState(State.PENDING)) {
       setState(State.ABORTED);
       notifyFetchFailure();
+      releaseBuffer();
     }
   }
   
@@ -92,6 +128,14 @@ public class MemoryFetchedInput extends FetchedInput {
       // Set this to null AFTER notifyFreedResource() so that getSize()
       // returns the correct size
       this.byteArray = null;
+      releaseBuffer();
+    }
+  }
+
+  private void releaseBuffer() {
+    if (buffer != null) {
+      arena.release(buffer);
+      buffer = null;
     }
   }
 
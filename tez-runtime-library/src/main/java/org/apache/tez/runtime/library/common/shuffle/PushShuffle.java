@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.shuffle;
+
+import java.io.IOException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.hadoop.classification.InterfaceAudience.Private;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.tez.runtime.api.InputContext;
+import org.apache.tez.runtime.api.OutputContext;
+import org.apache.tez.runtime.library.api.PushShuffleService;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Helpers for pushing outputs to a {@link PushShuffleService}, and reading them back.
+ *
+ * Consumers schedule pushed inputs like inputs on a host of their own, {@link #SERVICE_HOST},
+ * whose fetchers read the segments located by the service from the local disk.
+ */
+@Private
+public class PushShuffle {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PushShuffle.class);
+
+  public static final String SERVICE_HOST = "tez-push-shuffle-service";
+  public static final int SERVICE_PORT = 0;
+
+  private PushShuffle() {
+  }
+
+  /**
+   * @return the configured service, initialized, or null if outputs are not pushed
+   */
+  public static PushShuffleService createService(Configuration conf) throws IOException {
+    Class<? extends PushShuffleService> clazz = conf.getClass(
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_PUSH_SERVICE_CLASS, null,
+        PushShuffleService.class);
+    if (clazz == null) {
+      return null;
+    }
+    PushShuffleService service = ReflectionUtils.newInstance(clazz, conf);
+    service.initialize(conf);
+    return service;
+  }
+
+  public static boolean isPushedInput(String host, int port) {
+    return SERVICE_HOST.equals(host) && port == SERVICE_PORT;
+  }
+
+  public static String getShuffleId(ApplicationId applicationId, int dagIdentifier,
+      String srcVertexName, String destVertexName) {
+    return getShuffleIdPrefix(applicationId, dagIdentifier) + srcVertexName + "_"
+        + destVertexName;
+  }
+
+  /**
+   * @return the prefix of the identifiers of all the shuffles of an application
+   */
+  public static String getShuffleIdPrefix(ApplicationId applicationId) {
+    return applicationId + "_";
+  }
+
+  /**
+   * @return the prefix of the identifiers of all the shuffles of a DAG
+   */
+  public static String getShuffleIdPrefix(ApplicationId applicationId, int dagIdentifier) {
+    return getShuffleIdPrefix(applicationId) + dagIdentifier + "_";
+  }
+
+  public static String getShuffleId(InputContext inputContext) {
+    return getShuffleId(inputContext.getApplicationId(), inputContext.getDagIdentifier(),
+        inputContext.getSourceVertexName(), inputContext.getTaskVertexName());
+  }
+
+  public static String getShuffleId(OutputContext outputContext) {
+    return getShuffleId(outputContext.getApplicationId(), outputContext.getDagIdentifier(),
+        outputContext.getTaskVertexName(), outputContext.getDestinationVertexName());
+  }
+
+  /**
+   * Pushes the partitions of a final output to the configured service. Failures are not
+   * fatal, as the output is still served from this host.
+   *
+   * @param outputFile the output, on the local file system
+   * @param spillRecord the index of the output
+   * @param pathComponent identifier of the output, as sent to the consumers
+   * @return true if all the partitions have been pushed, false if outputs are not pushed or a
+   *         push failed
+   */
+  public static boolean pushOutput(Configuration conf, OutputContext outputContext,
+      Path outputFile, TezSpillRecord spillRecord, String pathComponent) {
+    if (conf.get(TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_PUSH_SERVICE_CLASS) == null) {
+      return false;
+    }
+    long startTime = System.currentTimeMillis();
+    long pushedBytes = 0;
+    PushShuffleService service = null;
+    FSDataInputStream in = null;
+    try {
+      service = createService(conf);
+      String shuffleId = getShuffleId(outputContext);
+      in = FileSystem.getLocal(conf).getRaw().open(outputFile);
+      for (int i = 0; i < spillRecord.size(); i++) {
+        TezIndexRecord indexRecord = spillRecord.getIndex(i);
+        // partitions without records still hold an IFile header and are pushed, consumers
+        // are not always told which partitions are empty. Only partitions which were not
+        // written at all are skipped, consumers fetch those from this host.
+        if (indexRecord.getPartLength() == 0) {
+          continue;
+        }
+        in.seek(indexRecord.getStartOffset());
+        BoundedInputStream segment = new BoundedInputStream(in, indexRecord.getPartLength());
+        segment.setPropagateClose(false);
+        service.push(shuffleId, i, pathComponent, segment, indexRecord.getRawLength(),
+            indexRecord.getPartLength());
+        pushedBytes += indexRecord.getPartLength();
+      }
+      LOG.info("Pushed " + pushedBytes + " bytes of output " + pathComponent + " to " + service
+          + " in " + (System.currentTimeMillis() - startTime) + " ms");
+      return true;
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Failed to push output " + pathComponent + ", it will be fetched from this host",
+          e);
+      return false;
+    } finally {
+      IOUtils.closeQuietly(in);
+      IOUtils.closeQuietly(service);
+    }
+  }
+}
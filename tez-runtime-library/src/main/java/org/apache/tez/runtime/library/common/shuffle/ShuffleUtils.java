@@ -65,6 +65,7 @@ import org.apache.tez.runtime.api.events.CompositeDataMovementEvent;
 import org.apache.tez.runtime.api.events.VertexManagerEvent;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.BatchedShuffleHeader;
 import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
 import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
 import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads;
@@ -117,12 +118,37 @@ public class ShuffleUtils {
       InputStream input, int decompressedLength, int compressedLength,
       CompressionCodec codec, boolean ifileReadAhead, int ifileReadAheadLength,
       Logger LOG, InputAttemptIdentifier identifier) throws IOException {
+    shuffleToMemory(shuffleData, null, input, decompressedLength, compressedLength, codec,
+        ifileReadAhead, ifileReadAheadLength, LOG, identifier);
+  }
+
+  /**
+   * Shuffle data into a buffer obtained from a {@link DirectBufferArena}, between its
+   * position and limit.
+   */
+  public static void shuffleToMemory(ByteBuffer shuffleData,
+      InputStream input, int decompressedLength, int compressedLength,
+      CompressionCodec codec, boolean ifileReadAhead, int ifileReadAheadLength,
+      Logger LOG, InputAttemptIdentifier identifier) throws IOException {
+    shuffleToMemory(null, shuffleData, input, decompressedLength, compressedLength, codec,
+        ifileReadAhead, ifileReadAheadLength, LOG, identifier);
+  }
+
+  private static void shuffleToMemory(byte[] shuffleData, ByteBuffer shuffleBuffer,
+      InputStream input, int decompressedLength, int compressedLength,
+      CompressionCodec codec, boolean ifileReadAhead, int ifileReadAheadLength,
+      Logger LOG, InputAttemptIdentifier identifier) throws IOException {
     try {
-      IFile.Reader.readToMemory(shuffleData, input, compressedLength, codec,
-          ifileReadAhead, ifileReadAheadLength);
+      if (shuffleData != null) {
+        IFile.Reader.readToMemory(shuffleData, input, compressedLength, codec,
+            ifileReadAhead, ifileReadAheadLength);
+      } else {
+        IFile.Reader.readToMemory(shuffleBuffer, input, compressedLength, codec,
+            ifileReadAhead, ifileReadAheadLength);
+      }
       // metrics.inputBytes(shuffleData.length);
       if (LOG.isDebugEnabled()) {
-        LOG.debug("Read " + shuffleData.length + " bytes from input for "
+        LOG.debug("Read " + decompressedLength + " bytes from input for "
             + identifier);
       }
     } catch (InternalError | IOException e) {
@@ -205,6 +231,17 @@ public class ShuffleUtils {
 
   public static StringBuilder constructBaseURIForShuffleHandler(String host,
       int port, int partition, int partitionCount, String appId, int dagIdentifier, boolean sslShuffle) {
+    return constructBaseURIForShuffleHandler(host, port, partition, partitionCount, appId,
+        dagIdentifier, sslShuffle, false);
+  }
+
+  /**
+   * @param batched ask for all partitions of a map output to be described by a single
+   *                {@link BatchedShuffleHeader}, if more than one partition is fetched
+   */
+  public static StringBuilder constructBaseURIForShuffleHandler(String host,
+      int port, int partition, int partitionCount, String appId, int dagIdentifier,
+      boolean sslShuffle, boolean batched) {
     final String http_protocol = (sslShuffle) ? "https://" : "http://";
     StringBuilder sb = new StringBuilder(http_protocol);
     sb.append(host);
@@ -220,6 +257,9 @@ public class ShuffleUtils {
     if (partitionCount > 1) {
       sb.append("-");
       sb.append(String.valueOf(partition + partitionCount - 1));
+      if (batched) {
+        sb.append("&").append(BatchedShuffleHeader.HTTP_PARAM_NAME).append("=true");
+      }
     }
     sb.append("&map=");
     return sb;
@@ -261,6 +301,12 @@ public class ShuffleUtils {
     sb.append("port: " + dmProto.getPort()).append(", ");
     sb.append("pathComponent: " + dmProto.getPathComponent()).append(", ");
     sb.append("runDuration: " + dmProto.getRunDuration());
+    if (dmProto.hasData()) {
+      sb.append(", dataSize: " + dmProto.getData().getCompressedLength());
+    }
+    if (dmProto.getPushed()) {
+      sb.append(", pushed: true");
+    }
     sb.append("]");
     return sb.toString();
   }
@@ -283,7 +329,8 @@ public class ShuffleUtils {
    */
   static ByteBuffer generateDMEPayload(boolean sendEmptyPartitionDetails,
       int numPhysicalOutputs, TezSpillRecord spillRecord, OutputContext context,
-      int spillId, boolean finalMergeEnabled, boolean isLastEvent, String pathComponent, String auxiliaryService, Deflater deflater)
+      int spillId, boolean finalMergeEnabled, boolean isLastEvent, String pathComponent, String auxiliaryService, Deflater deflater,
+      boolean pushed)
       throws IOException {
     DataMovementEventPayloadProto.Builder payloadBuilder = DataMovementEventPayloadProto
         .newBuilder();
@@ -326,6 +373,10 @@ public class ShuffleUtils {
       payloadBuilder.setLastEvent(isLastEvent);
     }
 
+    if (pushed) {
+      payloadBuilder.setPushed(true);
+    }
+
     payloadBuilder.setRunDuration(0); //TODO: who is dependent on this?
     DataMovementEventPayloadProto payloadProto = payloadBuilder.build();
     ByteBuffer payload = payloadProto.toByteString().asReadOnlyByteBuffer();
@@ -407,6 +458,21 @@ public class ShuffleUtils {
       int numPhysicalOutputs, boolean sendEmptyPartitionDetails, String pathComponent,
       @Nullable long[] partitionStats, boolean reportDetailedPartitionStats, String auxiliaryService, Deflater deflater)
       throws IOException {
+    generateEventOnSpill(eventList, finalMergeEnabled, isLastEvent, context, spillId, spillRecord,
+        numPhysicalOutputs, sendEmptyPartitionDetails, pathComponent, partitionStats,
+        reportDetailedPartitionStats, auxiliaryService, deflater, false);
+  }
+
+  /**
+   * Generate events for outputs which have been pushed to the
+   * {@link org.apache.tez.runtime.library.api.PushShuffleService} if pushed is set.
+   */
+  public static void generateEventOnSpill(List<Event> eventList, boolean finalMergeEnabled,
+      boolean isLastEvent, OutputContext context, int spillId, TezSpillRecord spillRecord,
+      int numPhysicalOutputs, boolean sendEmptyPartitionDetails, String pathComponent,
+      @Nullable long[] partitionStats, boolean reportDetailedPartitionStats, String auxiliaryService, Deflater deflater,
+      boolean pushed)
+      throws IOException {
     Preconditions.checkArgument(eventList != null, "EventList can't be null");
 
     context.notifyProgress();
@@ -423,7 +489,7 @@ public class ShuffleUtils {
 
     ByteBuffer payload = generateDMEPayload(sendEmptyPartitionDetails, numPhysicalOutputs,
         spillRecord, context, spillId,
-        finalMergeEnabled, isLastEvent, pathComponent, auxiliaryService, deflater);
+        finalMergeEnabled, isLastEvent, pathComponent, auxiliaryService, deflater, pushed);
 
     if (finalMergeEnabled || isLastEvent) {
       VertexManagerEvent vmEvent = generateVMEvent(context, partitionStats,
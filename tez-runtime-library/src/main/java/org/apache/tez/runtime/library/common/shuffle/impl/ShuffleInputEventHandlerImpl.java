@@ -20,6 +20,7 @@
 package org.apache.tez.runtime.library.common.shuffle.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.BitSet;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -40,10 +41,14 @@ import org.apache.tez.runtime.api.InputContext;
 import org.apache.tez.runtime.api.events.DataMovementEvent;
 import org.apache.tez.runtime.api.events.InputFailedEvent;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+import org.apache.tez.runtime.library.common.shuffle.DiskFetchedInput;
+import org.apache.tez.runtime.library.common.shuffle.FetchedInput;
 import org.apache.tez.runtime.library.common.shuffle.FetchedInputAllocator;
+import org.apache.tez.runtime.library.common.shuffle.MemoryFetchedInput;
 import org.apache.tez.runtime.library.common.shuffle.ShuffleEventHandler;
 import org.apache.tez.runtime.library.common.shuffle.ShuffleUtils;
 import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataProto;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 
@@ -55,7 +60,7 @@ public class ShuffleInputEventHandlerImpl implements ShuffleEventHandler {
   private static final Logger LOG = LoggerFactory.getLogger(ShuffleInputEventHandlerImpl.class);
   
   private final ShuffleManager shuffleManager;
-  //TODO: unused. Consider removing later?
+  // used for data which is sent in the events
   private final FetchedInputAllocator inputAllocator;
   private final CompressionCodec codec;
   private final boolean ifileReadAhead;
@@ -69,6 +74,7 @@ public class ShuffleInputEventHandlerImpl implements ShuffleEventHandler {
   private final AtomicInteger numDmeEvents = new AtomicInteger(0);
   private final AtomicInteger numObsoletionEvents = new AtomicInteger(0);
   private final AtomicInteger numDmeEventsNoData = new AtomicInteger(0);
+  private final AtomicInteger numDmeEventsWithData = new AtomicInteger(0);
 
   public ShuffleInputEventHandlerImpl(InputContext inputContext,
                                       ShuffleManager shuffleManager,
@@ -132,7 +138,7 @@ public class ShuffleInputEventHandlerImpl implements ShuffleEventHandler {
           throw new TezUncheckedException("Unable to set the empty partition to succeeded", e);
         }
       }
-      if (compositeFetch) {
+      if (compositeFetch && !shufflePayload.hasData()) {
         numDmeEvents.addAndGet(crdme.getCount());
         processCompositeRoutedDataMovementEvent(crdme, shufflePayload, emptyPartitionsBitSet);
       } else {
@@ -160,6 +166,7 @@ public class ShuffleInputEventHandlerImpl implements ShuffleEventHandler {
     LOG.info(inputContext.getSourceVertexName() + ": "
         + "numDmeEventsSeen=" + numDmeEvents.get()
         + ", numDmeEventsSeenWithNoData=" + numDmeEventsNoData.get()
+        + ", numDmeEventsSeenWithData=" + numDmeEventsWithData.get()
         + ", numObsoletionEventsSeen=" + numObsoletionEvents.get()
         + (updateOnClose == true ? ", updateOnClose" : ""));
   }
@@ -186,10 +193,57 @@ public class ShuffleInputEventHandlerImpl implements ShuffleEventHandler {
       }
     }
 
+    if (shufflePayload.hasData()) {
+      CompositeInputAttemptIdentifier srcAttemptIdentifier =
+          constructInputAttemptIdentifier(dme.getTargetIndex(), 1, dme.getVersion(), shufflePayload, false);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Source partition: " + srcIndex + " sent its data in the event. SrcAttempt: ["
+            + srcAttemptIdentifier + "]. Not fetching.");
+      }
+      numDmeEventsWithData.getAndIncrement();
+      moveDataToFetchedInput(shufflePayload, srcAttemptIdentifier.expand(0));
+      return;
+    }
+
     CompositeInputAttemptIdentifier srcAttemptIdentifier = constructInputAttemptIdentifier(dme.getTargetIndex(), 1, dme.getVersion(),
         shufflePayload, (useSharedInputs && srcIndex == 0));
 
-    shuffleManager.addKnownInput(shufflePayload.getHost(), shufflePayload.getPort(), srcAttemptIdentifier, srcIndex);
+    if (shufflePayload.getPushed()) {
+      shuffleManager.addKnownPushedInput(shufflePayload.getHost(), shufflePayload.getPort(),
+          srcAttemptIdentifier, srcIndex);
+    } else {
+      shuffleManager.addKnownInput(shufflePayload.getHost(), shufflePayload.getPort(), srcAttemptIdentifier, srcIndex);
+    }
+  }
+
+  private void moveDataToFetchedInput(DataMovementEventPayloadProto shufflePayload,
+      InputAttemptIdentifier srcAttemptIdentifier) throws IOException {
+    DataProto data = shufflePayload.getData();
+    int rawLength = data.getRawLength();
+    int compressedLength = data.getCompressedLength();
+    String hostIdentifier = shufflePayload.getHost() + ":" + shufflePayload.getPort();
+    FetchedInput fetchedInput =
+        inputAllocator.allocate(rawLength, compressedLength, srcAttemptIdentifier);
+    InputStream input = data.getData().newInput();
+    if (fetchedInput.getType() == FetchedInput.Type.MEMORY) {
+      MemoryFetchedInput memoryInput = (MemoryFetchedInput) fetchedInput;
+      if (memoryInput.getBuffer() != null) {
+        ShuffleUtils.shuffleToMemory(memoryInput.getBuffer(), input, rawLength, compressedLength,
+            codec, ifileReadAhead, ifileReadAheadLength, LOG, srcAttemptIdentifier);
+      } else {
+        ShuffleUtils.shuffleToMemory(memoryInput.getBytes(), input, rawLength, compressedLength,
+            codec, ifileReadAhead, ifileReadAheadLength, LOG, srcAttemptIdentifier);
+      }
+    } else if (fetchedInput.getType() == FetchedInput.Type.DISK) {
+      ShuffleUtils.shuffleToDisk(((DiskFetchedInput) fetchedInput).getOutputStream(),
+          hostIdentifier, input, compressedLength, rawLength, LOG, srcAttemptIdentifier,
+          ifileReadAhead, ifileReadAheadLength, true);
+    } else {
+      throw new TezUncheckedException("Bad fetchedInput type while moving data from event " +
+          fetchedInput);
+    }
+    shuffleManager.fetchSucceeded(hostIdentifier, srcAttemptIdentifier, fetchedInput,
+        compressedLength, rawLength, 0);
   }
 
   private void processCompositeRoutedDataMovementEvent(CompositeRoutedDataMovementEvent crdme, DataMovementEventPayloadProto shufflePayload, BitSet emptyPartitionsBitSet) throws IOException {
@@ -227,7 +281,12 @@ public class ShuffleInputEventHandlerImpl implements ShuffleEventHandler {
     CompositeInputAttemptIdentifier srcAttemptIdentifier = constructInputAttemptIdentifier(crdme.getTargetIndex(), crdme.getCount(), crdme.getVersion(),
         shufflePayload, (useSharedInputs && partitionId == 0));
 
-    shuffleManager.addKnownInput(shufflePayload.getHost(), shufflePayload.getPort(), srcAttemptIdentifier, partitionId);
+    if (shufflePayload.getPushed()) {
+      shuffleManager.addKnownPushedInput(shufflePayload.getHost(), shufflePayload.getPort(),
+          srcAttemptIdentifier, partitionId);
+    } else {
+      shuffleManager.addKnownInput(shufflePayload.getHost(), shufflePayload.getPort(), srcAttemptIdentifier, partitionId);
+    }
   }
 
   private void processInputFailedEvent(InputFailedEvent ife) {
@@ -68,6 +68,7 @@ import org.apache.tez.dag.api.TezUncheckedException;
 import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.InputContext;
 import org.apache.tez.runtime.api.events.InputReadErrorEvent;
+import org.apache.tez.runtime.library.api.PushShuffleService;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.TezRuntimeUtils;
@@ -81,6 +82,7 @@ import org.apache.tez.runtime.library.common.shuffle.FetcherCallback;
 import org.apache.tez.runtime.library.common.shuffle.HostPort;
 import org.apache.tez.runtime.library.common.shuffle.InputHost;
 import org.apache.tez.runtime.library.common.shuffle.InputHost.PartitionToInputs;
+import org.apache.tez.runtime.library.common.shuffle.PushShuffle;
 import org.apache.tez.runtime.library.common.shuffle.ShuffleUtils;
 import org.apache.tez.runtime.library.common.shuffle.ShuffleUtils.FetchStatsLogger;
 
@@ -184,6 +186,14 @@ public class ShuffleManager implements FetcherCallback {
   @VisibleForTesting
   final Map<Integer, ShuffleEventInfo> shuffleInfoEventsMap;
 
+  // the service Inputs are pushed to, if configured
+  private final PushShuffleService pushShuffleService;
+  private final String pushShuffleId;
+  // where pushed Inputs were produced, to fetch them from if they cannot be read from the
+  // push shuffle service
+  private final ConcurrentMap<InputAttemptIdentifier, PushedInputSource> pushedInputSources =
+      new ConcurrentHashMap<InputAttemptIdentifier, PushedInputSource>();
+
   // TODO More counters - FetchErrors, speed?
   
   public ShuffleManager(InputContext inputContext, Configuration conf, int numInputs,
@@ -217,6 +227,8 @@ public class ShuffleManager implements FetcherCallback {
     this.firstEventReceived = inputContext.getCounters().findCounter(TaskCounter.FIRST_EVENT_RECEIVED);
     this.lastEventReceived = inputContext.getCounters().findCounter(TaskCounter.LAST_EVENT_RECEIVED);
     this.compositeFetch = ShuffleUtils.isTezShuffleHandler(conf);
+    this.pushShuffleService = PushShuffle.createService(conf);
+    this.pushShuffleId = PushShuffle.getShuffleId(inputContext);
     
     this.srcNameTrimmed = TezUtilsInternal.cleanVertexName(inputContext.getSourceVertexName());
   
@@ -446,6 +458,9 @@ public class ShuffleManager implements FetcherCallback {
       fetcherBuilder.setCompressionParameters(codec);
     }
     fetcherBuilder.setIFileParams(ifileReadAhead, ifileReadAheadLength);
+    if (pushShuffleService != null) {
+      fetcherBuilder.setPushShuffleService(pushShuffleService, pushShuffleId);
+    }
 
     // Remove obsolete inputs from the list being given to the fetcher. Also
     // remove from the obsolete list.
@@ -553,6 +568,22 @@ public class ShuffleManager implements FetcherCallback {
     }
   }
 
+  /**
+   * Adds an Input which has been pushed to the push shuffle service. It is read from the service,
+   * and fetched from the host it was produced on if it cannot be.
+   */
+  public void addKnownPushedInput(String hostName, int port,
+      CompositeInputAttemptIdentifier srcAttemptIdentifier, int srcPhysicalIndex) {
+    if (pushShuffleService == null) {
+      addKnownInput(hostName, port, srcAttemptIdentifier, srcPhysicalIndex);
+      return;
+    }
+    pushedInputSources.put(srcAttemptIdentifier,
+        new PushedInputSource(hostName, port, srcAttemptIdentifier, srcPhysicalIndex));
+    addKnownInput(PushShuffle.SERVICE_HOST, PushShuffle.SERVICE_PORT, srcAttemptIdentifier,
+        srcPhysicalIndex);
+  }
+
   public void addCompletedInputWithNoData(
       InputAttemptIdentifier srcAttemptIdentifier) {
     int inputIdentifier = srcAttemptIdentifier.getInputIdentifier();
@@ -640,6 +671,24 @@ public class ShuffleManager implements FetcherCallback {
     }
   }
 
+  /**
+   * The host an Input which has been pushed was produced on.
+   */
+  private static class PushedInputSource {
+    final String host;
+    final int port;
+    final CompositeInputAttemptIdentifier srcAttempt;
+    final int srcPhysicalIndex;
+
+    PushedInputSource(String host, int port, CompositeInputAttemptIdentifier srcAttempt,
+        int srcPhysicalIndex) {
+      this.host = host;
+      this.port = port;
+      this.srcAttempt = srcAttempt;
+      this.srcPhysicalIndex = srcPhysicalIndex;
+    }
+  }
+
   @Override
   public void fetchSucceeded(String host, InputAttemptIdentifier srcAttemptIdentifier,
       FetchedInput fetchedInput, long fetchedBytes, long decompressedLength, long copyDuration)
@@ -791,6 +840,16 @@ public class ShuffleManager implements FetcherCallback {
   @Override
   public void fetchFailed(String host,
       InputAttemptIdentifier srcAttemptIdentifier, boolean connectFailed) {
+    if (PushShuffle.SERVICE_HOST.equals(host) && srcAttemptIdentifier != null) {
+      PushedInputSource source = pushedInputSources.remove(srcAttemptIdentifier);
+      if (source != null) {
+        LOG.info(srcNameTrimmed + ": " + "Fetching " + srcAttemptIdentifier + " from "
+            + source.host + ":" + source.port + " as it could not be read from "
+            + pushShuffleService);
+        addKnownInput(source.host, source.port, source.srcAttempt, source.srcPhysicalIndex);
+        return;
+      }
+    }
     // TODO NEWTEZ. Implement logic to report fetch failures after a threshold.
     // For now, reporting immediately.
     LOG.info(srcNameTrimmed + ": " + "Fetch failed for src: " + srcAttemptIdentifier
@@ -849,6 +908,14 @@ public class ShuffleManager implements FetcherCallback {
       if (this.fetcherExecutor != null && !this.fetcherExecutor.isShutdown()) {
         this.fetcherExecutor.shutdownNow(); // Interrupts all running fetchers.
       }
+      if (pushShuffleService != null) {
+        try {
+          pushShuffleService.close();
+        } catch (IOException e) {
+          LOG.warn("Error while closing push shuffle service. Ignoring and continuing shutdown. "
+              + "Message={}", e.getMessage());
+        }
+      }
     }
   }
 
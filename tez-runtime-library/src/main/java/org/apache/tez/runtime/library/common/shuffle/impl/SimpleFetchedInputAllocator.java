@@ -28,9 +28,11 @@ import org.apache.hadoop.fs.LocalDirAllocator;
 import org.apache.tez.common.TezRuntimeFrameworkConfigs;
 import org.apache.tez.dag.api.TezUncheckedException;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.BufferPool;
 import org.apache.tez.runtime.library.common.Constants;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.task.local.output.TezTaskOutputFiles;
+import org.apache.tez.runtime.library.common.shuffle.DirectBufferArena;
 import org.apache.tez.runtime.library.common.shuffle.DiskFetchedInput;
 import org.apache.tez.runtime.library.common.shuffle.FetchedInput;
 import org.apache.tez.runtime.library.common.shuffle.FetchedInput.Type;
@@ -62,6 +64,11 @@ public class SimpleFetchedInputAllocator implements FetchedInputAllocator,
   private final long initialMemoryAvailable;
 
   private final String srcNameTrimmed;
+
+  // holds fetched inputs off heap, if enabled
+  private final DirectBufferArena bufferArena;
+  // the arena is shared across the container when taken from the buffer pool
+  private final boolean sharedBufferArena;
   
   private volatile long usedMemory = 0;
 
@@ -70,6 +77,20 @@ public class SimpleFetchedInputAllocator implements FetchedInputAllocator,
                                      Configuration conf,
                                      long maxTaskAvailableMemory,
                                      long memoryAvailable) {
+    this(srcNameTrimmed, uniqueIdentifier, dagID, conf, maxTaskAvailableMemory,
+        memoryAvailable, null);
+  }
+
+  /**
+   * @param bufferPool container wide pool, which provides the arena for off-heap inputs if
+   *                   not null
+   */
+  public SimpleFetchedInputAllocator(String srcNameTrimmed,
+                                     String uniqueIdentifier, int dagID,
+                                     Configuration conf,
+                                     long maxTaskAvailableMemory,
+                                     long memoryAvailable,
+                                     BufferPool bufferPool) {
     this.srcNameTrimmed = srcNameTrimmed;
     this.conf = conf;    
     this.maxAvailableTaskMemory = maxTaskAvailableMemory;
@@ -112,10 +133,21 @@ public class SimpleFetchedInputAllocator implements FetchedInputAllocator,
     this.maxSingleShuffleLimit = (long) Math.min((memoryLimit * singleShuffleMemoryLimitPercent),
         Integer.MAX_VALUE);
 
+    boolean offHeap = conf.getBoolean(
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_OFF_HEAP_BUFFERS_ENABLED,
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_OFF_HEAP_BUFFERS_ENABLED_DEFAULT);
+    this.sharedBufferArena = offHeap && bufferPool != null;
+    if (sharedBufferArena) {
+      this.bufferArena = bufferPool.getDirectBufferArena();
+    } else {
+      this.bufferArena = offHeap ? new DirectBufferArena(memoryLimit) : null;
+    }
+
     LOG.info(srcNameTrimmed + ": "
         + "RequestedMemory=" + memReq
         + ", AssignedMemory=" + this.memoryLimit
         + ", maxSingleShuffleLimit=" + this.maxSingleShuffleLimit
+        + ", offHeap=" + offHeap
     );
 
   }
@@ -139,16 +171,19 @@ public class SimpleFetchedInputAllocator implements FetchedInputAllocator,
   public synchronized FetchedInput allocate(long actualSize, long compressedSize,
       InputAttemptIdentifier inputAttemptIdentifier) throws IOException {
     if (actualSize > maxSingleShuffleLimit
-        || this.usedMemory + actualSize > this.memoryLimit) {
+        || this.usedMemory + getReservedSize(actualSize) > this.memoryLimit) {
       return new DiskFetchedInput(compressedSize,
           inputAttemptIdentifier, this, conf, localDirAllocator,
           fileNameAllocator);
     } else {
-      this.usedMemory += actualSize;
+      this.usedMemory += getReservedSize(actualSize);
       if (LOG.isDebugEnabled()) {
         LOG.info(srcNameTrimmed + ": " + "Used memory after allocating " + actualSize + " : " +
             usedMemory);
       }
+      if (bufferArena != null) {
+        return new MemoryFetchedInput(actualSize, inputAttemptIdentifier, this, bufferArena);
+      }
       return new MemoryFetchedInput(actualSize, inputAttemptIdentifier, this);
     }
   }
@@ -197,7 +232,7 @@ public class SimpleFetchedInputAllocator implements FetchedInputAllocator,
     case DISK:
       break;
     case MEMORY:
-      unreserve(((MemoryFetchedInput) fetchedInput).getSize());
+      unreserve(getReservedSize(((MemoryFetchedInput) fetchedInput).getSize()));
       break;
     default:
       throw new TezUncheckedException("InputType: " + fetchedInput.getType()
@@ -205,6 +240,24 @@ public class SimpleFetchedInputAllocator implements FetchedInputAllocator,
     }
   }
 
+  /**
+   * @return the memory taken up by an in-memory input of <code>actualSize</code> bytes, which
+   *         is the capacity of its buffer when the buffers come from the arena
+   */
+  private long getReservedSize(long actualSize) {
+    return bufferArena == null ? actualSize : DirectBufferArena.getCapacity((int) actualSize);
+  }
+
+  /**
+   * Free the direct buffers retained for reuse. Inputs which are still held are freed once
+   * they are released.
+   */
+  public void close() {
+    if (bufferArena != null && !sharedBufferArena) {
+      bufferArena.close();
+    }
+  }
+
   private synchronized void unreserve(long size) {
     this.usedMemory -= size;
     if (LOG.isDebugEnabled()) {
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.shuffle.orderedgrouped;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Index header describing the contiguous partitions of one map output, sent by the
+ * ShuffleHandler in place of the per partition {@link ShuffleHeader}s when a batched
+ * response is requested. The partition bodies follow the header back to back.
+ *
+ * The header starts with the negated partition count, where a composite response carries
+ * the plain count, so a fetcher can tell both framings apart.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class BatchedShuffleHeader implements Writable {
+
+  /** Url parameter with which a fetcher asks for batched framing */
+  public static final String HTTP_PARAM_NAME = "batch";
+
+  /**
+   * The longest possible length of task attempt id that we will accept.
+   */
+  private static final int MAX_ID_LENGTH = 1000;
+
+  private String mapId;
+  private int firstPartition;
+  private long[] compressedLengths;
+  private long[] uncompressedLengths;
+
+  public BatchedShuffleHeader() { }
+
+  public BatchedShuffleHeader(String mapId, int firstPartition, int partitionCount) {
+    Preconditions.checkArgument(partitionCount > 0, "partitionCount should be positive");
+    this.mapId = mapId;
+    this.firstPartition = firstPartition;
+    this.compressedLengths = new long[partitionCount];
+    this.uncompressedLengths = new long[partitionCount];
+  }
+
+  /**
+   * @param countField the partition count which has been read off a composite response
+   * @return true if the count belongs to a batched header
+   */
+  public static boolean isBatched(int countField) {
+    return countField < 0;
+  }
+
+  public void setPartition(int partition, long compressedLength, long uncompressedLength) {
+    compressedLengths[partition - firstPartition] = compressedLength;
+    uncompressedLengths[partition - firstPartition] = uncompressedLength;
+  }
+
+  public String getMapId() {
+    return mapId;
+  }
+
+  public int getFirstPartition() {
+    return firstPartition;
+  }
+
+  public int getPartitionCount() {
+    return compressedLengths.length;
+  }
+
+  /**
+   * @return the header of the index'th partition, as it would have been sent without batching
+   */
+  public ShuffleHeader getHeader(int index) {
+    return new ShuffleHeader(mapId, compressedLengths[index], uncompressedLengths[index],
+        firstPartition + index);
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    WritableUtils.writeVInt(out, -getPartitionCount());
+    Text.writeString(out, mapId);
+    WritableUtils.writeVInt(out, firstPartition);
+    for (int i = 0; i < compressedLengths.length; i++) {
+      WritableUtils.writeVLong(out, compressedLengths[i]);
+      WritableUtils.writeVLong(out, uncompressedLengths[i]);
+    }
+  }
+
+  public int writeLength() throws IOException {
+    int mapIdLength = Text.encode(mapId).limit();
+    int length = WritableUtils.getVIntSize(-getPartitionCount());
+    length += WritableUtils.getVIntSize(mapIdLength) + mapIdLength;
+    length += WritableUtils.getVIntSize(firstPartition);
+    for (int i = 0; i < compressedLengths.length; i++) {
+      length += WritableUtils.getVIntSize(compressedLengths[i]);
+      length += WritableUtils.getVIntSize(uncompressedLengths[i]);
+    }
+    return length;
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    readFields(in, WritableUtils.readVInt(in));
+  }
+
+  /**
+   * Read the header after its leading count has already been consumed.
+   * @param countField the count, for which {@link #isBatched(int)} holds
+   */
+  public void readFields(DataInput in, int countField) throws IOException {
+    if (!isBatched(countField)) {
+      throw new IOException("Not a batched shuffle header, count: " + countField);
+    }
+    int partitionCount = -countField;
+    mapId = WritableUtils.readStringSafely(in, MAX_ID_LENGTH);
+    firstPartition = WritableUtils.readVInt(in);
+    compressedLengths = new long[partitionCount];
+    uncompressedLengths = new long[partitionCount];
+    for (int i = 0; i < partitionCount; i++) {
+      compressedLengths[i] = WritableUtils.readVLong(in);
+      uncompressedLengths[i] = WritableUtils.readVLong(in);
+    }
+  }
+}
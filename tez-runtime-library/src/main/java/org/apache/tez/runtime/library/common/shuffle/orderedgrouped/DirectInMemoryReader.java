@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.shuffle.orderedgrouped;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+import org.apache.tez.runtime.library.common.shuffle.ByteBufferDataInput;
+import org.apache.tez.runtime.library.common.shuffle.DirectBufferArena;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.common.sort.impl.IFile.Reader;
+
+/**
+ * <code>IFile.Reader</code> to read map-outputs held in a direct buffer, as the
+ * {@link InMemoryReader} does for outputs on the heap. Only the record being read is copied
+ * to the heap, into arrays which are reused across records.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class DirectInMemoryReader extends Reader {
+
+  private final InputAttemptIdentifier taskAttemptId;
+  private final MergeManager merger;
+  private final DirectBufferArena arena;
+  private final int length;
+  private ByteBuffer data;
+  private ByteBuffer view;
+  private ByteBufferDataInput dataIn;
+  private byte[] keyBytes = new byte[0];
+
+  /**
+   * @param merger informed about the released memory on close, if not null
+   * @param data the records, starting at position 0
+   * @param arena to return the buffer to on close, if not null. Otherwise the owner of the
+   *              buffer is responsible for releasing it.
+   */
+  public DirectInMemoryReader(MergeManager merger, InputAttemptIdentifier taskAttemptId,
+      ByteBuffer data, int length, DirectBufferArena arena) throws IOException {
+    super(null, length, null, null, null, false, 0, -1);
+    this.taskAttemptId = taskAttemptId;
+    this.merger = merger;
+    this.arena = arena;
+    this.data = data;
+    this.length = length;
+    bufferSize = length;
+    reset(0);
+  }
+
+  @Override
+  public void reset(int offset) {
+    view = data.duplicate();
+    view.position(offset);
+    view.limit(length);
+    dataIn = new ByteBufferDataInput(view);
+    bytesRead = offset;
+    eof = false;
+  }
+
+  @Override
+  public long getPosition() throws IOException {
+    // the data is not compressed, so this matches the number of bytes read
+    return bytesRead;
+  }
+
+  @Override
+  public long getLength() {
+    return length;
+  }
+
+  @Override
+  public KeyState readRawKey(DataInputBuffer key) throws IOException {
+    if (!positionToNextRecord(dataIn)) {
+      return KeyState.NO_KEY;
+    }
+    if (currentKeyLength == IFile.RLE_MARKER) {
+      // get key length from original key
+      key.reset(keyBytes, originalKeyLength);
+      return KeyState.SAME_KEY;
+    }
+    if (keyBytes.length < currentKeyLength) {
+      keyBytes = createLargerArray(currentKeyLength);
+    }
+    readData(keyBytes, currentKeyLength);
+    key.reset(keyBytes, currentKeyLength);
+    bytesRead += currentKeyLength;
+    return KeyState.NEW_KEY;
+  }
+
+  @Override
+  public void nextRawValue(DataInputBuffer value) throws IOException {
+    final byte[] valBytes;
+    if ((value.getData().length < currentValueLength) || (value.getData() == keyBytes)) {
+      valBytes = createLargerArray(currentValueLength);
+    } else {
+      valBytes = value.getData();
+    }
+    readData(valBytes, currentValueLength);
+    value.reset(valBytes, currentValueLength);
+    bytesRead += currentValueLength;
+    ++recNo;
+  }
+
+  private static byte[] createLargerArray(int len) {
+    // leave some room to grow, without overflowing the array size
+    return new byte[len > (Integer.MAX_VALUE - 8) / 2 ? len : len << 1];
+  }
+
+  private void readData(byte[] buf, int len) throws IOException {
+    if (view.remaining() < len) {
+      throw new IOException("Rec# " + recNo + ": Incomplete read of map-output of "
+          + taskAttemptId + ". Expected " + len + " bytes, but only " + view.remaining()
+          + " bytes are left");
+    }
+    view.get(buf, 0, len);
+  }
+
+  @Override
+  public void close() {
+    if (data == null) {
+      return;
+    }
+    // keys and values have been copied out, so the buffer can be reused right away
+    if (arena != null) {
+      arena.release(data);
+    }
+    data = null;
+    view = null;
+    dataIn = null;
+    // Inform the MergeManager
+    if (merger != null) {
+      merger.releaseCommittedMemory(bufferSize);
+    }
+  }
+}
@@ -17,10 +17,16 @@
  */
 package org.apache.tez.runtime.library.common.shuffle.orderedgrouped;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -28,11 +34,28 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+import com.ning.http.client.Request;
+import com.ning.http.client.RequestBuilder;
+import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.tez.http.BaseHttpConnection;
 import org.apache.tez.http.HttpConnectionParams;
+import org.apache.tez.http.async.netty.EventLoopHttpClient;
 import org.apache.tez.common.CallableWithNdc;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,12 +63,19 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.LocalDirAllocator;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.util.DataChecksum;
 import org.apache.tez.common.TezRuntimeFrameworkConfigs;
 import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.common.security.JobTokenSecretManager;
+import org.apache.tez.runtime.library.api.PushShuffleService;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.common.Constants;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+import org.apache.tez.runtime.library.common.security.SecureShuffleUtils;
+import org.apache.tez.runtime.library.common.shuffle.PushShuffle;
 import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.MapOutput.Type;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.common.sort.impl.IFileChecksum;
 import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
 import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
 import org.apache.tez.runtime.library.exceptions.FetcherReadTimeoutException;
@@ -59,6 +89,10 @@ class FetcherOrderedGrouped extends CallableWithNdc<Void> {
 
   private static final AtomicInteger nextId = new AtomicInteger(0);
 
+  // Bytes an event driven fetch buffers for the disk, beyond which it stops reading the response
+  @VisibleForTesting
+  static final int MAX_PENDING_WRITE_BYTES = 256 * 1024;
+
   private final Configuration conf;
   private final boolean localDiskFetchEnabled;
   private final boolean verifyDiskChecksum;
@@ -100,8 +134,11 @@ class FetcherOrderedGrouped extends CallableWithNdc<Void> {
   volatile DataInputStream input;
 
   volatile BaseHttpConnection httpConnection;
+  @VisibleForTesting
+  volatile AsyncCopyHandler asyncCopyHandler;
   private final boolean asyncHttp;
   private final boolean compositeFetch;
+  private final boolean batchedFetch;
 
 
   // Initiative value is 0, which means it hasn't retried yet.
@@ -166,6 +203,9 @@ class FetcherOrderedGrouped extends CallableWithNdc<Void> {
     this.sslShuffle = sslShuffle;
     this.verifyDiskChecksum = verifyDiskChecksum;
     this.compositeFetch = compositeFetch;
+    this.batchedFetch = compositeFetch && conf.getBoolean(
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_BATCHED_FETCH_ENABLED,
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_BATCHED_FETCH_ENABLED_DEFAULT);
 
     this.logIdentifier = "fetcher [" + srcNameTrimmed + "] #" + id;
   }
@@ -173,7 +213,7 @@ class FetcherOrderedGrouped extends CallableWithNdc<Void> {
   @VisibleForTesting
   protected void fetchNext() throws InterruptedException, IOException {
     try {
-      if (localDiskFetchEnabled && mapHost.getHost().equals(localShuffleHost) && mapHost.getPort() == localShufflePort) {
+      if (isLocalDiskFetch()) {
         setupLocalDiskFetch(mapHost);
       } else {
         // Shuffle
@@ -185,6 +225,19 @@ class FetcherOrderedGrouped extends CallableWithNdc<Void> {
     }
   }
 
+  boolean isLocalDiskFetch() {
+    return isPushedFetch() || (localDiskFetchEnabled && mapHost.getHost().equals(localShuffleHost)
+        && mapHost.getPort() == localShufflePort);
+  }
+
+  /**
+   * Pushed Inputs are read from the local disk as well, from the files the push shuffle service
+   * locates.
+   */
+  private boolean isPushedFetch() {
+    return PushShuffle.isPushedInput(mapHost.getHost(), mapHost.getPort());
+  }
+
   @Override
   public Void callInternal() {
     try {
@@ -208,6 +261,10 @@ class FetcherOrderedGrouped extends CallableWithNdc<Void> {
         LOG.debug("Fetcher stopped for host " + mapHost);
       }
       stopped = true;
+      AsyncCopyHandler handler = asyncCopyHandler;
+      if (handler != null) {
+        handler.cancel();
+      }
       // An interrupt will come in while shutting down the thread.
       cleanupCurrentConnection(false);
     }
@@ -336,7 +393,8 @@ class FetcherOrderedGrouped extends CallableWithNdc<Void> {
     boolean connectSucceeded = false;
     try {
       StringBuilder baseURI = ShuffleUtils.constructBaseURIForShuffleHandler(host.getHost(),
-          host.getPort(), host.getPartitionId(), host.getPartitionCount(), applicationId, dagId, sslShuffle);
+          host.getPort(), host.getPartitionId(), host.getPartitionCount(), applicationId, dagId,
+          sslShuffle, batchedFetch);
       URL url = ShuffleUtils.constructInputURL(baseURI.toString(), attempts, httpConnectionParams.isKeepAlive());
       httpConnection = ShuffleUtils.getHttpConnection(asyncHttp, url, httpConnectionParams,
           logIdentifier, jobTokenSecretManager);
@@ -430,19 +488,33 @@ class FetcherOrderedGrouped extends CallableWithNdc<Void> {
     try {
       long startTime = System.currentTimeMillis();
       int partitionCount = 1;
+      BatchedShuffleHeader batchedHeader = null;
 
       if (this.compositeFetch) {
         // Multiple partitions are fetched
         partitionCount = WritableUtils.readVInt(input);
+        if (BatchedShuffleHeader.isBatched(partitionCount)) {
+          // One index header describes all partitions
+          batchedHeader = new BatchedShuffleHeader();
+          partitionCount = -partitionCount;
+        }
       }
       ArrayList<MapOutputStat> mapOutputStats = new ArrayList<>(partitionCount);
       for (int mapOutputIndex = 0; mapOutputIndex < partitionCount; mapOutputIndex++) {
         MapOutputStat mapOutputStat = null;
         try {
           //Read the shuffle header
-          ShuffleHeader header = new ShuffleHeader();
+          ShuffleHeader header;
           // TODO Review: Multiple header reads in case of status WAIT ?
-          header.readFields(input);
+          if (batchedHeader != null) {
+            if (mapOutputIndex == 0) {
+              batchedHeader.readFields(input, -partitionCount);
+            }
+            header = batchedHeader.getHeader(mapOutputIndex);
+          } else {
+            header = new ShuffleHeader();
+            header.readFields(input);
+          }
           if (!header.mapId.startsWith(InputAttemptIdentifier.PATH_PREFIX)) {
             if (!stopped) {
               badIdErrs.increment(1);
@@ -542,7 +614,11 @@ class FetcherOrderedGrouped extends CallableWithNdc<Void> {
               decompressedLength + " len: " + compressedLength + " to " + mapOutput.getType());
         }
 
-        if (mapOutput.getType() == Type.MEMORY) {
+        if (mapOutput.getType() == Type.MEMORY && mapOutput.getMemoryBuffer() != null) {
+          ShuffleUtils.shuffleToMemory(mapOutput.getMemoryBuffer(), input,
+              (int) decompressedLength, (int) compressedLength, codec, ifileReadAhead,
+              ifileReadAheadLength, LOG, mapOutput.getAttemptIdentifier());
+        } else if (mapOutput.getType() == Type.MEMORY) {
           ShuffleUtils.shuffleToMemory(mapOutput.getMemory(), input,
               (int) decompressedLength, (int) compressedLength, codec, ifileReadAhead,
               ifileReadAheadLength, LOG, mapOutput.getAttemptIdentifier());
@@ -676,6 +752,861 @@ class FetcherOrderedGrouped extends CallableWithNdc<Void> {
     }
   }
 
+  /**
+   * Event driven variant of {@link #fetchNext()} for remote hosts. The request is sent with the
+   * given client and the response is parsed on the client's IO threads as body parts arrive,
+   * copying map outputs straight into their {@link MapOutput}, so that no thread waits on the
+   * host. Disk writes and the completion of outputs run on the given executor. The returned
+   * future completes once the host has been freed.
+   */
+  ListenableFuture<Void> fetchNextAsync(AsyncHttpClient client, Executor executor) {
+    SettableFuture<Void> result = SettableFuture.create();
+    remaining = null;
+    List<InputAttemptIdentifier> srcAttempts = scheduler.getMapsForHost(mapHost);
+    // Sanity check to catch hosts with only 'OBSOLETE' maps,
+    // especially at the tail of large jobs
+    if (srcAttempts.size() == 0) {
+      scheduler.freeHost(mapHost);
+      result.set(null);
+      return result;
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Fetcher " + id + " going to fetch (event driven) from " + mapHost + " for: "
+          + srcAttempts + ", partition range: " + minPartition + "-" + maxPartition);
+    }
+    populateRemainingMap(srcAttempts);
+
+    AsyncCopyHandler handler = new AsyncCopyHandler(result, executor);
+    asyncCopyHandler = handler;
+    try {
+      StringBuilder baseURI = ShuffleUtils.constructBaseURIForShuffleHandler(mapHost.getHost(),
+          mapHost.getPort(), mapHost.getPartitionId(), mapHost.getPartitionCount(), applicationId,
+          dagId, sslShuffle, batchedFetch);
+      URL url = ShuffleUtils.constructInputURL(baseURI.toString(), remaining.values(),
+          httpConnectionParams.isKeepAlive());
+      handler.start(client, url);
+    } catch (Throwable t) {
+      handler.onThrowable(t);
+    }
+    if (stopped) {
+      // shutDown() may have run before the handler was published
+      handler.cancel();
+    }
+    return result;
+  }
+
+  /**
+   * Parses the response of an event driven fetch. The response has the same layout, and
+   * failures are accounted for in the same way, as in {@link #copyFromHost(MapHost)}. Headers
+   * may be split across body parts, so they are parsed from the bytes received so far and
+   * retried once more bytes arrive. Bodies are handed to a {@link SegmentSink} as they arrive.
+   * Read timeouts are not retried on a new connection.
+   *
+   * The IO threads only parse and buffer. Writes to disk outputs, the completion of outputs,
+   * which may decompress them, and the release of aborted outputs are handed off to the
+   * executor, and run there one at a time in the order they were handed off. The fetch is
+   * completed after all of them. While more than {@link #MAX_PENDING_WRITE_BYTES} are waiting
+   * to be written, i.e. when the disk falls behind the network, reading the response is
+   * suspended, and it is resumed by the executor once the writes have caught up. The IO thread
+   * is never blocked, since it serves the other connections of the client as well.
+   *
+   * Callbacks for a request are invoked one at a time, the lock guards against a concurrent
+   * {@link #cancel()} and the work running on the executor.
+   */
+  @VisibleForTesting
+  class AsyncCopyHandler implements AsyncHandler<Void> {
+
+    private final SettableFuture<Void> result;
+    private final Executor executor;
+    // header bytes which have been received but not parsed yet
+    private final DataOutputBuffer pending = new DataOutputBuffer();
+    private final DataInputBuffer pendingIn = new DataInputBuffer();
+    private final List<MapOutputStat> mapOutputStats = new ArrayList<>();
+
+    private Future<?> responseFuture;
+    private String encHash;
+    private boolean connectSucceeded = false;
+    private boolean done = false;
+
+    // The map whose outputs are being read, null while waiting for the next one
+    private InputAttemptIdentifier currentAttempt;
+    private int partitionCount;
+    // set while the outputs of a batched response are read
+    private BatchedShuffleHeader batchedHeader;
+    private int headersRead;
+    private int nextOutput;
+    private long startTime;
+
+    // The output whose body is being read, null while reading headers
+    private MapOutputStat currentOutput;
+    private MapOutput mapOutput;
+    private SegmentSink sink;
+    private long bodyBytesLeft;
+
+    // work handed off by the IO threads which has not run yet
+    private final ArrayDeque<Work> pendingWork = new ArrayDeque<>();
+    private long pendingWriteBytes = 0;
+    // whether the work runner has been submitted to the executor and has not finished yet
+    private boolean workScheduled = false;
+    // the thread running the pending work, if any
+    private Thread workThread;
+    // an unexpected error of the work, which fails the fetch
+    private Throwable workError;
+    // resumes reading the response, while it is suspended
+    private Runnable resumeReading;
+    private final Runnable workRunner = new Runnable() {
+      @Override
+      public void run() {
+        runWork();
+      }
+    };
+
+    AsyncCopyHandler(SettableFuture<Void> result, Executor executor) {
+      this.result = result;
+      this.executor = executor;
+    }
+
+    synchronized void start(AsyncHttpClient client, URL url) throws IOException {
+      encHash = SecureShuffleUtils.hashFromString(SecureShuffleUtils.buildMsgFrom(url),
+          jobTokenSecretManager);
+      Request request = new RequestBuilder()
+          .setUrl(url.toString())
+          .setHeader(SecureShuffleUtils.HTTP_HEADER_URL_HASH, encHash)
+          .setHeader(ShuffleHeader.HTTP_HEADER_NAME, ShuffleHeader.DEFAULT_HTTP_HEADER_NAME)
+          .setHeader(ShuffleHeader.HTTP_HEADER_VERSION, ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION)
+          .build();
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Request url={}, encHash={}", url, encHash);
+      }
+      responseFuture = client.executeRequest(request, this);
+    }
+
+    @VisibleForTesting
+    synchronized boolean isReadingSuspended() {
+      return resumeReading != null;
+    }
+
+    /**
+     * Stop the fetch without reporting failures, after the fetcher has been shut down.
+     */
+    void cancel() {
+      synchronized (this) {
+        if (!done) {
+          abortOutput();
+          finish(EMPTY_ATTEMPT_ID_ARRAY, null);
+          if (responseFuture != null) {
+            responseFuture.cancel(true);
+          }
+        }
+      }
+      // The executor may be shut down before it gets to the work left, which releases the
+      // outputs and frees the host
+      runWork();
+    }
+
+    @Override
+    public synchronized STATE onStatusReceived(HttpResponseStatus status) {
+      if (done) {
+        return STATE.ABORT;
+      }
+      int rc = status.getStatusCode();
+      if (rc != HttpURLConnection.HTTP_OK) {
+        connectFailed(new IOException("Got invalid response code " + rc + " from "
+            + mapHost + ": " + status.getStatusText()));
+        return STATE.ABORT;
+      }
+      connectSucceeded = true;
+      return STATE.CONTINUE;
+    }
+
+    @Override
+    public synchronized STATE onHeadersReceived(HttpResponseHeaders headers) {
+      if (done) {
+        return STATE.ABORT;
+      }
+      try {
+        validate(headers.getHeaders());
+      } catch (IOException e) {
+        connectFailed(e);
+        return STATE.ABORT;
+      }
+      return STATE.CONTINUE;
+    }
+
+    private void validate(FluentCaseInsensitiveStringsMap headers) throws IOException {
+      if (!ShuffleHeader.DEFAULT_HTTP_HEADER_NAME
+          .equals(headers.getFirstValue(ShuffleHeader.HTTP_HEADER_NAME))
+          || !ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION
+          .equals(headers.getFirstValue(ShuffleHeader.HTTP_HEADER_VERSION))) {
+        throw new IOException("Incompatible shuffle response version");
+      }
+      // get the replyHash which is HMac of the encHash we sent to the server
+      String replyHash = headers.getFirstValue(SecureShuffleUtils.HTTP_HEADER_REPLY_URL_HASH);
+      if (replyHash == null) {
+        throw new IOException("security validation of TT Map output failed");
+      }
+      SecureShuffleUtils.verifyReply(replyHash, encHash, jobTokenSecretManager);
+    }
+
+    @Override
+    public synchronized STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) {
+      if (done) {
+        return STATE.ABORT;
+      }
+      try {
+        consume(bodyPart.getBodyPartBytes());
+      } catch (IOException e) {
+        readFailed(e);
+      } catch (Throwable t) {
+        abortOutput();
+        finish(EMPTY_ATTEMPT_ID_ARRAY, t);
+      }
+      if (!done && resumeReading == null && pendingWriteBytes > MAX_PENDING_WRITE_BYTES) {
+        // Hold off reading more of the response while the disk falls behind the network
+        resumeReading = EventLoopHttpClient.suspendReading();
+      }
+      return done ? STATE.ABORT : STATE.CONTINUE;
+    }
+
+    @Override
+    public synchronized Void onCompleted() {
+      if (done) {
+        return null;
+      }
+      if (!remaining.isEmpty()) {
+        readFailed(new EOFException("Response from " + mapHost + " ended with "
+            + remaining.size() + " map outputs left"));
+      } else {
+        finish(EMPTY_ATTEMPT_ID_ARRAY, null);
+      }
+      return null;
+    }
+
+    @Override
+    public synchronized void onThrowable(Throwable t) {
+      if (done) {
+        return;
+      }
+      if (!connectSucceeded) {
+        connectFailed(t);
+      } else {
+        readFailed(t);
+      }
+    }
+
+    private void consume(byte[] data) throws IOException {
+      int off = 0;
+      int len = data.length;
+      while (!done) {
+        if (sink != null) {
+          if (len == 0) {
+            break;
+          }
+          int n = (int) Math.min(len, bodyBytesLeft);
+          if (sink.writesToDisk()) {
+            final SegmentSink diskSink = sink;
+            final byte[] chunk = Arrays.copyOfRange(data, off, off + n);
+            handOff(new Work(diskSink, n) {
+              @Override
+              void run() throws IOException {
+                if (!stopped) {
+                  diskSink.write(chunk, 0, chunk.length);
+                }
+              }
+            });
+          } else {
+            sink.write(data, off, n);
+          }
+          off += n;
+          len -= n;
+          bodyBytesLeft -= n;
+          if (bodyBytesLeft == 0) {
+            outputCompleted();
+          }
+        } else {
+          pending.write(data, off, len);
+          pendingIn.reset(pending.getData(), pending.getLength());
+          parse(pendingIn);
+          // Whatever follows the parsed headers is either body or an incomplete header
+          data = Arrays.copyOfRange(pending.getData(), pendingIn.getPosition(),
+              pending.getLength());
+          off = 0;
+          len = data.length;
+          pending.reset();
+          if (sink == null) {
+            pending.write(data, 0, len);
+            break;
+          }
+        }
+      }
+    }
+
+    /**
+     * Read headers and start on the next output, until a body is to be read, more bytes are
+     * required, or the fetch is done.
+     */
+    private void parse(DataInputBuffer in) throws IOException {
+      while (!done && sink == null && !remaining.isEmpty()) {
+        if (currentAttempt == null) {
+          int count = 1;
+          if (compositeFetch) {
+            // Multiple partitions are fetched
+            int mark = in.getPosition();
+            try {
+              count = WritableUtils.readVInt(in);
+            } catch (EOFException e) {
+              rewind(in, mark);
+              return;
+            }
+          }
+          currentAttempt = getNextRemainingAttempt();
+          batchedHeader = null;
+          if (BatchedShuffleHeader.isBatched(count)) {
+            // One index header describes all partitions
+            batchedHeader = new BatchedShuffleHeader();
+            count = -count;
+          }
+          partitionCount = count;
+          headersRead = 0;
+          nextOutput = 0;
+          mapOutputStats.clear();
+          startTime = System.currentTimeMillis();
+        }
+        if (headersRead < partitionCount) {
+          if (!readHeader(in)) {
+            return;
+          }
+        } else if (nextOutput < mapOutputStats.size()) {
+          startOutput(mapOutputStats.get(nextOutput++));
+        } else {
+          remaining.remove(currentAttempt.toString());
+          currentAttempt = null;
+        }
+      }
+    }
+
+    private void rewind(DataInputBuffer in, int position) {
+      in.reset(pending.getData(), position, pending.getLength() - position);
+    }
+
+    /**
+     * @return false if more bytes are required, or the fetch has failed
+     */
+    private boolean readHeader(DataInputBuffer in) throws IOException {
+      MapOutputStat mapOutputStat;
+      try {
+        int mark = in.getPosition();
+        ShuffleHeader header;
+        try {
+          if (batchedHeader != null) {
+            if (headersRead == 0) {
+              batchedHeader.readFields(in, -partitionCount);
+            }
+            header = batchedHeader.getHeader(headersRead);
+          } else {
+            header = new ShuffleHeader();
+            header.readFields(in);
+          }
+        } catch (EOFException e) {
+          rewind(in, mark);
+          return false;
+        }
+        headersRead++;
+        if (!header.mapId.startsWith(InputAttemptIdentifier.PATH_PREFIX)) {
+          if (!stopped) {
+            badIdErrs.increment(1);
+            LOG.warn("Invalid map id: " + header.mapId + ", expected to start with " +
+                InputAttemptIdentifier.PATH_PREFIX + ", partition: " + header.forReduce);
+          }
+          failTask(getNextRemainingAttempt());
+          return false;
+        }
+        if (header.getCompressedLength() == 0) {
+          // Empty partitions are already accounted for
+          return true;
+        }
+        mapOutputStat = new MapOutputStat(
+            scheduler.getIdentifierForFetchedOutput(header.mapId, header.forReduce),
+            header.uncompressedLength, header.compressedLength, header.forReduce);
+      } catch (IllegalArgumentException e) {
+        if (!stopped) {
+          badIdErrs.increment(1);
+          LOG.warn("Invalid map id ", e);
+        }
+        // Don't know which one was bad, so consider this one bad
+        failTask(getNextRemainingAttempt());
+        return false;
+      }
+
+      // Do some basic sanity verification
+      if (!verifySanity(mapOutputStat.compressedLength, mapOutputStat.decompressedLength,
+          mapOutputStat.forReduce, remaining, mapOutputStat.srcAttemptId)) {
+        InputAttemptIdentifier srcAttemptId = mapOutputStat.srcAttemptId;
+        if (srcAttemptId == null) {
+          srcAttemptId = getNextRemainingAttempt();
+          LOG.warn("Was expecting " + srcAttemptId + " but got null");
+        }
+        failTask(srcAttemptId);
+        return false;
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("header: " + mapOutputStat.srcAttemptId + ", len: " +
+            mapOutputStat.compressedLength + ", decomp len: " + mapOutputStat.decompressedLength);
+      }
+      mapOutputStats.add(mapOutputStat);
+      return true;
+    }
+
+    private void startOutput(MapOutputStat mapOutputStat) throws IOException {
+      currentOutput = mapOutputStat;
+      try {
+        mapOutput = allocator.reserve(mapOutputStat.srcAttemptId,
+            mapOutputStat.decompressedLength, mapOutputStat.compressedLength, id);
+      } catch (IOException e) {
+        if (!stopped) {
+          // Kill the reduce attempt
+          ioErrs.increment(1);
+          scheduler.reportLocalError(e);
+        }
+        finish(EMPTY_ATTEMPT_ID_ARRAY, null);
+        return;
+      }
+      // Check if we can shuffle *now* ...
+      if (mapOutput.getType() == Type.WAIT) {
+        LOG.info("fetcher#" + id + " - MergerManager returned Status.WAIT ...");
+        mapOutput = null;
+        //Not an error but wait to process data.
+        finish(EMPTY_ATTEMPT_ID_ARRAY, null);
+        return;
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("fetcher#" + id + " about to shuffle output of map " +
+            mapOutput.getAttemptIdentifier() + " decomp: " + mapOutputStat.decompressedLength +
+            " len: " + mapOutputStat.compressedLength + " to " + mapOutput.getType());
+      }
+      sink = new SegmentSink(currentAttempt, mapOutputStat.srcAttemptId, mapOutput,
+          mapOutputStat.compressedLength, mapOutputStat.decompressedLength);
+      bodyBytesLeft = mapOutputStat.compressedLength;
+    }
+
+    private void outputCompleted() {
+      final SegmentSink completedSink = sink;
+      final MapOutputStat completedOutput = currentOutput;
+      final MapOutput completedMapOutput = mapOutput;
+      final long copyMillis = System.currentTimeMillis() - startTime;
+      sink = null;
+      mapOutput = null;
+      currentOutput = null;
+      handOff(new Work(completedSink, 0) {
+        @Override
+        void run() throws IOException {
+          if (stopped) {
+            completedSink.abort();
+            return;
+          }
+          completedSink.finish();
+          scheduler.copySucceeded(completedOutput.srcAttemptId, mapHost,
+              completedOutput.compressedLength, completedOutput.decompressedLength, copyMillis,
+              completedMapOutput, false);
+        }
+      });
+    }
+
+    private void abortOutput() {
+      if (sink != null) {
+        // Release resources, after the writes handed off before
+        final SegmentSink abortedSink = sink;
+        handOff(new Work(abortedSink, 0) {
+          @Override
+          void run() {
+            abortedSink.abort();
+          }
+        });
+      } else if (mapOutput != null) {
+        final MapOutput abortedOutput = mapOutput;
+        handOff(new Work(null, 0) {
+          @Override
+          void run() {
+            abortedOutput.abort();
+          }
+        });
+      }
+      sink = null;
+      mapOutput = null;
+    }
+
+    private void failTask(InputAttemptIdentifier srcAttemptId) {
+      finish(stopped ? EMPTY_ATTEMPT_ID_ARRAY : new InputAttemptIdentifier[] {srcAttemptId},
+          null);
+    }
+
+    private void connectFailed(Throwable t) {
+      if (stopped) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Not reporting fetch failure, since an Exception was caught after shutdown");
+        }
+        finish(EMPTY_ATTEMPT_ID_ARRAY, null);
+        return;
+      }
+      ioErrs.increment(1);
+      if (!connectSucceeded) {
+        LOG.warn("Failed to connect to " + mapHost + " with " + remaining.size() + " inputs", t);
+        connectionErrs.increment(1);
+      } else {
+        LOG.warn("Failed to verify reply after connecting to " + mapHost + " with "
+            + remaining.size() + " inputs pending", t);
+      }
+      // The error does not relate to any specific Input. Report all of them as failed.
+      for (InputAttemptIdentifier left : remaining.values()) {
+        scheduler.copyFailed(left, mapHost, connectSucceeded, !connectSucceeded, false);
+      }
+      finish(EMPTY_ATTEMPT_ID_ARRAY, null);
+    }
+
+    private void readFailed(Throwable t) {
+      InputAttemptIdentifier srcAttemptId = currentOutput != null
+          ? currentOutput.srcAttemptId : null;
+      abortOutput();
+      if (stopped) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Not reporting fetch failure for exception during data copy: ["
+              + t.getClass().getName() + ", " + t.getMessage() + "]");
+        }
+        finish(EMPTY_ATTEMPT_ID_ARRAY, null);
+        return;
+      }
+      ioErrs.increment(1);
+      if (srcAttemptId == null) {
+        LOG.info("fetcher#" + id + " failed to read map header from " + mapHost, t);
+        finish(remaining.values().toArray(new InputAttemptIdentifier[remaining.size()]), null);
+      } else {
+        LOG.warn("Failed to shuffle output of " + srcAttemptId +
+            " from " + mapHost.getHostIdentifier(), t);
+        finish(new InputAttemptIdentifier[] {srcAttemptId}, null);
+      }
+    }
+
+    private void finish(final InputAttemptIdentifier[] failedTasks, final Throwable error) {
+      done = true;
+      handOff(new Work(null, 0) {
+        @Override
+        void run() {
+          completeFetch(failedTasks, error);
+        }
+      });
+    }
+
+    /**
+     * Reports the failed tasks and frees the host, after all other work of the fetch.
+     */
+    private void completeFetch(InputAttemptIdentifier[] failedTasks, Throwable error) {
+      if (error == null) {
+        synchronized (this) {
+          error = workError;
+        }
+      }
+      try {
+        if (failedTasks.length > 0) {
+          if (stopped) {
+            if (LOG.isDebugEnabled()) {
+              LOG.debug("Ignoring copyMapOutput failures for tasks: " +
+                  Arrays.toString(failedTasks) + " since Fetcher has been stopped");
+            }
+          } else {
+            LOG.warn("copyMapOutput failed for tasks " + Arrays.toString(failedTasks));
+            for (InputAttemptIdentifier left : failedTasks) {
+              scheduler.copyFailed(left, mapHost, true, false, false);
+            }
+          }
+        }
+        putBackRemainingMapOutputs(mapHost);
+      } catch (Throwable t) {
+        if (error == null) {
+          error = t;
+        }
+      } finally {
+        scheduler.freeHost(mapHost);
+        if (error == null) {
+          result.set(null);
+        } else {
+          result.setException(error);
+        }
+      }
+    }
+
+    /**
+     * Work handed off by the IO threads. Work on an output is skipped once the output has been
+     * aborted.
+     */
+    private abstract class Work {
+      // the output the work is on, null for work on the fetch as a whole
+      final SegmentSink sink;
+      // bytes to write to disk, which count against MAX_PENDING_WRITE_BYTES
+      final int bytes;
+
+      Work(SegmentSink sink, int bytes) {
+        this.sink = sink;
+        this.bytes = bytes;
+      }
+
+      abstract void run() throws IOException;
+    }
+
+    private void handOff(Work work) {
+      pendingWork.add(work);
+      pendingWriteBytes += work.bytes;
+      if (workScheduled) {
+        return;
+      }
+      workScheduled = true;
+      try {
+        executor.execute(workRunner);
+      } catch (RejectedExecutionException e) {
+        // The fetchers are being shut down, the work only releases resources
+        runWork();
+      }
+    }
+
+    private void runWork() {
+      synchronized (this) {
+        if (workThread != null) {
+          // the work is already being run
+          return;
+        }
+        workThread = Thread.currentThread();
+      }
+      while (true) {
+        Work work;
+        synchronized (this) {
+          work = pendingWork.poll();
+          if (work == null) {
+            workThread = null;
+            workScheduled = false;
+            return;
+          }
+        }
+        try {
+          if (work.sink == null || !work.sink.isAborted()) {
+            work.run();
+          }
+        } catch (Throwable t) {
+          synchronized (this) {
+            outputFailed(work.sink, t);
+          }
+        } finally {
+          Runnable resume = null;
+          synchronized (this) {
+            pendingWriteBytes -= work.bytes;
+            if (resumeReading != null && (done || pendingWriteBytes <= MAX_PENDING_WRITE_BYTES)) {
+              resume = resumeReading;
+              resumeReading = null;
+            }
+          }
+          if (resume != null) {
+            resume.run();
+          }
+        }
+      }
+    }
+
+    /**
+     * Fails the output whose disk write or completion failed, and stops the fetch if it is
+     * still reading.
+     */
+    private void outputFailed(SegmentSink failedSink, Throwable t) {
+      if (failedSink != null) {
+        failedSink.abort();
+      }
+      if (failedSink != null && t instanceof IOException) {
+        if (!stopped) {
+          ioErrs.increment(1);
+          LOG.warn("Failed to shuffle output of " + failedSink.srcAttemptId +
+              " from " + mapHost.getHostIdentifier(), t);
+          scheduler.copyFailed(failedSink.srcAttemptId, mapHost, true, false, false);
+        }
+        // The response may have been read past the attempt already, it is to be put back
+        remaining.put(failedSink.fetchedAttempt.toString(), failedSink.fetchedAttempt);
+      } else if (workError == null) {
+        workError = t;
+      }
+      if (!done) {
+        abortOutput();
+        finish(EMPTY_ATTEMPT_ID_ARRAY, null);
+      }
+    }
+  }
+
+  /**
+   * Receives the IFile segment of one map output in chunks of arbitrary size. Disk outputs are
+   * written through as the chunks arrive. Uncompressed memory outputs are copied straight into
+   * the output buffer and checksummed on the way, compressed ones are staged and decompressed
+   * once complete. Aborting the sink aborts the map output as well.
+   */
+  private class SegmentSink {
+
+    // "TI" magic, the checksum version and the codec id
+    private static final int HEADER_LENGTH = 4;
+    private static final int CHECKSUM_LENGTH = 4;
+
+    // the attempt as tracked in remaining, which may span several outputs
+    private final InputAttemptIdentifier fetchedAttempt;
+    private final InputAttemptIdentifier srcAttemptId;
+    private final MapOutput mapOutput;
+    private final long length;
+    private final long dataEnd;
+    private final long decompressedLength;
+    private final OutputStream disk;
+    private final byte[] memory;
+    // written sequentially, in place of memory for outputs held in a direct buffer
+    private final ByteBuffer memoryBuffer;
+    private final int memoryLength;
+    private final boolean verifyChecksum;
+    private final byte[] header = new byte[HEADER_LENGTH];
+    private final byte[] trailer = new byte[CHECKSUM_LENGTH];
+    // of the type named by the header, created once the header has been received
+    private IFileChecksum checksum;
+    private byte[] staging;
+    private long position = 0;
+    private boolean aborted = false;
+
+    SegmentSink(InputAttemptIdentifier fetchedAttempt, InputAttemptIdentifier srcAttemptId,
+        MapOutput mapOutput, long compressedLength, long decompressedLength) throws IOException {
+      if (compressedLength < HEADER_LENGTH + CHECKSUM_LENGTH) {
+        throw new IOException("Map output of " + mapOutput.getAttemptIdentifier()
+            + " is too short for an IFile: " + compressedLength);
+      }
+      this.fetchedAttempt = fetchedAttempt;
+      this.srcAttemptId = srcAttemptId;
+      this.mapOutput = mapOutput;
+      this.length = compressedLength;
+      this.dataEnd = compressedLength - CHECKSUM_LENGTH;
+      this.decompressedLength = decompressedLength;
+      if (mapOutput.getType() == Type.MEMORY) {
+        this.memory = mapOutput.getMemory();
+        this.memoryBuffer = memory == null ? mapOutput.getMemoryBuffer().duplicate() : null;
+        this.memoryLength = memory != null ? memory.length : memoryBuffer.limit();
+        this.disk = null;
+        this.verifyChecksum = true;
+      } else if (mapOutput.getType() == Type.DISK) {
+        this.memory = null;
+        this.memoryBuffer = null;
+        this.memoryLength = 0;
+        this.disk = mapOutput.getDisk();
+        this.verifyChecksum = verifyDiskChecksum;
+      } else {
+        throw new IOException("Unknown mapOutput type while fetching shuffle data:" +
+            mapOutput.getType());
+      }
+    }
+
+    boolean writesToDisk() {
+      return disk != null;
+    }
+
+    boolean isAborted() {
+      return aborted;
+    }
+
+    void write(byte[] b, int off, int len) throws IOException {
+      if (disk != null) {
+        disk.write(b, off, len);
+      }
+      final int end = off + len;
+      while (off < end) {
+        if (staging != null) {
+          System.arraycopy(b, off, staging, (int) position, end - off);
+          position += end - off;
+          return;
+        }
+        int n;
+        if (position < HEADER_LENGTH) {
+          n = (int) Math.min(end - off, HEADER_LENGTH - position);
+          System.arraycopy(b, off, header, (int) position, n);
+        } else if (position < dataEnd) {
+          n = (int) Math.min(end - off, dataEnd - position);
+          if (memory != null) {
+            System.arraycopy(b, off, memory, (int) (position - HEADER_LENGTH), n);
+          } else if (memoryBuffer != null) {
+            memoryBuffer.put(b, off, n);
+          }
+          if (checksum != null) {
+            checksum.update(b, off, n);
+          }
+        } else {
+          n = end - off;
+          System.arraycopy(b, off, trailer, (int) (position - dataEnd), n);
+        }
+        off += n;
+        position += n;
+        if (position == HEADER_LENGTH) {
+          headerCompleted();
+        }
+      }
+    }
+
+    private void headerCompleted() throws IOException {
+      DataChecksum.Type checksumType = IFile.Reader.getChecksumType(header);
+      // compressed segments are decoded once complete
+      boolean compressed = IFile.Reader.isCompressedFlagEnabled(
+          new ByteArrayInputStream(header));
+      if (verifyChecksum) {
+        checksum = new IFileChecksum(checksumType);
+      }
+      if (memory == null && memoryBuffer == null) {
+        return;
+      }
+      if (compressed) {
+        staging = new byte[(int) length];
+        System.arraycopy(header, 0, staging, 0, HEADER_LENGTH);
+      } else if (dataEnd != memoryLength) {
+        // the buffer holds the data without header, followed by unused space of header size
+        throw new IOException("Unexpected data length " + (dataEnd - HEADER_LENGTH)
+            + " for map output of " + mapOutput.getAttemptIdentifier() + " of size "
+            + memoryLength);
+      }
+    }
+
+    void finish() throws IOException {
+      if (staging != null && memoryBuffer != null) {
+        ShuffleUtils.shuffleToMemory(mapOutput.getMemoryBuffer(),
+            new ByteArrayInputStream(staging), (int) decompressedLength, (int) length, codec,
+            false, 0, LOG, mapOutput.getAttemptIdentifier());
+        staging = null;
+        return;
+      }
+      if (staging != null) {
+        ShuffleUtils.shuffleToMemory(memory, new ByteArrayInputStream(staging),
+            (int) decompressedLength, (int) length, codec, false, 0, LOG,
+            mapOutput.getAttemptIdentifier());
+        staging = null;
+        return;
+      }
+      if (checksum != null) {
+        checksum.reportTime();
+        if (!checksum.compare(trailer, 0)) {
+          throw new ChecksumException("Checksum Error: CRC mismatch for map output of "
+              + mapOutput.getAttemptIdentifier(), dataEnd);
+        }
+      }
+      if (disk != null) {
+        disk.close();
+      }
+    }
+
+    void abort() {
+      if (aborted) {
+        return;
+      }
+      aborted = true;
+      staging = null;
+      if (disk != null) {
+        ShuffleUtils.ioCleanup(disk);
+      }
+      // Release resources
+      mapOutput.abort();
+    }
+  }
+
   @VisibleForTesting
   protected void setupLocalDiskFetch(MapHost host) throws InterruptedException {
     // Get completed maps on 'host'
@@ -703,6 +1634,7 @@ class FetcherOrderedGrouped extends CallableWithNdc<Void> {
           return;
         }
         InputAttemptIdentifier srcAttemptId = iter.next();
+        final InputAttemptIdentifier inputAttemptIdentifier = srcAttemptId;
         MapOutput mapOutput = null;
         boolean hasFailures = false;
         // Fetch partition count number of map outputs (handles auto-reduce case)
@@ -713,8 +1645,18 @@ class FetcherOrderedGrouped extends CallableWithNdc<Void> {
             // Partition id is the base partition id plus the relative offset
             int reduceId = host.getPartitionId() + curPartition - minPartition;
             srcAttemptId = scheduler.getIdentifierForFetchedOutput(srcAttemptId.getPathComponent(), reduceId);
-            Path filename = getShuffleInputFileName(srcAttemptId.getPathComponent(), null);
-            TezIndexRecord indexRecord = getIndexRecord(srcAttemptId.getPathComponent(), reduceId);
+            Path filename;
+            TezIndexRecord indexRecord;
+            if (isPushedFetch()) {
+              PushShuffleService.Segment segment =
+                  scheduler.locatePushedSegment(srcAttemptId.getPathComponent(), reduceId);
+              filename = segment.getPath();
+              indexRecord = new TezIndexRecord(segment.getOffset(), segment.getRawLength(),
+                  segment.getPartLength());
+            } else {
+              filename = getShuffleInputFileName(srcAttemptId.getPathComponent(), null);
+              indexRecord = getIndexRecord(srcAttemptId.getPathComponent(), reduceId);
+            }
             if(!indexRecord.hasData()) {
               continue;
             }
@@ -727,7 +1669,12 @@ class FetcherOrderedGrouped extends CallableWithNdc<Void> {
             if (mapOutput != null) {
               mapOutput.abort();
             }
-            if (!stopped) {
+            if (!stopped && isPushedFetch()) {
+              LOG.warn("Failed to read pushed output of " + srcAttemptId
+                  + ", fetching it from its producer", e);
+              scheduler.pushedFetchFailed(inputAttemptIdentifier);
+              break;
+            } else if (!stopped) {
               hasFailures = true;
               ioErrs.increment(1);
               scheduler.copyFailed(srcAttemptId, host, true, false, true);
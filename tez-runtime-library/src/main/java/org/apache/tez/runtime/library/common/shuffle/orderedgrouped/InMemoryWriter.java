@@ -18,6 +18,8 @@
 package org.apache.tez.runtime.library.common.shuffle.orderedgrouped;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +28,7 @@ import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.io.BoundedByteArrayOutputStream;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.tez.common.io.NonSyncDataOutputStream;
+import org.apache.tez.runtime.library.common.shuffle.DirectBufferArena;
 import org.apache.tez.runtime.library.common.sort.impl.IFile;
 import org.apache.tez.runtime.library.common.sort.impl.IFileOutputStream;
 import org.apache.tez.runtime.library.common.sort.impl.IFile.Writer;
@@ -52,8 +55,19 @@ public class InMemoryWriter extends Writer {
   }
 
   public InMemoryWriter(BoundedByteArrayOutputStream arrayStream, boolean rle) {
+    this((OutputStream) arrayStream, rle);
+  }
+
+  /**
+   * Write to a direct buffer, from position 0 up to its limit.
+   */
+  public InMemoryWriter(ByteBuffer buffer) {
+    this(DirectBufferArena.newOutputStream(buffer), false);
+  }
+
+  private InMemoryWriter(OutputStream stream, boolean rle) {
     super(null, null, rle);
-    this.out = new NonSyncDataOutputStream(new IFileOutputStream(arrayStream));
+    this.out = new NonSyncDataOutputStream(new IFileOutputStream(stream));
   }
 
   public void append(Object key, Object value) throws IOException {
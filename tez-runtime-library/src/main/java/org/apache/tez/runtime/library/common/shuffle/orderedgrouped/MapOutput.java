@@ -19,6 +19,7 @@ package org.apache.tez.runtime.library.common.shuffle.orderedgrouped;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Comparator;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -30,6 +31,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.BoundedByteArrayOutputStream;
 import org.apache.hadoop.io.FileChunk;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+import org.apache.tez.runtime.library.common.shuffle.DirectBufferArena;
 import org.apache.tez.runtime.library.common.task.local.output.TezTaskOutputFiles;
 
 
@@ -91,6 +93,16 @@ abstract class MapOutput {
     return new InMemoryMapOutput(attemptIdentifier, callback, size, primaryMapOutput);
   }
 
+  /**
+   * Create a memory map output held in a direct buffer from the arena. The buffer is returned
+   * to the arena when the output is aborted, or by the reader which consumes the output.
+   */
+  public static MapOutput createDirectMemoryMapOutput(InputAttemptIdentifier attemptIdentifier,
+                                                      FetchedInputAllocatorOrderedGrouped callback, int size,
+                                                      boolean primaryMapOutput, DirectBufferArena arena)  {
+    return new DirectMemoryMapOutput(attemptIdentifier, callback, size, primaryMapOutput, arena);
+  }
+
   public static MapOutput createWaitMapOutput(InputAttemptIdentifier attemptIdentifier) {
     return new WaitMapOutput(attemptIdentifier);
   }
@@ -119,6 +131,10 @@ abstract class MapOutput {
   public byte[] getMemory() {
     return null;
   }
+
+  public ByteBuffer getMemoryBuffer() {
+    return null;
+  }
   
   public OutputStream getDisk() {
     return null;
@@ -283,6 +299,46 @@ abstract class MapOutput {
     }
   }
 
+  private static class DirectMemoryMapOutput extends MapOutput {
+    private final ByteBuffer buffer;
+    private final int size;
+    private final DirectBufferArena arena;
+    private DirectMemoryMapOutput(InputAttemptIdentifier attemptIdentifier,
+                                  FetchedInputAllocatorOrderedGrouped callback,
+                                  int size, boolean primaryMapOutput, DirectBufferArena arena) {
+      super(attemptIdentifier, callback, primaryMapOutput);
+      this.arena = arena;
+      this.size = size;
+      this.buffer = arena.allocate(size);
+    }
+
+    @Override
+    public ByteBuffer getMemoryBuffer() {
+      return buffer;
+    }
+
+    @Override
+    public long getSize() {
+      return size;
+    }
+
+    @Override
+    public void commit() throws IOException {
+      callback.closeInMemoryFile(this);
+    }
+
+    @Override
+    public void abort() {
+      callback.unreserve(size);
+      arena.release(buffer);
+    }
+
+    @Override
+    public Type getType() {
+      return Type.MEMORY;
+    }
+  }
+
   private static class WaitMapOutput extends MapOutput {
     private WaitMapOutput(InputAttemptIdentifier attemptIdentifier) {
       super(attemptIdentifier, null, false);
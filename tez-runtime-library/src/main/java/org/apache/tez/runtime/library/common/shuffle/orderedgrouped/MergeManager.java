@@ -43,10 +43,12 @@ import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.dag.api.TezUncheckedException;
 import org.apache.tez.runtime.api.InputContext;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.BufferPool;
 import org.apache.tez.runtime.library.common.ConfigUtils;
 import org.apache.tez.runtime.library.common.Constants;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.combine.Combiner;
+import org.apache.tez.runtime.library.common.shuffle.DirectBufferArena;
 import org.apache.tez.runtime.library.common.sort.impl.IFile;
 import org.apache.tez.runtime.library.common.sort.impl.IFile.Writer;
 import org.apache.tez.runtime.library.common.sort.impl.TezMerger;
@@ -125,6 +127,11 @@ public class MergeManager implements FetchedInputAllocatorOrderedGrouped {
   
   private final long initialMemoryAvailable;
 
+  // holds in-memory map outputs off heap, if enabled
+  private final DirectBufferArena bufferArena;
+  // the arena is shared across the container when taken from the buffer pool
+  private final boolean sharedBufferArena;
+
   private final ExceptionReporter exceptionReporter;
   
   private final InputContext inputContext;
@@ -283,12 +290,23 @@ public class MergeManager implements FetchedInputAllocatorOrderedGrouped {
                conf.getFloat(
                    TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_MERGE_PERCENT, 
                    TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_MERGE_PERCENT_DEFAULT));
+    boolean offHeap = conf.getBoolean(
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_OFF_HEAP_BUFFERS_ENABLED,
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_OFF_HEAP_BUFFERS_ENABLED_DEFAULT);
+    BufferPool bufferPool = offHeap ? BufferPool.get(inputContext, conf) : null;
+    this.sharedBufferArena = bufferPool != null;
+    if (bufferPool != null) {
+      this.bufferArena = bufferPool.getDirectBufferArena();
+    } else {
+      this.bufferArena = offHeap ? new DirectBufferArena(memoryLimit) : null;
+    }
     LOG.info(inputContext.getSourceVertexName() + ": MergerManager: memoryLimit=" + memoryLimit + ", " +
              "maxSingleShuffleLimit=" + maxSingleShuffleLimit + ", " +
              "mergeThreshold=" + mergeThreshold + ", " + 
              "ioSortFactor=" + ioSortFactor + ", " +
              "postMergeMem=" + postMergeMemLimit + ", " +
-             "memToMemMergeOutputsThreshold=" + memToMemMergeOutputsThreshold);
+             "memToMemMergeOutputsThreshold=" + memToMemMergeOutputsThreshold + ", " +
+             "offHeap=" + offHeap);
     
     if (this.maxSingleShuffleLimit >= this.mergeThreshold) {
       throw new RuntimeException("Invlaid configuration: "
@@ -454,14 +472,38 @@ public class MergeManager implements FetchedInputAllocatorOrderedGrouped {
   private synchronized MapOutput unconditionalReserve(
       InputAttemptIdentifier srcAttemptIdentifier, long requestedSize, boolean primaryMapOutput) throws
       IOException {
-    usedMemory += requestedSize;
+    usedMemory += getReservedSize(requestedSize);
+    if (bufferArena != null) {
+      return MapOutput.createDirectMemoryMapOutput(srcAttemptIdentifier, this,
+          (int) requestedSize, primaryMapOutput, bufferArena);
+    }
     return MapOutput.createMemoryMapOutput(srcAttemptIdentifier, this, (int)requestedSize,
         primaryMapOutput);
   }
 
+  /**
+   * Create a reader which consumes an in-memory map output and releases its memory on close.
+   */
+  private IFile.Reader createInMemoryReader(MapOutput mapOutput) throws IOException {
+    if (mapOutput.getMemoryBuffer() != null) {
+      return new DirectInMemoryReader(this, mapOutput.getAttemptIdentifier(),
+          mapOutput.getMemoryBuffer(), (int) mapOutput.getSize(), bufferArena);
+    }
+    byte[] data = mapOutput.getMemory();
+    return new InMemoryReader(this, mapOutput.getAttemptIdentifier(), data, 0, data.length);
+  }
+
+  /**
+   * @return the memory taken up by an in-memory map output of <code>size</code> bytes, which is
+   *         the capacity of its buffer when the buffers come from the arena
+   */
+  private long getReservedSize(long size) {
+    return bufferArena == null ? size : DirectBufferArena.getCapacity((int) size);
+  }
+
   @Override
   public synchronized void unreserve(long size) {
-    usedMemory -= size;
+    usedMemory -= getReservedSize(size);
     if (LOG.isDebugEnabled()) {
       LOG.debug("Notifying unreserve : size=" + size + ", commitMemory=" + commitMemory + ", usedMemory=" + usedMemory
           + ", mergeThreshold=" + mergeThreshold);
@@ -632,6 +674,10 @@ public class MergeManager implements FetchedInputAllocatorOrderedGrouped {
       }
       inMemoryMerger.close();
       onDiskMerger.close();
+      if (bufferArena != null && !sharedBufferArena) {
+        // buffers of the outputs which are still to be merged are freed once they are read
+        bufferArena.close();
+      }
 
       List<MapOutput> memory =
           new ArrayList<MapOutput>(inMemoryMergedMapOutputs);
@@ -751,8 +797,7 @@ public class MergeManager implements FetchedInputAllocatorOrderedGrouped {
             continue;
           } else {
             mergeOutputSize += mo.getSize();
-            IFile.Reader reader = new InMemoryReader(MergeManager.this,
-                mo.getAttemptIdentifier(), mo.getMemory(), 0, mo.getMemory().length);
+            IFile.Reader reader = createInMemoryReader(mo);
             inMemorySegments.add(new Segment(reader,
                 (mo.isPrimaryMapOutput() ? mergedMapOutputsCounter : null)));
             lastAddedMapOutput = mo;
@@ -777,7 +822,9 @@ public class MergeManager implements FetchedInputAllocatorOrderedGrouped {
 
       int noInMemorySegments = inMemorySegments.size();
 
-      Writer writer = new InMemoryWriter(mergedMapOutputs.getMemory());
+      Writer writer = mergedMapOutputs.getMemoryBuffer() != null
+          ? new InMemoryWriter(mergedMapOutputs.getMemoryBuffer())
+          : new InMemoryWriter(mergedMapOutputs.getMemory());
 
       LOG.info(inputContext.getSourceVertexName() + ": " + "Initiating Memory-to-Memory merge with " + noInMemorySegments +
                " segments of total-size: " + mergeOutputSize);
@@ -1081,13 +1128,10 @@ public class MergeManager implements FetchedInputAllocatorOrderedGrouped {
     int inMemoryMapOutputsOffset = 0;
     while((fullSize > leaveBytes) && !Thread.currentThread().isInterrupted()) {
       MapOutput mo = inMemoryMapOutputs.get(inMemoryMapOutputsOffset++);
-      byte[] data = mo.getMemory();
-      long size = data.length;
+      long size = mo.getSize();
       totalSize += size;
       fullSize -= size;
-      IFile.Reader reader = new InMemoryReader(MergeManager.this, 
-                                                   mo.getAttemptIdentifier(),
-                                                   data, 0, (int)size);
+      IFile.Reader reader = createInMemoryReader(mo);
       inMemorySegments.add(new Segment(reader,
                                             (mo.isPrimaryMapOutput() ? 
                                             mergedMapOutputsCounter : null)));
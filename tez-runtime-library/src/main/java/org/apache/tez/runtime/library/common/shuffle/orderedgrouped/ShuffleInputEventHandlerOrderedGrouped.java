@@ -170,8 +170,13 @@ public class ShuffleInputEventHandlerOrderedGrouped implements ShuffleEventHandl
       }
     }
 
-    scheduler.addKnownMapOutput(StringInterner.weakIntern(shufflePayload.getHost()), shufflePayload.getPort(),
-        partitionId, srcAttemptIdentifier);
+    if (shufflePayload.getPushed()) {
+      scheduler.addKnownPushedMapOutput(StringInterner.weakIntern(shufflePayload.getHost()),
+          shufflePayload.getPort(), partitionId, srcAttemptIdentifier);
+    } else {
+      scheduler.addKnownMapOutput(StringInterner.weakIntern(shufflePayload.getHost()), shufflePayload.getPort(),
+          partitionId, srcAttemptIdentifier);
+    }
   }
 
   private void processCompositeRoutedDataMovementEvent(CompositeRoutedDataMovementEvent crdmEvent, DataMovementEventPayloadProto shufflePayload, BitSet emptyPartitionsBitSet) throws IOException {
@@ -205,8 +210,13 @@ public class ShuffleInputEventHandlerOrderedGrouped implements ShuffleEventHandl
       }
     }
 
-    scheduler.addKnownMapOutput(StringInterner.weakIntern(shufflePayload.getHost()), shufflePayload.getPort(),
-        partitionId, compositeInputAttemptIdentifier);
+    if (shufflePayload.getPushed()) {
+      scheduler.addKnownPushedMapOutput(StringInterner.weakIntern(shufflePayload.getHost()),
+          shufflePayload.getPort(), partitionId, compositeInputAttemptIdentifier);
+    } else {
+      scheduler.addKnownMapOutput(StringInterner.weakIntern(shufflePayload.getHost()), shufflePayload.getPort(),
+          partitionId, compositeInputAttemptIdentifier);
+    }
   }
 
   private void processTaskFailedEvent(InputFailedEvent ifEvent) {
@@ -58,6 +58,7 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.http.HttpConnectionParams;
+import org.apache.tez.http.async.netty.EventLoopHttpClient;
 import org.apache.tez.common.CallableWithNdc;
 import org.apache.tez.common.security.JobTokenSecretManager;
 import org.apache.tez.dag.api.TezConstants;
@@ -72,12 +73,15 @@ import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.InputContext;
 import org.apache.tez.runtime.api.events.InputReadErrorEvent;
+import org.apache.tez.runtime.library.api.PushShuffleService;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.TezRuntimeUtils;
 import org.apache.tez.runtime.library.common.shuffle.ShuffleUtils;
 import org.apache.tez.runtime.library.common.shuffle.ShuffleUtils.FetchStatsLogger;
 import org.apache.tez.runtime.library.common.shuffle.HostPort;
+import org.apache.tez.runtime.library.common.shuffle.HostThroughputTracker;
+import org.apache.tez.runtime.library.common.shuffle.PushShuffle;
 import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.MapHost.HostPortPartition;
 import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.MapOutput.Type;
 
@@ -129,6 +133,40 @@ class ShuffleScheduler {
     }
   }
 
+  /**
+   * An attempt of an Input on one of its hosts.
+   */
+  @VisibleForTesting
+  static class HostAttempt {
+    final MapHost host;
+    final InputAttemptIdentifier attempt;
+    final long time;
+
+    HostAttempt(MapHost host, InputAttemptIdentifier attempt, long time) {
+      this.host = host;
+      this.attempt = attempt;
+      this.time = time;
+    }
+  }
+
+  /**
+   * The host an Input which has been pushed was produced on.
+   */
+  private static class PushedInputSource {
+    final String host;
+    final int port;
+    final int partitionId;
+    final CompositeInputAttemptIdentifier srcAttempt;
+
+    PushedInputSource(String host, int port, int partitionId,
+        CompositeInputAttemptIdentifier srcAttempt) {
+      this.host = host;
+      this.port = port;
+      this.partitionId = partitionId;
+      this.srcAttempt = srcAttempt;
+    }
+  }
+
   @VisibleForTesting
   enum ShuffleErrors {
     IO_ERROR,
@@ -200,10 +238,14 @@ class ShuffleScheduler {
   long failedShufflesSinceLastCompletion;
 
   private final int numFetchers;
+  // Limit on running fetchers, which exceeds numFetchers if remote fetches are event driven
+  private final int maxRunningFetchers;
   private final Set<FetcherOrderedGrouped> runningFetchers =
       Collections.newSetFromMap(new ConcurrentHashMap<FetcherOrderedGrouped, Boolean>());
 
   private final ListeningExecutorService fetcherExecutor;
+  // Used for remote fetches if set, local disk fetches still run on the fetcherExecutor
+  private final EventLoopHttpClient eventLoopHttpClient;
 
   private final HttpConnectionParams httpConnectionParams;
   private final FetchedInputAllocatorOrderedGrouped allocator;
@@ -244,6 +286,28 @@ class ShuffleScheduler {
   private final boolean verifyDiskChecksum;
   private final boolean compositeFetch;
 
+  private final boolean hedgingEnabled;
+  private final float hedgingSlowHostFraction;
+  private final long hedgingMinDelay;
+  private final HostThroughputTracker hostThroughput = new HostThroughputTracker();
+  // Inputs being fetched, by input index, and other attempts of them held back until the
+  // fetch straggles or fails
+  @VisibleForTesting
+  final Map<Integer, HostAttempt> inFlightFetches = new HashMap<Integer, HostAttempt>();
+  @VisibleForTesting
+  final ListMultimap<Integer, HostAttempt> deferredReplicas = LinkedListMultimap.create();
+  private final Set<Integer> hedgedInputs = new HashSet<Integer>();
+  private final TezCounter hedgedInputsCounter;
+  private final TezCounter hedgeWastedBytes;
+
+  // the service Inputs are pushed to, if configured
+  private final PushShuffleService pushShuffleService;
+  private final String pushShuffleId;
+  // where pushed Inputs were produced, to fetch them from if they cannot be read from the
+  // push shuffle service
+  private final Map<InputAttemptIdentifier, PushedInputSource> pushedInputSources =
+      new HashMap<InputAttemptIdentifier, PushedInputSource>();
+
   private volatile Thread shuffleSchedulerThread = null;
 
   private long totalBytesShuffledTillNow = 0;
@@ -391,6 +455,25 @@ class ShuffleScheduler {
     }
     this.fetcherExecutor = MoreExecutors.listeningDecorator(fetcherRawExecutor);
 
+    if (conf.getBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_ENABLED,
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_ENABLED_DEFAULT)) {
+      int maxHosts = conf.getInt(
+          TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_MAX_HOSTS,
+          TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_MAX_HOSTS_DEFAULT);
+      int ioThreads = conf.getInt(
+          TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_IO_THREADS,
+          TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_IO_THREADS_DEFAULT);
+      Preconditions.checkArgument(maxHosts > 0,
+          TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_EVENT_DRIVEN_FETCH_MAX_HOSTS
+              + "=" + maxHosts + " should be positive");
+      this.maxRunningFetchers = Math.min(Math.max(maxHosts, numFetchers), numInputs);
+      this.eventLoopHttpClient = new EventLoopHttpClient(httpConnectionParams, ioThreads,
+          "Fetcher_O {" + srcNameTrimmed + "}");
+    } else {
+      this.maxRunningFetchers = numFetchers;
+      this.eventLoopHttpClient = null;
+    }
+
     this.maxFailedUniqueFetches = Math.min(numberOfInputs, 5);
     referee.start();
     this.maxFetchFailuresBeforeReporting = 
@@ -418,6 +501,26 @@ class ShuffleScheduler {
     this.lastEventReceived = inputContext.getCounters().findCounter(TaskCounter.LAST_EVENT_RECEIVED);
     this.compositeFetch = ShuffleUtils.isTezShuffleHandler(conf);
 
+    this.hedgingEnabled = conf.getBoolean(
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_ENABLED,
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_ENABLED_DEFAULT);
+    this.hedgingSlowHostFraction = conf.getFloat(
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_SLOW_HOST_FRACTION,
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_SLOW_HOST_FRACTION_DEFAULT);
+    Preconditions.checkArgument(hedgingSlowHostFraction >= 0,
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_SLOW_HOST_FRACTION
+            + "=" + hedgingSlowHostFraction + " should not be negative");
+    this.hedgingMinDelay = conf.getInt(
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_MIN_DELAY_MS,
+        TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_MIN_DELAY_MS_DEFAULT);
+    this.hedgedInputsCounter =
+        inputContext.getCounters().findCounter(TaskCounter.NUM_HEDGED_SHUFFLE_INPUTS);
+    this.hedgeWastedBytes =
+        inputContext.getCounters().findCounter(TaskCounter.SHUFFLE_BYTES_HEDGE_WASTED);
+
+    this.pushShuffleService = PushShuffle.createService(conf);
+    this.pushShuffleId = PushShuffle.getShuffleId(inputContext);
+
     pipelinedShuffleInfoEventsMap = Maps.newConcurrentMap();
     LOG.info("ShuffleScheduler running for sourceVertex: "
         + inputContext.getSourceVertexName() + " with configuration: "
@@ -427,12 +530,18 @@ class ShuffleScheduler {
         + ", abortFailureLimit=" + abortFailureLimit
         + ", maxTaskOutputAtOnce=" + maxTaskOutputAtOnce
         + ", numFetchers=" + numFetchers
+        + ", maxRunningFetchers=" + maxRunningFetchers
+        + ", eventDrivenFetch=" + (eventLoopHttpClient != null)
         + ", hostFailureFraction=" + hostFailureFraction
         + ", minFailurePerHost=" + minFailurePerHost
         + ", maxAllowedFailedFetchFraction=" + maxAllowedFailedFetchFraction
         + ", maxStallTimeFraction=" + maxStallTimeFraction
         + ", minReqProgressFraction=" + minReqProgressFraction
         + ", checkFailedFetchSinceLastCompletion=" + checkFailedFetchSinceLastCompletion
+        + ", hedgingEnabled=" + hedgingEnabled
+        + (hedgingEnabled ? ", hedgingSlowHostFraction=" + hedgingSlowHostFraction
+            + ", hedgingMinDelay=" + hedgingMinDelay : "")
+        + ", pushShuffleService=" + pushShuffleService
     );
   }
 
@@ -497,6 +606,17 @@ class ShuffleScheduler {
         // Ensure that fetchers respond to cancel request.
         fetcherExecutor.shutdownNow();
       }
+      if (eventLoopHttpClient != null) {
+        eventLoopHttpClient.close();
+      }
+      if (pushShuffleService != null) {
+        try {
+          pushShuffleService.close();
+        } catch (IOException e) {
+          LOG.warn("Error while closing push shuffle service. Ignoring and continuing shutdown. "
+              + "Message={}", e.getMessage());
+        }
+      }
       long endTime = System.currentTimeMillis();
       LOG.info("Shutting down fetchers for input: {}, shutdown timetaken: {} ms, "
               + "hasFetcherExecutorStopped: {}", srcNameTrimmed,
@@ -588,6 +708,10 @@ class ShuffleScheduler {
         failureCounts.remove(srcAttemptIdentifier);
         if (host != null) {
           hostFailures.remove(new HostPort(host.getHost(), host.getPort()));
+          if (hedgingEnabled && !isLocalFetch) {
+            hostThroughput.fetchCompleted(new HostPort(host.getHost(), host.getPort()),
+                bytesCompressed, millis, System.currentTimeMillis());
+          }
         }
 
         output.commit();
@@ -616,6 +740,10 @@ class ShuffleScheduler {
         remainingMaps.decrementAndGet();
         setInputFinished(srcAttemptIdentifier.getInputIdentifier());
         numFetchedSpills++;
+        if (hedgingEnabled) {
+          inFlightFetches.remove(srcAttemptIdentifier.getInputIdentifier());
+          deferredReplicas.removeAll(srcAttemptIdentifier.getInputIdentifier());
+        }
       } else {
         int inputIdentifier = srcAttemptIdentifier.getInputIdentifier();
         //Allow only one task attempt to proceed.
@@ -682,6 +810,9 @@ class ShuffleScheduler {
       if (output != null) {
         output.abort();
       }
+      if (hedgedInputs.contains(srcAttemptIdentifier.getInputIdentifier())) {
+        hedgeWastedBytes.increment(bytesCompressed);
+      }
     }
     // TODO NEWTEZ Should this be releasing the output, if not committed ? Possible memory leak in case of speculation.
   }
@@ -755,6 +886,10 @@ class ShuffleScheduler {
     failedShuffleCounter.increment(1);
     inputContext.notifyProgress();
     int failures = incrementAndGetFailureAttempt(srcAttempt);
+    if (hedgingEnabled && fetchEnded(srcAttempt, host)) {
+      // no need to wait for the host to be retried if there is another attempt
+      releaseReplicas(srcAttempt.getInputIdentifier());
+    }
 
     if (!isLocalFetch) {
       /**
@@ -1054,7 +1189,9 @@ class ShuffleScheduler {
                                              int port,
                                              int partitionId,
                                              CompositeInputAttemptIdentifier srcAttempt) {
-    uniqueHosts.add(new HostPort(inputHostName, port));
+    if (!PushShuffle.isPushedInput(inputHostName, port)) {
+      uniqueHosts.add(new HostPort(inputHostName, port));
+    }
     HostPortPartition identifier = new HostPortPartition(inputHostName, port, partitionId);
 
     MapHost host = mapLocations.get(identifier);
@@ -1081,6 +1218,52 @@ class ShuffleScheduler {
     }
   }
   
+  /**
+   * Adds an Input which has been pushed to the push shuffle service. It is read from the service,
+   * and fetched from the host it was produced on if it cannot be.
+   */
+  public synchronized void addKnownPushedMapOutput(String inputHostName,
+                                                   int port,
+                                                   int partitionId,
+                                                   CompositeInputAttemptIdentifier srcAttempt) {
+    if (pushShuffleService == null) {
+      addKnownMapOutput(inputHostName, port, partitionId, srcAttempt);
+      return;
+    }
+    uniqueHosts.add(new HostPort(inputHostName, port));
+    pushedInputSources.put(srcAttempt,
+        new PushedInputSource(inputHostName, port, partitionId, srcAttempt));
+    addKnownMapOutput(PushShuffle.SERVICE_HOST, PushShuffle.SERVICE_PORT, partitionId, srcAttempt);
+  }
+
+  /**
+   * Called when a pushed Input could not be read from the push shuffle service, to fetch it from
+   * the host it was produced on instead.
+   */
+  public synchronized void pushedFetchFailed(InputAttemptIdentifier srcAttempt) {
+    PushedInputSource source = pushedInputSources.remove(srcAttempt);
+    if (source == null) {
+      return;
+    }
+    LOG.info(srcNameTrimmed + ": " + "Fetching " + srcAttempt + " from " + source.host + ":"
+        + source.port + " as it could not be read from " + pushShuffleService);
+    addKnownMapOutput(source.host, source.port, source.partitionId, source.srcAttempt);
+  }
+
+  /**
+   * @return where a pushed Input can be read from
+   */
+  PushShuffleService.Segment locatePushedSegment(String pathComponent, int partitionId)
+      throws IOException {
+    PushShuffleService.Segment segment =
+        pushShuffleService.locate(pushShuffleId, partitionId, pathComponent);
+    if (segment == null) {
+      throw new IOException("Output " + pathComponent + " for partition " + partitionId
+          + " has not been pushed to " + pushShuffleService);
+    }
+    return segment;
+  }
+
   public void obsoleteInput(InputAttemptIdentifier srcAttempt) {
     // The incoming srcAttempt does not contain a path component.
     LOG.info(srcNameTrimmed + ": " + "Adding obsolete input: " + srcAttempt);
@@ -1113,6 +1296,96 @@ class ShuffleScheduler {
   public synchronized void putBackKnownMapOutput(MapHost host,
                                                  InputAttemptIdentifier srcAttempt) {
     host.addKnownMap(srcAttempt);
+    if (hedgingEnabled) {
+      fetchEnded(srcAttempt, host);
+    }
+  }
+
+  /**
+   * Stops tracking the fetch of an attempt from a host.
+   *
+   * @return whether the attempt was being fetched from the host
+   */
+  private boolean fetchEnded(InputAttemptIdentifier srcAttempt, MapHost host) {
+    HostAttempt inFlight = inFlightFetches.get(srcAttempt.getInputIdentifier());
+    if (inFlight != null && inFlight.host == host) {
+      inFlightFetches.remove(srcAttempt.getInputIdentifier());
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Holds back an attempt of an Input which is being fetched from another host.
+   *
+   * @return whether the attempt was held back
+   */
+  private boolean deferReplica(MapHost host, InputAttemptIdentifier srcAttempt, long now) {
+    if (srcAttempt.canRetrieveInputInChunks()
+        || hedgedInputs.contains(srcAttempt.getInputIdentifier())) {
+      // spills of different attempts cannot be mixed, and hedged Inputs are fetched from all
+      // their hosts
+      return false;
+    }
+    HostAttempt inFlight = inFlightFetches.get(srcAttempt.getInputIdentifier());
+    if (inFlight == null || inFlight.host == host) {
+      return false;
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Deferring " + srcAttempt + " on " + host + " while " + inFlight.attempt
+          + " is fetched from " + inFlight.host);
+    }
+    deferredReplicas.put(srcAttempt.getInputIdentifier(), new HostAttempt(host, srcAttempt, now));
+    return true;
+  }
+
+  private void releaseReplicas(int inputIndex) {
+    List<HostAttempt> replicas = deferredReplicas.removeAll(inputIndex);
+    for (HostAttempt replica : replicas) {
+      replica.host.addKnownMap(replica.attempt);
+      if (replica.host.getState() == MapHost.State.PENDING) {
+        pendingHosts.add(replica.host);
+      }
+    }
+    if (!replicas.isEmpty()) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Starts fetching the attempts held back for Inputs whose fetch straggles, or which are not
+   * being fetched anymore.
+   */
+  @VisibleForTesting
+  synchronized void hedgeStragglingFetches(long now) {
+    if (deferredReplicas.isEmpty()) {
+      return;
+    }
+    for (Integer inputIndex : new ArrayList<Integer>(deferredReplicas.keySet())) {
+      if (isInputFinished(inputIndex)) {
+        deferredReplicas.removeAll(inputIndex);
+        continue;
+      }
+      HostAttempt inFlight = inFlightFetches.get(inputIndex);
+      if (inFlight == null) {
+        releaseReplicas(inputIndex);
+      } else if (now - inFlight.time >= hedgingMinDelay) {
+        HostPort hostPort = new HostPort(inFlight.host.getHost(), inFlight.host.getPort());
+        long stalledMillis =
+            now - Math.max(inFlight.time, hostThroughput.getLastCompletionTime(hostPort));
+        if (hostThroughput.isStraggling(hostPort, stalledMillis, hedgingSlowHostFraction)) {
+          LOG.info(srcNameTrimmed + ": " + "Hedging fetch of " + inFlight.attempt + " from "
+              + inFlight.host + " after " + (now - inFlight.time) + " ms, rate="
+              + hostThroughput.getRate(hostPort, stalledMillis) + " B/ms, peerMedianRate="
+              + hostThroughput.getPeerMedianRate(hostPort) + " B/ms, peerMedianFetchTime="
+              + hostThroughput.getPeerMedianFetchTime(hostPort) + " ms, replicas="
+              + deferredReplicas.get(inputIndex).size());
+          hedgedInputs.add(inputIndex);
+          hedgedInputsCounter.increment(1);
+          releaseReplicas(inputIndex);
+        }
+      }
+    }
   }
 
   public synchronized MapHost getHost() throws InterruptedException {
@@ -1225,10 +1498,14 @@ class ShuffleScheduler {
     List<InputAttemptIdentifier> result = new ArrayList<InputAttemptIdentifier>();
     int includedMaps = 0;
     int totalSize = dedupedList.size();
+    long now = System.currentTimeMillis();
 
     for(Integer inputIndex : dedupedList.keySet()) {
       List<InputAttemptIdentifier> attemptIdentifiers = dedupedList.get(inputIndex);
       for (InputAttemptIdentifier inputAttemptIdentifier : attemptIdentifiers) {
+        if (hedgingEnabled && deferReplica(host, inputAttemptIdentifier, now)) {
+          continue;
+        }
         if (includedMaps++ >= maxTaskOutputAtOnce) {
           host.addKnownMap(inputAttemptIdentifier);
         } else {
@@ -1240,6 +1517,10 @@ class ShuffleScheduler {
             }
           }
           result.add(inputAttemptIdentifier);
+          if (hedgingEnabled && !inputAttemptIdentifier.canRetrieveInputInChunks()
+              && !inFlightFetches.containsKey(inputIndex)) {
+            inFlightFetches.put(inputIndex, new HostAttempt(host, inputAttemptIdentifier, now));
+          }
         }
       }
     }
@@ -1268,6 +1549,9 @@ class ShuffleScheduler {
     obsoleteInputs.clear();
     pendingHosts.clear();
     pathToIdentifierMap.clear();
+    inFlightFetches.clear();
+    deferredReplicas.clear();
+    pushedInputSources.clear();
   }
 
   /**
@@ -1360,7 +1644,7 @@ class ShuffleScheduler {
     protected Void callInternal() throws InterruptedException {
       while (!isShutdown.get() && remainingMaps.get() > 0) {
         synchronized (ShuffleScheduler.this) {
-          while ((runningFetchers.size() >= numFetchers || pendingHosts.isEmpty())
+          while ((runningFetchers.size() >= maxRunningFetchers || pendingHosts.isEmpty())
               && remainingMaps.get() > 0) {
             try {
               waitAndNotifyProgress();
@@ -1401,7 +1685,7 @@ class ShuffleScheduler {
 
         if (!isShutdown.get() && remainingMaps.get() > 0) {
           synchronized (ShuffleScheduler.this) {
-            int numFetchersToRun = numFetchers - runningFetchers.size();
+            int numFetchersToRun = maxRunningFetchers - runningFetchers.size();
             int count = 0;
             while (count < numFetchersToRun && !isShutdown.get() && remainingMaps.get() > 0) {
               MapHost mapHost;
@@ -1431,7 +1715,13 @@ class ShuffleScheduler {
                 }
                 FetcherOrderedGrouped fetcherOrderedGrouped = constructFetcherForHost(mapHost);
                 runningFetchers.add(fetcherOrderedGrouped);
-                ListenableFuture<Void> future = fetcherExecutor.submit(fetcherOrderedGrouped);
+                ListenableFuture<Void> future;
+                if (eventLoopHttpClient != null && !fetcherOrderedGrouped.isLocalDiskFetch()) {
+                  future = fetcherOrderedGrouped.fetchNextAsync(eventLoopHttpClient.getClient(),
+                      fetcherExecutor);
+                } else {
+                  future = fetcherExecutor.submit(fetcherOrderedGrouped);
+                }
                 Futures.addCallback(future, new FetchFutureCallback(fetcherOrderedGrouped));
               }
             }
@@ -1448,6 +1738,9 @@ class ShuffleScheduler {
 
   private synchronized void waitAndNotifyProgress() throws InterruptedException {
       inputContext.notifyProgress();
+      if (hedgingEnabled) {
+        hedgeStragglingFetches(System.currentTimeMillis());
+      }
       wait(1000);
   }
 
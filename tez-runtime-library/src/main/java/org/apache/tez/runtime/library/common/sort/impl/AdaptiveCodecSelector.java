@@ -0,0 +1,268 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.sort.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.Lz4Codec;
+import org.apache.hadoop.io.compress.SnappyCodec;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Chooses the compression of IFile segments from a sample of their first bytes: none, the
+ * configured codec as the fast one, or a strong codec.
+ *
+ * The choice is recorded in the last byte of the IFile header, which used to be a flag for
+ * whether the segment is compressed with the configured codec. Codecs other than the configured
+ * one are identified by their index in a fixed list of Hadoop codecs, so that readers can decode
+ * each segment without any configuration.
+ *
+ * A selector is shared by the writers of an output. Sampling compresses the sample with both
+ * codecs, so a choice is reused for a number of segments before the next one is sampled.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class AdaptiveCodecSelector {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AdaptiveCodecSelector.class);
+
+  static final byte NO_CODEC = 0;
+  static final byte CONFIGURED_CODEC = 1;
+  // returned by reuseChoice when the next segment has to be sampled
+  static final byte NO_CHOICE = -1;
+
+  // never reorder, the ids are written to IFile headers
+  private static final List<Class<? extends CompressionCodec>> KNOWN_CODECS =
+      Arrays.<Class<? extends CompressionCodec>>asList(DefaultCodec.class, GzipCodec.class,
+          BZip2Codec.class, Lz4Codec.class, SnappyCodec.class);
+  private static final byte FIRST_KNOWN_CODEC_ID = 2;
+
+  private final CompressionCodec fastCodec;
+  private final CompressionCodec strongCodec;
+  private final byte strongCodecId;
+  private final int sampleSize;
+  private final float maxRatio;
+  private final float strongMinGain;
+  private final float strongMaxSlowdown;
+  private final int segmentsPerSample;
+
+  private byte choice = NO_CHOICE;
+  // segments which may still be written with the choice
+  private int choiceSegments;
+
+  /**
+   * @return a selector for the writers of an output, or null if adaptive compression is not
+   *         enabled or there is no codec
+   */
+  public static AdaptiveCodecSelector create(Configuration conf, CompressionCodec codec) {
+    if (codec == null || !conf.getBoolean(
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_ENABLED,
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_ENABLED_DEFAULT)) {
+      return null;
+    }
+    return new AdaptiveCodecSelector(conf, codec);
+  }
+
+  AdaptiveCodecSelector(Configuration conf, CompressionCodec fastCodec) {
+    this.fastCodec = Preconditions.checkNotNull(fastCodec, "fastCodec");
+    this.sampleSize = conf.getInt(
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_SAMPLE_SIZE_BYTES,
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_SAMPLE_SIZE_BYTES_DEFAULT);
+    Preconditions.checkArgument(sampleSize > 0,
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_SAMPLE_SIZE_BYTES
+            + " should be positive, but was " + sampleSize);
+    this.maxRatio = conf.getFloat(
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_MAX_RATIO,
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_MAX_RATIO_DEFAULT);
+    this.strongMinGain = conf.getFloat(
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MIN_GAIN,
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MIN_GAIN_DEFAULT);
+    this.strongMaxSlowdown = conf.getFloat(
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MAX_SLOWDOWN,
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MAX_SLOWDOWN_DEFAULT);
+    this.segmentsPerSample = conf.getInt(
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_SEGMENTS_PER_SAMPLE,
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_SEGMENTS_PER_SAMPLE_DEFAULT);
+    Preconditions.checkArgument(segmentsPerSample > 0,
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_SEGMENTS_PER_SAMPLE
+            + " should be positive, but was " + segmentsPerSample);
+    String strongCodecClass = conf.getTrimmed(
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_CODEC,
+        TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_CODEC_DEFAULT);
+    if (strongCodecClass == null || strongCodecClass.isEmpty()
+        || strongCodecClass.equals(fastCodec.getClass().getName())) {
+      this.strongCodec = null;
+      this.strongCodecId = NO_CODEC;
+    } else {
+      byte id = NO_CODEC;
+      for (int i = 0; i < KNOWN_CODECS.size(); i++) {
+        if (KNOWN_CODECS.get(i).getName().equals(strongCodecClass)) {
+          id = (byte) (FIRST_KNOWN_CODEC_ID + i);
+        }
+      }
+      Preconditions.checkArgument(id != NO_CODEC,
+          TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_CODEC + " should be one of "
+              + KNOWN_CODECS + ", but was " + strongCodecClass);
+      this.strongCodecId = id;
+      this.strongCodec = newKnownCodec(id, conf);
+    }
+  }
+
+  int getSampleSize() {
+    return sampleSize;
+  }
+
+  /**
+   * @return the id of the codec chosen for earlier segments if the next segment is to be
+   *         written with it as well, or {@link #NO_CHOICE} if the segment has to be sampled
+   */
+  synchronized byte reuseChoice() {
+    if (choice != NO_CHOICE && choiceSegments > 0) {
+      choiceSegments--;
+      return choice;
+    }
+    return NO_CHOICE;
+  }
+
+  /**
+   * @return the id of the codec to compress the segment with, which starts with the sample
+   */
+  byte select(byte[] sample, int length) throws IOException {
+    if (length == 0) {
+      return CONFIGURED_CODEC;
+    }
+    long start = System.nanoTime();
+    long fastSize = getCompressedSize(fastCodec, sample, length);
+    long fastNanos = System.nanoTime() - start;
+    byte id;
+    long strongSize = -1;
+    long strongNanos = -1;
+    if (fastSize > length * maxRatio) {
+      id = NO_CODEC;
+    } else if (strongCodec != null) {
+      start = System.nanoTime();
+      strongSize = getCompressedSize(strongCodec, sample, length);
+      strongNanos = System.nanoTime() - start;
+      // the strong codec has to be worth the time it takes
+      id = (strongSize <= fastSize * (1 - strongMinGain)
+          && strongNanos <= fastNanos * strongMaxSlowdown) ? strongCodecId : CONFIGURED_CODEC;
+    } else {
+      id = CONFIGURED_CODEC;
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Selected codec " + id + " for sample of " + length + " bytes, fastSize="
+          + fastSize + ", fastNanos=" + fastNanos + ", strongSize=" + strongSize
+          + ", strongNanos=" + strongNanos);
+    }
+    synchronized (this) {
+      choice = id;
+      choiceSegments = segmentsPerSample - 1;
+    }
+    return id;
+  }
+
+  /**
+   * @param id codec id chosen by this selector
+   * @return the codec to compress a segment with, or null if it is not to be compressed
+   */
+  CompressionCodec getCodec(byte id) throws IOException {
+    if (id == strongCodecId && strongCodec != null) {
+      return strongCodec;
+    }
+    return getCodec(id, fastCodec);
+  }
+
+  @VisibleForTesting
+  static long getCompressedSize(CompressionCodec codec, byte[] data, int length)
+      throws IOException {
+    CountingOutputStream counter = new CountingOutputStream();
+    Compressor compressor = CodecPool.getCompressor(codec);
+    try {
+      CompressionOutputStream out = codec.createOutputStream(counter, compressor);
+      out.write(data, 0, length);
+      out.finish();
+      out.close();
+    } finally {
+      CodecPool.returnCompressor(compressor);
+    }
+    return counter.count;
+  }
+
+  /**
+   * @param id codec id from an IFile header
+   * @param configuredCodec the codec for {@link #CONFIGURED_CODEC}, whose configuration is used
+   *                        for the other codecs as well
+   * @return the codec to decode the segment with, or null if it is not compressed
+   */
+  static CompressionCodec getCodec(byte id, CompressionCodec configuredCodec)
+      throws IOException {
+    if (id == NO_CODEC) {
+      return null;
+    } else if (id == CONFIGURED_CODEC) {
+      return configuredCodec;
+    } else if (id >= FIRST_KNOWN_CODEC_ID && id < FIRST_KNOWN_CODEC_ID + KNOWN_CODECS.size()) {
+      if (configuredCodec != null
+          && KNOWN_CODECS.get(id - FIRST_KNOWN_CODEC_ID) == configuredCodec.getClass()) {
+        return configuredCodec;
+      }
+      Configuration conf = (configuredCodec instanceof Configurable)
+          ? ((Configurable) configuredCodec).getConf() : null;
+      return newKnownCodec(id, (conf != null) ? conf : new Configuration());
+    }
+    throw new IOException("Unknown codec in IFile header: " + id);
+  }
+
+  private static CompressionCodec newKnownCodec(byte id, Configuration conf) {
+    return ReflectionUtils.newInstance(KNOWN_CODECS.get(id - FIRST_KNOWN_CODEC_ID), conf);
+  }
+
+  private static class CountingOutputStream extends OutputStream {
+    long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+}
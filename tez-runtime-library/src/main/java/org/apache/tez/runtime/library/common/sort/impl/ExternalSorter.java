@@ -54,6 +54,7 @@ import org.apache.tez.runtime.api.OutputContext;
 import org.apache.tez.runtime.library.api.Partitioner;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration.ReportPartitionStats;
+import org.apache.tez.runtime.library.common.BufferPool;
 import org.apache.tez.runtime.library.common.ConfigUtils;
 import org.apache.tez.runtime.library.common.TezRuntimeUtils;
 import org.apache.tez.runtime.library.common.combine.Combiner;
@@ -79,6 +80,12 @@ public abstract class ExternalSorter {
 
   public abstract void write(Object key, Object value) throws IOException;
 
+  /**
+   * Writes a record which has been counted as output already, by an aggregation in front of
+   * the sorter, without counting it again.
+   */
+  public abstract void writeUncounted(Object key, Object value) throws IOException;
+
   public void write(Object key, Iterable<Object> values) throws IOException {
     //TODO: Sorter classes should override this method later.
     Iterator<Object> it = values.iterator();
@@ -113,11 +120,15 @@ public abstract class ExternalSorter {
   protected final int ifileBufferSize;
 
   protected final long availableMemoryMb;
+  // container wide pool to lease sort buffers from, if enabled
+  protected final BufferPool bufferPool;
 
   protected final IndexedSorter sorter;
 
   // Compression for map-outputs
   protected final CompressionCodec codec;
+  // shared by all writers, so that they reuse the codec it chose
+  protected final AdaptiveCodecSelector codecSelector;
 
   protected final Map<Integer, Path> spillFilePaths = Maps.newHashMap();
   protected final Map<Integer, Path> spillFileIndexPaths = Maps.newHashMap();
@@ -186,6 +197,7 @@ public abstract class ExternalSorter {
     int assignedMb = (int) (initialMemoryAvailable >> 20);
     //Let the overflow checks happen in appropriate sorter impls
     this.availableMemoryMb = assignedMb;
+    this.bufferPool = BufferPool.get(outputContext, conf);
 
     // sorter
     sorter = ReflectionUtils.newInstance(this.conf.getClass(
@@ -245,6 +257,7 @@ public abstract class ExternalSorter {
     } else {
       codec = null;
     }
+    codecSelector = AdaptiveCodecSelector.create(this.conf, codec);
 
     this.ifileReadAhead = this.conf.getBoolean(
         TezRuntimeConfiguration.TEZ_RUNTIME_IFILE_READAHEAD,
@@ -23,6 +23,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -48,6 +49,7 @@ import org.apache.hadoop.io.compress.Compressor;
 import org.apache.hadoop.io.compress.Decompressor;
 import org.apache.hadoop.io.serializer.SerializationFactory;
 import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.util.DataChecksum;
 import org.apache.tez.common.counters.TezCounter;
 
 /**
@@ -67,6 +69,9 @@ public class IFile {
   public static final DataInputBuffer REPEAT_KEY = new DataInputBuffer();
   static final byte[] HEADER = new byte[] { (byte) 'T', (byte) 'I',
     (byte) 'F' , (byte) 0};
+  // third byte of the header, which names the checksum of the segment
+  static final byte CRC32_VERSION = (byte) 'F';
+  static final byte CRC32C_VERSION = (byte) 'C';
 
   private static final String INCOMPLETE_READ = "Requested to read %d got %d";
   private static final String REQ_BUFFER_SIZE_TOO_LARGE = "Size of data %d is greater than the max allowed of %d";
@@ -87,6 +92,12 @@ public class IFile {
     CompressionOutputStream compressedOut;
     Compressor compressor;
     boolean compressOutput = false;
+    // codec id written to the header
+    byte codecId = AdaptiveCodecSelector.NO_CODEC;
+    // set while the codec is still to be chosen by adaptive compression
+    AdaptiveCodecSelector codecSelector;
+    DataOutputBuffer sample;
+    SamplingOutputStream samplingOut;
 
     long decompressedBytesWritten = 0;
     long compressedBytesWritten = 0;
@@ -145,27 +156,41 @@ public class IFile {
         Class keyClass, Class valueClass,
         CompressionCodec codec, TezCounter writesCounter, TezCounter serializedBytesCounter,
         boolean rle) throws IOException {
+      this(conf, outputStream, keyClass, valueClass, codec, writesCounter,
+          serializedBytesCounter, rle, AdaptiveCodecSelector.create(conf, codec));
+    }
+
+    /**
+     * @param codecSelector selector shared by the writers of an output, null if compression
+     *                      is not adaptive
+     */
+    public Writer(Configuration conf, FSDataOutputStream outputStream,
+        Class keyClass, Class valueClass,
+        CompressionCodec codec, TezCounter writesCounter, TezCounter serializedBytesCounter,
+        boolean rle, AdaptiveCodecSelector codecSelector) throws IOException {
       this.rawOut = outputStream;
       this.writtenRecordsCounter = writesCounter;
       this.serializedUncompressedBytes = serializedBytesCounter;
-      this.checksumOut = new IFileOutputStream(outputStream);
+      this.checksumOut = new IFileOutputStream(outputStream, IFileChecksum.getType(conf));
       this.start = this.rawOut.getPos();
       this.rle = rle;
-      if (codec != null) {
-        this.compressor = CodecPool.getCompressor(codec);
-        if (this.compressor != null) {
-          this.compressor.reset();
-          this.compressedOut = codec.createOutputStream(checksumOut, compressor);
-          this.out = new FSDataOutputStream(this.compressedOut,  null);
-          this.compressOutput = true;
-        } else {
-          LOG.warn("Could not obtain compressor from CodecPool");
-          this.out = new FSDataOutputStream(checksumOut,null);
-        }
+      byte reusedId = (codecSelector != null)
+          ? codecSelector.reuseChoice() : AdaptiveCodecSelector.NO_CHOICE;
+      if (reusedId != AdaptiveCodecSelector.NO_CHOICE) {
+        setCodec(codecSelector.getCodec(reusedId), reusedId);
+        this.out = new FSDataOutputStream(compressOutput ? compressedOut : checksumOut, null);
+        writeHeader(outputStream);
+      } else if (codecSelector != null) {
+        // the header is written once the codec has been chosen
+        this.codecSelector = codecSelector;
+        this.sample = new DataOutputBuffer();
+        this.samplingOut = new SamplingOutputStream();
+        this.out = new FSDataOutputStream(samplingOut, null);
       } else {
-        this.out = new FSDataOutputStream(checksumOut,null);
+        setCodec(codec, AdaptiveCodecSelector.CONFIGURED_CODEC);
+        this.out = new FSDataOutputStream(compressOutput ? compressedOut : checksumOut, null);
+        writeHeader(outputStream);
       }
-      writeHeader(outputStream);
 
       if (keyClass != null) {
         this.closeSerializers = true;
@@ -184,14 +209,91 @@ public class IFile {
       this(conf, fs, file, null, null, null, null, null);
     }
 
+    private void setCodec(CompressionCodec codec, byte id) throws IOException {
+      if (codec != null) {
+        this.compressor = CodecPool.getCompressor(codec);
+        if (this.compressor != null) {
+          this.compressor.reset();
+          this.compressedOut = codec.createOutputStream(checksumOut, compressor);
+          this.compressOutput = true;
+          this.codecId = id;
+        } else {
+          LOG.warn("Could not obtain compressor from CodecPool");
+        }
+      }
+    }
+
     protected void writeHeader(OutputStream outputStream) throws IOException {
       if (!headerWritten) {
-        outputStream.write(HEADER, 0, HEADER.length - 1);
-        outputStream.write((compressOutput) ? (byte) 1 : (byte) 0);
+        outputStream.write(HEADER, 0, HEADER.length - 2);
+        outputStream.write((checksumOut != null
+            && checksumOut.getChecksumType() == DataChecksum.Type.CRC32C)
+            ? CRC32C_VERSION : CRC32_VERSION);
+        outputStream.write(codecId);
         headerWritten = true;
       }
     }
 
+    /**
+     * Holds back the data until there is enough of it for adaptive compression to choose a
+     * codec, and then passes it on to the checksum stream, compressed or not.
+     */
+    private class SamplingOutputStream extends OutputStream {
+      private OutputStream target;
+
+      @Override
+      public void write(int b) throws IOException {
+        if (target != null) {
+          target.write(b);
+        } else {
+          sample.write(b);
+          maybeSelectCodec();
+        }
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        if (target != null) {
+          target.write(b, off, len);
+        } else {
+          sample.write(b, off, len);
+          maybeSelectCodec();
+        }
+      }
+
+      private void maybeSelectCodec() throws IOException {
+        if (sample.getLength() >= codecSelector.getSampleSize()) {
+          selectCodec();
+        }
+      }
+
+      void selectCodec() throws IOException {
+        if (target != null) {
+          return;
+        }
+        byte id = codecSelector.select(sample.getData(), sample.getLength());
+        setCodec(codecSelector.getCodec(id), id);
+        target = compressOutput ? compressedOut : checksumOut;
+        writeHeader(rawOut);
+        target.write(sample.getData(), 0, sample.getLength());
+        sample = null;
+        codecSelector = null;
+      }
+
+      @Override
+      public void flush() throws IOException {
+        if (target != null) {
+          target.flush();
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        selectCodec();
+        target.close();
+      }
+    }
+
     public void close() throws IOException {
       if (closed.getAndSet(true)) {
         throw new IOException("Writer was already closed earlier");
@@ -215,6 +317,10 @@ public class IFile {
       //account for header bytes
       decompressedBytesWritten += HEADER.length;
 
+      if (samplingOut != null) {
+        samplingOut.selectCodec();
+      }
+
       // Close the underlying stream iff we own it...
       if (ownOutputStream) {
         out.close();
@@ -550,7 +656,7 @@ public class IFile {
         int bufferSize) throws IOException {
       this(in, ((in != null) ? (length - HEADER.length) : length), codec,
           readsCounter, bytesReadCounter, readAhead, readAheadLength,
-          bufferSize, ((in != null) ? isCompressedFlagEnabled(in) : false));
+          bufferSize, ((in != null) ? readHeader(in) : HEADER));
       if (in != null && bytesReadCounter != null) {
         bytesReadCounter.increment(IFile.HEADER.length);
       }
@@ -571,10 +677,20 @@ public class IFile {
                   TezCounter readsCounter, TezCounter bytesReadCounter,
                   boolean readAhead, int readAheadLength,
                   int bufferSize, boolean isCompressed) throws IOException {
+      this(in, length, codec, readsCounter, bytesReadCounter, readAhead, readAheadLength,
+          bufferSize, new byte[] { HEADER[0], HEADER[1], CRC32_VERSION, isCompressed
+              ? AdaptiveCodecSelector.CONFIGURED_CODEC : AdaptiveCodecSelector.NO_CODEC });
+    }
+
+    private Reader(InputStream in, long length, CompressionCodec configuredCodec,
+        TezCounter readsCounter, TezCounter bytesReadCounter, boolean readAhead,
+        int readAheadLength, int bufferSize, byte[] header) throws IOException {
+      byte codecId = header[3];
       if (in != null) {
         checksumIn = new IFileInputStream(in, length, readAhead,
-            readAheadLength/* , isCompressed */);
-        if (isCompressed && codec != null) {
+            readAheadLength/* , isCompressed */, getChecksumType(header));
+        CompressionCodec codec = AdaptiveCodecSelector.getCodec(codecId, configuredCodec);
+        if (codec != null) {
           decompressor = CodecPool.getDecompressor(codec);
           if (decompressor != null) {
             this.in = codec.createInputStream(checksumIn, decompressor);
@@ -613,13 +729,33 @@ public class IFile {
     public static void readToMemory(byte[] buffer, InputStream in, int compressedLength,
         CompressionCodec codec, boolean ifileReadAhead, int ifileReadAheadLength)
         throws IOException {
-      boolean isCompressed = IFile.Reader.isCompressedFlagEnabled(in);
+      readToMemory(buffer, null, in, compressedLength, codec, ifileReadAhead,
+          ifileReadAheadLength);
+    }
+
+    /**
+     * Read entire ifile content to a buffer between its position and limit, which may be a
+     * direct buffer. The position and limit of the buffer are left unchanged.
+     */
+    public static void readToMemory(ByteBuffer buffer, InputStream in, int compressedLength,
+        CompressionCodec codec, boolean ifileReadAhead, int ifileReadAheadLength)
+        throws IOException {
+      readToMemory(null, buffer, in, compressedLength, codec, ifileReadAhead,
+          ifileReadAheadLength);
+    }
+
+    private static void readToMemory(byte[] array, ByteBuffer buffer, InputStream in,
+        int compressedLength, CompressionCodec codec, boolean ifileReadAhead,
+        int ifileReadAheadLength) throws IOException {
+      byte[] header = readHeader(in);
+      byte codecId = header[3];
       IFileInputStream checksumIn = new IFileInputStream(in,
           compressedLength - IFile.HEADER.length, ifileReadAhead,
-          ifileReadAheadLength);
+          ifileReadAheadLength, getChecksumType(header));
       in = checksumIn;
       Decompressor decompressor = null;
-      if (isCompressed && codec != null) {
+      codec = AdaptiveCodecSelector.getCodec(codecId, codec);
+      if (codec != null) {
         decompressor = CodecPool.getDecompressor(codec);
         if (decompressor != null) {
           decompressor.reset();
@@ -630,7 +766,11 @@ public class IFile {
         }
       }
       try {
-        IOUtils.readFully(in, buffer, 0, buffer.length - IFile.HEADER.length);
+        if (array != null) {
+          IOUtils.readFully(in, array, 0, array.length - IFile.HEADER.length);
+        } else {
+          readFully(in, buffer.duplicate(), buffer.remaining() - IFile.HEADER.length);
+        }
         /*
          * We've gotten the amount of data we were expecting. Verify the
          * decompressor has nothing more to offer. This action also forces the
@@ -659,6 +799,18 @@ public class IFile {
       }
     }
 
+    private static void readFully(InputStream in, ByteBuffer target, int length)
+        throws IOException {
+      final int BYTES_TO_READ = 64 * 1024;
+      byte[] buf = new byte[Math.max(0, Math.min(length, BYTES_TO_READ))];
+      while (length > 0) {
+        int n = Math.min(length, buf.length);
+        IOUtils.readFully(in, buf, 0, n);
+        target.put(buf, 0, n);
+        length -= n;
+      }
+    }
+
     /**
      * Read entire IFile content to disk.
      *
@@ -679,12 +831,12 @@ public class IFile {
         throw new IOException("Missing IFile header");
       }
       IOUtils.readFully(in, buf, 0, HEADER.length);
-      verifyHeaderMagic(buf);
+      DataChecksum.Type checksumType = getChecksumType(buf);
       out.write(buf, 0, HEADER.length);
       long bytesLeft = length - HEADER.length;
       @SuppressWarnings("resource")
       IFileInputStream ifInput = new IFileInputStream(in, bytesLeft,
-          ifileReadAhead, ifileReadAheadLength);
+          ifileReadAhead, ifileReadAheadLength, checksumType);
       while (bytesLeft > 0) {
         int n = ifInput.readWithChecksum(buf, 0, (int) Math.min(bytesLeft, BYTES_TO_READ));
         if (n < 0) {
@@ -853,18 +1005,31 @@ public class IFile {
       ++numRecordsRead;
     }
 
-    private static void verifyHeaderMagic(byte[] header) throws IOException {
-      if (!(header[0] == 'T' && header[1] == 'I'
-          && header[2] == 'F')) {
-        throw new IOException("Not a valid ifile header");
+    /**
+     * Checks the magic of an IFile header, whose version names the checksum of the segment.
+     *
+     * @return the checksum type of the segment
+     */
+    public static DataChecksum.Type getChecksumType(byte[] header) throws IOException {
+      if (header[0] == 'T' && header[1] == 'I') {
+        if (header[2] == CRC32_VERSION) {
+          return DataChecksum.Type.CRC32;
+        } else if (header[2] == CRC32C_VERSION) {
+          return DataChecksum.Type.CRC32C;
+        }
       }
+      throw new IOException("Not a valid ifile header");
     }
 
     public static boolean isCompressedFlagEnabled(InputStream in) throws IOException {
+      return readHeader(in)[3] != AdaptiveCodecSelector.NO_CODEC;
+    }
+
+    private static byte[] readHeader(InputStream in) throws IOException {
       byte[] header = new byte[HEADER.length];
       IOUtils.readFully(in, header, 0, HEADER.length);
-      verifyHeaderMagic(header);
-      return (header[3] == 1);
+      getChecksumType(header);
+      return header;
     }
 
     public void close() throws IOException {
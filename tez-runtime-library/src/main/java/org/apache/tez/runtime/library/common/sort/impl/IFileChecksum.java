@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.sort.impl;
+
+import java.lang.reflect.Constructor;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.DataChecksum;
+import org.apache.hadoop.util.PureJavaCrc32C;
+import org.apache.tez.common.ChecksumTimeUpdater;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+
+/**
+ * The checksum at the end of an IFile stream, CRC32 or CRC32C, which keeps track of the time
+ * spent computing it.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public final class IFileChecksum {
+
+  static final int CHECKSUM_SIZE = 4;
+
+  // java.util.zip.CRC32C, which uses the CRC32 instructions of the CPU, from Java 9 on
+  private static final Constructor<? extends Checksum> JDK_CRC32C = findJdkCrc32C();
+
+  private final DataChecksum.Type type;
+  private final Checksum sum;
+  private long timeNanos;
+
+  public IFileChecksum(DataChecksum.Type type) {
+    this.type = type;
+    this.sum = newChecksum(type);
+  }
+
+  DataChecksum.Type getType() {
+    return type;
+  }
+
+  public void update(byte[] b, int off, int len) {
+    long start = System.nanoTime();
+    sum.update(b, off, len);
+    timeNanos += System.nanoTime() - start;
+  }
+
+  void reset() {
+    sum.reset();
+  }
+
+  int getValue() {
+    return (int) sum.getValue();
+  }
+
+  void writeValue(byte[] buf, int offset) {
+    int value = getValue();
+    buf[offset] = (byte) (value >>> 24);
+    buf[offset + 1] = (byte) (value >>> 16);
+    buf[offset + 2] = (byte) (value >>> 8);
+    buf[offset + 3] = (byte) value;
+  }
+
+  public boolean compare(byte[] buf, int offset) {
+    int value = ((buf[offset] & 0xff) << 24) | ((buf[offset + 1] & 0xff) << 16)
+        | ((buf[offset + 2] & 0xff) << 8) | (buf[offset + 3] & 0xff);
+    return value == getValue();
+  }
+
+  /**
+   * Adds the time spent on the checksum so far to the checksum time of the task.
+   */
+  public void reportTime() {
+    if (timeNanos > 0) {
+      ChecksumTimeUpdater.addChecksumTime(timeNanos);
+      timeNanos = 0;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return type + ":" + Long.toHexString(sum.getValue());
+  }
+
+  static Checksum newChecksum(DataChecksum.Type type) {
+    switch (type) {
+    case CRC32:
+      return new CRC32();
+    case CRC32C:
+      if (JDK_CRC32C != null) {
+        try {
+          return JDK_CRC32C.newInstance();
+        } catch (ReflectiveOperationException e) {
+          // fall through
+        }
+      }
+      return new PureJavaCrc32C();
+    default:
+      throw new IllegalArgumentException("Unsupported IFile checksum type " + type);
+    }
+  }
+
+  /**
+   * @return the checksum type for the IFiles written with the configuration
+   */
+  static DataChecksum.Type getType(Configuration conf) {
+    String name = conf.getTrimmed(TezRuntimeConfiguration.TEZ_RUNTIME_IFILE_CHECKSUM_TYPE,
+        TezRuntimeConfiguration.TEZ_RUNTIME_IFILE_CHECKSUM_TYPE_DEFAULT);
+    if (DataChecksum.Type.CRC32.name().equalsIgnoreCase(name)) {
+      return DataChecksum.Type.CRC32;
+    } else if (DataChecksum.Type.CRC32C.name().equalsIgnoreCase(name)) {
+      return DataChecksum.Type.CRC32C;
+    }
+    throw new IllegalArgumentException(TezRuntimeConfiguration.TEZ_RUNTIME_IFILE_CHECKSUM_TYPE
+        + " should be one of CRC32, CRC32C, but was " + name);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Constructor<? extends Checksum> findJdkCrc32C() {
+    try {
+      return (Constructor<? extends Checksum>) Class.forName("java.util.zip.CRC32C")
+          .getConstructor();
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+}
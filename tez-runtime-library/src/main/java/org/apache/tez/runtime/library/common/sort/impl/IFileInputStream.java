@@ -47,7 +47,7 @@ public class IFileInputStream extends InputStream {
   private final FileDescriptor inFd; // the file descriptor, if it is known
   private final long length; //The total length of the input file
   private final long dataLength;
-  private DataChecksum sum;
+  private IFileChecksum sum;
   private long currentOffset = 0;
   private final byte b[] = new byte[1];
   private byte csum[] = null;
@@ -81,10 +81,22 @@ public class IFileInputStream extends InputStream {
    * @param readAheadLength Number of bytes to readAhead if it is enabled
    */
   public IFileInputStream(InputStream in, long len, boolean readAhead, int readAheadLength) {
+    this(in, len, readAhead, readAheadLength, DataChecksum.Type.CRC32);
+  }
+
+  /**
+   * Create a checksum input stream that reads
+   * @param in The input stream to be verified for checksum.
+   * @param len The length of the input stream including checksum bytes.
+   * @param readAhead Whether to attempt readAhead for this stream
+   * @param readAheadLength Number of bytes to readAhead if it is enabled
+   * @param checksumType the checksum of the stream, as named by the IFile header
+   */
+  public IFileInputStream(InputStream in, long len, boolean readAhead, int readAheadLength,
+      DataChecksum.Type checksumType) {
     this.in = in;
-    sum = DataChecksum.newDataChecksum(DataChecksum.Type.CRC32,
-        Integer.MAX_VALUE);
-    checksumSize = sum.getChecksumSize();
+    sum = new IFileChecksum(checksumType);
+    checksumSize = IFileChecksum.CHECKSUM_SIZE;
     buffer = new byte[4096];
     offset = 0;
     length = len;
@@ -135,6 +147,7 @@ public class IFileInputStream extends InputStream {
         }
       }
     }
+    sum.reportTime();
     in.close();
   }
   
@@ -267,6 +280,7 @@ public class IFileInputStream extends InputStream {
       //TODO: add checksumSize to currentOffset.
       // The last four bytes are checksum. Strip them and verify
       sum.update(buffer, 0, offset);
+      sum.reportTime();
       csum = new byte[checksumSize];
       IOUtils.readFully(in, csum, 0, checksumSize);
       if (!sum.compare(csum, 0)) {
@@ -38,7 +38,7 @@ public class IFileOutputStream extends FilterOutputStream {
   /**
    * The output stream to be checksummed.
    */
-  private final DataChecksum sum;
+  private final IFileChecksum sum;
   private byte[] barray;
   private byte[] buffer;
   private int offset;
@@ -51,14 +51,27 @@ public class IFileOutputStream extends FilterOutputStream {
    * @param out
    */
   public IFileOutputStream(OutputStream out) {
+    this(out, DataChecksum.Type.CRC32);
+  }
+
+  /**
+   * Create a checksum output stream that writes
+   * the bytes to the given stream.
+   * @param out
+   * @param checksumType CRC32 or CRC32C
+   */
+  public IFileOutputStream(OutputStream out, DataChecksum.Type checksumType) {
     super(out);
-    sum = DataChecksum.newDataChecksum(DataChecksum.Type.CRC32,
-        Integer.MAX_VALUE);
-    barray = new byte[sum.getChecksumSize()];
+    sum = new IFileChecksum(checksumType);
+    barray = new byte[IFileChecksum.CHECKSUM_SIZE];
     buffer = new byte[4096];
     offset = 0;
   }
 
+  public DataChecksum.Type getChecksumType() {
+    return sum.getType();
+  }
+
   @Override
   public void close() throws IOException {
     if (closed) {
@@ -80,8 +93,9 @@ public class IFileOutputStream extends FilterOutputStream {
     }
     finished = true;
     sum.update(buffer, 0, offset);
-    sum.writeValue(barray, 0, false);
-    out.write (barray, 0, sum.getChecksumSize());
+    sum.writeValue(barray, 0);
+    sum.reportTime();
+    out.write (barray, 0, IFileChecksum.CHECKSUM_SIZE);
     out.flush();
   }
 
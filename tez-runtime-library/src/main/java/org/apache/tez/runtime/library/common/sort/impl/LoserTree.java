@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.sort.impl;
+
+import java.util.List;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.tez.runtime.library.common.comparator.TezBytesComparator;
+import org.apache.tez.runtime.library.common.comparator.TezIntWritableComparator;
+import org.apache.tez.runtime.library.common.comparator.TezLongWritableComparator;
+import org.apache.tez.runtime.library.common.comparator.TezTextComparator;
+import org.apache.tez.runtime.library.common.sort.impl.TezMerger.KeyValueBuffer;
+import org.apache.tez.runtime.library.common.sort.impl.TezMerger.Segment;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Tournament tree holding the segments of a k-way merge, ordered by their current keys. Each
+ * internal node keeps the loser of the match played there, so that replacing the winner's key
+ * replays a single path from its leaf to the root with one comparison per level, where a binary
+ * heap needs two.
+ *
+ * For the stock comparators of common key types, a prefix of each segment's current key is
+ * cached, which decides most comparisons without calling the {@link RawComparator}.
+ *
+ * Segments with equal keys come out in the order they have been passed in.
+ */
+class LoserTree {
+
+  /**
+   * Order preserving prefix of serialized keys: prefix(k1) < prefix(k2) implies k1 < k2.
+   * Equal prefixes do not imply anything.
+   */
+  @VisibleForTesting
+  enum KeyPrefix {
+    // unsigned lexicographic order of the first 8 bytes
+    BYTES {
+      @Override
+      long get(byte[] b, int s, int l) {
+        return lexicographicPrefix(b, s, l);
+      }
+    },
+    // Text is compared on its UTF-8 bytes, following the vint length
+    TEXT {
+      @Override
+      long get(byte[] b, int s, int l) {
+        int vintSize = WritableUtils.decodeVIntSize(b[s]);
+        return lexicographicPrefix(b, s + vintSize, l - vintSize);
+      }
+    },
+    INT {
+      @Override
+      long get(byte[] b, int s, int l) {
+        return WritableComparator.readInt(b, s);
+      }
+    },
+    LONG {
+      @Override
+      long get(byte[] b, int s, int l) {
+        return WritableComparator.readLong(b, s);
+      }
+    };
+
+    abstract long get(byte[] b, int s, int l);
+
+    /**
+     * @return the key prefix for the comparator, or null if there is no prefix known to be
+     *         consistent with it
+     */
+    static KeyPrefix forComparator(RawComparator comparator) {
+      if (comparator == null) {
+        return null;
+      }
+      Class<?> comparatorClass = comparator.getClass();
+      if (comparatorClass == TezBytesComparator.class) {
+        return BYTES;
+      } else if (comparatorClass == Text.Comparator.class
+          || comparatorClass == TezTextComparator.class) {
+        return TEXT;
+      } else if (comparatorClass == IntWritable.Comparator.class
+          || comparatorClass == TezIntWritableComparator.class) {
+        return INT;
+      } else if (comparatorClass == LongWritable.Comparator.class
+          || comparatorClass == TezLongWritableComparator.class) {
+        return LONG;
+      }
+      return null;
+    }
+
+    private static long lexicographicPrefix(byte[] b, int s, int l) {
+      long prefix = 0;
+      int n = Math.min(l, 8);
+      for (int i = 0; i < n; i++) {
+        prefix = (prefix << 8) | (b[s + i] & 0xff);
+      }
+      prefix <<= (8 - n) * 8;
+      // flip the sign bit, so that signed comparison gives the unsigned order
+      return prefix ^ Long.MIN_VALUE;
+    }
+  }
+
+  private final RawComparator comparator;
+  private final KeyPrefix keyPrefix;
+
+  // leaves, null once a segment has been removed
+  private Segment[] segments = new Segment[0];
+  private long[] prefixes = new long[0];
+  // tree[0] is the overall winner, tree[1..k-1] the losers of the matches at each node
+  private int[] tree = new int[0];
+  private int numLeaves;
+  private int size;
+
+  LoserTree(RawComparator comparator) {
+    this.comparator = comparator;
+    this.keyPrefix = KeyPrefix.forComparator(comparator);
+  }
+
+  /**
+   * Builds the tree from segments which are all positioned on their first key.
+   */
+  void initialize(List<Segment> initialSegments) {
+    numLeaves = initialSegments.size();
+    size = numLeaves;
+    if (segments.length < numLeaves) {
+      segments = new Segment[numLeaves];
+      prefixes = new long[numLeaves];
+      tree = new int[numLeaves];
+    }
+    for (int i = 0; i < numLeaves; i++) {
+      segments[i] = initialSegments.get(i);
+      updatePrefix(i);
+    }
+    if (numLeaves == 0) {
+      return;
+    }
+    // winners of the subtrees, internal nodes at 1..k-1 and leaves at k..2k-1
+    int[] winners = new int[2 * numLeaves];
+    for (int i = 0; i < numLeaves; i++) {
+      winners[numLeaves + i] = i;
+    }
+    for (int node = numLeaves - 1; node >= 1; node--) {
+      int left = winners[2 * node];
+      int right = winners[2 * node + 1];
+      if (beats(right, left)) {
+        winners[node] = right;
+        tree[node] = left;
+      } else {
+        winners[node] = left;
+        tree[node] = right;
+      }
+    }
+    tree[0] = numLeaves == 1 ? 0 : winners[1];
+  }
+
+  /**
+   * @return the segment with the smallest key, or null if there are no segments left
+   */
+  Segment top() {
+    return size == 0 ? null : segments[tree[0]];
+  }
+
+  /**
+   * Restores the order after the key of the top segment has changed.
+   */
+  void adjustTop() {
+    if (size == 0) {
+      return;
+    }
+    int winner = tree[0];
+    updatePrefix(winner);
+    replay(winner);
+  }
+
+  /**
+   * Removes and returns the top segment.
+   */
+  Segment pop() {
+    if (size == 0) {
+      return null;
+    }
+    int winner = tree[0];
+    Segment segment = segments[winner];
+    segments[winner] = null;
+    size--;
+    replay(winner);
+    return segment;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    for (int i = 0; i < numLeaves; i++) {
+      segments[i] = null;
+    }
+    numLeaves = 0;
+    size = 0;
+  }
+
+  private void replay(int leaf) {
+    int winner = leaf;
+    for (int node = (numLeaves + leaf) >>> 1; node >= 1; node >>>= 1) {
+      int loser = tree[node];
+      if (beats(loser, winner)) {
+        tree[node] = winner;
+        winner = loser;
+      }
+    }
+    tree[0] = winner;
+  }
+
+  private void updatePrefix(int leaf) {
+    if (keyPrefix != null) {
+      KeyValueBuffer key = segments[leaf].getKey();
+      if (key.getLength() > 0) {
+        prefixes[leaf] = keyPrefix.get(key.getData(), key.getPosition(), key.getLength());
+      } else {
+        prefixes[leaf] = Long.MIN_VALUE;
+      }
+    }
+  }
+
+  /**
+   * @return whether the key of segment a comes before the key of segment b
+   */
+  private boolean beats(int a, int b) {
+    Segment segmentA = segments[a];
+    Segment segmentB = segments[b];
+    if (segmentA == null) {
+      return false;
+    }
+    if (segmentB == null) {
+      return true;
+    }
+    if (keyPrefix != null && prefixes[a] != prefixes[b]) {
+      return prefixes[a] < prefixes[b];
+    }
+    KeyValueBuffer keyA = segmentA.getKey();
+    KeyValueBuffer keyB = segmentB.getKey();
+    int compare = comparator.compare(keyA.getData(), keyA.getPosition(), keyA.getLength(),
+        keyB.getData(), keyB.getPosition(), keyB.getLength());
+    return compare < 0 || (compare == 0 && a < b);
+  }
+}
@@ -51,8 +51,13 @@ import org.apache.tez.common.CallableWithNdc;
 import org.apache.tez.common.io.NonSyncDataOutputStream;
 import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.library.common.comparator.ProxyComparator;
+import org.apache.tez.runtime.library.common.comparator.TezIntWritableComparator;
+import org.apache.tez.runtime.library.common.comparator.TezLongWritableComparator;
+import org.apache.tez.runtime.library.common.comparator.TezTextComparator;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.RawComparator;
-import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.IndexedSorter;
 import org.apache.hadoop.util.Progress;
 import org.apache.tez.common.TezCommonUtils;
@@ -91,6 +96,8 @@ public class PipelinedSorter extends ExternalSorter {
 
   private final int minSpillsForCombine;
   private final ProxyComparator hasher;
+  // Sorter used for the spans; a radix sorter on the partition/prefix word when enabled
+  private final IndexedSorter spanSorter;
   // SortSpans  
   private SortSpan span;
 
@@ -167,16 +174,28 @@ public class PipelinedSorter extends ExternalSorter {
     // buffers and accounting
     long maxMemLimit = sortmb << 20;
 
+    boolean radixSort = this.conf.getBoolean(TezRuntimeConfiguration
+        .TEZ_RUNTIME_PIPELINED_SORTER_RADIX_SORT_ENABLED, TezRuntimeConfiguration
+        .TEZ_RUNTIME_PIPELINED_SORTER_RADIX_SORT_ENABLED_DEFAULT);
+
     initialSetupLogLine.append(", UsingHashComparator=");
     // k/v serialization
     if(comparator instanceof ProxyComparator) {
       hasher = (ProxyComparator)comparator;
       initialSetupLogLine.append(true);
+    } else if (radixSort) {
+      hasher = getProxyComparator(comparator);
+      initialSetupLogLine.append(hasher != null);
     } else {
       hasher = null;
       initialSetupLogLine.append(false);
     }
 
+    // Without a key prefix, the partition/prefix word only orders partitions
+    radixSort = radixSort && hasher != null;
+    spanSorter = radixSort ? new PrefixRadixSorter(sorter) : sorter;
+    initialSetupLogLine.append(", radixSort=").append(radixSort);
+
     LOG.info(initialSetupLogLine.toString());
 
     long totalCapacityWithoutMeta = 0;
@@ -244,7 +263,9 @@ public class PipelinedSorter extends ExternalSorter {
     int size = computeBlockSize(currentAllocatableMemory, availableMemoryMb << 20);
     currentAllocatableMemory -= size;
     int sizeWithoutMeta = (size) - (size % METASIZE);
-    ByteBuffer space = ByteBuffer.allocate(sizeWithoutMeta);
+    ByteBuffer space = bufferPool != null
+        ? ByteBuffer.wrap(bufferPool.lease(sizeWithoutMeta))
+        : ByteBuffer.allocate(sizeWithoutMeta);
 
     buffers.add(space);
     bufferIndex++;
@@ -302,6 +323,29 @@ public class PipelinedSorter extends ExternalSorter {
     return maxBlockSize;
   }
 
+  /**
+   * Proxies for the stock comparators of common key types, used for the radix sort mode.
+   * Returns null if the comparator does not provide an order preserving key prefix.
+   */
+  @VisibleForTesting
+  static ProxyComparator getProxyComparator(RawComparator comparator) {
+    if (comparator == null) {
+      return null;
+    }
+    if (comparator instanceof ProxyComparator) {
+      return (ProxyComparator) comparator;
+    }
+    Class<?> comparatorClass = comparator.getClass();
+    if (comparatorClass == Text.Comparator.class) {
+      return new TezTextComparator();
+    } else if (comparatorClass == IntWritable.Comparator.class) {
+      return new TezIntWritableComparator();
+    } else if (comparatorClass == LongWritable.Comparator.class) {
+      return new TezLongWritableComparator();
+    }
+    return null;
+  }
+
   private int bitcount(int n) {
     int bit = 0;
     while(n!=0) {
@@ -319,7 +363,7 @@ public class PipelinedSorter extends ExternalSorter {
       StopWatch stopWatch = new StopWatch();
       stopWatch.start();
       // sort in the same thread, do not wait for the thread pool
-      merger.add(span.sort(sorter));
+      merger.add(span.sort(spanSorter));
       boolean ret = spill(true);
       stopWatch.stop();
       if (LOG.isDebugEnabled()) {
@@ -347,7 +391,7 @@ public class PipelinedSorter extends ExternalSorter {
           perItem, ConfigUtils.getIntermediateOutputKeyComparator(this.conf));
     } else {
       // queue up the sort
-      SortTask task = new SortTask(span, sorter);
+      SortTask task = new SortTask(span, spanSorter);
       LOG.debug("Submitting span={} for sort", span.toString());
       Future<SpanIterator> future = sortmaster.submit(task);
       merger.add(future);
@@ -374,16 +418,23 @@ public class PipelinedSorter extends ExternalSorter {
   public void write(Object key, Object value)
       throws IOException {
     collect(
-        key, value, partitioner.getPartition(key, value, partitions));
+        key, value, partitioner.getPartition(key, value, partitions), true);
+  }
+
+  @Override
+  public void writeUncounted(Object key, Object value) throws IOException {
+    collect(key, value, partitioner.getPartition(key, value, partitions), false);
   }
 
   /**
    * Serialize the key, value to intermediate storage.
    * When this method returns, kvindex must refer to sufficient unused
    * storage to store one METADATA.
+   *
+   * @param countOutput whether the record is counted as output
    */
-  synchronized void collect(Object key, Object value, final int partition
-                                   ) throws IOException {
+  synchronized void collect(Object key, Object value, final int partition,
+                            boolean countOutput) throws IOException {
     if (key.getClass() != keyClass) {
       throw new IOException("Type mismatch in key from map: expected "
                             + keyClass.getName() + ", received "
@@ -402,7 +453,7 @@ public class PipelinedSorter extends ExternalSorter {
     if (span.kvmeta.remaining() < METASIZE) {
       this.sort();
       if (span.length() == 0) {
-        spillSingleRecord(key, value, partition);
+        spillSingleRecord(key, value, partition, countOutput);
         return;
       }
     }
@@ -420,13 +471,13 @@ public class PipelinedSorter extends ExternalSorter {
       this.sort();
       if (span.length() == 0 || bufferOverflowRecursion > buffers.size()) {
         // spill the current key value pair
-        spillSingleRecord(key, value, partition);
+        spillSingleRecord(key, value, partition, countOutput);
         bufferOverflowRecursion = 0;
         return;
       }
       bufferOverflowRecursion++;
       // try again
-      this.collect(key, value, partition);
+      this.collect(key, value, partition, countOutput);
       return;
     }
 
@@ -447,9 +498,11 @@ public class PipelinedSorter extends ExternalSorter {
     span.kvmeta.put(keystart);
     span.kvmeta.put(valstart);
     span.kvmeta.put(valend - valstart);
-    mapOutputRecordCounter.increment(1);
+    if (countOutput) {
+      mapOutputRecordCounter.increment(1);
+      mapOutputByteCounter.increment(valend - keystart);
+    }
     outputContext.notifyProgress();
-    mapOutputByteCounter.increment(valend - keystart);
   }
 
   private void adjustSpillCounters(long rawLength, long compLength) {
@@ -470,7 +523,7 @@ public class PipelinedSorter extends ExternalSorter {
   // it is guaranteed that when spillSingleRecord is called, there is
   // no merger spans queued in executor.
   private void spillSingleRecord(final Object key, final Object value,
-          int partition) throws IOException {
+          int partition, boolean countOutput) throws IOException {
     final TezSpillRecord spillRec = new TezSpillRecord(partitions);
     // getSpillFileForWrite with size -1 as the serialized size of KV pair is still unknown
     final Path filename = mapOutputFile.getSpillFileForWrite(numSpills, -1);
@@ -492,14 +545,16 @@ public class PipelinedSorter extends ExternalSorter {
           long segmentStart = out.getPos();
           if (!sendEmptyPartitionDetails || (i == partition)) {
             writer = new Writer(conf, out, keyClass, valClass, codec,
-                spilledRecordsCounter, null, false);
+                spilledRecordsCounter, null, false, codecSelector);
           }
           // we need not check for combiner since its a single record
           if (i == partition) {
             final long recordStart = out.getPos();
             writer.append(key, value);
-            mapOutputRecordCounter.increment(1);
-            mapOutputByteCounter.increment(out.getPos() - recordStart);
+            if (countOutput) {
+              mapOutputRecordCounter.increment(1);
+              mapOutputByteCounter.increment(out.getPos() - recordStart);
+            }
           }
           long rawLength = 0;
           long partLength = 0;
@@ -577,7 +632,7 @@ public class PipelinedSorter extends ExternalSorter {
         boolean hasNext = kvIter.next();
         if (hasNext || !sendEmptyPartitionDetails) {
           writer = new Writer(conf, out, keyClass, valClass, codec,
-              spilledRecordsCounter, null, merger.needsRLE());
+              spilledRecordsCounter, null, merger.needsRLE(), codecSelector);
         }
         if (combiner == null) {
           while (hasNext) {
@@ -658,7 +713,7 @@ public class PipelinedSorter extends ExternalSorter {
     try {
       LOG.info(outputContext.getDestinationVertexName() + ": Starting flush of map output");
       span.end();
-      merger.add(span.sort(sorter));
+      merger.add(span.sort(spanSorter));
       // force a spill in flush()
       // case 1: we want to force because of following scenarios:
       // we have no keys written, and flush got called
@@ -671,6 +726,11 @@ public class PipelinedSorter extends ExternalSorter {
       sortmaster.shutdown();
 
       //safe to clean up
+      if (bufferPool != null) {
+        for (ByteBuffer buffer : buffers) {
+          bufferPool.release(buffer.array());
+        }
+      }
       buffers.clear();
 
 
@@ -792,7 +852,7 @@ public class PipelinedSorter extends ExternalSorter {
         if (shouldWrite) {
           Writer writer =
               new Writer(conf, finalOut, keyClass, valClass, codec,
-                  spilledRecordsCounter, null, merger.needsRLE());
+                  spilledRecordsCounter, null, merger.needsRLE(), codecSelector);
           if (combiner == null || numSpills < minSpillsForCombine) {
             TezMerger.writeFile(kvIter, writer, progressable,
                 TezRuntimeConfiguration.TEZ_RUNTIME_RECORDS_BEFORE_PROGRESS_DEFAULT);
@@ -891,7 +951,7 @@ public class PipelinedSorter extends ExternalSorter {
     }
   }
 
-  private final class SortSpan implements IndexedSortable {
+  private final class SortSpan implements PrefixRadixSorter.PrefixSortable {
     final IntBuffer kvmeta;
     final byte[] rawkvmeta;
     final int kvmetabase;
@@ -947,6 +1007,14 @@ public class PipelinedSorter extends ExternalSorter {
       return (i * NMETA);
     }
 
+    /**
+     * The partition in the high bits followed by the key proxy, see collect().
+     */
+    @Override
+    public int getPrefix(final int i) {
+      return kvmeta.get(offsetFor(i) + PARTITION);
+    }
+
     public void swap(final int mi, final int mj) {
       final int kvi = offsetFor(mi);
       final int kvj = offsetFor(mj);
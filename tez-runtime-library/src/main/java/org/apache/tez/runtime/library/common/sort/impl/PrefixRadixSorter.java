@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.sort.impl;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.IndexedSorter;
+import org.apache.hadoop.util.Progressable;
+
+/**
+ * In-place MSD radix sort (american flag sort) over a 32 bit prefix associated with
+ * every item, compared as an unsigned integer. Items with identical prefixes, and
+ * buckets which are too small to be worth another pass, are handed to the fallback
+ * sorter which compares them with {@link IndexedSortable#compare(int, int)}.
+ *
+ * The prefix must be order preserving with respect to compare(): an unsigned
+ * prefix(i) &lt; prefix(j) implies compare(i, j) &lt; 0.
+ *
+ * This class holds no state, so one instance can be shared by multiple sort threads.
+ */
+@InterfaceAudience.Private
+public class PrefixRadixSorter implements IndexedSorter {
+
+  /**
+   * An {@link IndexedSortable} which exposes a normalized key prefix for each item.
+   */
+  public interface PrefixSortable extends IndexedSortable {
+    int getPrefix(int i);
+  }
+
+  private static final int RADIX_BITS = 8;
+  private static final int RADIX = 1 << RADIX_BITS;
+  private static final int RADIX_MASK = RADIX - 1;
+  private static final int PASSES = Integer.SIZE / RADIX_BITS;
+
+  /**
+   * Buckets smaller than this are sorted with the fallback sorter directly.
+   */
+  static final int MIN_RADIX_SORT_SIZE = 64;
+
+  private final IndexedSorter fallback;
+
+  public PrefixRadixSorter(IndexedSorter fallback) {
+    this.fallback = fallback;
+  }
+
+  @Override
+  public void sort(IndexedSortable s, int l, int r) {
+    sort(s, l, r, null);
+  }
+
+  @Override
+  public void sort(IndexedSortable s, int l, int r, Progressable rep) {
+    if (!(s instanceof PrefixSortable)) {
+      fallback.sort(s, l, r, rep);
+      return;
+    }
+    // Per level bucket bookkeeping, allocated per call so that this sorter is thread-safe
+    int[][] counts = new int[PASSES][RADIX];
+    int[][] offsets = new int[PASSES][RADIX + 1];
+    sort((PrefixSortable) s, l, r, 0, counts, offsets, rep);
+  }
+
+  private void sort(PrefixSortable s, int l, int r, int pass, int[][] counts, int[][] offsets,
+      Progressable rep) {
+    if (r - l < 2) {
+      return;
+    }
+    if (r - l < MIN_RADIX_SORT_SIZE) {
+      fallback.sort(s, l, r, rep);
+      return;
+    }
+    if (pass == PASSES) {
+      // all prefix bytes are equal, order by the full comparator
+      fallback.sort(s, l, r, rep);
+      return;
+    }
+
+    final int shift = Integer.SIZE - RADIX_BITS * (pass + 1);
+    final int[] count = counts[pass];
+    final int[] offset = offsets[pass];
+    Arrays.fill(count, 0);
+    for (int i = l; i < r; i++) {
+      count[(s.getPrefix(i) >>> shift) & RADIX_MASK]++;
+    }
+
+    offset[0] = l;
+    int nonEmpty = 0;
+    for (int b = 0; b < RADIX; b++) {
+      offset[b + 1] = offset[b] + count[b];
+      if (count[b] > 0) {
+        nonEmpty++;
+      }
+    }
+
+    if (nonEmpty > 1) {
+      // count[] is reused as the next free slot for each bucket
+      for (int b = 0; b < RADIX; b++) {
+        count[b] = offset[b];
+      }
+      for (int b = 0; b < RADIX; b++) {
+        final int end = offset[b + 1];
+        int i = count[b];
+        while (i < end) {
+          final int digit = (s.getPrefix(i) >>> shift) & RADIX_MASK;
+          if (digit == b) {
+            i++;
+          } else {
+            s.swap(i, count[digit]++);
+          }
+        }
+        count[b] = end;
+      }
+      if (rep != null) {
+        rep.progress();
+      }
+    }
+
+    // offset[] is overwritten by deeper passes only, so buckets can be recursed in order
+    for (int b = 0; b < RADIX; b++) {
+      sort(s, offset[b], offset[b + 1], pass + 1, counts, offsets, rep);
+    }
+  }
+}
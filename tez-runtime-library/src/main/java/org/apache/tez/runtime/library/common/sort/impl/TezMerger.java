@@ -459,6 +459,8 @@ public class TezMerger {
     List<Segment> segments = new ArrayList<Segment>();
     
     final RawComparator comparator;
+    // replaces the heap of the PriorityQueue, when enabled
+    final LoserTree loserTree;
 
     private long totalBytesProcessed;
     private float progPerByte;
@@ -508,6 +510,7 @@ public class TezMerger {
       this.comparator = comparator;
       this.reporter = reporter;
       this.considerFinalMergeForProgress = considerFinalMergeForProgress;
+      this.loserTree = createLoserTree(conf, comparator);
       
       for (Path file : inputs) {
         if (LOG.isTraceEnabled()) {
@@ -555,11 +558,54 @@ public class TezMerger {
       }
       this.checkForSameKeys = checkForSameKeys;
       this.codec = codec;
+      this.loserTree = createLoserTree(conf, comparator);
+    }
+
+    private static LoserTree createLoserTree(Configuration conf, RawComparator comparator) {
+      if (conf != null && conf.getBoolean(
+          TezRuntimeConfiguration.TEZ_RUNTIME_MERGE_LOSER_TREE_ENABLED,
+          TezRuntimeConfiguration.TEZ_RUNTIME_MERGE_LOSER_TREE_ENABLED_DEFAULT)) {
+        return new LoserTree(comparator);
+      }
+      return null;
+    }
+
+    private Segment topSegment() {
+      return loserTree != null ? loserTree.top() : top();
+    }
+
+    private Segment popSegment() {
+      return loserTree != null ? loserTree.pop() : pop();
+    }
+
+    private void adjustTopSegment() {
+      if (loserTree != null) {
+        loserTree.adjustTop();
+      } else {
+        adjustTop();
+      }
+    }
+
+    private int numSegmentsInQueue() {
+      return loserTree != null ? loserTree.size() : size();
+    }
+
+    private void initializeQueue(List<Segment> segmentsToMerge) {
+      if (loserTree != null) {
+        loserTree.clear();
+        loserTree.initialize(segmentsToMerge);
+        return;
+      }
+      initialize(segmentsToMerge.size());
+      clear();
+      for (Segment segment : segmentsToMerge) {
+        put(segment);
+      }
     }
 
     public void close() throws IOException {
       Segment segment;
-      while((segment = pop()) != null) {
+      while((segment = popSegment()) != null) {
         segment.close();
       }
     }
@@ -606,10 +652,10 @@ public class TezMerger {
       totalBytesProcessed += endPos - startPos;
       mergeProgress.set(totalBytesProcessed * progPerByte);
       if (hasNext == KeyState.NEW_KEY) {
-        adjustTop();
+        adjustTopSegment();
         compareKeyWithNextTopKey(reader);
       } else if(hasNext == KeyState.NO_KEY) {
-        pop();
+        popSegment();
         reader.close();
         compareKeyWithNextTopKey(null);
       } else if(hasNext == KeyState.SAME_KEY) {
@@ -625,7 +671,7 @@ public class TezMerger {
      * @throws IOException
      */
     void compareKeyWithNextTopKey(Segment current) throws IOException {
-      Segment nextTop = top();
+      Segment nextTop = topSegment();
       if (checkForSameKeys && nextTop != current) {
         //we have a different file. Compare it with previous key
         KeyValueBuffer nextKey = nextTop.getKey();
@@ -638,7 +684,7 @@ public class TezMerger {
     }
 
     public boolean next() throws IOException {
-      if (size() == 0)
+      if (numSegmentsInQueue() == 0)
         return false;
 
       if (minSegment != null) {
@@ -646,12 +692,12 @@ public class TezMerger {
         //one. For the first invocation, the priority queue is ready for use
         //but for the subsequent invocations, first adjust the queue 
         adjustPriorityQueue(minSegment);
-        if (size() == 0) {
+        if (numSegmentsInQueue() == 0) {
           minSegment = null;
           return false;
         }
       }
-      minSegment = top();
+      minSegment = topSegment();
       long startPos = minSegment.getPosition();
       KeyValueBuffer nextKey = minSegment.getKey();
       key.reset(nextKey.getData(), nextKey.getPosition(), nextKey.getLength());
@@ -793,11 +839,7 @@ public class TezMerger {
         }
         
         //feed the streams to the priority queue
-        initialize(segmentsToMerge.size());
-        clear();
-        for (Segment segment : segmentsToMerge) {
-          put(segment);
-        }
+        initializeQueue(segmentsToMerge);
         
         //if we have lesser number of segments remaining, then just return the
         //iterator, else do another single level merge
@@ -25,6 +25,11 @@ import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.Deflater;
@@ -45,6 +50,7 @@ import org.apache.hadoop.util.IndexedSortable;
 import org.apache.hadoop.util.Progress;
 import org.apache.tez.common.TezCommonUtils;
 import org.apache.tez.common.TezUtilsInternal;
+import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.common.io.NonSyncDataOutputStream;
 import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.OutputContext;
@@ -62,6 +68,8 @@ import org.apache.tez.runtime.library.common.sort.impl.TezMerger.DiskSegment;
 import org.apache.tez.runtime.library.common.sort.impl.TezMerger.Segment;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 @SuppressWarnings({"unchecked", "rawtypes"})
 public final class DefaultSorter extends ExternalSorter implements IndexedSortable {
@@ -92,6 +100,8 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
                           // reading at the end of the buffer
 
   private byte[] kvbuffer;        // main output buffer
+  // set once no spill can access kvbuffer, so it can go back to the buffer pool
+  private boolean sortBufferReleasable = false;
   private final byte[] b0 = new byte[0];
 
   protected static final int VALSTART = 0;         // val offset in acct
@@ -115,6 +125,9 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
   final BlockingBuffer bb = new BlockingBuffer();
   volatile boolean spillThreadRunning = false;
   final SpillThread spillThread = new SpillThread();
+  // sorts and writes partition ranges of a spill concurrently, null for serial spills
+  private final ExecutorService spillWorkers;
+  final int spillThreads;
   private final Deflater deflater;
   private final String auxiliaryService;
 
@@ -161,7 +174,7 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
     // buffers and accounting
     int maxMemUsage = sortmb << 20;
     maxMemUsage -= maxMemUsage % METASIZE;
-    kvbuffer = new byte[maxMemUsage];
+    kvbuffer = bufferPool != null ? bufferPool.lease(maxMemUsage) : new byte[maxMemUsage];
     bufvoid = kvbuffer.length;
     kvmeta = ByteBuffer.wrap(kvbuffer)
        .order(ByteOrder.nativeOrder())
@@ -173,6 +186,28 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
     maxRec = kvmeta.capacity() / NMETA;
     softLimit = (int)(kvbuffer.length * spillper);
     bufferRemaining = softLimit;
+
+    int confSpillThreads = this.conf.getInt(
+        TezRuntimeConfiguration.TEZ_RUNTIME_LEGACY_SORTER_SPILL_THREADS,
+        TezRuntimeConfiguration.TEZ_RUNTIME_LEGACY_SORTER_SPILL_THREADS_DEFAULT);
+    Preconditions.checkArgument(confSpillThreads > 0,
+        TezRuntimeConfiguration.TEZ_RUNTIME_LEGACY_SORTER_SPILL_THREADS + " should be > 0");
+    if (confSpillThreads > 1 && (combiner != null || !isFinalMergeEnabled())) {
+      LOG.warn(outputContext.getDestinationVertexName() + ": "
+          + TezRuntimeConfiguration.TEZ_RUNTIME_LEGACY_SORTER_SPILL_THREADS + "=" + confSpillThreads
+          + " is ignored since it is not supported with a combiner or with final merge disabled");
+      confSpillThreads = 1;
+    }
+    spillThreads = (partitions > 1) ? confSpillThreads : 1;
+    if (spillThreads > 1) {
+      spillWorkers = Executors.newFixedThreadPool(spillThreads,
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("SpillWorker {" + TezUtilsInternal
+                  .cleanVertexName(outputContext.getDestinationVertexName()) + "} #%d")
+              .build());
+    } else {
+      spillWorkers = null;
+    }
     if (LOG.isInfoEnabled()) {
       LOG.info(outputContext.getDestinationVertexName() + ": "
           + TezRuntimeConfiguration.TEZ_RUNTIME_IO_SORT_MB + "=" + sortmb
@@ -181,7 +216,8 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
           + ", bufvoid=" + bufvoid
           + ", kvstart=" + kvstart
           + ", legnth=" + maxRec
-          + ", finalMergeEnabled=" + isFinalMergeEnabled());
+          + ", finalMergeEnabled=" + isFinalMergeEnabled()
+          + ", spillThreads=" + spillThreads);
     }
 
     // k/v serialization
@@ -236,16 +272,23 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
   public void write(Object key, Object value)
       throws IOException {
     collect(
-        key, value, partitioner.getPartition(key, value, partitions));
+        key, value, partitioner.getPartition(key, value, partitions), true);
+  }
+
+  @Override
+  public void writeUncounted(Object key, Object value) throws IOException {
+    collect(key, value, partitioner.getPartition(key, value, partitions), false);
   }
 
   /**
    * Serialize the key, value to intermediate storage.
    * When this method returns, kvindex must refer to sufficient unused
    * storage to store one METADATA.
+   *
+   * @param countOutput whether the record is counted as output
    */
-  synchronized void collect(Object key, Object value, final int partition
-                                   ) throws IOException {
+  synchronized void collect(Object key, Object value, final int partition,
+                            boolean countOutput) throws IOException {
 
     if (key.getClass() != keyClass) {
       throw new IOException("Type mismatch in key from map: expected "
@@ -355,10 +398,12 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
       // for this record are not yet written
       int valend = bb.markRecord();
 
-      mapOutputRecordCounter.increment(1);
+      if (countOutput) {
+        mapOutputRecordCounter.increment(1);
+        mapOutputByteCounter.increment(
+            distanceTo(keystart, valend, bufvoid));
+      }
       outputContext.notifyProgress();
-      mapOutputByteCounter.increment(
-          distanceTo(keystart, valend, bufvoid));
 
       // write accounting info
       kvmeta.put(kvindex + PARTITION, partition);
@@ -370,8 +415,10 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
       totalKeys++;
     } catch (MapBufferTooSmallException e) {
       LOG.info(outputContext.getDestinationVertexName() + ": Record too large for in-memory buffer: " + e.getMessage());
-      spillSingleRecord(key, value, partition);
-      mapOutputRecordCounter.increment(1);
+      spillSingleRecord(key, value, partition, countOutput);
+      if (countOutput) {
+        mapOutputRecordCounter.increment(1);
+      }
       return;
     }
   }
@@ -445,6 +492,14 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
    * @see IndexedSortable#compare
    */
   public int compare(final int mi, final int mj) {
+    final int result = compare(comparator, mi, mj);
+    if (result == 0) {
+      sameKey++;
+    }
+    return result;
+  }
+
+  private int compare(final RawComparator keyComparator, final int mi, final int mj) {
     final int kvi = offsetFor(mi);
     final int kvj = offsetFor(mj);
     final int kvip = kvmeta.get(kvi + PARTITION);
@@ -454,29 +509,51 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
       return kvip - kvjp;
     }
     // sort by key
-    int result = comparator.compare(kvbuffer,
+    return keyComparator.compare(kvbuffer,
         kvmeta.get(kvi + KEYSTART),
         kvmeta.get(kvi + VALSTART) - kvmeta.get(kvi + KEYSTART),
         kvbuffer,
         kvmeta.get(kvj + KEYSTART),
         kvmeta.get(kvj + VALSTART) - kvmeta.get(kvj + KEYSTART));
-    if (result == 0) {
-      sameKey++;
-    }
-    return result;
   }
 
-  final byte META_BUFFER_TMP[] = new byte[METASIZE];
   /**
-   * Swap metadata for items i,j
+   * Swap metadata for items i,j. Does not use any shared scratch space, so that
+   * disjoint ranges can be sorted concurrently by the spill workers.
    * @see IndexedSortable#swap
    */
   public void swap(final int mi, final int mj) {
-    int iOff = (mi % maxRec) * METASIZE;
-    int jOff = (mj % maxRec) * METASIZE;
-    System.arraycopy(kvbuffer, iOff, META_BUFFER_TMP, 0, METASIZE);
-    System.arraycopy(kvbuffer, jOff, kvbuffer, iOff, METASIZE);
-    System.arraycopy(META_BUFFER_TMP, 0, kvbuffer, jOff, METASIZE);
+    final int kvi = offsetFor(mi);
+    final int kvj = offsetFor(mj);
+    for (int i = 0; i < NMETA; i++) {
+      final int tmp = kvmeta.get(kvi + i);
+      kvmeta.put(kvi + i, kvmeta.get(kvj + i));
+      kvmeta.put(kvj + i, tmp);
+    }
+  }
+
+  /**
+   * Sorts one range of a parallel spill. Every range has its own key comparator, since
+   * comparators need not be thread-safe, and counts its own same keys.
+   */
+  private class RangeSortable implements IndexedSortable {
+    private final RawComparator rangeComparator =
+        ConfigUtils.getIntermediateOutputKeyComparator(conf);
+    private long sameKeyCount = 0;
+
+    @Override
+    public int compare(int mi, int mj) {
+      final int result = DefaultSorter.this.compare(rangeComparator, mi, mj);
+      if (result == 0) {
+        sameKeyCount++;
+      }
+      return result;
+    }
+
+    @Override
+    public void swap(int mi, int mj) {
+      DefaultSorter.this.swap(mi, mj);
+    }
   }
 
   /**
@@ -734,12 +811,17 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
     }
 
     interruptSpillThread();
+    if (spillWorkers != null) {
+      spillWorkers.shutdown();
+    }
     // release sort buffer before the mergecl
     //FIXME
     //kvbuffer = null;
 
     try {
       mergeParts();
+      // all spills are complete, so the sort buffer is not referred to anymore
+      sortBufferReleasable = true;
     } catch (InterruptedException e) {
       cleanup();
       Thread.currentThread().interrupt();
@@ -752,6 +834,12 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
   @Override
   public void close() throws IOException {
     super.close();
+    if (spillWorkers != null) {
+      spillWorkers.shutdownNow();
+    }
+    if (bufferPool != null && sortBufferReleasable && kvbuffer != null) {
+      bufferPool.release(kvbuffer);
+    }
     kvbuffer = null;
     kvmeta = null;
   }
@@ -857,10 +945,120 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
       throws IOException, InterruptedException {
     final int mstart = getMetaStart();
     final int mend = getMetaEnd();
+    if (spillWorkers != null) {
+      parallelSortAndSpill(mstart, mend, sameKeyCount, totalKeysCount);
+      return;
+    }
     sorter.sort(this, mstart, mend, progressable);
     spill(mstart, mend, sameKeyCount, totalKeysCount);
   }
 
+  /**
+   * Sort and spill the records in [mstart, mend) using the spill workers. Records are first
+   * grouped by partition, and the partitions are then split into contiguous ranges holding
+   * roughly the same number of records. Every range is sorted and written into its own spill
+   * file concurrently, so one buffer spill can produce up to spillThreads spill files which
+   * are later combined by the final merge.
+   */
+  private void parallelSortAndSpill(int mstart, int mend, long sameKeyCount,
+      long totalKeysCount) throws IOException, InterruptedException {
+    final int[] partitionStart = groupByPartition(mstart, mend);
+    final int numRecords = mend - mstart;
+    final int target = (numRecords + spillThreads - 1) / spillThreads;
+    final List<int[]> ranges = Lists.newArrayList();
+    int rangeStart = mstart;
+    for (int i = 1; i <= partitions; i++) {
+      final int rangeEnd = partitionStart[i];
+      if (rangeEnd - rangeStart >= target || (i == partitions && rangeEnd > rangeStart)) {
+        ranges.add(new int[] { rangeStart, rangeEnd });
+        rangeStart = rangeEnd;
+      }
+    }
+    if (ranges.size() <= 1) {
+      sorter.sort(this, mstart, mend, progressable);
+      spill(mstart, mend, sameKeyCount, totalKeysCount);
+      return;
+    }
+
+    final long size = getSpillDataSize();
+    final boolean rle = isRLENeeded(sameKeyCount, totalKeysCount);
+    final List<Future<TezSpillRecord>> futures =
+        new ArrayList<Future<TezSpillRecord>>(ranges.size());
+    final List<RangeSortable> sortables = new ArrayList<RangeSortable>(ranges.size());
+    boolean success = false;
+    try {
+      for (final int[] range : ranges) {
+        final int spillIndex = numSpills + futures.size();
+        final Path filename = mapOutputFile.getSpillFileForWrite(spillIndex,
+            size * (range[1] - range[0]) / numRecords + partitions * APPROX_HEADER_LENGTH);
+        spillFilePaths.put(spillIndex, filename);
+        final RangeSortable sortable = new RangeSortable();
+        sortables.add(sortable);
+        futures.add(spillWorkers.submit(new Callable<TezSpillRecord>() {
+          @Override
+          public TezSpillRecord call() throws Exception {
+            sorter.sort(sortable, range[0], range[1], progressable);
+            // the shared counter is not updated concurrently, see below
+            return writeSpill(filename, range[0], range[1], rle, null);
+          }
+        }));
+      }
+      // spill records have to be registered in spill order
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          finishSpill(futures.get(i).get());
+          sameKey += sortables.get(i).sameKeyCount;
+          // without a combiner every record of the range has been written
+          spilledRecordsCounter.increment(ranges.get(i)[1] - ranges.get(i)[0]);
+        } catch (ExecutionException e) {
+          Throwables.propagateIfPossible(e.getCause(), IOException.class,
+              InterruptedException.class);
+          throw new IOException(e.getCause());
+        }
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        for (Future<TezSpillRecord> future : futures) {
+          future.cancel(true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reorder the records in [mstart, mend) so that records of the same partition are
+   * contiguous and partitions are in ascending order.
+   * @return the start position of every partition, followed by mend
+   */
+  private int[] groupByPartition(int mstart, int mend) {
+    final int[] partitionStart = new int[partitions + 1];
+    for (int i = mstart; i < mend; i++) {
+      partitionStart[kvmeta.get(offsetFor(i) + PARTITION) + 1]++;
+    }
+    partitionStart[0] = mstart;
+    for (int i = 0; i < partitions; i++) {
+      partitionStart[i + 1] += partitionStart[i];
+    }
+    // in-place permutation, next[p] is the next unfilled slot of partition p
+    final int[] next = new int[partitions];
+    System.arraycopy(partitionStart, 0, next, 0, partitions);
+    for (int p = 0; p < partitions; p++) {
+      final int end = partitionStart[p + 1];
+      int i = next[p];
+      while (i < end) {
+        final int partition = kvmeta.get(offsetFor(i) + PARTITION);
+        if (partition == p) {
+          i++;
+        } else {
+          swap(i, next[partition]++);
+        }
+      }
+      next[p] = end;
+    }
+    return partitionStart;
+  }
+
   private void adjustSpillCounters(long rawLen, long compLength) {
     if (!isFinalMergeEnabled()) {
       outputBytesWithOverheadCounter.increment(rawLen);
@@ -876,27 +1074,46 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
     }
   }
 
+  /**
+   * Approximate size of the serialized data of the current spill.
+   */
+  private long getSpillDataSize() {
+    return (bufend >= bufstart
+        ? bufend - bufstart
+        : (bufvoid - bufend) + bufstart);
+  }
+
   protected void spill(int mstart, int mend, long sameKeyCount, long totalKeysCount)
       throws IOException, InterruptedException {
 
     //approximate the length of the output file to be the length of the
     //buffer + header lengths for the partitions
-    final long size = (bufend >= bufstart
-        ? bufend - bufstart
-        : (bufvoid - bufend) + bufstart) +
+    final long size = getSpillDataSize() +
                 partitions * APPROX_HEADER_LENGTH;
+    // create spill file
+    final Path filename =
+        mapOutputFile.getSpillFileForWrite(numSpills, size);
+    spillFilePaths.put(numSpills, filename);
+    final TezSpillRecord spillRec = writeSpill(filename, mstart, mend,
+        isRLENeeded(sameKeyCount, totalKeysCount), spilledRecordsCounter);
+    finishSpill(spillRec);
+  }
+
+  /**
+   * Write the sorted records in [mstart, mend) into a new spill file. Does not update any
+   * spill accounting apart from recordsCounter, so it is safe to write disjoint ranges
+   * concurrently when there is no combiner and no counter is given.
+   * @param recordsCounter counter of the written records, or null
+   */
+  private TezSpillRecord writeSpill(Path filename, int mstart, int mend, boolean rle,
+      TezCounter recordsCounter) throws IOException, InterruptedException {
     FSDataOutputStream out = null;
     try {
-      // create spill file
       final TezSpillRecord spillRec = new TezSpillRecord(partitions);
-      final Path filename =
-          mapOutputFile.getSpillFileForWrite(numSpills, size);
-      spillFilePaths.put(numSpills, filename);
       out = rfs.create(filename);
 
       int spindex = mstart;
       final InMemValBytes value = createInMemValBytes();
-      boolean rle = isRLENeeded(sameKeyCount, totalKeysCount);
       for (int i = 0; i < partitions; ++i) {
         IFile.Writer writer = null;
         try {
@@ -904,7 +1121,7 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
           if (spindex < mend && kvmeta.get(offsetFor(spindex) + PARTITION) == i
               || !sendEmptyPartitionDetails) {
             writer = new Writer(conf, out, keyClass, valClass, codec,
-                spilledRecordsCounter, null, rle);
+                recordsCounter, null, rle, codecSelector);
           }
           if (combiner == null) {
             // spill directly
@@ -945,52 +1162,63 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
             rawLength = writer.getRawLength();
             partLength = writer.getCompressedLength();
           }
-          adjustSpillCounters(rawLength, partLength);
           // record offsets
           final TezIndexRecord rec =
               new TezIndexRecord(segmentStart, rawLength, partLength);
           spillRec.putIndex(rec, i);
-          if (!isFinalMergeEnabled() && reportPartitionStats() && writer != null) {
-            partitionStats[i] += partLength;
-          }
           writer = null;
         } finally {
           if (null != writer) writer.close();
         }
       }
-
-      if (totalIndexCacheMemory >= indexCacheMemoryLimit) {
-        // create spill index file
-        Path indexFilename =
-            mapOutputFile.getSpillIndexFileForWrite(numSpills, partitions
-                * MAP_OUTPUT_INDEX_RECORD_LENGTH);
-        spillFileIndexPaths.put(numSpills, indexFilename);
-        spillRec.writeToFile(indexFilename, conf);
-      } else {
-        indexCacheList.add(spillRec);
-        totalIndexCacheMemory +=
-          spillRec.size() * MAP_OUTPUT_INDEX_RECORD_LENGTH;
-      }
-      LOG.info(outputContext.getDestinationVertexName() + ": " + "Finished spill " + numSpills);
-      ++numSpills;
-      if (!isFinalMergeEnabled()) {
-        numShuffleChunks.setValue(numSpills);
-      } else if (numSpills > 1) {
-        //Increment only when there was atleast one previous spill
-        numAdditionalSpills.increment(1);
-      }
+      return spillRec;
     } finally {
       if (out != null) out.close();
     }
   }
 
+  /**
+   * Update the spill accounting for a spill file written by writeSpill, and cache or
+   * persist its index. Spills have to be finished in the order of their spill numbers.
+   */
+  private void finishSpill(TezSpillRecord spillRec) throws IOException {
+    for (int i = 0; i < partitions; ++i) {
+      final TezIndexRecord rec = spillRec.getIndex(i);
+      adjustSpillCounters(rec.getRawLength(), rec.getPartLength());
+      if (!isFinalMergeEnabled() && reportPartitionStats()) {
+        partitionStats[i] += rec.getPartLength();
+      }
+    }
+
+    if (totalIndexCacheMemory >= indexCacheMemoryLimit) {
+      // create spill index file
+      Path indexFilename =
+          mapOutputFile.getSpillIndexFileForWrite(numSpills, partitions
+              * MAP_OUTPUT_INDEX_RECORD_LENGTH);
+      spillFileIndexPaths.put(numSpills, indexFilename);
+      spillRec.writeToFile(indexFilename, conf);
+    } else {
+      indexCacheList.add(spillRec);
+      totalIndexCacheMemory +=
+        spillRec.size() * MAP_OUTPUT_INDEX_RECORD_LENGTH;
+    }
+    LOG.info(outputContext.getDestinationVertexName() + ": " + "Finished spill " + numSpills);
+    ++numSpills;
+    if (!isFinalMergeEnabled()) {
+      numShuffleChunks.setValue(numSpills);
+    } else if (numSpills > 1) {
+      //Increment only when there was atleast one previous spill
+      numAdditionalSpills.increment(1);
+    }
+  }
+
   /**
    * Handles the degenerate case where serialization fails to fit in
    * the in-memory buffer, so we must spill the record from collect
    * directly to a spill file. Consider this "losing".
    */
   private void spillSingleRecord(final Object key, final Object value,
-                                 int partition) throws IOException {
+                                 int partition, boolean countOutput) throws IOException {
     long size = kvbuffer.length + partitions * APPROX_HEADER_LENGTH;
     FSDataOutputStream out = null;
     try {
@@ -1009,14 +1237,16 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
           // Create a new codec, don't care!
           if (!sendEmptyPartitionDetails || (i == partition)) {
             writer = new Writer(conf, out, keyClass, valClass, codec,
-                spilledRecordsCounter, null, false);
+                spilledRecordsCounter, null, false, codecSelector);
           }
           if (i == partition) {
             final long recordStart = out.getPos();
             writer.append(key, value);
             // Note that our map byte count will not be accurate with
             // compression
-            mapOutputByteCounter.increment(out.getPos() - recordStart);
+            if (countOutput) {
+              mapOutputByteCounter.increment(out.getPos() - recordStart);
+            }
           }
           long rawLength =0;
           long partLength =0;
@@ -1279,7 +1509,8 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
           long segmentStart = finalOut.getPos();
           if (!sendEmptyPartitionDetails) {
             Writer writer =
-                new Writer(conf, finalOut, keyClass, valClass, codec, null, null);
+                new Writer(conf, finalOut, keyClass, valClass, codec, null, null, false,
+                    codecSelector);
             writer.close();
             rawLength = writer.getRawLength();
             partLength = writer.getCompressedLength();
@@ -1352,7 +1583,7 @@ public final class DefaultSorter extends ExternalSorter implements IndexedSortab
         if (shouldWrite) {
         Writer writer =
             new Writer(conf, finalOut, keyClass, valClass, codec,
-                spilledRecordsCounter, null);
+                spilledRecordsCounter, null, false, codecSelector);
         if (combiner == null || numSpills < minSpillsForCombine) {
           TezMerger.writeFile(kvIter, writer,
               progressable, TezRuntimeConfiguration.TEZ_RUNTIME_RECORDS_BEFORE_PROGRESS_DEFAULT);
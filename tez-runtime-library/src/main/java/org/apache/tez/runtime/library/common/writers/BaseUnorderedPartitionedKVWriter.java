@@ -39,6 +39,7 @@ import org.apache.tez.runtime.library.api.Partitioner;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.common.ConfigUtils;
 import org.apache.tez.runtime.library.common.TezRuntimeUtils;
+import org.apache.tez.runtime.library.common.sort.impl.AdaptiveCodecSelector;
 import org.apache.tez.runtime.library.common.task.local.output.TezTaskOutput;
 
 @SuppressWarnings("rawtypes")
@@ -56,6 +57,8 @@ public abstract class BaseUnorderedPartitionedKVWriter extends KeyValuesWriter {
   protected final SerializationFactory serializationFactory;
   protected final int numPartitions;
   protected final CompressionCodec codec;
+  // shared by all writers, so that they reuse the codec it chose
+  protected final AdaptiveCodecSelector codecSelector;
   protected final TezTaskOutput outputFileHandler;
   
   protected final boolean ifileReadAhead;
@@ -131,6 +134,7 @@ public abstract class BaseUnorderedPartitionedKVWriter extends KeyValuesWriter {
     } else {
       codec = null;
     }
+    codecSelector = AdaptiveCodecSelector.create(this.conf, codec);
     
     this.ifileReadAhead = this.conf.getBoolean(
         TezRuntimeConfiguration.TEZ_RUNTIME_IFILE_READAHEAD,
@@ -63,13 +63,16 @@ import org.apache.tez.runtime.api.events.CompositeDataMovementEvent;
 import org.apache.tez.runtime.library.api.IOInterruptedException;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration.ReportPartitionStats;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.BufferPool;
 import org.apache.tez.runtime.library.common.Constants;
 import org.apache.tez.runtime.library.common.sort.impl.IFile;
 import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
 import org.apache.tez.runtime.library.common.sort.impl.IFile.Writer;
 import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
+import org.apache.tez.runtime.library.common.shuffle.PushShuffle;
 import org.apache.tez.runtime.library.common.shuffle.ShuffleUtils;
 import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataProto;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -115,6 +118,8 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
       .synchronizedList(new ArrayList<SpillInfo>());
 
   private final ListeningExecutorService spillExecutor;
+  // container wide pool to lease buffers from, if enabled
+  private final BufferPool bufferPool;
 
   private final int[] numRecordsPerPartition;
   private long localOutputRecordBytesCounter;
@@ -187,6 +192,10 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
 
   private final long indexFileSizeEstimate;
 
+  // for single partition cases, send small outputs in the DataMovementEvent
+  private final boolean dataViaEventsEnabled;
+  private final int dataViaEventsMaxSize;
+
   private List<WrappedBuffer> filledBuffers = new ArrayList<>();
 
   public UnorderedPartitionedKVWriter(OutputContext outputContext, Configuration conf,
@@ -226,8 +235,9 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
 
     availableBuffers = new LinkedBlockingQueue<WrappedBuffer>();
     buffers = new WrappedBuffer[numBuffers];
+    bufferPool = BufferPool.get(outputContext, conf);
     // Set up only the first buffer to start with.
-    buffers[0] = new WrappedBuffer(numOutputs, sizePerBuffer);
+    buffers[0] = new WrappedBuffer(numOutputs, sizePerBuffer, bufferPool);
     numInitializedBuffers = 1;
     if (LOG.isDebugEnabled()) {
       LOG.debug(destNameTrimmed + ": " + "Initializing Buffer #" +
@@ -271,6 +281,13 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
 
     indexFileSizeEstimate = numPartitions * Constants.MAP_OUTPUT_INDEX_RECORD_LENGTH;
 
+    dataViaEventsEnabled = conf.getBoolean(
+        TezRuntimeConfiguration.TEZ_RUNTIME_TRANSFER_DATA_VIA_EVENTS_ENABLED,
+        TezRuntimeConfiguration.TEZ_RUNTIME_TRANSFER_DATA_VIA_EVENTS_ENABLED_DEFAULT);
+    dataViaEventsMaxSize = conf.getInt(
+        TezRuntimeConfiguration.TEZ_RUNTIME_TRANSFER_DATA_VIA_EVENTS_MAX_SIZE,
+        TezRuntimeConfiguration.TEZ_RUNTIME_TRANSFER_DATA_VIA_EVENTS_MAX_SIZE_DEFAULT);
+
     if (numPartitions == 1 && !pipelinedShuffle) {
       //special case, where in only one partition is available.
       finalOutPath = outputFileHandler.getOutputFileForWrite();
@@ -292,7 +309,9 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
         + ", pipelinedShuffle=" + pipelinedShuffle
         + ", isFinalMergeEnabled=" + isFinalMergeEnabled
         + ", numPartitions=" + numPartitions
-        + ", reportPartitionStats=" + reportPartitionStats);
+        + ", reportPartitionStats=" + reportPartitionStats
+        + ", dataViaEventsEnabled=" + dataViaEventsEnabled
+        + ", dataViaEventsMaxSize=" + dataViaEventsMaxSize);
   }
 
   private static final int ALLOC_OVERHEAD = 64;
@@ -531,7 +550,7 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
     if (availableBuffers.peek() == null) {
       if (numInitializedBuffers < numBuffers) {
         buffers[numInitializedBuffers] = new WrappedBuffer(numPartitions,
-            numInitializedBuffers == numBuffers - 1 ? lastBufferSize : sizePerBuffer);
+            numInitializedBuffers == numBuffers - 1 ? lastBufferSize : sizePerBuffer, bufferPool);
         numInitializedBuffers++;
         return buffers[numInitializedBuffers - 1];
       } else {
@@ -604,7 +623,8 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
               continue;
             }
             if (writer == null) {
-              writer = new Writer(conf, out, keyClass, valClass, codec, null, null);
+              writer = new Writer(conf, out, keyClass, valClass, codec, null, null, false,
+                  codecSelector);
             }
             numRecords += writePartition(buffer.partitionPositions[i], buffer, writer, key, val);
           }
@@ -731,9 +751,18 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
             outputBytesWithOverheadCounter.increment(rawLen);
             fileOutputBytesCounter.increment(compLen + indexFileSizeEstimate);
           }
+          DataProto data = null;
+          if (dataViaEventsEnabled && outputRecordsCounter.getValue() > 0
+              && compLen <= dataViaEventsMaxSize) {
+            data = readDataForEvent(rawLen, compLen);
+          }
+          // outputs sent in the event are not pushed
+          boolean pushed = data == null && outputRecordsCounter.getValue() > 0
+              && PushShuffle.pushOutput(conf, outputContext, finalOutPath, sr,
+                  outputContext.getUniqueIdentifier());
           eventList.add(generateVMEvent());
           eventList.add(generateDMEvent(false, -1, false, outputContext
-              .getUniqueIdentifier(), emptyPartitions));
+              .getUniqueIdentifier(), emptyPartitions, data, pushed));
           return eventList;
         }
 
@@ -814,12 +843,24 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
 
   private Event generateDMEvent() throws IOException {
     BitSet emptyPartitions = getEmptyPartitions(numRecordsPerPartition);
-    return generateDMEvent(false, -1, false, outputContext.getUniqueIdentifier(), emptyPartitions);
+    boolean pushed = finalOutPath != null && emptyPartitions.cardinality() != numPartitions
+        && PushShuffle.pushOutput(conf, outputContext, finalOutPath,
+            new TezSpillRecord(finalIndexPath, conf), outputContext.getUniqueIdentifier());
+    return generateDMEvent(false, -1, false, outputContext.getUniqueIdentifier(), emptyPartitions,
+        null, pushed);
   }
 
   private Event generateDMEvent(boolean addSpillDetails, int spillId,
       boolean isLastSpill, String pathComponent, BitSet emptyPartitions)
       throws IOException {
+    return generateDMEvent(addSpillDetails, spillId, isLastSpill, pathComponent, emptyPartitions,
+        null, false);
+  }
+
+  private Event generateDMEvent(boolean addSpillDetails, int spillId,
+      boolean isLastSpill, String pathComponent, BitSet emptyPartitions, DataProto data,
+      boolean pushed)
+      throws IOException {
 
     outputContext.notifyProgress();
     DataMovementEventPayloadProto.Builder payloadBuilder = DataMovementEventPayloadProto
@@ -846,12 +887,42 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
       payloadBuilder.setLastEvent(isLastSpill);
     }
 
+    if (data != null) {
+      payloadBuilder.setData(data);
+    }
+
+    if (pushed) {
+      payloadBuilder.setPushed(true);
+    }
+
     ByteBuffer payload = payloadBuilder.build().toByteString().asReadOnlyByteBuffer();
     return CompositeDataMovementEvent.create(0, numPartitions, payload);
   }
 
+  /**
+   * Read back the final output, which is small enough to be sent in the event. It is still
+   * available in the file and index, which are served like for any other output.
+   */
+  private DataProto readDataForEvent(long rawLen, long compLen) throws IOException {
+    byte[] data = new byte[(int) compLen];
+    FSDataInputStream in = rfs.open(finalOutPath);
+    try {
+      in.readFully(data);
+    } finally {
+      in.close();
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(destNameTrimmed + ": " + "Sending output of size " + compLen + " via events");
+    }
+    return DataProto.newBuilder()
+        .setRawLength((int) rawLen)
+        .setCompressedLength((int) compLen)
+        .setData(ByteString.copyFrom(data))
+        .build();
+  }
+
   private void cleanupCurrentBuffer() {
-    currentBuffer.cleanup();
+    currentBuffer.release(bufferPool);
     currentBuffer = null;
   }
 
@@ -859,9 +930,11 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
     if (spillExecutor != null) {
       spillExecutor.shutdownNow();
     }
+    // after a failed spill, other spills may not have finished reading their buffers
+    BufferPool pool = spillException == null ? bufferPool : null;
     for (int i = 0; i < buffers.length; i++) {
       if (buffers[i] != null && buffers[i] != currentBuffer) {
-        buffers[i].cleanup();
+        buffers[i].release(pool);
         buffers[i] = null;
       }
     }
@@ -992,7 +1065,8 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
           LOG.info(destNameTrimmed + ": " + "Skipping partition: " + i + " in final merge since it has no records");
           continue;
         }
-        writer = new Writer(conf, out, keyClass, valClass, codec, null, null);
+        writer = new Writer(conf, out, keyClass, valClass, codec, null, null, false,
+            codecSelector);
         try {
           if (currentBuffer.nextPosition != 0
               && currentBuffer.partitionPositions[i] != WrappedBuffer.PARTITION_ABSENT_POSITION) {
@@ -1068,7 +1142,8 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
           spilledRecordsCounter.increment(1);
           Writer writer = null;
           try {
-            writer = new IFile.Writer(conf, out, keyClass, valClass, codec, null, null);
+            writer = new IFile.Writer(conf, out, keyClass, valClass, codec, null, null,
+                false, codecSelector);
             writer.append(key, value);
             outputLargeRecordsCounter.increment(1);
             numRecordsPerPartition[i]++;
@@ -1170,7 +1245,7 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
     private int availableSize;
     private boolean full = false;
 
-    WrappedBuffer(int numPartitions, int size) {
+    WrappedBuffer(int numPartitions, int size, BufferPool bufferPool) {
       this.partitionPositions = new int[numPartitions];
       this.recordsPerPartition = new int[numPartitions];
       this.sizePerPartition = new long[numPartitions];
@@ -1182,7 +1257,7 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
       }
       size = size - (size % INT_SIZE);
       this.size = size;
-      this.buffer = new byte[size];
+      this.buffer = bufferPool != null ? bufferPool.lease(size) : new byte[size];
       this.metaBuffer = ByteBuffer.wrap(buffer).order(ByteOrder.nativeOrder()).asIntBuffer();
       availableSize = size;
     }
@@ -1204,6 +1279,16 @@ public class UnorderedPartitionedKVWriter extends BaseUnorderedPartitionedKVWrit
       buffer = null;
       metaBuffer = null;
     }
+
+    /**
+     * Hand the buffer over to the pool, if not null, for reuse by later tasks.
+     */
+    void release(BufferPool bufferPool) {
+      if (bufferPool != null && buffer != null) {
+        bufferPool.release(buffer);
+      }
+      cleanup();
+    }
   }
 
   private String generatePathComponent(String uniqueId, int spillNumber) {
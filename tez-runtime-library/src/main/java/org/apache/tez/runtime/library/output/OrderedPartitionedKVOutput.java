@@ -43,14 +43,20 @@ import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.runtime.api.AbstractLogicalOutput;
 import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.OutputContext;
+import org.apache.tez.runtime.library.api.KeyValueWriter;
 import org.apache.tez.runtime.library.api.KeyValuesWriter;
 import org.apache.tez.runtime.library.api.Partitioner;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.KeySampler;
 import org.apache.tez.runtime.library.common.MemoryUpdateCallbackHandler;
+import org.apache.tez.runtime.library.common.TezRuntimeUtils;
+import org.apache.tez.runtime.library.common.combine.Combiner;
+import org.apache.tez.runtime.library.common.combine.HashAggregator;
 import org.apache.tez.runtime.library.common.sort.impl.ExternalSorter;
 import org.apache.tez.runtime.library.common.sort.impl.PipelinedSorter;
 import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
 import org.apache.tez.runtime.library.common.sort.impl.dflt.DefaultSorter;
+import org.apache.tez.runtime.library.common.shuffle.PushShuffle;
 import org.apache.tez.runtime.library.common.shuffle.ShuffleUtils;
 
 import com.google.common.base.Preconditions;
@@ -66,6 +72,8 @@ public class OrderedPartitionedKVOutput extends AbstractLogicalOutput {
   private static final Logger LOG = LoggerFactory.getLogger(OrderedPartitionedKVOutput.class);
 
   protected ExternalSorter sorter;
+  @VisibleForTesting
+  HashAggregator hashAggregator;
   protected Configuration conf;
   protected MemoryUpdateCallbackHandler memoryUpdateCallbackHandler;
   private long startTime;
@@ -78,6 +86,7 @@ public class OrderedPartitionedKVOutput extends AbstractLogicalOutput {
   private boolean sendEmptyPartitionDetails;
   @VisibleForTesting
   boolean finalMergeEnabled;
+  private KeySampler keySampler;
 
   public OrderedPartitionedKVOutput(OutputContext outputContext, int numPhysicalOutputs) {
     super(outputContext, numPhysicalOutputs);
@@ -141,12 +150,33 @@ public class OrderedPartitionedKVOutput extends AbstractLogicalOutput {
               + "only works with PipelinedSorter.");
       }
 
+      long sorterMemory = memoryUpdateCallbackHandler.getMemoryAssigned();
+      long hashAggregationMemory = 0;
+      Combiner combiner = null;
+      if (conf.getBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_ENABLED,
+          TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_ENABLED_DEFAULT)) {
+        combiner = TezRuntimeUtils.instantiateCombiner(conf, getContext());
+        if (combiner == null) {
+          LOG.info(getContext().getDestinationVertexName() + ": not using hash aggregation, as "
+              + "no combiner is configured");
+        } else {
+          float memoryFraction = conf.getFloat(
+              TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MEMORY_FRACTION,
+              TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MEMORY_FRACTION_DEFAULT);
+          Preconditions.checkArgument(memoryFraction > 0 && memoryFraction < 1,
+              TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MEMORY_FRACTION
+                  + " should be in the range (0, 1), but was " + memoryFraction);
+          hashAggregationMemory = (long) (sorterMemory * memoryFraction);
+          sorterMemory -= hashAggregationMemory;
+        }
+      }
+
       if (sorterImpl.equals(SorterImpl.PIPELINED)) {
         sorter = new PipelinedSorter(getContext(), conf, getNumPhysicalOutputs(),
-            memoryUpdateCallbackHandler.getMemoryAssigned());
+            sorterMemory);
       } else if (sorterImpl.equals(SorterImpl.LEGACY)) {
         sorter = new DefaultSorter(getContext(), conf, getNumPhysicalOutputs(),
-            memoryUpdateCallbackHandler.getMemoryAssigned());
+            sorterMemory);
       } else {
         throw new UnsupportedOperationException("Unsupported sorter class specified in config"
             + ", propertyName=" + TezRuntimeConfiguration.TEZ_RUNTIME_SORTER_CLASS
@@ -154,6 +184,27 @@ public class OrderedPartitionedKVOutput extends AbstractLogicalOutput {
             + ", validValues=" + Arrays.asList(SorterImpl.values()));
       }
 
+      int numKeySamples = conf.getInt(TezRuntimeConfiguration.TEZ_RUNTIME_REPORT_KEY_SAMPLES,
+          TezRuntimeConfiguration.TEZ_RUNTIME_REPORT_KEY_SAMPLES_DEFAULT);
+      if (numKeySamples > 0 && finalMergeEnabled && !pipelinedShuffle) {
+        keySampler = new KeySampler(conf, numKeySamples);
+      }
+
+      if (combiner != null) {
+        hashAggregator = new HashAggregator(conf, combiner, hashAggregationMemory,
+            new KeyValueWriter() {
+              @Override
+              public void write(Object key, Object value) throws IOException {
+                sorter.write(key, value);
+              }
+            }, new KeyValueWriter() {
+              @Override
+              public void write(Object key, Object value) throws IOException {
+                sorter.writeUncounted(key, value);
+              }
+            }, getContext().getCounters(), getContext().getDestinationVertexName());
+      }
+
       isStarted.set(true);
     }
   }
@@ -164,12 +215,28 @@ public class OrderedPartitionedKVOutput extends AbstractLogicalOutput {
     return new KeyValuesWriter() {
       @Override
       public void write(Object key, Object value) throws IOException {
-        sorter.write(key, value);
+        if (keySampler != null) {
+          keySampler.sample(key);
+        }
+        if (hashAggregator != null) {
+          hashAggregator.write(key, value);
+        } else {
+          sorter.write(key, value);
+        }
       }
 
       @Override
       public void write(Object key, Iterable<Object> values) throws IOException {
-        sorter.write(key, values);
+        if (keySampler != null) {
+          keySampler.sample(key);
+        }
+        if (hashAggregator != null) {
+          for (Object value : values) {
+            hashAggregator.write(key, value);
+          }
+        } else {
+          sorter.write(key, values);
+        }
       }
     };
   }
@@ -183,6 +250,10 @@ public class OrderedPartitionedKVOutput extends AbstractLogicalOutput {
   public synchronized List<Event> close() throws IOException {
     List<Event> returnEvents = null;
     if (sorter != null) {
+      if (hashAggregator != null) {
+        hashAggregator.close();
+        hashAggregator = null;
+      }
       sorter.flush();
       sorter.close();
       this.endTime = System.nanoTime();
@@ -204,10 +275,17 @@ public class OrderedPartitionedKVOutput extends AbstractLogicalOutput {
       boolean isLastEvent = true;
       String auxiliaryService = conf.get(TezConfiguration.TEZ_AM_SHUFFLE_AUXILIARY_SERVICE_ID,
           TezConfiguration.TEZ_AM_SHUFFLE_AUXILIARY_SERVICE_ID_DEFAULT);
+      TezSpillRecord spillRecord = new TezSpillRecord(sorter.getFinalIndexFile(), conf);
+      boolean pushed = PushShuffle.pushOutput(conf, getContext(), sorter.getFinalOutputFile(),
+          spillRecord, getContext().getUniqueIdentifier());
       ShuffleUtils.generateEventOnSpill(eventList, finalMergeEnabled, isLastEvent,
-          getContext(), 0, new TezSpillRecord(sorter.getFinalIndexFile(), conf),
+          getContext(), 0, spillRecord,
           getNumPhysicalOutputs(), sendEmptyPartitionDetails, getContext().getUniqueIdentifier(),
-          sorter.getPartitionStats(), sorter.reportDetailedPartitionStats(), auxiliaryService, deflater);
+          sorter.getPartitionStats(), sorter.reportDetailedPartitionStats(), auxiliaryService, deflater,
+          pushed);
+      if (keySampler != null) {
+        keySampler.addSamples(eventList);
+      }
     }
     return eventList;
   }
@@ -226,14 +304,22 @@ public class OrderedPartitionedKVOutput extends AbstractLogicalOutput {
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_IFILE_READAHEAD_BYTES);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_IO_FILE_BUFFER_SIZE);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_IO_SORT_FACTOR);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_MERGE_LOSER_TREE_ENABLED);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_SORT_SPILL_PERCENT);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_IO_SORT_MB);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_REPORT_PARTITION_STATS);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_REPORT_KEY_SAMPLES);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_INDEX_CACHE_MEMORY_LIMIT_BYTES);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_MIN_SPILLS);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_ENABLED);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MEMORY_FRACTION);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MIN_REDUCTION);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_PIPELINED_SORTER_SORT_THREADS);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_PIPELINED_SORTER_MIN_BLOCK_SIZE_IN_MB);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_PIPELINED_SORTER_LAZY_ALLOCATE_MEMORY);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_PIPELINED_SORTER_RADIX_SORT_ENABLED);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_LEGACY_SORTER_SPILL_THREADS);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_CONTAINER_BUFFER_POOL_FRACTION);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_PARTITIONER_CLASS);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_COMBINER_CLASS);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_INTERNAL_SORTER_CLASS);
@@ -242,6 +328,14 @@ public class OrderedPartitionedKVOutput extends AbstractLogicalOutput {
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_VALUE_CLASS);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_CODEC);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_ENABLED);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_CODEC);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_SAMPLE_SIZE_BYTES);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_MAX_RATIO);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MIN_GAIN);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MAX_SLOWDOWN);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_SEGMENTS_PER_SAMPLE);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_IFILE_CHECKSUM_TYPE);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_EMPTY_PARTITION_INFO_VIA_EVENTS_ENABLED);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_CONVERT_USER_PAYLOAD_TO_HISTORY_TEXT);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_PIPELINED_SHUFFLE_ENABLED);
@@ -252,6 +346,7 @@ public class OrderedPartitionedKVOutput extends AbstractLogicalOutput {
     confKeys.add(TezConfiguration.TEZ_COUNTERS_MAX_GROUPS);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_SORTER_CLASS);
     confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_CLEANUP_FILES_ON_INTERRUPT);
+    confKeys.add(TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_PUSH_SERVICE_CLASS);
     confKeys.add(TezConfiguration.TEZ_AM_SHUFFLE_AUXILIARY_SERVICE_ID);
   }
 
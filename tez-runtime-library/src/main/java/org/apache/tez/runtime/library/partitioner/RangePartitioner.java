@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.partitioner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience.Public;
+import org.apache.hadoop.classification.InterfaceStability.Evolving;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.tez.runtime.library.api.Partitioner;
+import org.apache.tez.runtime.library.common.ConfigUtils;
+
+/**
+ * Implements a {@link Partitioner} that assigns ranges of keys to partitions,
+ * so that all the keys of a partition sort before the keys of the next one,
+ * e.g. for a total order sort.
+ *
+ * The ranges are bounded by split points read from the file given by
+ * {@link #TEZ_RANGE_PARTITIONER_SPLIT_POINTS_PATH}. Partition i gets the keys
+ * which are at least split point i - 1 and less than split point i, as
+ * ordered by the key comparator of the output. The split points are usually
+ * computed from sampled keys by
+ * {@link org.apache.tez.dag.library.vertexmanager.RangePartitionVertexManager}
+ * before the tasks of the vertex start.
+ */
+@Public
+@Evolving
+public class RangePartitioner implements Partitioner {
+
+  /**
+   * Path of the file with the split points, set in the partitioner
+   * configuration.
+   */
+  public static final String TEZ_RANGE_PARTITIONER_SPLIT_POINTS_PATH =
+      "tez.range-partitioner.split-points.path";
+
+  private final byte[][] splitPoints;
+  private final RawComparator<Object> comparator;
+  private final Serializer<Object> keySerializer;
+  private final DataOutputBuffer keyBuffer = new DataOutputBuffer();
+
+  @SuppressWarnings("unchecked")
+  public RangePartitioner(Configuration conf) throws IOException {
+    String splitPointsPath = conf.get(TEZ_RANGE_PARTITIONER_SPLIT_POINTS_PATH);
+    if (splitPointsPath == null) {
+      throw new IllegalArgumentException(TEZ_RANGE_PARTITIONER_SPLIT_POINTS_PATH
+          + " is not set");
+    }
+    this.splitPoints = readSplitPoints(new Path(splitPointsPath), conf);
+    this.comparator = ConfigUtils.getIntermediateOutputKeyComparator(conf);
+    SerializationFactory serializationFactory = new SerializationFactory(conf);
+    this.keySerializer = serializationFactory.getSerializer(
+        (Class<Object>) ConfigUtils.getIntermediateOutputKeyClass(conf));
+    this.keySerializer.open(keyBuffer);
+  }
+
+  @Override
+  public int getPartition(Object key, Object value, int numPartitions) {
+    if (splitPoints.length >= numPartitions) {
+      throw new IllegalStateException(splitPoints.length
+          + " split points are too many for " + numPartitions + " partitions");
+    }
+    keyBuffer.reset();
+    try {
+      keySerializer.serialize(key);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to serialize key " + key, e);
+    }
+    // the number of split points which are not greater than the key
+    int low = 0;
+    int high = splitPoints.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (comparator.compare(splitPoints[mid], 0, splitPoints[mid].length,
+          keyBuffer.getData(), 0, keyBuffer.getLength()) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Computes split points which divide the sampled keys into numPartitions
+   * ranges with about the same number of samples. Fewer split points are
+   * returned if the samples have too few distinct keys, in which case the last
+   * partitions are empty.
+   */
+  public static List<byte[]> computeSplitPoints(List<byte[]> samples,
+      RawComparator<?> comparator, int numPartitions) {
+    double[] weights = new double[samples.size()];
+    Arrays.fill(weights, 1);
+    return computeSplitPoints(samples, weights, comparator, numPartitions);
+  }
+
+  /**
+   * Computes split points which divide the sampled keys into numPartitions
+   * ranges with about the same total weight, e.g. the number of keys each
+   * sample stands for. Fewer split points are returned if the samples have
+   * too few distinct keys, in which case the last partitions are empty.
+   *
+   * @param weights the weight of each sample, in the order of the samples
+   */
+  public static List<byte[]> computeSplitPoints(final List<byte[]> samples,
+      double[] weights, final RawComparator<?> comparator, int numPartitions) {
+    Integer[] order = new Integer[samples.size()];
+    double totalWeight = 0;
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+      totalWeight += weights[i];
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer left, Integer right) {
+        byte[] l = samples.get(left);
+        byte[] r = samples.get(right);
+        return comparator.compare(l, 0, l.length, r, 0, r.length);
+      }
+    });
+    List<byte[]> splitPoints = new ArrayList<byte[]>(Math.max(0, numPartitions - 1));
+    int index = 0;
+    // weight of the samples up to and including the one at index
+    double weightThrough = order.length == 0 ? 0 : weights[order[0]];
+    for (int i = 1; i < numPartitions && order.length > 0; i++) {
+      // the first sample past an i-th of the total weight starts partition i
+      double target = totalWeight * i / numPartitions;
+      while (index < order.length - 1 && weightThrough <= target) {
+        weightThrough += weights[order[++index]];
+      }
+      // split points have to increase, so skip the samples equal to the last one
+      byte[] last = splitPoints.isEmpty() ? null : splitPoints.get(splitPoints.size() - 1);
+      while (index < order.length && last != null && comparator.compare(
+          samples.get(order[index]), 0, samples.get(order[index]).length,
+          last, 0, last.length) <= 0) {
+        if (++index < order.length) {
+          weightThrough += weights[order[index]];
+        }
+      }
+      if (index >= order.length) {
+        break;
+      }
+      splitPoints.add(samples.get(order[index]));
+    }
+    return splitPoints;
+  }
+
+  public static void writeSplitPoints(List<byte[]> splitPoints, Path path,
+      Configuration conf) throws IOException {
+    FileSystem fs = path.getFileSystem(conf);
+    FSDataOutputStream out = fs.create(path, true);
+    try {
+      WritableUtils.writeVInt(out, splitPoints.size());
+      for (byte[] splitPoint : splitPoints) {
+        WritableUtils.writeVInt(out, splitPoint.length);
+        out.write(splitPoint);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  public static byte[][] readSplitPoints(Path path, Configuration conf)
+      throws IOException {
+    FileSystem fs = path.getFileSystem(conf);
+    FSDataInputStream in = fs.open(path);
+    try {
+      byte[][] splitPoints = new byte[WritableUtils.readVInt(in)][];
+      for (int i = 0; i < splitPoints.length; i++) {
+        splitPoints[i] = new byte[WritableUtils.readVInt(in)];
+        in.readFully(splitPoints[i]);
+      }
+      return splitPoints;
+    } finally {
+      in.close();
+    }
+  }
+}
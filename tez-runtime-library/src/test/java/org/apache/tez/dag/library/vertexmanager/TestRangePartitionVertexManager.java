@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.dag.library.vertexmanager;
+
+import static org.mockito.Mockito.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.tez.dag.api.EdgeProperty;
+import org.apache.tez.dag.api.EdgeProperty.SchedulingType;
+import org.apache.tez.dag.api.InputDescriptor;
+import org.apache.tez.dag.api.OutputDescriptor;
+import org.apache.tez.dag.api.VertexManagerPluginContext;
+import org.apache.tez.dag.api.VertexManagerPluginContext.ScheduleTaskRequest;
+import org.apache.tez.dag.api.event.VertexState;
+import org.apache.tez.dag.api.event.VertexStateUpdate;
+import org.apache.tez.dag.records.TaskAttemptIdentifierImpl;
+import org.apache.tez.dag.records.TezTaskAttemptID;
+import org.apache.tez.runtime.api.TaskAttemptIdentifier;
+import org.apache.tez.runtime.api.events.VertexManagerEvent;
+import org.apache.tez.runtime.library.partitioner.RangePartitioner;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.VertexManagerEventPayloadProto;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+
+import com.google.protobuf.ByteString;
+
+@SuppressWarnings("unchecked")
+public class TestRangePartitionVertexManager {
+
+  @Captor
+  ArgumentCaptor<List<ScheduleTaskRequest>> requestCaptor;
+
+  private final String mockSamplerVertexId = "Sampler";
+  private final String mockManagedVertexId = "Map";
+  private final String mockDestinationVertexId = "Reducer";
+
+  private Configuration conf;
+  private Path splitPointsPath;
+  private VertexManagerPluginContext mockContext;
+  private RangePartitionVertexManager manager;
+
+  @Before
+  public void init() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    conf = new Configuration();
+    Path testDir = FileSystem.getLocal(conf).makeQualified(new Path(
+        System.getProperty("test.build.data", System.getProperty("java.io.tmpdir")),
+        TestRangePartitionVertexManager.class.getName()));
+    FileSystem.getLocal(conf).delete(testDir, true);
+    splitPointsPath = new Path(testDir, "splitPoints");
+
+    EdgeProperty eProp = EdgeProperty.create(
+        EdgeProperty.DataMovementType.SCATTER_GATHER,
+        EdgeProperty.DataSourceType.PERSISTED,
+        SchedulingType.SEQUENTIAL,
+        OutputDescriptor.create("out"),
+        InputDescriptor.create("in"));
+    HashMap<String, EdgeProperty> mockInputVertices = new HashMap<String, EdgeProperty>();
+    mockInputVertices.put(mockSamplerVertexId, eProp);
+    HashMap<String, EdgeProperty> mockOutputVertices = new HashMap<String, EdgeProperty>();
+    mockOutputVertices.put(mockDestinationVertexId, eProp);
+
+    mockContext = mock(VertexManagerPluginContext.class);
+    when(mockContext.getUserPayload()).thenReturn(RangePartitionVertexManager
+        .createConfigBuilder(new Configuration(false))
+        .setSplitPointsPath(splitPointsPath.toString())
+        .setKeyClassName(IntWritable.class.getName(), null)
+        .build().getUserPayload());
+    when(mockContext.getInputVertexEdgeProperties()).thenReturn(mockInputVertices);
+    when(mockContext.getOutputVertexEdgeProperties()).thenReturn(mockOutputVertices);
+    when(mockContext.getVertexName()).thenReturn(mockManagedVertexId);
+    when(mockContext.getVertexNumTasks(mockManagedVertexId)).thenReturn(3);
+    when(mockContext.getVertexNumTasks(mockSamplerVertexId)).thenReturn(2);
+    when(mockContext.getVertexNumTasks(mockDestinationVertexId)).thenReturn(2);
+
+    manager = new RangePartitionVertexManager(mockContext);
+    manager.initialize();
+    manager.onVertexStarted(Collections.<TaskAttemptIdentifier>emptyList());
+    verify(mockContext, times(1)).registerForVertexStateUpdates(eq(mockSamplerVertexId),
+        anySet());
+  }
+
+  @Test (timeout=5000)
+  public void testSplitPointsFromSamples() throws Exception {
+    manager.onVertexManagerEventReceived(createVertexManagerEvent(mockDestinationVertexId,
+        "attempt_1436907267600_195589_1_00_000000_0", 3, 1, 2, 3));
+    // samples of another attempt of the same task are ignored
+    manager.onVertexManagerEventReceived(createVertexManagerEvent(mockDestinationVertexId,
+        "attempt_1436907267600_195589_1_00_000000_1", 3, 1, 2, 3));
+    manager.onVertexManagerEventReceived(createVertexManagerEvent(mockDestinationVertexId,
+        "attempt_1436907267600_195589_1_00_000001_0", 3, 4, 5, 6));
+    verify(mockContext, times(0)).scheduleTasks(anyList());
+
+    manager.onVertexStateUpdated(new VertexStateUpdate(mockSamplerVertexId,
+        VertexState.SUCCEEDED));
+    verify(mockContext, times(1)).scheduleTasks(requestCaptor.capture());
+    Assert.assertEquals(3, requestCaptor.getValue().size());
+
+    byte[][] splitPoints = RangePartitioner.readSplitPoints(splitPointsPath, conf);
+    Assert.assertEquals(1, splitPoints.length);
+    Assert.assertArrayEquals(serialize(4), splitPoints[0]);
+  }
+
+  @Test (timeout=5000)
+  public void testSamplesWeightedByRecords() throws Exception {
+    // both tasks send 3 samples, but the first one wrote 1000 times more records
+    manager.onVertexManagerEventReceived(createVertexManagerEvent(mockDestinationVertexId,
+        "attempt_1436907267600_195589_1_00_000000_0", 3000, 1, 2, 3));
+    manager.onVertexManagerEventReceived(createVertexManagerEvent(mockDestinationVertexId,
+        "attempt_1436907267600_195589_1_00_000001_0", 3, 4, 5, 6));
+    manager.onVertexStateUpdated(new VertexStateUpdate(mockSamplerVertexId,
+        VertexState.SUCCEEDED));
+    verify(mockContext, times(1)).scheduleTasks(anyList());
+
+    byte[][] splitPoints = RangePartitioner.readSplitPoints(splitPointsPath, conf);
+    Assert.assertEquals(1, splitPoints.length);
+    Assert.assertArrayEquals(serialize(2), splitPoints[0]);
+  }
+
+  private static VertexManagerEvent createVertexManagerEvent(String targetVertex,
+      String attemptId, long numRecord, int... keys) throws Exception {
+    VertexManagerEventPayloadProto.Builder builder = VertexManagerEventPayloadProto.newBuilder()
+        .setNumRecord(numRecord);
+    for (int key : keys) {
+      builder.addKeySamples(ByteString.copyFrom(serialize(key)));
+    }
+    VertexManagerEvent vmEvent = VertexManagerEvent.create(targetVertex,
+        builder.build().toByteString().asReadOnlyByteBuffer());
+    vmEvent.setProducerAttemptIdentifier(new TaskAttemptIdentifierImpl("dag", "Sampler",
+        TezTaskAttemptID.fromString(attemptId)));
+    return vmEvent;
+  }
+
+  private static byte[] serialize(int i) throws Exception {
+    DataOutputBuffer out = new DataOutputBuffer();
+    new IntWritable(i).write(out);
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+}
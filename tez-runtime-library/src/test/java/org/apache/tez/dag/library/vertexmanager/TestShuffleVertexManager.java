@@ -302,6 +302,93 @@ public class TestShuffleVertexManager extends TestShuffleVertexManagerUtils {
   }
 
 
+  @Test(timeout = 5000)
+  public void testAutoParallelismScaleUp() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(
+        ShuffleVertexManager.TEZ_SHUFFLE_VERTEX_MANAGER_MAX_TASK_PARALLELISM, 4);
+    ShuffleVertexManagerBase manager;
+
+    HashMap<String, EdgeProperty> mockInputVertices = new HashMap<String, EdgeProperty>();
+    String r1 = "R1";
+    EdgeProperty eProp1 = EdgeProperty.create(
+        EdgeProperty.DataMovementType.SCATTER_GATHER,
+        EdgeProperty.DataSourceType.PERSISTED,
+        SchedulingType.SEQUENTIAL,
+        OutputDescriptor.create("out"),
+        InputDescriptor.create("in"));
+    String m2 = "M2";
+    EdgeProperty eProp2 = EdgeProperty.create(
+        EdgeProperty.DataMovementType.BROADCAST,
+        EdgeProperty.DataSourceType.PERSISTED,
+        SchedulingType.SEQUENTIAL,
+        OutputDescriptor.create("out"),
+        InputDescriptor.create("in"));
+
+    final String mockManagedVertexId = "R2";
+
+    mockInputVertices.put(r1, eProp1);
+    mockInputVertices.put(m2, eProp2);
+
+    VertexManagerPluginContext mockContext = mock(VertexManagerPluginContext.class);
+    when(mockContext.getInputVertexEdgeProperties()).thenReturn(mockInputVertices);
+    when(mockContext.getVertexName()).thenReturn(mockManagedVertexId);
+    when(mockContext.getVertexNumTasks(mockManagedVertexId)).thenReturn(2);
+    when(mockContext.getVertexNumTasks(r1)).thenReturn(3);
+    when(mockContext.getVertexNumTasks(m2)).thenReturn(3);
+
+    final List<Integer> scheduledTasks = Lists.newLinkedList();
+    doAnswer(new ScheduledTasksAnswer(scheduledTasks)).when(
+        mockContext).scheduleTasks(anyList());
+    final Map<String, EdgeManagerPlugin> newEdgeManagers =
+        new HashMap<String, EdgeManagerPlugin>();
+    doAnswer(new reconfigVertexAnswer(mockContext, mockManagedVertexId,
+        newEdgeManagers)).when(mockContext).reconfigureVertex(
+        anyInt(), any(VertexLocationHint.class), anyMap());
+
+    manager = createManager(conf, mockContext, true, 100 * MB, 0.001f, 0.001f);
+    manager.onVertexStarted(emptyCompletions);
+    manager.onVertexStateUpdated(new VertexStateUpdate(r1, VertexState.CONFIGURED));
+    manager.onSourceTaskCompleted(createTaskAttemptIdentifier(r1, 0));
+    manager.onSourceTaskCompleted(createTaskAttemptIdentifier(r1, 1));
+
+    // expected partition sizes are 150MB and 600MB, i.e. 8 tasks of 100MB
+    long[] sizes = new long[]{(50 * MB), (200 * MB)};
+    manager.onVertexManagerEventReceived(
+        getVertexManagerEvent(sizes, 250 * MB, r1, true));
+    manager.onVertexManagerEventReceived(
+        getVertexManagerEvent(sizes, 250 * MB, r1, true));
+
+    manager.onVertexStateUpdated(new VertexStateUpdate(m2, VertexState.CONFIGURED));
+    manager.onSourceTaskCompleted(createTaskAttemptIdentifier(m2, 0));
+
+    // capped at 4 tasks: the first partition is processed by one task, the
+    // second one is split across 3 tasks by source task
+    verify(mockContext).reconfigureVertex(eq(4), any(VertexLocationHint.class),
+        anyMap());
+    Assert.assertEquals(0, manager.pendingTasks.size());
+    Assert.assertEquals(4, scheduledTasks.size());
+    // the tasks of the larger partition are scheduled first
+    Assert.assertEquals(0, scheduledTasks.get(3).intValue());
+
+    EdgeManagerPluginOnDemand edgeManager =
+        (EdgeManagerPluginOnDemand) newEdgeManagers.values().iterator().next();
+    Assert.assertEquals(2, edgeManager.getNumSourceTaskPhysicalOutputs(0));
+    Assert.assertEquals(3, edgeManager.getNumDestinationTaskPhysicalInputs(0));
+    for (int destinationTaskIndex = 1; destinationTaskIndex < 4;
+        destinationTaskIndex++) {
+      Assert.assertEquals(1,
+          edgeManager.getNumDestinationTaskPhysicalInputs(destinationTaskIndex));
+      int sourceTaskIndex = destinationTaskIndex - 1;
+      EdgeManagerPluginOnDemand.CompositeEventRouteMetadata routeMetadata =
+          edgeManager.routeCompositeDataMovementEventToDestination(
+              sourceTaskIndex, destinationTaskIndex);
+      Assert.assertEquals(1, routeMetadata.getCount());
+      Assert.assertEquals(1, routeMetadata.getSource());
+      Assert.assertEquals(0, routeMetadata.getTarget());
+    }
+  }
+
   private static ShuffleVertexManager createManager(Configuration conf,
       VertexManagerPluginContext context, Float min, Float max) {
     return createManager(conf, context, true, 1000l, min, max);
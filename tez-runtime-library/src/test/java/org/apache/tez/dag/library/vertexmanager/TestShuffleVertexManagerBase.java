@@ -460,6 +460,25 @@ public class TestShuffleVertexManagerBase extends TestShuffleVertexManagerUtils
     Assert.assertEquals(2, routeMetadata.getNumEvents());
     Assert.assertEquals(2, routeMetadata.getTargetIndices()[0]);
     Assert.assertEquals(3, routeMetadata.getTargetIndices()[1]);
+
+    // batched composite routing matches routing each source task separately
+    edgeManager.prepareForRouting();
+    int[] srcTaskIndices = new int[] {1, 0, 1};
+    int[] counts = new int[2];
+    int[] targets = new int[2];
+    int[] sources = new int[2];
+    for (int destTask = 0; destTask < 2; destTask++) {
+      edgeManager.routeCompositeDataMovementEventsToDestination(srcTaskIndices, 1, 2, destTask,
+          counts, targets, sources);
+      for (int i = 0; i < 2; i++) {
+        EdgeManagerPluginOnDemand.CompositeEventRouteMetadata compositeMetadata =
+            edgeManager.routeCompositeDataMovementEventToDestination(srcTaskIndices[i + 1],
+                destTask);
+        Assert.assertEquals(compositeMetadata.getCount(), counts[i]);
+        Assert.assertEquals(compositeMetadata.getTarget(), targets[i]);
+        Assert.assertEquals(compositeMetadata.getSource(), sources[i]);
+      }
+    }
   }
 
   @Test(timeout = 5000)
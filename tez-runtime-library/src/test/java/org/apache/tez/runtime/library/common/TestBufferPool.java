@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.tez.runtime.api.ObjectRegistry;
+import org.apache.tez.runtime.api.OutputContext;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class TestBufferPool {
+
+  @Test(timeout = 5000)
+  public void testLeaseReusesReleasedBuffers() {
+    BufferPool pool = new BufferPool(1024);
+    byte[] buffer = pool.lease(100);
+    assertEquals(100, buffer.length);
+    pool.release(buffer);
+    assertEquals(100, pool.getRetainedBytes());
+
+    assertSame(buffer, pool.lease(100));
+    assertEquals(0, pool.getRetainedBytes());
+    pool.release(buffer);
+
+    // only buffers of the exact size are handed out again, and a lease of another size drops
+    // the retained buffers
+    byte[] other = pool.lease(200);
+    assertNotSame(buffer, other);
+    assertEquals(0, pool.getRetainedBytes());
+    assertNotSame(buffer, pool.lease(100));
+  }
+
+  @Test(timeout = 5000)
+  public void testEvictionOverCapacity() {
+    BufferPool pool = new BufferPool(1024);
+    byte[] first = pool.lease(512);
+    byte[] second = pool.lease(512);
+    byte[] third = pool.lease(512);
+    pool.release(first);
+    pool.release(second);
+    pool.release(third);
+    // the buffer returned the longest time ago is dropped
+    assertEquals(1024, pool.getRetainedBytes());
+    assertSame(third, pool.lease(512));
+    assertSame(second, pool.lease(512));
+    assertNotSame(first, pool.lease(512));
+
+    // buffers larger than the pool are never retained
+    pool.release(new byte[2048]);
+    assertEquals(0, pool.getRetainedBytes());
+  }
+
+  @Test(timeout = 5000)
+  public void testGetFromObjectRegistry() {
+    final Map<String, Object> cache = new HashMap<String, Object>();
+    ObjectRegistry registry = mock(ObjectRegistry.class);
+    when(registry.get(anyString())).thenAnswer(new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) {
+        return cache.get(invocation.getArguments()[0]);
+      }
+    });
+    doAnswer(new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) {
+        Object[] args = invocation.getArguments();
+        return cache.put((String) args[0], args[1]);
+      }
+    }).when(registry).cacheForSession(anyString(), any());
+    OutputContext context = mock(OutputContext.class);
+    when(context.getObjectRegistry()).thenReturn(registry);
+
+    Configuration conf = new Configuration(false);
+    assertNull(BufferPool.get(context, conf));
+
+    conf.setFloat(TezRuntimeConfiguration.TEZ_RUNTIME_CONTAINER_BUFFER_POOL_FRACTION, 0.1f);
+    BufferPool pool = BufferPool.get(context, conf);
+    assertNotNull(pool);
+    assertSame(pool, cache.get(BufferPool.REGISTRY_KEY));
+    assertSame(pool, BufferPool.get(context, conf));
+
+    when(context.getObjectRegistry()).thenReturn(null);
+    assertNull(BufferPool.get(context, conf));
+  }
+}
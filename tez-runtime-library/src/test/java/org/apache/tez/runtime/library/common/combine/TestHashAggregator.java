@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.combine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounters;
+import org.apache.tez.runtime.library.api.KeyValueWriter;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
+import org.apache.tez.runtime.library.common.sort.impl.TezRawKeyValueIterator;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestHashAggregator {
+
+  private Configuration conf;
+  private CollectingWriter output;
+  private TezCounters counters;
+
+  @Before
+  public void setup() {
+    conf = new Configuration();
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_KEY_CLASS, Text.class.getName());
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_VALUE_CLASS, IntWritable.class.getName());
+    output = new CollectingWriter();
+    counters = new TezCounters();
+  }
+
+  @Test(timeout = 10000)
+  public void testAggregation() throws IOException {
+    HashAggregator aggregator = new HashAggregator(conf, new SumCombiner(), 64 * 1024, output,
+        output, counters, "test");
+    Map<String, Integer> expected = new HashMap<String, Integer>();
+    Random random = new Random(3);
+    for (int i = 0; i < 100000; i++) {
+      String key = "key_" + random.nextInt(500);
+      write(aggregator, key, i % 10, expected);
+    }
+    assertTrue(aggregator.getMemoryUsed() <= 64 * 1024);
+    aggregator.close();
+
+    assertEquals(expected, output.sums);
+    assertTrue(aggregator.getNumFlushes() > 1);
+    // each flush writes at most one record per key
+    assertTrue(output.numRecords <= 500 * aggregator.getNumFlushes());
+    // output counters count the records written to the aggregator, not the combined ones
+    assertEquals(100000, counters.findCounter(TaskCounter.OUTPUT_RECORDS).getValue());
+    // combine records are counted by the combiner
+    assertEquals(0, counters.findCounter(TaskCounter.COMBINE_INPUT_RECORDS).getValue());
+    assertEquals(0, counters.findCounter(TaskCounter.COMBINE_OUTPUT_RECORDS).getValue());
+  }
+
+  @Test(timeout = 10000)
+  public void testLowReduction() throws IOException {
+    HashAggregator aggregator = new HashAggregator(conf, new SumCombiner(), 16 * 1024, output,
+        output, counters, "test");
+    Map<String, Integer> expected = new HashMap<String, Integer>();
+    for (int i = 0; i < 10000; i++) {
+      write(aggregator, "key_" + i, 1, expected);
+    }
+    // distinct keys only, aggregation is turned off at the first flush
+    assertFalse(aggregator.isAggregating());
+    assertEquals(1, aggregator.getNumFlushes());
+    aggregator.close();
+    assertEquals(expected, output.sums);
+    assertEquals(10000, output.numRecords);
+  }
+
+  @Test(timeout = 10000)
+  public void testRawCombiner() throws IOException {
+    conf.setFloat(TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_MIN_REDUCTION, 0);
+    HashAggregator aggregator = new HashAggregator(conf, new RawPassThroughCombiner(), 4096,
+        output, output, counters, "test");
+    Map<String, Integer> expected = new HashMap<String, Integer>();
+    for (int i = 0; i < 5000; i++) {
+      write(aggregator, "key_" + (i % 7), i, expected);
+    }
+    // a record which does not fit into the table on its own goes straight to the writer
+    StringBuilder largeKey = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      largeKey.append('k');
+    }
+    write(aggregator, largeKey.toString(), 1, expected);
+    assertTrue(aggregator.isAggregating());
+    aggregator.close();
+    assertEquals(expected, output.sums);
+    assertEquals(5001, output.numRecords);
+    // the large record bypasses the table, and is counted by the sorter
+    assertEquals(5000, counters.findCounter(TaskCounter.OUTPUT_RECORDS).getValue());
+    // serialized Text of 5 characters and IntWritable
+    assertEquals(5000 * (6 + 4), counters.findCounter(TaskCounter.OUTPUT_BYTES).getValue());
+  }
+
+  private void write(HashAggregator aggregator, String key, int value,
+      Map<String, Integer> expected) throws IOException {
+    aggregator.write(new Text(key), new IntWritable(value));
+    Integer sum = expected.get(key);
+    expected.put(key, (sum == null ? 0 : sum) + value);
+  }
+
+  private static class CollectingWriter extends KeyValueWriter {
+    final Map<String, Integer> sums = new HashMap<String, Integer>();
+    int numRecords;
+
+    @Override
+    public void write(Object key, Object value) {
+      numRecords++;
+      Integer sum = sums.get(key.toString());
+      sums.put(key.toString(), (sum == null ? 0 : sum) + ((IntWritable) value).get());
+    }
+  }
+
+  /**
+   * Sums the values of consecutive equal keys.
+   */
+  private static class SumCombiner implements Combiner {
+    @Override
+    public void combine(TezRawKeyValueIterator rawIter, IFile.Writer writer)
+        throws IOException {
+      Text key = new Text();
+      IntWritable value = new IntWritable();
+      DataInputBuffer keyBuffer = new DataInputBuffer();
+      Text currentKey = null;
+      int sum = 0;
+      while (rawIter.next()) {
+        if (!rawIter.isSameKey()) {
+          if (currentKey != null) {
+            writer.append(currentKey, new IntWritable(sum));
+          }
+          DataInputBuffer rawKey = rawIter.getKey();
+          keyBuffer.reset(rawKey.getData(), rawKey.getPosition(),
+              rawKey.getLength() - rawKey.getPosition());
+          key.readFields(keyBuffer);
+          currentKey = new Text(key);
+          sum = 0;
+        }
+        value.readFields(rawIter.getValue());
+        sum += value.get();
+      }
+      if (currentKey != null) {
+        writer.append(currentKey, new IntWritable(sum));
+      }
+    }
+  }
+
+  /**
+   * Writes all records back, in their serialized form.
+   */
+  private static class RawPassThroughCombiner implements Combiner {
+    @Override
+    public void combine(TezRawKeyValueIterator rawIter, IFile.Writer writer)
+        throws IOException {
+      while (rawIter.next()) {
+        writer.append(rawIter.isSameKey() ? IFile.REPEAT_KEY : rawIter.getKey(),
+            rawIter.getValue());
+      }
+    }
+  }
+}
@@ -25,6 +25,10 @@ import java.nio.charset.Charset;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -79,4 +83,55 @@ public class TestProxyComparator {
       }
     }
   }
+
+  @Test(timeout = 5000)
+  public void testTextProxyComparator() {
+    Text[] texts = new Text[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      texts[i] = new Text(keys[i]);
+    }
+    verifyProxy(new TezTextComparator(), texts);
+  }
+
+  @Test(timeout = 5000)
+  public void testIntWritableProxyComparator() {
+    int[] values = { Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -65536, -2, -1, 0, 1, 2,
+        65536, Integer.MAX_VALUE - 1, Integer.MAX_VALUE };
+    IntWritable[] writables = new IntWritable[values.length];
+    for (int i = 0; i < values.length; i++) {
+      writables[i] = new IntWritable(values[i]);
+    }
+    verifyProxy(new TezIntWritableComparator(), writables);
+  }
+
+  @Test(timeout = 5000)
+  public void testLongWritableProxyComparator() {
+    long[] values = { Long.MIN_VALUE, Long.MIN_VALUE + 1, -(1L << 40), -1, 0, 1, (1L << 33),
+        (1L << 40), Long.MAX_VALUE - 1, Long.MAX_VALUE };
+    LongWritable[] writables = new LongWritable[values.length];
+    for (int i = 0; i < values.length; i++) {
+      writables[i] = new LongWritable(values[i]);
+    }
+    verifyProxy(new TezLongWritableComparator(), writables);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K extends WritableComparable> void verifyProxy(
+      ProxyComparator<K> comparator, K[] values) {
+    for (K l : values) {
+      for (K r : values) {
+        final int lproxy = comparator.getProxy(l);
+        final int rproxy = comparator.getProxy(r);
+        assertTrue(String.format("(%s) %d is negative", l, lproxy), lproxy >= 0);
+        if (lproxy < rproxy) {
+          assertTrue(String.format("(%s) %d < (%s) %d", l, lproxy, r, rproxy),
+              l.compareTo(r) < 0);
+        }
+        if (lproxy > rproxy) {
+          assertTrue(String.format("(%s) %d > (%s) %d", l, lproxy, r, rproxy),
+              l.compareTo(r) > 0);
+        }
+      }
+    }
+  }
 }
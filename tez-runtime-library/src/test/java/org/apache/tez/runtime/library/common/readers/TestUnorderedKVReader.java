@@ -22,7 +22,10 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
 import org.apache.tez.common.counters.TaskCounter;
 import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.common.counters.TezCounters;
@@ -33,6 +36,7 @@ import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.shuffle.FetchedInput;
 import org.apache.tez.runtime.library.common.shuffle.FetchedInputCallback;
 import org.apache.tez.runtime.library.common.shuffle.LocalDiskFetchedInput;
+import org.apache.tez.runtime.library.common.shuffle.MappedIFileReader;
 import org.apache.tez.runtime.library.common.shuffle.impl.ShuffleManager;
 import org.apache.tez.runtime.library.common.sort.impl.IFile;
 import org.junit.After;
@@ -45,9 +49,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.LinkedList;
 
 import static junit.framework.TestCase.fail;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
@@ -130,9 +138,16 @@ public class TestUnorderedKVReader {
   }
 
   private void createIFile(Path path, int recordCount) throws IOException {
+    createIFile(path, recordCount, 0, null);
+  }
+
+  private void createIFile(Path path, int recordCount, int offset, CompressionCodec codec)
+      throws IOException {
     FSDataOutputStream out = localFs.create(path);
+    // leading bytes, as if the segment was one partition in a larger output file
+    out.write(new byte[offset]);
     IFile.Writer writer =
-        new IFile.Writer(defaultConf, out, Text.class, Text.class, null, null, null, true);
+        new IFile.Writer(defaultConf, out, Text.class, Text.class, codec, null, null, true);
 
     for (int i = 0; i < recordCount; i++) {
       writer.append(new Text("Key_" + i), new Text("Value_" + i));
@@ -188,4 +203,149 @@ public class TestUnorderedKVReader {
     }
   }
 
+  @Test(timeout = 5000)
+  public void testMappedLocalRead() throws Exception {
+    int offset = 1000;
+    int recordCount = 10000;
+    createIFile(outputPath, recordCount, offset, null);
+    Configuration conf = new Configuration(defaultConf);
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_LOCAL_FETCH_MMAP_ENABLED, true);
+    UnorderedKVReader<Text, Text> reader = createReader(conf, offset, null);
+
+    int counter = 0;
+    while (reader.next()) {
+      assertEquals(new Text("Key_" + counter), reader.getCurrentKey());
+      assertEquals(new Text("Value_" + counter), reader.getCurrentValue());
+      counter++;
+    }
+    assertEquals(recordCount, counter);
+  }
+
+  @Test(timeout = 5000)
+  public void testMappedLocalReadFallback() throws Exception {
+    Configuration conf = new Configuration(defaultConf);
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_LOCAL_FETCH_MMAP_ENABLED, true);
+
+    // uncompressed segments are mapped
+    createIFile(outputPath, 10, 0, null);
+    IFile.Reader reader = createReader(conf, 0, null).openIFileReader(createFetchedInput(0));
+    assertTrue(reader instanceof MappedIFileReader);
+    reader.close();
+
+    // segments above the limit are read through streams
+    conf.setLong(TezRuntimeConfiguration.TEZ_RUNTIME_LOCAL_FETCH_MMAP_MAX_BYTES, compLen - 1);
+    reader = createReader(conf, 0, null).openIFileReader(createFetchedInput(0));
+    assertFalse(reader instanceof MappedIFileReader);
+    reader.close();
+
+    // segments are mapped as long as the open ones stay within the limit
+    conf.setLong(TezRuntimeConfiguration.TEZ_RUNTIME_LOCAL_FETCH_MMAP_MAX_BYTES,
+        compLen * 2 - 1);
+    UnorderedKVReader<Text, Text> budgetReader = createReader(conf, 0, null);
+    IFile.Reader first = budgetReader.openIFileReader(createFetchedInput(0));
+    assertTrue(first instanceof MappedIFileReader);
+    assertEquals(compLen, budgetReader.getMappedBytes());
+    reader = budgetReader.openIFileReader(createFetchedInput(0));
+    assertFalse(reader instanceof MappedIFileReader);
+    reader.close();
+    first.close();
+    assertEquals(0, budgetReader.getMappedBytes());
+    reader = budgetReader.openIFileReader(createFetchedInput(0));
+    assertTrue(reader instanceof MappedIFileReader);
+    reader.close();
+    assertEquals(0, budgetReader.getMappedBytes());
+
+    // compressed segments are read through the codec streams
+    conf.setLong(TezRuntimeConfiguration.TEZ_RUNTIME_LOCAL_FETCH_MMAP_MAX_BYTES, compLen * 2);
+    DefaultCodec codec = new DefaultCodec();
+    codec.setConf(defaultConf);
+    createIFile(outputPath, 10, 0, codec);
+    UnorderedKVReader<Text, Text> kvReader = createReader(conf, 0, codec);
+    reader = kvReader.openIFileReader(createFetchedInput(0));
+    assertFalse(reader instanceof MappedIFileReader);
+    reader.close();
+    int counter = 0;
+    while (kvReader.next()) {
+      counter++;
+    }
+    assertEquals(10, counter);
+  }
+
+  @Test(timeout = 5000)
+  public void testMappedLocalReadChecksumError() throws Exception {
+    createIFile(outputPath, 100, 0, null);
+    // flip a byte in the last value
+    RandomAccessFile file = new RandomAccessFile(outputPath.toUri().getPath(), "rw");
+    try {
+      long pos = compLen - 8;
+      file.seek(pos);
+      int b = file.read();
+      file.seek(pos);
+      file.write(b ^ 0xff);
+    } finally {
+      file.close();
+    }
+
+    IFile.Reader reader = new MappedIFileReader(createFetchedInput(0).map());
+    DataInputBuffer key = new DataInputBuffer();
+    DataInputBuffer value = new DataInputBuffer();
+    try {
+      while (reader.nextRawKey(key)) {
+        reader.nextRawValue(value);
+      }
+      fail("Expected a checksum error");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("Checksum Error"));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void testMappedLocalReadAfterClose() throws Exception {
+    createIFile(outputPath, 10, 0, null);
+    IFile.Reader reader = new MappedIFileReader(createFetchedInput(0).map());
+    DataInputBuffer key = new DataInputBuffer();
+    DataInputBuffer value = new DataInputBuffer();
+    assertTrue(reader.nextRawKey(key));
+    reader.nextRawValue(value);
+    reader.close();
+    // the mapping is released, reads have to fail instead of touching it
+    try {
+      reader.nextRawKey(key);
+      fail("Expected reads to fail after close");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("closed"));
+    }
+    try {
+      reader.nextRawValue(value);
+      fail("Expected reads to fail after close");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("closed"));
+    }
+  }
+
+  private LocalDiskFetchedInput createFetchedInput(int offset) throws IOException {
+    return new LocalDiskFetchedInput(offset, compLen, new InputAttemptIdentifier(0, 0),
+        outputPath, defaultConf, mock(FetchedInputCallback.class));
+  }
+
+  private UnorderedKVReader<Text, Text> createReader(Configuration conf, int offset,
+      CompressionCodec codec) throws IOException, InterruptedException {
+    LocalDiskFetchedInput fetchedInput = spy(createFetchedInput(offset));
+    doNothing().when(fetchedInput).free();
+    final LinkedList<LocalDiskFetchedInput> inputs = new LinkedList<LocalDiskFetchedInput>();
+    inputs.add(fetchedInput);
+
+    ShuffleManager manager = mock(ShuffleManager.class);
+    doAnswer(new Answer() {
+      @Override public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+        return (inputs.isEmpty()) ? null : inputs.remove();
+      }
+    }).when(manager).getNextInput();
+    TezCounter inputRecords = new TezCounters().findCounter(TaskCounter.INPUT_RECORDS_PROCESSED);
+    return new UnorderedKVReader<Text, Text>(manager, conf, codec, false, -1, -1, inputRecords,
+        mock(InputContext.class));
+  }
+
 }
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.shuffle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class TestDirectBufferArena {
+
+  @Test(timeout = 5000)
+  public void testSizeClasses() {
+    assertEquals(0, DirectBufferArena.sizeClass(0));
+    assertEquals(0, DirectBufferArena.sizeClass(4096));
+    assertEquals(1, DirectBufferArena.sizeClass(4097));
+    assertEquals(1, DirectBufferArena.sizeClass(8192));
+    assertEquals(DirectBufferArena.MAX_BUFFER_SHIFT - DirectBufferArena.MIN_BUFFER_SHIFT,
+        DirectBufferArena.sizeClass(1 << DirectBufferArena.MAX_BUFFER_SHIFT));
+    assertEquals(-1, DirectBufferArena.sizeClass((1 << DirectBufferArena.MAX_BUFFER_SHIFT) + 1));
+  }
+
+  @Test(timeout = 5000)
+  public void testReuse() {
+    DirectBufferArena arena = new DirectBufferArena(16384);
+    ByteBuffer first = arena.allocate(5000);
+    assertTrue(first.isDirect());
+    assertEquals(0, first.position());
+    assertEquals(5000, first.limit());
+    assertEquals(8192, first.capacity());
+
+    arena.release(first);
+    assertEquals(8192, arena.getRetainedBytes());
+    // buffers of the same size class are reused
+    ByteBuffer second = arena.allocate(7000);
+    assertSame(first, second);
+    assertEquals(7000, second.limit());
+    assertEquals(0, arena.getRetainedBytes());
+    // but not across size classes
+    arena.release(second);
+    ByteBuffer small = arena.allocate(100);
+    assertNotSame(second, small);
+    assertEquals(4096, small.capacity());
+    arena.release(small);
+    assertEquals(8192 + 4096, arena.getRetainedBytes());
+  }
+
+  @Test(timeout = 5000)
+  public void testRetentionLimit() {
+    DirectBufferArena arena = new DirectBufferArena(10000);
+    ByteBuffer first = arena.allocate(8192);
+    ByteBuffer second = arena.allocate(8192);
+    arena.release(first);
+    // retaining the first buffer while the second is in use would exceed the limit, so it is
+    // freed
+    assertEquals(0, arena.getRetainedBytes());
+    arena.release(second);
+    assertEquals(8192, arena.getRetainedBytes());
+    assertEquals(0, arena.getUsedBytes());
+
+    arena.close();
+    assertEquals(0, arena.getRetainedBytes());
+    // buffers released after close are not retained
+    ByteBuffer third = arena.allocate(100);
+    arena.release(third);
+    assertEquals(0, arena.getRetainedBytes());
+  }
+
+  @Test(timeout = 5000)
+  public void testCapacity() {
+    assertEquals(4096, DirectBufferArena.getCapacity(0));
+    assertEquals(4096, DirectBufferArena.getCapacity(600));
+    assertEquals(8192, DirectBufferArena.getCapacity(4097));
+    int unpooled = (1 << DirectBufferArena.MAX_BUFFER_SHIFT) + 1;
+    assertEquals(unpooled, DirectBufferArena.getCapacity(unpooled));
+  }
+
+  @Test(timeout = 5000)
+  public void testRetainedFreedOnMiss() {
+    DirectBufferArena arena = new DirectBufferArena(16384);
+    ByteBuffer first = arena.allocate(8192);
+    ByteBuffer second = arena.allocate(4096);
+    assertEquals(8192 + 4096, arena.getUsedBytes());
+    arena.release(first);
+    arena.release(second);
+    assertEquals(8192 + 4096, arena.getRetainedBytes());
+
+    // a buffer of another size class only fits once the retained buffers have been freed
+    ByteBuffer large = arena.allocate(16384);
+    assertEquals(0, arena.getRetainedBytes());
+    assertEquals(16384, arena.getUsedBytes());
+    arena.release(large);
+    assertEquals(16384, arena.getRetainedBytes());
+    assertEquals(0, arena.getUsedBytes());
+
+    // buffers in use are charged against the limit as well
+    ByteBuffer third = arena.allocate(4096);
+    assertEquals(0, arena.getRetainedBytes());
+    ByteBuffer fourth = arena.allocate(4096);
+    arena.release(third);
+    assertEquals(4096, arena.getRetainedBytes());
+    arena.release(fourth);
+    assertEquals(8192, arena.getRetainedBytes());
+    arena.close();
+  }
+
+  @Test(timeout = 5000)
+  public void testStreams() throws Exception {
+    DirectBufferArena arena = new DirectBufferArena(0);
+    ByteBuffer buffer = arena.allocate(3);
+    DirectBufferArena.newOutputStream(buffer).write(new byte[] {1, 2, 3});
+    try {
+      DirectBufferArena.newOutputStream(buffer).write(new byte[4]);
+      fail("Writes should be bounded by the limit of the buffer");
+    } catch (EOFException e) {
+      // expected
+    }
+    byte[] read = new byte[4];
+    assertEquals(3, DirectBufferArena.newInputStream(buffer).read(read, 0, 4));
+    assertEquals(1, read[0]);
+    assertEquals(3, read[2]);
+    assertEquals(0, buffer.position());
+    arena.release(buffer);
+  }
+}
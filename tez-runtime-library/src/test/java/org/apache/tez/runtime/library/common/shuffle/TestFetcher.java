@@ -47,6 +47,7 @@ import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.yarn.api.records.ApplicationId;
 import org.apache.tez.dag.api.TezConfiguration;
+import org.apache.tez.runtime.library.api.PushShuffleService;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
@@ -232,6 +233,58 @@ public class TestFetcher {
         srcAttempts[SECOND_FAILED_ATTEMPT_IDX]);
   }
 
+  @Test(timeout = 3000)
+  public void testPushedFetch() throws Exception {
+    CompositeInputAttemptIdentifier[] srcAttempts = {
+        new CompositeInputAttemptIdentifier(0, 1, InputAttemptIdentifier.PATH_PREFIX + "pathComponent_0", 1),
+        new CompositeInputAttemptIdentifier(1, 2, InputAttemptIdentifier.PATH_PREFIX + "pathComponent_1", 1),
+        new CompositeInputAttemptIdentifier(2, 3, InputAttemptIdentifier.PATH_PREFIX + "pathComponent_2", 1)
+    };
+    final int FAILED_ATTEMPT_IDX = 1;
+
+    TezConfiguration conf = new TezConfiguration();
+    int partition = 42;
+    FetcherCallback callback = mock(FetcherCallback.class);
+    PushShuffleService pushShuffleService = mock(PushShuffleService.class);
+    for (int p = 0; p < srcAttempts.length; p++) {
+      PushShuffleService.Segment segment = (p == FAILED_ATTEMPT_IDX) ? null
+          : new PushShuffleService.Segment(new Path("pushed_" + partition), p * 10, p * 1000,
+              p * 100);
+      doReturn(segment).when(pushShuffleService).locate("shuffleId", partition,
+          srcAttempts[p].getPathComponent());
+    }
+    Fetcher.FetcherBuilder builder = new Fetcher.FetcherBuilder(callback, null, null,
+        ApplicationId.newInstance(0, 1), 1, null, "fetcherTest", conf, true, HOST, PORT,
+        false, true, true);
+    builder.setPushShuffleService(pushShuffleService, "shuffleId");
+    builder.assignWork(PushShuffle.SERVICE_HOST, PushShuffle.SERVICE_PORT, partition, 1,
+        new ArrayList<InputAttemptIdentifier>(Arrays.asList(srcAttempts)));
+    Fetcher fetcher = spy(builder.build());
+    doNothing().when(fetcher).shutdown();
+
+    FetchResult fetchResult = fetcher.call();
+
+    verify(fetcher, never()).setupLocalDiskFetch();
+    for (int p = 0; p < srcAttempts.length; p++) {
+      if (p == FAILED_ATTEMPT_IDX) {
+        continue;
+      }
+      ArgumentCaptor<LocalDiskFetchedInput> capturedFetchedInput =
+          ArgumentCaptor.forClass(LocalDiskFetchedInput.class);
+      verify(callback).fetchSucceeded(eq(PushShuffle.SERVICE_HOST), eq(srcAttempts[p].expand(0)),
+          capturedFetchedInput.capture(), eq(p * 100L), eq(p * 1000L), anyLong());
+      LocalDiskFetchedInput f = capturedFetchedInput.getValue();
+      Assert.assertEquals("pushed_" + partition, f.getInputFile().toString());
+      Assert.assertEquals(p * 10, f.getStartOffset());
+      Assert.assertEquals(p * 100, f.getSize());
+    }
+    // inputs which could not be read are failed, for the ShuffleManager to fetch them from
+    // their producers, instead of being put back to the push shuffle service's host
+    verify(callback).fetchFailed(eq(PushShuffle.SERVICE_HOST),
+        eq(srcAttempts[FAILED_ATTEMPT_IDX]), eq(false));
+    Assert.assertFalse(fetchResult.getPendingInputs().iterator().hasNext());
+  }
+
   protected void verifyFetchSucceeded(FetcherCallback callback, CompositeInputAttemptIdentifier srcAttempId, Configuration conf) throws IOException {
     String pathComponent = srcAttempId.getPathComponent();
     int len = pathComponent.length();
@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.shuffle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestHostThroughputTracker {
+
+  private static final HostPort HOST1 = new HostPort("host1", 0);
+  private static final HostPort HOST2 = new HostPort("host2", 0);
+  private static final HostPort HOST3 = new HostPort("host3", 0);
+  private static final HostPort SLOW_HOST = new HostPort("slowHost", 0);
+
+  @Test(timeout = 5000)
+  public void testMedians() {
+    HostThroughputTracker tracker = new HostThroughputTracker();
+    assertEquals(-1, tracker.getPeerMedianRate(HOST1), 0);
+    assertEquals(-1, tracker.getPeerMedianFetchTime(HOST1), 0);
+
+    tracker.fetchCompleted(HOST1, 1000, 10, 10);
+    tracker.fetchCompleted(HOST1, 1000, 30, 40);
+    tracker.fetchCompleted(HOST2, 1000, 100, 100);
+    tracker.fetchCompleted(HOST3, 4000, 40, 40);
+    // 50, 10 and 100 B/ms, 20, 100 and 40 ms per output
+    assertEquals(50, tracker.getPeerMedianRate(SLOW_HOST), 0);
+    assertEquals(40, tracker.getPeerMedianFetchTime(SLOW_HOST), 0);
+    // the host itself is left out
+    assertEquals(55, tracker.getPeerMedianRate(HOST1), 0);
+    assertEquals(70, tracker.getPeerMedianFetchTime(HOST1), 0);
+    assertEquals(40, tracker.getLastCompletionTime(HOST1));
+    assertEquals(0, tracker.getLastCompletionTime(SLOW_HOST));
+  }
+
+  @Test(timeout = 5000)
+  public void testStraggling() {
+    HostThroughputTracker tracker = new HostThroughputTracker();
+    // nothing to compare with
+    assertFalse(tracker.isStraggling(SLOW_HOST, 100000, 0.2f));
+
+    tracker.fetchCompleted(HOST1, 1000, 10, 10);
+    tracker.fetchCompleted(HOST2, 1000, 10, 10);
+    // a host which has not returned any output straggles by the time spent on its first fetch
+    assertFalse(tracker.isStraggling(SLOW_HOST, 49, 0.2f));
+    assertTrue(tracker.isStraggling(SLOW_HOST, 51, 0.2f));
+
+    // once it has, by its rate, including the fetch in progress
+    tracker.fetchCompleted(SLOW_HOST, 10000, 50, 100);
+    assertFalse(tracker.isStraggling(SLOW_HOST, 0, 0.2f));
+    assertFalse(tracker.isStraggling(SLOW_HOST, 440, 0.2f));
+    assertTrue(tracker.isStraggling(SLOW_HOST, 460, 0.2f));
+  }
+}
@@ -24,10 +24,14 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -38,8 +42,11 @@ import java.util.List;
 import java.util.concurrent.ExecutorService;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.security.token.Token;
 import org.apache.tez.common.TezCommonUtils;
 import org.apache.tez.common.TezExecutors;
@@ -54,12 +61,18 @@ import org.apache.tez.dag.api.TezConstants;
 import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.ExecutionContext;
 import org.apache.tez.runtime.api.InputContext;
+import org.apache.tez.runtime.api.events.CompositeRoutedDataMovementEvent;
 import org.apache.tez.runtime.api.events.DataMovementEvent;
 import org.apache.tez.runtime.library.common.CompositeInputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.shuffle.FetchedInputAllocator;
+import org.apache.tez.runtime.library.common.shuffle.FetchedInputCallback;
+import org.apache.tez.runtime.library.common.shuffle.MemoryFetchedInput;
 import org.apache.tez.runtime.library.common.shuffle.ShuffleUtils;
+import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.InMemoryReader;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
 import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataProto;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -176,6 +189,62 @@ public class TestShuffleInputEventHandlerImpl {
     verify(shuffleManager).addKnownInput(eq(HOST), eq(PORT), eq(expectedIdentifier2), eq(0));
   }
 
+  @Test(timeout = 5000)
+  public void testDataInEvent() throws IOException {
+    InputContext inputContext = mock(InputContext.class);
+    ShuffleManager shuffleManager = mock(ShuffleManager.class);
+    FetchedInputAllocator inputAllocator = mock(FetchedInputAllocator.class);
+
+    ShuffleInputEventHandlerImpl handler = new ShuffleInputEventHandlerImpl(inputContext,
+        shuffleManager, inputAllocator, null, false, 0, true);
+
+    DataOutputBuffer ifileData = new DataOutputBuffer();
+    IFile.Writer writer = new IFile.Writer(conf, new FSDataOutputStream(ifileData, null),
+        Text.class, Text.class, null, null, null);
+    writer.append(new Text("key"), new Text("value"));
+    writer.close();
+    DataProto data = DataProto.newBuilder()
+        .setRawLength((int) writer.getRawLength())
+        .setCompressedLength((int) writer.getCompressedLength())
+        .setData(ByteString.copyFrom(ifileData.getData(), 0, ifileData.getLength()))
+        .build();
+
+    int taskIndex = 1;
+    InputAttemptIdentifier expectedIdentifier = new InputAttemptIdentifier(taskIndex, 0,
+        PATH_COMPONENT);
+    MemoryFetchedInput fetchedInput = new MemoryFetchedInput(data.getRawLength(),
+        expectedIdentifier, mock(FetchedInputCallback.class));
+    doReturn(fetchedInput).when(inputAllocator).allocate(data.getRawLength(),
+        data.getCompressedLength(), expectedIdentifier);
+
+    DataMovementEventPayloadProto.Builder builder = DataMovementEventPayloadProto.newBuilder();
+    builder.setHost(HOST);
+    builder.setPort(PORT);
+    builder.setPathComponent(PATH_COMPONENT);
+    builder.setData(data);
+    Event dme = CompositeRoutedDataMovementEvent.create(0, taskIndex, 1, 0,
+        builder.build().toByteString().asReadOnlyByteBuffer());
+    handler.handleEvents(Collections.singletonList(dme));
+
+    verify(shuffleManager, never()).addKnownInput(anyString(), anyInt(),
+        any(CompositeInputAttemptIdentifier.class), anyInt());
+    verify(shuffleManager).fetchSucceeded(eq(HOST + ":" + PORT), eq(expectedIdentifier),
+        eq(fetchedInput), eq((long) data.getCompressedLength()), eq((long) data.getRawLength()),
+        eq(0L));
+
+    InMemoryReader reader = new InMemoryReader(null, expectedIdentifier,
+        fetchedInput.getBytes(), 0, (int) fetchedInput.getSize());
+    DataInputBuffer keyIn = new DataInputBuffer();
+    DataInputBuffer valIn = new DataInputBuffer();
+    Text text = new Text();
+    assertTrue(reader.nextRawKey(keyIn));
+    text.readFields(keyIn);
+    assertEquals("key", text.toString());
+    reader.nextRawValue(valIn);
+    text.readFields(valIn);
+    assertEquals("value", text.toString());
+    assertFalse(reader.nextRawKey(keyIn));
+  }
 
   private InputContext createInputContext() throws IOException {
     DataOutputBuffer port_dob = new DataOutputBuffer();
@@ -21,11 +21,13 @@ package org.apache.tez.runtime.library.common.shuffle.impl;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -57,13 +59,16 @@ import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.ExecutionContext;
 import org.apache.tez.runtime.api.InputContext;
 import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.library.api.PushShuffleService;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.CompositeInputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.shuffle.FetchedInput;
 import org.apache.tez.runtime.library.common.shuffle.FetchedInputAllocator;
 import org.apache.tez.runtime.library.common.shuffle.Fetcher;
 import org.apache.tez.runtime.library.common.shuffle.FetchResult;
 import org.apache.tez.runtime.library.common.shuffle.InputHost;
+import org.apache.tez.runtime.library.common.shuffle.PushShuffle;
 import org.apache.tez.runtime.library.common.shuffle.ShuffleUtils;
 import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.DataMovementEventPayloadProto;
 import org.junit.After;
@@ -214,6 +219,54 @@ public class TestShuffleManager {
     verify(inputContext, atLeast(3)).notifyProgress();
   }
 
+  @Test(timeout = 5000)
+  public void testPushedInputFallback() throws Exception {
+    conf.setClass(TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_PUSH_SERVICE_CLASS,
+        EmptyPushShuffleService.class, PushShuffleService.class);
+    InputContext inputContext = createInputContext();
+    ShuffleManager shuffleManager = spy(createShuffleManager(inputContext, 1));
+    CompositeInputAttemptIdentifier srcAttempt =
+        new CompositeInputAttemptIdentifier(0, 0, PATH_COMPONENT, 1);
+
+    // pushed inputs are read from the push shuffle service's host
+    shuffleManager.addKnownPushedInput(FETCHER_HOST, PORT, srcAttempt, 0);
+    verify(shuffleManager).addKnownInput(PushShuffle.SERVICE_HOST, PushShuffle.SERVICE_PORT,
+        srcAttempt, 0);
+
+    // and fetched from their producers if they cannot be, without failing the producer
+    shuffleManager.fetchFailed(PushShuffle.SERVICE_HOST, srcAttempt, false);
+    verify(shuffleManager).addKnownInput(FETCHER_HOST, PORT, srcAttempt, 0);
+    verify(inputContext, never()).sendEvents(anyListOf(Event.class));
+
+    // a failure of the fetch from the producer is reported
+    shuffleManager.fetchFailed(FETCHER_HOST, srcAttempt, false);
+    verify(inputContext).sendEvents(anyListOf(Event.class));
+  }
+
+  /**
+   * Push shuffle service which has not received any outputs.
+   */
+  public static class EmptyPushShuffleService implements PushShuffleService {
+    @Override
+    public void initialize(Configuration conf) {
+    }
+
+    @Override
+    public void push(String shuffleId, int partition, String pathComponent, InputStream segment,
+        long rawLength, long partLength) throws IOException {
+      throw new IOException("Not supported");
+    }
+
+    @Override
+    public Segment locate(String shuffleId, int partition, String pathComponent) {
+      return null;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
   private ShuffleManagerForTest createShuffleManager(
       InputContext inputContext, int expectedNumOfPhysicalInputs)
           throws IOException {
@@ -18,9 +18,14 @@
 
 package org.apache.tez.runtime.library.common.shuffle.impl;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.UUID;
 
 import org.slf4j.Logger;
@@ -29,7 +34,9 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.tez.common.TezRuntimeFrameworkConfigs;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.tez.runtime.library.common.shuffle.FetchedInput;
+import org.apache.tez.runtime.library.common.shuffle.MemoryFetchedInput;
 import org.junit.Test;
 
 public class TestSimpleFetchedInputAllocator {
@@ -86,4 +93,46 @@ public class TestSimpleFetchedInputAllocator {
     assertEquals(FetchedInput.Type.DISK, fi5.getType());
   }
 
+  @Test(timeout = 5000)
+  public void testOffHeapAllocation() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setFloat(TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_FETCH_BUFFER_PERCENT, 1.0f);
+    conf.setFloat(TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_MEMORY_LIMIT_PERCENT, 1.0f);
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_OFF_HEAP_BUFFERS_ENABLED, true);
+    conf.setStrings(TezRuntimeFrameworkConfigs.LOCAL_DIRS, "/tmp/" + this.getClass().getName());
+
+    SimpleFetchedInputAllocator inputManager = new SimpleFetchedInputAllocator(
+        "srcName", UUID.randomUUID().toString(), 123, conf, 1024 * 1024, 6000);
+
+    MemoryFetchedInput fi1 = (MemoryFetchedInput) inputManager.allocate(3000, 1,
+        new InputAttemptIdentifier(1, 1));
+    assertEquals(FetchedInput.Type.MEMORY, fi1.getType());
+    assertNull(fi1.getBytes());
+    assertTrue(fi1.getBuffer().isDirect());
+    assertEquals(3000, fi1.getSize());
+
+    byte[] data = new byte[3000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    OutputStream out = fi1.getOutputStream();
+    out.write(data);
+    out.close();
+    byte[] read = new byte[data.length];
+    InputStream in = fi1.getInputStream();
+    IOUtils.readFully(in, read, 0, read.length);
+    assertEquals(-1, in.read());
+    assertArrayEquals(data, read);
+
+    // the 4096 byte buffer is charged rather than the 3000 bytes asked for, so a second input
+    // is over the limit until the buffer has been freed
+    assertEquals(FetchedInput.Type.DISK,
+        inputManager.allocate(3000, 1, new InputAttemptIdentifier(2, 1)).getType());
+    fi1.commit();
+    fi1.free();
+    assertNull(fi1.getBuffer());
+    assertEquals(FetchedInput.Type.MEMORY,
+        inputManager.allocate(3000, 1, new InputAttemptIdentifier(3, 1)).getType());
+    inputManager.close();
+  }
 }
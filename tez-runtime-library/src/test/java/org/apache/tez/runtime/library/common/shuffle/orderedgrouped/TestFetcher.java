@@ -36,9 +36,12 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.net.ConnectException;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.Collection;
@@ -49,17 +52,38 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseStatus;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 
 import org.apache.tez.http.HttpConnection;
 import org.apache.tez.http.HttpConnectionParams;
+import org.apache.tez.http.async.netty.EventLoopHttpClient;
 import org.apache.tez.common.counters.TezCounter;
 import org.apache.tez.runtime.library.common.CompositeInputAttemptIdentifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.yarn.api.records.ApplicationId;
 import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.common.security.JobTokenSecretManager;
@@ -68,6 +92,7 @@ import org.apache.tez.runtime.api.InputContext;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.security.SecureShuffleUtils;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
 import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
 import org.apache.tez.runtime.library.exceptions.FetcherReadTimeoutException;
 import org.apache.tez.runtime.library.common.shuffle.ShuffleUtils;
@@ -758,4 +783,567 @@ public class TestFetcher {
       Assert.assertTrue(expectedSrcAttempts[count++].toString().compareTo(key) == 0);
     }
   }
+
+  @Test(timeout = 5000)
+  public void testAsyncCopyAcrossBodyParts() throws Exception {
+    Configuration conf = new TezConfiguration();
+    CompressionCodec codec = ReflectionUtils.newInstance(DefaultCodec.class, conf);
+    ShuffleScheduler scheduler = mock(ShuffleScheduler.class);
+    MergeManager merger = mock(MergeManager.class);
+    Shuffle shuffle = mock(Shuffle.class);
+    MapHost host = new MapHost(HOST, PORT, 1, 1);
+    FetcherOrderedGrouped fetcher = new FetcherOrderedGrouped(null, scheduler, merger, shuffle,
+        null, false, 0, codec, conf, false, HOST, PORT, "src vertex", host, ioErrsCounter,
+        wrongLengthErrsCounter, badIdErrsCounter, wrongMapErrsCounter, connectionErrsCounter,
+        wrongReduceErrsCounter, APP_ID, DAG_ID, false, false, true, true);
+
+    // memory uncompressed, memory compressed, disk
+    List<InputAttemptIdentifier> srcAttempts = createAsyncSrcAttempts(scheduler, host, 3);
+    byte[] plain = createIFile(conf, null);
+    byte[] compressed = createIFile(conf, codec);
+    long rawLength = plain.length - 4;
+    List<MapOutput> outputs = mockReserve(merger, new MapOutput.Type[] {
+        MapOutput.Type.MEMORY, MapOutput.Type.MEMORY, MapOutput.Type.DISK});
+    byte[] response = createAsyncResponse(host, srcAttempts, rawLength,
+        Arrays.asList(plain, compressed, plain));
+
+    SettableFuture<Void> result = SettableFuture.create();
+    fetcher.populateRemainingMap(srcAttempts);
+    FetcherOrderedGrouped.AsyncCopyHandler handler = fetcher.new AsyncCopyHandler(result,
+        MoreExecutors.sameThreadExecutor());
+    Assert.assertEquals(AsyncHandler.STATE.CONTINUE, handler.onStatusReceived(okStatus()));
+    // split headers and bodies across body parts
+    for (int off = 0; off < response.length; off += 3) {
+      Assert.assertEquals(AsyncHandler.STATE.CONTINUE, handler.onBodyPartReceived(
+          bodyPart(Arrays.copyOfRange(response, off, Math.min(off + 3, response.length)))));
+    }
+    handler.onCompleted();
+
+    Assert.assertTrue(result.isDone());
+    result.get();
+    for (int i = 0; i < srcAttempts.size(); i++) {
+      verify(scheduler).copySucceeded(eq(srcAttempts.get(i)), eq(host), anyLong(),
+          eq(rawLength), anyLong(), eq(outputs.get(i)), eq(false));
+    }
+    // in memory outputs hold the data without header and checksum
+    byte[] data = Arrays.copyOfRange(plain, 4, plain.length - 4);
+    Assert.assertArrayEquals(data,
+        Arrays.copyOf(outputs.get(0).getMemory(), data.length));
+    Assert.assertArrayEquals(data,
+        Arrays.copyOf(outputs.get(1).getMemory(), data.length));
+    Assert.assertArrayEquals(plain,
+        ((ByteArrayOutputStream) outputs.get(2).getDisk()).toByteArray());
+    Assert.assertTrue(fetcher.remaining.isEmpty());
+    verify(scheduler, never()).copyFailed(any(InputAttemptIdentifier.class), any(MapHost.class),
+        anyBoolean(), anyBoolean(), anyBoolean());
+    verify(scheduler, never()).putBackKnownMapOutput(any(MapHost.class),
+        any(InputAttemptIdentifier.class));
+    verify(scheduler).freeHost(host);
+  }
+
+  @Test(timeout = 5000)
+  public void testAsyncCopyChecksumError() throws Exception {
+    Configuration conf = new TezConfiguration();
+    ShuffleScheduler scheduler = mock(ShuffleScheduler.class);
+    MergeManager merger = mock(MergeManager.class);
+    Shuffle shuffle = mock(Shuffle.class);
+    MapHost host = new MapHost(HOST, PORT, 1, 1);
+    FetcherOrderedGrouped fetcher = new FetcherOrderedGrouped(null, scheduler, merger, shuffle,
+        null, false, 0, null, conf, false, HOST, PORT, "src vertex", host, ioErrsCounter,
+        wrongLengthErrsCounter, badIdErrsCounter, wrongMapErrsCounter, connectionErrsCounter,
+        wrongReduceErrsCounter, APP_ID, DAG_ID, false, false, true, true);
+
+    List<InputAttemptIdentifier> srcAttempts = createAsyncSrcAttempts(scheduler, host, 3);
+    byte[] plain = createIFile(conf, null);
+    byte[] corrupt = plain.clone();
+    corrupt[corrupt.length / 2]++;
+    List<MapOutput> outputs = mockReserve(merger, new MapOutput.Type[] {
+        MapOutput.Type.MEMORY, MapOutput.Type.MEMORY, MapOutput.Type.MEMORY});
+    byte[] response = createAsyncResponse(host, srcAttempts, plain.length - 4,
+        Arrays.asList(plain, corrupt, plain));
+
+    SettableFuture<Void> result = SettableFuture.create();
+    fetcher.populateRemainingMap(srcAttempts);
+    FetcherOrderedGrouped.AsyncCopyHandler handler = fetcher.new AsyncCopyHandler(result,
+        MoreExecutors.sameThreadExecutor());
+    long ioErrs = ioErrsCounter.getValue();
+    handler.onStatusReceived(okStatus());
+    Assert.assertEquals(AsyncHandler.STATE.ABORT, handler.onBodyPartReceived(bodyPart(response)));
+    // late callbacks are ignored
+    handler.onCompleted();
+
+    Assert.assertTrue(result.isDone());
+    Assert.assertEquals(ioErrs + 1, ioErrsCounter.getValue());
+    verify(scheduler).copySucceeded(eq(srcAttempts.get(0)), eq(host), anyLong(), anyLong(),
+        anyLong(), eq(outputs.get(0)), eq(false));
+    verify(outputs.get(1)).abort();
+    verify(scheduler).copyFailed(srcAttempts.get(1), host, true, false, false);
+    verify(scheduler, times(1)).copyFailed(any(InputAttemptIdentifier.class), any(MapHost.class),
+        anyBoolean(), anyBoolean(), anyBoolean());
+    verify(scheduler).putBackKnownMapOutput(host, srcAttempts.get(1));
+    verify(scheduler).putBackKnownMapOutput(host, srcAttempts.get(2));
+    verify(scheduler).freeHost(host);
+  }
+
+  @Test(timeout = 5000)
+  public void testAsyncCopyCrc32C() throws Exception {
+    Configuration conf = new TezConfiguration();
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_IFILE_CHECKSUM_TYPE, "CRC32C");
+    ShuffleScheduler scheduler = mock(ShuffleScheduler.class);
+    MergeManager merger = mock(MergeManager.class);
+    Shuffle shuffle = mock(Shuffle.class);
+    MapHost host = new MapHost(HOST, PORT, 1, 1);
+    // disk checksums are verified
+    FetcherOrderedGrouped fetcher = new FetcherOrderedGrouped(null, scheduler, merger, shuffle,
+        null, false, 0, null, conf, false, HOST, PORT, "src vertex", host, ioErrsCounter,
+        wrongLengthErrsCounter, badIdErrsCounter, wrongMapErrsCounter, connectionErrsCounter,
+        wrongReduceErrsCounter, APP_ID, DAG_ID, false, false, true, true);
+
+    List<InputAttemptIdentifier> srcAttempts = createAsyncSrcAttempts(scheduler, host, 2);
+    byte[] plain = createIFile(conf, null);
+    Assert.assertEquals('C', plain[2]);
+    List<MapOutput> outputs = mockReserve(merger, new MapOutput.Type[] {
+        MapOutput.Type.DISK, MapOutput.Type.MEMORY});
+    byte[] response = createAsyncResponse(host, srcAttempts, plain.length - 4,
+        Arrays.asList(plain, plain));
+
+    SettableFuture<Void> result = SettableFuture.create();
+    fetcher.populateRemainingMap(srcAttempts);
+    FetcherOrderedGrouped.AsyncCopyHandler handler = fetcher.new AsyncCopyHandler(result,
+        MoreExecutors.sameThreadExecutor());
+    handler.onStatusReceived(okStatus());
+    for (int off = 0; off < response.length; off += 7) {
+      Assert.assertEquals(AsyncHandler.STATE.CONTINUE, handler.onBodyPartReceived(
+          bodyPart(Arrays.copyOfRange(response, off, Math.min(off + 7, response.length)))));
+    }
+    handler.onCompleted();
+
+    Assert.assertTrue(result.isDone());
+    result.get();
+    for (int i = 0; i < srcAttempts.size(); i++) {
+      verify(scheduler).copySucceeded(eq(srcAttempts.get(i)), eq(host), anyLong(), anyLong(),
+          anyLong(), eq(outputs.get(i)), eq(false));
+    }
+    Assert.assertArrayEquals(plain,
+        ((ByteArrayOutputStream) outputs.get(0).getDisk()).toByteArray());
+    byte[] data = Arrays.copyOfRange(plain, 4, plain.length - 4);
+    Assert.assertArrayEquals(data,
+        Arrays.copyOf(outputs.get(1).getMemory(), data.length));
+    verify(scheduler, never()).copyFailed(any(InputAttemptIdentifier.class), any(MapHost.class),
+        anyBoolean(), anyBoolean(), anyBoolean());
+  }
+
+  @Test(timeout = 5000)
+  public void testAsyncCopyOnExecutor() throws Exception {
+    Configuration conf = new TezConfiguration();
+    ShuffleScheduler scheduler = mock(ShuffleScheduler.class);
+    MergeManager merger = mock(MergeManager.class);
+    Shuffle shuffle = mock(Shuffle.class);
+    MapHost host = new MapHost(HOST, PORT, 1, 1);
+    FetcherOrderedGrouped fetcher = new FetcherOrderedGrouped(null, scheduler, merger, shuffle,
+        null, false, 0, null, conf, false, HOST, PORT, "src vertex", host, ioErrsCounter,
+        wrongLengthErrsCounter, badIdErrsCounter, wrongMapErrsCounter, connectionErrsCounter,
+        wrongReduceErrsCounter, APP_ID, DAG_ID, false, false, true, true);
+
+    List<InputAttemptIdentifier> srcAttempts = createAsyncSrcAttempts(scheduler, host, 3);
+    byte[] plain = createIFile(conf, null);
+    byte[] corrupt = plain.clone();
+    corrupt[corrupt.length / 2]++;
+    List<MapOutput> outputs = mockReserve(merger, new MapOutput.Type[] {
+        MapOutput.Type.DISK, MapOutput.Type.MEMORY, MapOutput.Type.MEMORY});
+    byte[] response = createAsyncResponse(host, srcAttempts, plain.length - 4,
+        Arrays.asList(plain, corrupt, plain));
+
+    // hold back the work handed off by the handler
+    final List<Runnable> work = new LinkedList<>();
+    Executor executor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        work.add(command);
+      }
+    };
+    SettableFuture<Void> result = SettableFuture.create();
+    fetcher.populateRemainingMap(srcAttempts);
+    FetcherOrderedGrouped.AsyncCopyHandler handler = fetcher.new AsyncCopyHandler(result,
+        executor);
+    handler.onStatusReceived(okStatus());
+    Assert.assertEquals(AsyncHandler.STATE.CONTINUE,
+        handler.onBodyPartReceived(bodyPart(response)));
+    handler.onCompleted();
+
+    // the whole response has been read, but nothing has been written or completed yet
+    Assert.assertFalse(result.isDone());
+    Assert.assertTrue(fetcher.remaining.isEmpty());
+    Assert.assertEquals(0, ((ByteArrayOutputStream) outputs.get(0).getDisk()).size());
+    verify(scheduler, never()).copySucceeded(any(InputAttemptIdentifier.class),
+        any(MapHost.class), anyLong(), anyLong(), anyLong(), any(MapOutput.class), anyBoolean());
+    verify(scheduler, never()).freeHost(host);
+
+    long ioErrs = ioErrsCounter.getValue();
+    while (!work.isEmpty()) {
+      work.remove(0).run();
+    }
+    Assert.assertTrue(result.isDone());
+    result.get();
+    Assert.assertArrayEquals(plain,
+        ((ByteArrayOutputStream) outputs.get(0).getDisk()).toByteArray());
+    verify(scheduler).copySucceeded(eq(srcAttempts.get(0)), eq(host), anyLong(), anyLong(),
+        anyLong(), eq(outputs.get(0)), eq(false));
+    verify(scheduler).copySucceeded(eq(srcAttempts.get(2)), eq(host), anyLong(), anyLong(),
+        anyLong(), eq(outputs.get(2)), eq(false));
+    // the corrupt output fails once it is completed, and is put back
+    Assert.assertEquals(ioErrs + 1, ioErrsCounter.getValue());
+    verify(outputs.get(1)).abort();
+    verify(scheduler).copyFailed(srcAttempts.get(1), host, true, false, false);
+    verify(scheduler).putBackKnownMapOutput(host, srcAttempts.get(1));
+    verify(scheduler, times(1)).putBackKnownMapOutput(any(MapHost.class),
+        any(InputAttemptIdentifier.class));
+    verify(scheduler).freeHost(host);
+  }
+
+  @Test(timeout = 5000)
+  public void testAsyncConnectionFailure() throws Exception {
+    Configuration conf = new TezConfiguration();
+    ShuffleScheduler scheduler = mock(ShuffleScheduler.class);
+    MergeManager merger = mock(MergeManager.class);
+    Shuffle shuffle = mock(Shuffle.class);
+    MapHost host = new MapHost(HOST, PORT, 1, 1);
+    FetcherOrderedGrouped fetcher = new FetcherOrderedGrouped(null, scheduler, merger, shuffle,
+        null, false, 0, null, conf, false, HOST, PORT, "src vertex", host, ioErrsCounter,
+        wrongLengthErrsCounter, badIdErrsCounter, wrongMapErrsCounter, connectionErrsCounter,
+        wrongReduceErrsCounter, APP_ID, DAG_ID, false, false, true, true);
+
+    List<InputAttemptIdentifier> srcAttempts = createAsyncSrcAttempts(scheduler, host, 2);
+    SettableFuture<Void> result = SettableFuture.create();
+    fetcher.populateRemainingMap(srcAttempts);
+    FetcherOrderedGrouped.AsyncCopyHandler handler = fetcher.new AsyncCopyHandler(result,
+        MoreExecutors.sameThreadExecutor());
+    long connectionErrs = connectionErrsCounter.getValue();
+    handler.onThrowable(new ConnectException("connection refused"));
+
+    Assert.assertTrue(result.isDone());
+    Assert.assertEquals(connectionErrs + 1, connectionErrsCounter.getValue());
+    for (InputAttemptIdentifier srcAttempt : srcAttempts) {
+      verify(scheduler).copyFailed(srcAttempt, host, false, true, false);
+      verify(scheduler).putBackKnownMapOutput(host, srcAttempt);
+    }
+    verify(scheduler).freeHost(host);
+
+    // shutting down a finished fetcher has no effect
+    fetcher.shutDown();
+    verify(scheduler, times(1)).freeHost(host);
+  }
+
+  @Test(timeout = 20000)
+  public void testFetchNextAsync() throws Exception {
+    Configuration conf = new TezConfiguration();
+    ShuffleScheduler scheduler = mock(ShuffleScheduler.class);
+    MergeManager merger = mock(MergeManager.class);
+    Shuffle shuffle = mock(Shuffle.class);
+    final JobTokenSecretManager jobTokenSecretManager = new JobTokenSecretManager(
+        JobTokenSecretManager.createSecretKey("secret".getBytes()));
+
+    HttpServer server = HttpServer.create(new InetSocketAddress(HOST, 0), 0);
+    MapHost host = new MapHost(HOST, server.getAddress().getPort(), 1, 1);
+    List<InputAttemptIdentifier> srcAttempts = createAsyncSrcAttempts(scheduler, host, 2);
+    doReturn(srcAttempts).when(scheduler).getMapsForHost(host);
+    byte[] plain = createIFile(conf, null);
+    List<MapOutput> outputs = mockReserve(merger, new MapOutput.Type[] {
+        MapOutput.Type.MEMORY, MapOutput.Type.DISK});
+    byte[] response = createAsyncResponse(host, srcAttempts, plain.length - 4,
+        Arrays.asList(plain, plain));
+    startShuffleServer(server, response, jobTokenSecretManager);
+
+    HttpConnectionParams httpConnectionParams = ShuffleUtils.getHttpConnectionParams(conf);
+    EventLoopHttpClient client = new EventLoopHttpClient(httpConnectionParams, 1, "test");
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      FetcherOrderedGrouped fetcher = new FetcherOrderedGrouped(httpConnectionParams, scheduler,
+          merger, shuffle, jobTokenSecretManager, false, 0, null, conf, false, HOST, PORT,
+          "src vertex", host, ioErrsCounter, wrongLengthErrsCounter, badIdErrsCounter,
+          wrongMapErrsCounter, connectionErrsCounter, wrongReduceErrsCounter, APP_ID, DAG_ID,
+          false, false, true, true);
+      Assert.assertFalse(fetcher.isLocalDiskFetch());
+      fetcher.fetchNextAsync(client.getClient(), executor).get();
+    } finally {
+      executor.shutdownNow();
+      client.close();
+      server.stop(0);
+    }
+
+    for (int i = 0; i < srcAttempts.size(); i++) {
+      verify(scheduler).copySucceeded(eq(srcAttempts.get(i)), eq(host), anyLong(), anyLong(),
+          anyLong(), eq(outputs.get(i)), eq(false));
+    }
+    Assert.assertArrayEquals(plain,
+        ((ByteArrayOutputStream) outputs.get(1).getDisk()).toByteArray());
+    verify(scheduler, never()).copyFailed(any(InputAttemptIdentifier.class), any(MapHost.class),
+        anyBoolean(), anyBoolean(), anyBoolean());
+    verify(scheduler).freeHost(host);
+  }
+
+  @Test(timeout = 20000)
+  public void testFetchNextAsyncSuspendsReading() throws Exception {
+    Configuration conf = new TezConfiguration();
+    final JobTokenSecretManager jobTokenSecretManager = new JobTokenSecretManager(
+        JobTokenSecretManager.createSecretKey("secret".getBytes()));
+
+    // a large disk output from the slow host, whose disk writes are held back
+    HttpServer slowServer = HttpServer.create(new InetSocketAddress(HOST, 0), 0);
+    MapHost slowHost = new MapHost(HOST, slowServer.getAddress().getPort(), 1, 1);
+    ShuffleScheduler slowScheduler = mock(ShuffleScheduler.class);
+    MergeManager slowMerger = mock(MergeManager.class);
+    List<InputAttemptIdentifier> slowAttempts = createAsyncSrcAttempts(slowScheduler, slowHost,
+        1);
+    doReturn(slowAttempts).when(slowScheduler).getMapsForHost(slowHost);
+    byte[] large = createIFile(conf, null, 100000);
+    Assert.assertTrue(large.length > 2 * FetcherOrderedGrouped.MAX_PENDING_WRITE_BYTES);
+    List<MapOutput> slowOutputs = mockReserve(slowMerger,
+        new MapOutput.Type[] {MapOutput.Type.DISK});
+    startShuffleServer(slowServer, createAsyncResponse(slowHost, slowAttempts,
+        large.length - 4, Arrays.asList(large)), jobTokenSecretManager);
+
+    HttpServer fastServer = HttpServer.create(new InetSocketAddress(HOST, 0), 0);
+    MapHost fastHost = new MapHost(HOST, fastServer.getAddress().getPort(), 1, 1);
+    ShuffleScheduler fastScheduler = mock(ShuffleScheduler.class);
+    MergeManager fastMerger = mock(MergeManager.class);
+    List<InputAttemptIdentifier> fastAttempts = createAsyncSrcAttempts(fastScheduler, fastHost,
+        1);
+    doReturn(fastAttempts).when(fastScheduler).getMapsForHost(fastHost);
+    byte[] plain = createIFile(conf, null);
+    List<MapOutput> fastOutputs = mockReserve(fastMerger,
+        new MapOutput.Type[] {MapOutput.Type.MEMORY});
+    startShuffleServer(fastServer, createAsyncResponse(fastHost, fastAttempts,
+        plain.length - 4, Arrays.asList(plain)), jobTokenSecretManager);
+
+    HttpConnectionParams httpConnectionParams = ShuffleUtils.getHttpConnectionParams(conf);
+    // both hosts are fetched on the same IO thread
+    EventLoopHttpClient client = new EventLoopHttpClient(httpConnectionParams, 1, "test");
+    final CountDownLatch diskLatch = new CountDownLatch(1);
+    ExecutorService slowExecutor = Executors.newSingleThreadExecutor();
+    slowExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          diskLatch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    try {
+      FetcherOrderedGrouped slowFetcher = new FetcherOrderedGrouped(httpConnectionParams,
+          slowScheduler, slowMerger, mock(Shuffle.class), jobTokenSecretManager, false, 0, null,
+          conf, false, HOST, PORT, "src vertex", slowHost, ioErrsCounter,
+          wrongLengthErrsCounter, badIdErrsCounter, wrongMapErrsCounter, connectionErrsCounter,
+          wrongReduceErrsCounter, APP_ID, DAG_ID, false, false, true, true);
+      ListenableFuture<Void> slowFetch = slowFetcher.fetchNextAsync(client.getClient(),
+          slowExecutor);
+      while (slowFetcher.asyncCopyHandler == null
+          || !slowFetcher.asyncCopyHandler.isReadingSuspended()) {
+        Thread.sleep(10);
+      }
+
+      // the IO thread is not held up by the slow host
+      FetcherOrderedGrouped fastFetcher = new FetcherOrderedGrouped(httpConnectionParams,
+          fastScheduler, fastMerger, mock(Shuffle.class), jobTokenSecretManager, false, 0, null,
+          conf, false, HOST, PORT, "src vertex", fastHost, ioErrsCounter,
+          wrongLengthErrsCounter, badIdErrsCounter, wrongMapErrsCounter, connectionErrsCounter,
+          wrongReduceErrsCounter, APP_ID, DAG_ID, false, false, true, true);
+      fastFetcher.fetchNextAsync(client.getClient(), MoreExecutors.sameThreadExecutor()).get();
+      verify(fastScheduler).copySucceeded(eq(fastAttempts.get(0)), eq(fastHost), anyLong(),
+          anyLong(), anyLong(), eq(fastOutputs.get(0)), eq(false));
+      Assert.assertFalse(slowFetch.isDone());
+
+      // reading is resumed once the disk catches up
+      diskLatch.countDown();
+      slowFetch.get();
+    } finally {
+      slowExecutor.shutdownNow();
+      client.close();
+      slowServer.stop(0);
+      fastServer.stop(0);
+    }
+    verify(slowScheduler).copySucceeded(eq(slowAttempts.get(0)), eq(slowHost), anyLong(),
+        anyLong(), anyLong(), eq(slowOutputs.get(0)), eq(false));
+    Assert.assertArrayEquals(large,
+        ((ByteArrayOutputStream) slowOutputs.get(0).getDisk()).toByteArray());
+    verify(slowScheduler, never()).copyFailed(any(InputAttemptIdentifier.class),
+        any(MapHost.class), anyBoolean(), anyBoolean(), anyBoolean());
+    verify(slowScheduler).freeHost(slowHost);
+  }
+
+  @Test(timeout = 5000)
+  public void testBatchedCopyMapOutput() throws Exception {
+    Configuration conf = new TezConfiguration();
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_BATCHED_FETCH_ENABLED, true);
+    ShuffleScheduler scheduler = mock(ShuffleScheduler.class);
+    MergeManager merger = mock(MergeManager.class);
+    Shuffle shuffle = mock(Shuffle.class);
+    MapHost host = new MapHost(HOST, PORT, 0, 3);
+    FetcherOrderedGrouped fetcher = new FetcherOrderedGrouped(null, scheduler, merger, shuffle,
+        null, false, 0, null, conf, false, HOST, PORT, "src vertex", host, ioErrsCounter,
+        wrongLengthErrsCounter, badIdErrsCounter, wrongMapErrsCounter, connectionErrsCounter,
+        wrongReduceErrsCounter, APP_ID, DAG_ID, false, false, true, true);
+
+    CompositeInputAttemptIdentifier srcAttempt = new CompositeInputAttemptIdentifier(0, 0,
+        InputAttemptIdentifier.PATH_PREFIX + "pathComponent_0", 3);
+    for (int partition = 0; partition < 3; partition++) {
+      doReturn(srcAttempt.expand(partition)).when(scheduler).getIdentifierForFetchedOutput(
+          srcAttempt.getPathComponent(), partition);
+    }
+    // the middle partition is empty
+    byte[] plain = createIFile(conf, null);
+    long rawLength = plain.length - 4;
+    BatchedShuffleHeader header = new BatchedShuffleHeader(srcAttempt.getPathComponent(), 0, 3);
+    header.setPartition(0, plain.length, rawLength);
+    header.setPartition(1, 0, 0);
+    header.setPartition(2, plain.length, rawLength);
+    DataOutputBuffer out = new DataOutputBuffer();
+    header.write(out);
+    Assert.assertEquals(header.writeLength(), out.getLength());
+    out.write(plain);
+    out.write(plain);
+    byte[] response = Arrays.copyOf(out.getData(), out.getLength());
+
+    // blocking copy
+    List<MapOutput> outputs = mockReserve(merger, new MapOutput.Type[] {
+        MapOutput.Type.MEMORY, MapOutput.Type.DISK});
+    fetcher.populateRemainingMap(Arrays.<InputAttemptIdentifier>asList(srcAttempt));
+    Assert.assertNull(fetcher.copyMapOutput(host,
+        new DataInputStream(new ByteArrayInputStream(response)), srcAttempt));
+    verify(scheduler).copySucceeded(eq(srcAttempt.expand(0)), eq(host), eq((long) plain.length),
+        eq(rawLength), anyLong(), eq(outputs.get(0)), eq(false));
+    verify(scheduler).copySucceeded(eq(srcAttempt.expand(2)), eq(host), eq((long) plain.length),
+        eq(rawLength), anyLong(), eq(outputs.get(1)), eq(false));
+    Assert.assertTrue(fetcher.remaining.isEmpty());
+
+    // event driven copy, with the index header split across body parts
+    outputs.clear();
+    fetcher.populateRemainingMap(Arrays.<InputAttemptIdentifier>asList(srcAttempt));
+    SettableFuture<Void> result = SettableFuture.create();
+    FetcherOrderedGrouped.AsyncCopyHandler handler = fetcher.new AsyncCopyHandler(result,
+        MoreExecutors.sameThreadExecutor());
+    Assert.assertEquals(AsyncHandler.STATE.CONTINUE, handler.onStatusReceived(okStatus()));
+    for (int off = 0; off < response.length; off += 3) {
+      Assert.assertEquals(AsyncHandler.STATE.CONTINUE, handler.onBodyPartReceived(
+          bodyPart(Arrays.copyOfRange(response, off, Math.min(off + 3, response.length)))));
+    }
+    handler.onCompleted();
+    result.get();
+    verify(scheduler).copySucceeded(eq(srcAttempt.expand(0)), eq(host), eq((long) plain.length),
+        eq(rawLength), anyLong(), eq(outputs.get(0)), eq(false));
+    verify(scheduler).copySucceeded(eq(srcAttempt.expand(2)), eq(host), eq((long) plain.length),
+        eq(rawLength), anyLong(), eq(outputs.get(1)), eq(false));
+    Assert.assertArrayEquals(plain,
+        ((ByteArrayOutputStream) outputs.get(1).getDisk()).toByteArray());
+    Assert.assertTrue(fetcher.remaining.isEmpty());
+    verify(scheduler, never()).copyFailed(any(InputAttemptIdentifier.class), any(MapHost.class),
+        anyBoolean(), anyBoolean(), anyBoolean());
+  }
+
+  private List<InputAttemptIdentifier> createAsyncSrcAttempts(ShuffleScheduler scheduler,
+      MapHost host, int count) {
+    List<InputAttemptIdentifier> srcAttempts = new LinkedList<>();
+    for (int i = 0; i < count; i++) {
+      InputAttemptIdentifier srcAttempt = new InputAttemptIdentifier(i, 0,
+          InputAttemptIdentifier.PATH_PREFIX + "pathComponent_" + i);
+      srcAttempts.add(srcAttempt);
+      doReturn(srcAttempt).when(scheduler).getIdentifierForFetchedOutput(
+          srcAttempt.getPathComponent(), host.getPartitionId());
+    }
+    return srcAttempts;
+  }
+
+  private static byte[] createIFile(Configuration conf, CompressionCodec codec)
+      throws IOException {
+    return createIFile(conf, codec, 100);
+  }
+
+  private static byte[] createIFile(Configuration conf, CompressionCodec codec, int records)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    IFile.Writer writer = new IFile.Writer(conf, new FSDataOutputStream(out, null),
+        Text.class, Text.class, codec, null, null);
+    for (int i = 0; i < records; i++) {
+      writer.append(new Text("key" + i), new Text("value" + i));
+    }
+    writer.close();
+    return out.toByteArray();
+  }
+
+  private static List<MapOutput> mockReserve(MergeManager merger, final MapOutput.Type[] types)
+      throws IOException {
+    final List<MapOutput> outputs = new LinkedList<>();
+    doAnswer(new Answer<MapOutput>() {
+      @Override
+      public MapOutput answer(InvocationOnMock invocation) throws Throwable {
+        Object[] args = invocation.getArguments();
+        MapOutput mapOutput = mock(MapOutput.class);
+        MapOutput.Type type = types[outputs.size()];
+        doReturn(type).when(mapOutput).getType();
+        doReturn(args[0]).when(mapOutput).getAttemptIdentifier();
+        if (type == MapOutput.Type.MEMORY) {
+          doReturn(new byte[(int) (long) (Long) args[1]]).when(mapOutput).getMemory();
+        } else {
+          doReturn(new ByteArrayOutputStream()).when(mapOutput).getDisk();
+        }
+        outputs.add(mapOutput);
+        return mapOutput;
+      }
+    }).when(merger).reserve(any(InputAttemptIdentifier.class), anyLong(), anyLong(), anyInt());
+    return outputs;
+  }
+
+  /**
+   * Response in the composite fetch format, one partition per map.
+   */
+  private static byte[] createAsyncResponse(MapHost host, List<InputAttemptIdentifier> srcAttempts,
+      long rawLength, List<byte[]> segments) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    for (int i = 0; i < srcAttempts.size(); i++) {
+      byte[] segment = segments.get(i);
+      WritableUtils.writeVInt(out, 1);
+      new ShuffleHeader(srcAttempts.get(i).getPathComponent(), segment.length, rawLength,
+          host.getPartitionId()).write(out);
+      out.write(segment);
+    }
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  /**
+   * Serves the response to every fetch, with valid shuffle headers.
+   */
+  private static void startShuffleServer(HttpServer server, final byte[] response,
+      final JobTokenSecretManager jobTokenSecretManager) {
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        String encHash = exchange.getRequestHeaders().getFirst(
+            SecureShuffleUtils.HTTP_HEADER_URL_HASH);
+        exchange.getResponseHeaders().set(SecureShuffleUtils.HTTP_HEADER_REPLY_URL_HASH,
+            SecureShuffleUtils.hashFromString(encHash, jobTokenSecretManager));
+        exchange.getResponseHeaders().set(ShuffleHeader.HTTP_HEADER_NAME,
+            ShuffleHeader.DEFAULT_HTTP_HEADER_NAME);
+        exchange.getResponseHeaders().set(ShuffleHeader.HTTP_HEADER_VERSION,
+            ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION);
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+        exchange.getResponseBody().write(response);
+        exchange.close();
+      }
+    });
+    server.start();
+  }
+
+  private static HttpResponseStatus okStatus() {
+    HttpResponseStatus status = mock(HttpResponseStatus.class);
+    doReturn(HttpURLConnection.HTTP_OK).when(status).getStatusCode();
+    return status;
+  }
+
+  private static HttpResponseBodyPart bodyPart(byte[] bytes) {
+    HttpResponseBodyPart bodyPart = mock(HttpResponseBodyPart.class);
+    doReturn(bytes).when(bodyPart).getBodyPartBytes();
+    return bodyPart;
+  }
 }
@@ -20,6 +20,7 @@ package org.apache.tez.runtime.library.common.shuffle.orderedgrouped;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.atLeastOnce;
@@ -55,9 +56,11 @@ import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.runtime.api.InputContext;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+import org.apache.tez.runtime.library.common.shuffle.DirectBufferArena;
 import org.apache.tez.runtime.library.common.shuffle.ShuffleUtils;
 import org.apache.tez.runtime.library.common.sort.impl.IFile;
 import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
+import org.apache.tez.runtime.library.common.sort.impl.TezRawKeyValueIterator;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -257,6 +260,78 @@ public class TestMergeManager {
     assertEquals(data1.length + data2.length, mergeManager.getUsedMemory());
   }
 
+  @Test(timeout=20000)
+  public void testOffHeapMemoryMerge() throws Throwable {
+    Configuration conf = new TezConfiguration(defaultConf);
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS, false);
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_KEY_CLASS, IntWritable.class.getName());
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_VALUE_CLASS, IntWritable.class.getName());
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_ENABLE_MEMTOMEM, true);
+    conf.setInt(TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_MEMTOMEM_SEGMENTS, 2);
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_OFF_HEAP_BUFFERS_ENABLED, true);
+
+    Path localDir = new Path(workDir, "local");
+    localFs.mkdirs(localDir);
+    conf.setStrings(TezRuntimeFrameworkConfigs.LOCAL_DIRS, localDir.toString());
+
+    FileSystem localFs = FileSystem.getLocal(conf);
+    LocalDirAllocator localDirAllocator =
+        new LocalDirAllocator(TezRuntimeFrameworkConfigs.LOCAL_DIRS);
+    InputContext inputContext = createMockInputContext(UUID.randomUUID().toString());
+
+    MergeManager mergeManager =
+        new MergeManager(conf, localFs, localDirAllocator, inputContext, null, null, null, null,
+            mock(ExceptionReporter.class), 2000000, null, false, -1);
+    mergeManager.configureAndStart();
+
+    long totalSize = 0;
+    for (int numEntries : new int[] {10, 20}) {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      IFile.Writer writer = new IFile.Writer(conf, new FSDataOutputStream(baos, null),
+          IntWritable.class, IntWritable.class, null, null, null);
+      for (int i = 0; i < numEntries; ++i) {
+        writer.append(new IntWritable(i), new IntWritable(i));
+      }
+      writer.close();
+      int rawLength = (int) writer.getRawLength();
+      int compressedLength = (int) writer.getCompressedLength();
+
+      InputAttemptIdentifier identifier = new InputAttemptIdentifier(numEntries, 0);
+      MapOutput mapOutput = mergeManager.reserve(identifier, rawLength, compressedLength, 0);
+      assertEquals(MapOutput.Type.MEMORY, mapOutput.getType());
+      assertNull(mapOutput.getMemory());
+      assertTrue(mapOutput.getMemoryBuffer().isDirect());
+      ShuffleUtils.shuffleToMemory(mapOutput.getMemoryBuffer(),
+          new ByteArrayInputStream(baos.toByteArray()), rawLength, compressedLength, null,
+          false, 0, LOG, identifier);
+      mapOutput.commit();
+      totalSize += rawLength;
+    }
+
+    // the merged output is held off heap as well, and the capacity of its buffer is in use
+    mergeManager.waitForMemToMemMerge();
+    assertEquals(totalSize, mergeManager.getCommitMemory());
+    assertEquals(DirectBufferArena.getCapacity((int) totalSize), mergeManager.getUsedMemory());
+
+    TezRawKeyValueIterator iter = mergeManager.close(true);
+    IntWritable key = new IntWritable();
+    IntWritable value = new IntWritable();
+    int records = 0;
+    int previousKey = -1;
+    while (iter.next()) {
+      key.readFields(iter.getKey());
+      value.readFields(iter.getValue());
+      assertTrue(key.get() >= previousKey);
+      assertEquals(key.get(), value.get());
+      previousKey = key.get();
+      records++;
+    }
+    iter.close();
+    assertEquals(30, records);
+    assertEquals(0, mergeManager.getUsedMemory());
+    assertEquals(0, mergeManager.getCommitMemory());
+  }
+
   @Test(timeout = 60000l)
   public void testIntermediateMemoryMerge() throws Throwable {
     Configuration conf = new TezConfiguration(defaultConf);
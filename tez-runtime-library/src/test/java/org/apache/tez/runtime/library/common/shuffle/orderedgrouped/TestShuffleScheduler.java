@@ -15,6 +15,7 @@
 package org.apache.tez.runtime.library.common.shuffle.orderedgrouped;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
@@ -29,7 +30,10 @@ import static org.mockito.Mockito.when;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -44,6 +48,7 @@ import org.apache.hadoop.yarn.api.records.ApplicationId;
 import org.apache.tez.common.TezCommonUtils;
 import org.apache.tez.common.TezExecutors;
 import org.apache.tez.common.TezSharedExecutor;
+import org.apache.tez.common.counters.TaskCounter;
 import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.common.security.JobTokenIdentifier;
 import org.apache.tez.common.security.JobTokenSecretManager;
@@ -51,9 +56,12 @@ import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.runtime.api.ExecutionContext;
 import org.apache.tez.runtime.api.InputContext;
 import org.apache.tez.runtime.api.impl.ExecutionContextImpl;
+import org.apache.tez.runtime.library.api.PushShuffleService;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.common.CompositeInputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
+import org.apache.tez.runtime.library.common.shuffle.HostPort;
+import org.apache.tez.runtime.library.common.shuffle.PushShuffle;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -834,6 +842,169 @@ public class TestShuffleScheduler {
     verify(scheduler.inputContext, atLeast(3)).notifyProgress();
   }
 
+  @Test(timeout = 5000)
+  public void testHedgedFetches() throws Exception {
+    InputContext inputContext = createTezInputContext();
+    Configuration conf = new TezConfiguration();
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_ENABLED, true);
+    conf.setInt(TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_FETCH_HEDGING_MIN_DELAY_MS, 1000);
+    int numInputs = 6;
+    Shuffle shuffle = mock(Shuffle.class);
+    MergeManager mergeManager = mock(MergeManager.class);
+    ShuffleSchedulerForTest scheduler =
+        new ShuffleSchedulerForTest(inputContext, conf, numInputs, shuffle, mergeManager,
+            mergeManager, System.currentTimeMillis(), null, false, 0, "srcName");
+    try {
+      InputAttemptIdentifier[] identifiers = new InputAttemptIdentifier[numInputs];
+      for (int i = 0; i < 3; i++) {
+        identifiers[i] = new CompositeInputAttemptIdentifier(i, 0, "attempt_" + i, 1);
+        scheduler.addKnownMapOutput("host" + i, 10000, 1,
+            (CompositeInputAttemptIdentifier) identifiers[i]);
+      }
+      // inputs 3 and 4 have a second attempt on another host, input 5 does not
+      for (int i = 3; i < numInputs; i++) {
+        identifiers[i] = new CompositeInputAttemptIdentifier(i, 0, "attempt_" + i, 1);
+        scheduler.addKnownMapOutput("slowHost", 10000, 1,
+            (CompositeInputAttemptIdentifier) identifiers[i]);
+      }
+      InputAttemptIdentifier replica3 =
+          new CompositeInputAttemptIdentifier(3, 1, "attempt_3_1", 1);
+      InputAttemptIdentifier replica4 =
+          new CompositeInputAttemptIdentifier(4, 1, "attempt_4_1", 1);
+      scheduler.addKnownMapOutput("replicaHost", 10000, 1,
+          (CompositeInputAttemptIdentifier) replica3);
+      scheduler.addKnownMapOutput("replicaHost", 10000, 1,
+          (CompositeInputAttemptIdentifier) replica4);
+
+      MapHost slowHost = getMapHost(scheduler, "slowHost");
+      MapHost replicaHost = getMapHost(scheduler, "replicaHost");
+      long start = System.currentTimeMillis();
+      assertEquals(3, scheduler.getMapsForHost(slowHost).size());
+      // the attempts on the replica host are held back while the slow host is fetched from
+      assertEquals(0, scheduler.getMapsForHost(replicaHost).size());
+      scheduler.freeHost(replicaHost);
+      assertEquals(2, scheduler.deferredReplicas.size());
+      assertEquals(MapHost.State.IDLE, replicaHost.getState());
+
+      for (int i = 0; i < 3; i++) {
+        MapHost host = getMapHost(scheduler, "host" + i);
+        assertEquals(1, scheduler.getMapsForHost(host).size());
+        scheduler.copySucceeded(identifiers[i], host, 1000, 1000, 10,
+            createMapOutput(identifiers[i]), false);
+      }
+      TezCounters counters = inputContext.getCounters();
+      // a failed fetch releases the other attempt right away, without hedging
+      scheduler.copyFailed(identifiers[4], slowHost, true, false, false);
+      assertEquals(1, scheduler.deferredReplicas.size());
+      assertEquals(MapHost.State.PENDING, replicaHost.getState());
+      assertTrue(scheduler.pendingHosts.contains(replicaHost));
+      assertEquals(0, counters.findCounter(TaskCounter.NUM_HEDGED_SHUFFLE_INPUTS).getValue());
+
+      // too early to hedge
+      scheduler.hedgeStragglingFetches(start + 500);
+      assertEquals(1, scheduler.deferredReplicas.size());
+      // the slow host has not returned anything yet, but has spent far longer on its first
+      // fetch than its peers take per output
+      scheduler.hedgeStragglingFetches(start + 2000);
+      assertEquals(0, scheduler.deferredReplicas.size());
+      assertEquals(1, counters.findCounter(TaskCounter.NUM_HEDGED_SHUFFLE_INPUTS).getValue());
+      List<InputAttemptIdentifier> hedged = scheduler.getMapsForHost(replicaHost);
+      assertEquals(2, hedged.size());
+      assertTrue(hedged.contains(replica3));
+      assertTrue(hedged.contains(replica4));
+
+      // the first copy wins, the bytes of the other copy of a hedged input are wasted
+      scheduler.copySucceeded(replica3, replicaHost, 1000, 1000, 10, createMapOutput(replica3),
+          false);
+      scheduler.copySucceeded(identifiers[3], slowHost, 700, 1000, 5000,
+          createMapOutput(identifiers[3]), false);
+      scheduler.copySucceeded(replica4, replicaHost, 1000, 1000, 10, createMapOutput(replica4),
+          false);
+      scheduler.copySucceeded(identifiers[5], slowHost, 100, 100, 2000,
+          createMapOutput(identifiers[5]), false);
+      assertEquals(700, counters.findCounter(TaskCounter.SHUFFLE_BYTES_HEDGE_WASTED).getValue());
+      assertEquals(0, scheduler.remainingMaps.get());
+      assertTrue(scheduler.inFlightFetches.isEmpty());
+    } finally {
+      scheduler.close();
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void testPushedInputFallback() throws Exception {
+    InputContext inputContext = createTezInputContext();
+    Configuration conf = new TezConfiguration();
+    conf.setClass(TezRuntimeConfiguration.TEZ_RUNTIME_SHUFFLE_PUSH_SERVICE_CLASS,
+        EmptyPushShuffleService.class, PushShuffleService.class);
+    Shuffle shuffle = mock(Shuffle.class);
+    MergeManager mergeManager = mock(MergeManager.class);
+    ShuffleSchedulerForTest scheduler =
+        new ShuffleSchedulerForTest(inputContext, conf, 2, shuffle, mergeManager,
+            mergeManager, System.currentTimeMillis(), null, false, 0, "srcName");
+    try {
+      CompositeInputAttemptIdentifier identifier =
+          new CompositeInputAttemptIdentifier(0, 0, "attempt_0", 1);
+      scheduler.addKnownPushedMapOutput("host0", 10000, 1, identifier);
+      // pushed inputs are read from the push shuffle service's host, which is not a producer
+      MapHost serviceHost = getMapHost(scheduler, PushShuffle.SERVICE_HOST);
+      assertEquals(Collections.singleton(new HostPort("host0", 10000)), scheduler.uniqueHosts);
+      assertEquals(1, scheduler.getMapsForHost(serviceHost).size());
+      try {
+        scheduler.locatePushedSegment("attempt_0", 1);
+        fail("Expected the segment not to be found");
+      } catch (IOException e) {
+        // expected
+      }
+
+      // the input is fetched from its producer instead
+      scheduler.pushedFetchFailed(identifier);
+      scheduler.freeHost(serviceHost);
+      MapHost producer = getMapHost(scheduler, "host0");
+      assertEquals(Collections.singletonList(identifier), scheduler.getMapsForHost(producer));
+      assertEquals(0, scheduler.failedShuffleCounter.getValue());
+    } finally {
+      scheduler.close();
+    }
+  }
+
+  /**
+   * Push shuffle service which has not received any outputs.
+   */
+  public static class EmptyPushShuffleService implements PushShuffleService {
+    @Override
+    public void initialize(Configuration conf) {
+    }
+
+    @Override
+    public void push(String shuffleId, int partition, String pathComponent, InputStream segment,
+        long rawLength, long partLength) throws IOException {
+      throw new IOException("Not supported");
+    }
+
+    @Override
+    public Segment locate(String shuffleId, int partition, String pathComponent) {
+      return null;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private MapHost getMapHost(ShuffleScheduler scheduler, String hostName) {
+    for (MapHost host : scheduler.mapLocations.values()) {
+      if (host.getHost().equals(hostName)) {
+        return host;
+      }
+    }
+    throw new IllegalArgumentException(hostName);
+  }
+
+  private MapOutput createMapOutput(InputAttemptIdentifier identifier) throws IOException {
+    return MapOutput.createMemoryMapOutput(identifier,
+        mock(FetchedInputAllocatorOrderedGrouped.class), 100, false);
+  }
+
   @Test(timeout = 5000)
   public void testShutdown() throws Exception {
     InputContext inputContext = createTezInputContext();
@@ -28,6 +28,7 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.zip.Checksum;
 
 import org.junit.Assert;
 import org.slf4j.Logger;
@@ -44,10 +45,14 @@ import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.BZip2Codec;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.io.serializer.Deserializer;
 import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.util.DataChecksum;
+import org.apache.tez.common.ChecksumTimeUpdater;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.common.InputAttemptIdentifier;
 import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.InMemoryReader;
 import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.InMemoryWriter;
@@ -552,6 +557,208 @@ public class TestIFile {
     readAndVerifyData(writer.getRawLength(), writer.getCompressedLength(), data, codec);
   }
 
+  @Test(timeout = 20000)
+  public void testAdaptiveCompression() throws IOException {
+    Configuration conf = new Configuration(defaultConf);
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_ENABLED, true);
+    conf.setInt(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_SAMPLE_SIZE_BYTES, 4096);
+    Random random = new Random(5);
+
+    // random values do not compress
+    List<byte[]> randomRecords = new ArrayList<byte[]>();
+    for (int i = 0; i < 200; i++) {
+      byte[] value = new byte[100];
+      random.nextBytes(value);
+      randomRecords.add(value);
+    }
+    // repeated text compresses well with either codec
+    List<byte[]> textRecords = new ArrayList<byte[]>();
+    for (int i = 0; i < 200; i++) {
+      textRecords.add(("some repetitive value " + (i % 10)).getBytes("UTF-8"));
+    }
+
+    ByteArrayOutputStream spill = new ByteArrayOutputStream();
+    long[] lengths = new long[8];
+    lengths[0] = writeSegment(conf, spill, randomRecords, AdaptiveCodecSelector.NO_CODEC);
+    lengths[1] = writeSegment(conf, spill, textRecords, AdaptiveCodecSelector.CONFIGURED_CODEC);
+    // empty segments do not need to be compressed
+    lengths[2] = writeSegment(conf, spill, new ArrayList<byte[]>(),
+        AdaptiveCodecSelector.NO_CODEC);
+
+    // writers sharing a selector reuse its choice for the configured number of segments
+    Configuration reuseConf = new Configuration(conf);
+    reuseConf.setInt(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_SEGMENTS_PER_SAMPLE, 2);
+    AdaptiveCodecSelector codecSelector = AdaptiveCodecSelector.create(reuseConf, codec);
+    lengths[3] = writeSegment(reuseConf, spill, textRecords,
+        AdaptiveCodecSelector.CONFIGURED_CODEC, codecSelector);
+    lengths[4] = writeSegment(reuseConf, spill, randomRecords,
+        AdaptiveCodecSelector.CONFIGURED_CODEC, codecSelector);
+    lengths[5] = writeSegment(reuseConf, spill, randomRecords, AdaptiveCodecSelector.NO_CODEC,
+        codecSelector);
+
+    // no strong codec by default, and it has to be worth both the size and the time
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_CODEC,
+        BZip2Codec.class.getName());
+    conf.setFloat(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MIN_GAIN, 0);
+    conf.setFloat(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MAX_SLOWDOWN, 0);
+    lengths[6] = writeSegment(conf, spill, textRecords, AdaptiveCodecSelector.CONFIGURED_CODEC);
+    conf.setFloat(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_MAX_SLOWDOWN,
+        Float.MAX_VALUE);
+    lengths[7] = writeSegment(conf, spill, textRecords, (byte) 4);
+
+    // segments are decoded one after the other, like partitions of a spill
+    byte[] spillBytes = spill.toByteArray();
+    List<List<byte[]>> expected = Arrays.asList(randomRecords, textRecords,
+        new ArrayList<byte[]>(), textRecords, randomRecords, randomRecords, textRecords,
+        textRecords);
+    int offset = 0;
+    for (int i = 0; i < lengths.length; i++) {
+      Reader reader = new Reader(new ByteArrayInputStream(spillBytes, offset,
+          (int) lengths[i]), lengths[i], codec, null, null, false, 0, -1);
+      verifyRawRecords(reader, expected.get(i));
+      offset += lengths[i];
+    }
+    assertEquals(spillBytes.length, offset);
+  }
+
+  @Test(timeout = 5000)
+  public void testAdaptiveCodecSelector() throws IOException {
+    Configuration conf = new Configuration(defaultConf);
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_STRONG_CODEC,
+        "org.apache.hadoop.io.compress.SomeCodec");
+    try {
+      new AdaptiveCodecSelector(conf, codec);
+      fail("Should not have allowed an unknown strong codec");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_ENABLED, false);
+    assertNull(AdaptiveCodecSelector.create(conf, codec));
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_COMPRESS_ADAPTIVE_ENABLED, true);
+    assertNull(AdaptiveCodecSelector.create(conf, null));
+    assertNull(AdaptiveCodecSelector.getCodec(AdaptiveCodecSelector.NO_CODEC, codec));
+    assertSame(codec, AdaptiveCodecSelector.getCodec(AdaptiveCodecSelector.CONFIGURED_CODEC,
+        codec));
+    assertEquals(BZip2Codec.class, AdaptiveCodecSelector.getCodec((byte) 4, codec).getClass());
+    try {
+      AdaptiveCodecSelector.getCodec((byte) 100, codec);
+      fail("Should not have allowed an unknown codec id");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Writes records with random keys to a single IFile segment, checks which codec has been
+   * chosen for it, and checks that it can be read to memory.
+   *
+   * @return length of the segment
+   */
+  private long writeSegment(Configuration conf, ByteArrayOutputStream spill,
+      List<byte[]> values, byte expectedCodecId) throws IOException {
+    return writeSegment(conf, spill, values, expectedCodecId,
+        AdaptiveCodecSelector.create(conf, codec));
+  }
+
+  private long writeSegment(Configuration conf, ByteArrayOutputStream spill,
+      List<byte[]> values, byte expectedCodecId, AdaptiveCodecSelector codecSelector)
+      throws IOException {
+    ByteArrayOutputStream segment = new ByteArrayOutputStream();
+    Writer writer = new Writer(conf, new FSDataOutputStream(segment, null), Text.class,
+        IntWritable.class, codec, null, null, false, codecSelector);
+    DataInputBuffer key = new DataInputBuffer();
+    DataInputBuffer value = new DataInputBuffer();
+    for (int i = 0; i < values.size(); i++) {
+      byte[] keyBytes = ("key" + i).getBytes("UTF-8");
+      key.reset(keyBytes, keyBytes.length);
+      value.reset(values.get(i), values.get(i).length);
+      writer.append(key, value);
+    }
+    writer.close();
+    byte[] segmentBytes = segment.toByteArray();
+    assertEquals(segmentBytes.length, writer.getCompressedLength());
+    assertEquals(expectedCodecId, segmentBytes[IFile.HEADER.length - 1]);
+
+    byte[] decoded = new byte[(int) writer.getRawLength()];
+    IFile.Reader.readToMemory(decoded, new ByteArrayInputStream(segmentBytes),
+        segmentBytes.length, codec, false, 0);
+    verifyRawRecords(new InMemoryReader(null, new InputAttemptIdentifier(0, 0), decoded, 0,
+        decoded.length), values);
+
+    spill.write(segmentBytes);
+    return segmentBytes.length;
+  }
+
+  private void verifyRawRecords(Reader reader, List<byte[]> values) throws IOException {
+    DataInputBuffer key = new DataInputBuffer();
+    DataInputBuffer value = new DataInputBuffer();
+    int numRecords = 0;
+    while (reader.nextRawKey(key)) {
+      reader.nextRawValue(value);
+      byte[] expected = values.get(numRecords++);
+      assertArrayEquals(expected, Arrays.copyOfRange(value.getData(), value.getPosition(),
+          value.getLength()));
+    }
+    assertEquals(values.size(), numRecords);
+    reader.close();
+  }
+
+  @Test(timeout = 20000)
+  public void testCrc32cChecksum() throws IOException {
+    Checksum crc32c = IFileChecksum.newChecksum(DataChecksum.Type.CRC32C);
+    byte[] check = "123456789".getBytes("UTF-8");
+    crc32c.update(check, 0, check.length);
+    assertEquals(0xE3069283L, crc32c.getValue());
+
+    Configuration conf = new Configuration(defaultConf);
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_IFILE_CHECKSUM_TYPE, "crc32c");
+    List<KVPair> data = KVDataGen.generateTestData(true, 10);
+    long checksumNanos = ChecksumTimeUpdater.getCumulativeChecksumNanos();
+    for (CompressionCodec segmentCodec : Arrays.asList(null, codec)) {
+      FSDataOutputStream out = localFs.create(outputPath);
+      Writer writer = writeTestFile(new Writer(conf, out, Text.class, IntWritable.class,
+          segmentCodec, null, null, true), true, data);
+      out.close();
+      FSDataInputStream in = localFs.open(outputPath);
+      byte[] header = new byte[IFile.HEADER.length];
+      in.readFully(header);
+      in.close();
+      assertEquals(IFile.CRC32C_VERSION, header[2]);
+      readAndVerifyData(writer.getRawLength(), writer.getCompressedLength(), data,
+          segmentCodec);
+
+      ByteArrayOutputStream copy = new ByteArrayOutputStream();
+      IFile.Reader.readToDisk(copy, localFs.open(outputPath), writer.getCompressedLength(),
+          false, 0);
+      byte[] segment = copy.toByteArray();
+      // a corrupted checksum fails the verification once the segment is read
+      segment[segment.length - 1] ^= 1;
+      Reader reader = new Reader(new ByteArrayInputStream(segment), segment.length,
+          segmentCodec, null, null, false, 0, -1);
+      DataInputBuffer keyIn = new DataInputBuffer();
+      DataInputBuffer valIn = new DataInputBuffer();
+      try {
+        while (reader.nextRawKey(keyIn)) {
+          reader.nextRawValue(valIn);
+        }
+        reader.close();
+        fail("Should have failed with a checksum error");
+      } catch (ChecksumException e) {
+        // expected
+      }
+    }
+    assertTrue(ChecksumTimeUpdater.getCumulativeChecksumNanos() > checksumNanos);
+
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_IFILE_CHECKSUM_TYPE, "MD5");
+    try {
+      new Writer(conf, new FSDataOutputStream(new ByteArrayOutputStream(), null), Text.class,
+          IntWritable.class, null, null, null);
+      fail("Should not have allowed an unknown checksum type");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
   @Test(timeout = 20000)
   public void testReadToDisk() throws IOException {
     // verify sending a stream of zeroes generates an error
@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.common.sort.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.util.Progress;
+import org.apache.hadoop.util.Progressable;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.comparator.TezBytesComparator;
+import org.apache.tez.runtime.library.common.sort.impl.LoserTree.KeyPrefix;
+import org.junit.Test;
+
+public class TestLoserTree {
+
+  private static final Progressable NULL_PROGRESSABLE = new Progressable() {
+    @Override
+    public void progress() {
+    }
+  };
+
+  @Test(timeout = 5000)
+  public void testKeyPrefixForComparator() {
+    assertSame(KeyPrefix.BYTES, KeyPrefix.forComparator(new TezBytesComparator()));
+    assertSame(KeyPrefix.TEXT, KeyPrefix.forComparator(new Text.Comparator()));
+    assertSame(KeyPrefix.INT, KeyPrefix.forComparator(new IntWritable.Comparator()));
+    assertSame(KeyPrefix.LONG, KeyPrefix.forComparator(new LongWritable.Comparator()));
+    // subclasses may order keys differently
+    assertNull(KeyPrefix.forComparator(new Text.Comparator() {
+    }));
+    assertNull(KeyPrefix.forComparator(null));
+  }
+
+  @Test(timeout = 5000)
+  public void testKeyPrefixOrder() throws IOException {
+    Random random = new Random(7);
+    RawComparator bytesComparator = new TezBytesComparator();
+    RawComparator textComparator = new Text.Comparator();
+    RawComparator intComparator = new IntWritable.Comparator();
+    RawComparator longComparator = new LongWritable.Comparator();
+    for (int i = 0; i < 10000; i++) {
+      // short keys with few distinct bytes, to get many equal prefixes
+      byte[] bytes1 = randomBytes(random);
+      byte[] bytes2 = randomBytes(random);
+      checkPrefix(KeyPrefix.BYTES, bytesComparator, bytes1, bytes2);
+      checkPrefix(KeyPrefix.TEXT, textComparator,
+          serialize(new Text(bytes1)), serialize(new Text(bytes2)));
+      checkPrefix(KeyPrefix.INT, intComparator,
+          serialize(new IntWritable(random.nextInt())), serialize(new IntWritable(random.nextInt())));
+      checkPrefix(KeyPrefix.LONG, longComparator,
+          serialize(new LongWritable(random.nextLong())),
+          serialize(new LongWritable(random.nextLong())));
+    }
+  }
+
+  private static byte[] randomBytes(Random random) {
+    byte[] bytes = new byte[random.nextInt(12)];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (random.nextInt(3) * 127);
+    }
+    return bytes;
+  }
+
+  private static byte[] serialize(org.apache.hadoop.io.Writable writable) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    writable.write(out);
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  private static void checkPrefix(KeyPrefix keyPrefix, RawComparator comparator, byte[] key1,
+      byte[] key2) {
+    long prefix1 = keyPrefix.get(key1, 0, key1.length);
+    long prefix2 = keyPrefix.get(key2, 0, key2.length);
+    int compare = Integer.signum(comparator.compare(key1, 0, key1.length, key2, 0, key2.length));
+    if (prefix1 != prefix2) {
+      assertEquals(keyPrefix + " " + Arrays.toString(key1) + " " + Arrays.toString(key2),
+          prefix1 < prefix2 ? -1 : 1, compare);
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testMerge() throws Exception {
+    Random random = new Random(11);
+    for (int numSegments : new int[] { 1, 2, 3, 7, 16, 33 }) {
+      mergeAndVerify(new Text.Comparator(), numSegments, random);
+      mergeAndVerify(new WritableComparator(Text.class) {
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+          return new Text.Comparator().compare(b1, s1, l1, b2, s2, l2);
+        }
+      }, numSegments, random);
+    }
+  }
+
+  /**
+   * Merges sorted segments of Text keys, with values holding the index of their segment, and
+   * checks that keys come out sorted, and equal keys in the order of the segments.
+   */
+  private void mergeAndVerify(RawComparator comparator, int numSegments, Random random)
+      throws Exception {
+    Configuration conf = new Configuration();
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_MERGE_LOSER_TREE_ENABLED, true);
+    FileSystem localFs = FileSystem.getLocal(conf);
+
+    List<TezMerger.Segment> segments = new ArrayList<TezMerger.Segment>();
+    List<String> expected = new ArrayList<String>();
+    for (int i = 0; i < numSegments; i++) {
+      List<String> keys = new ArrayList<String>();
+      int numKeys = random.nextInt(50);
+      for (int j = 0; j < numKeys; j++) {
+        // common prefixes and duplicate keys across segments
+        keys.add("key_" + random.nextInt(20) + (random.nextBoolean() ? "" : "_suffix"));
+      }
+      Collections.sort(keys);
+      DataOutputBuffer data = new DataOutputBuffer();
+      IFile.Writer writer = new IFile.Writer(conf, new FSDataOutputStream(data, null),
+          Text.class, IntWritable.class, null, null, null);
+      for (String key : keys) {
+        writer.append(new Text(key), new IntWritable(i));
+        expected.add(key + "/" + i);
+      }
+      writer.close();
+      IFile.Reader reader = new IFile.Reader(new ByteArrayInputStream(data.getData(), 0,
+          data.getLength()), data.getLength(), null, null, null, false, 0, 4096);
+      segments.add(new TezMerger.Segment(reader, null));
+    }
+    // stable sort, so that equal keys stay in the order of the segments
+    Collections.sort(expected, new java.util.Comparator<String>() {
+      @Override
+      public int compare(String o1, String o2) {
+        return o1.substring(0, o1.indexOf('/')).compareTo(o2.substring(0, o2.indexOf('/')));
+      }
+    });
+
+    TezRawKeyValueIterator records = TezMerger.merge(conf, localFs, Text.class,
+        IntWritable.class, segments, numSegments, null, comparator, NULL_PROGRESSABLE,
+        null, null, null, new Progress());
+    Text key = new Text();
+    IntWritable value = new IntWritable();
+    DataInputBuffer keyBuffer = new DataInputBuffer();
+    List<String> actual = new ArrayList<String>();
+    while (records.next()) {
+      DataInputBuffer rawKey = records.getKey();
+      keyBuffer.reset(rawKey.getData(), rawKey.getPosition(), rawKey.getLength());
+      key.readFields(keyBuffer);
+      value.readFields(records.getValue());
+      actual.add(key + "/" + value.get());
+    }
+    records.close();
+    assertEquals(expected, actual);
+  }
+
+  @Test(timeout = 5000)
+  public void testEmpty() {
+    LoserTree tree = new LoserTree(new Text.Comparator());
+    tree.initialize(Collections.<TezMerger.Segment>emptyList());
+    assertEquals(0, tree.size());
+    assertNull(tree.top());
+    assertNull(tree.pop());
+    tree.adjustTop();
+    assertFalse(tree.size() > 0);
+    tree.clear();
+    assertTrue(tree.size() == 0);
+  }
+}
@@ -25,6 +25,8 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.WritableComparator;
 import org.apache.hadoop.io.serializer.Deserializer;
@@ -42,6 +44,10 @@ import org.apache.tez.runtime.api.OutputStatisticsReporter;
 import org.apache.tez.runtime.api.impl.ExecutionContextImpl;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration.ReportPartitionStats;
+import org.apache.tez.runtime.library.common.comparator.TezBytesComparator;
+import org.apache.tez.runtime.library.common.comparator.TezIntWritableComparator;
+import org.apache.tez.runtime.library.common.comparator.TezLongWritableComparator;
+import org.apache.tez.runtime.library.common.comparator.TezTextComparator;
 import org.apache.tez.runtime.library.common.shuffle.ShuffleUtils;
 import org.apache.tez.runtime.library.conf.OrderedPartitionedKVOutputConfig.SorterImpl;
 import org.apache.tez.runtime.library.partitioner.HashPartitioner;
@@ -454,6 +460,60 @@ public class TestPipelinedSorter {
     verifyCounters(sorter, outputContext);
   }
 
+  @Test
+  public void testRadixSort() throws IOException {
+    radixSortTest("", 10);
+  }
+
+  @Test
+  public void testRadixSortWithPrefixTies() throws IOException {
+    // all keys share the same prefix, so ordering falls back to the full comparator
+    radixSortTest("commonprefix", 8);
+  }
+
+  @Test
+  public void testGetProxyComparator() {
+    assertTrue(PipelinedSorter.getProxyComparator(
+        WritableComparator.get(Text.class)) instanceof TezTextComparator);
+    assertTrue(PipelinedSorter.getProxyComparator(
+        WritableComparator.get(IntWritable.class)) instanceof TezIntWritableComparator);
+    assertTrue(PipelinedSorter.getProxyComparator(
+        WritableComparator.get(LongWritable.class)) instanceof TezLongWritableComparator);
+    assertTrue(PipelinedSorter.getProxyComparator(
+        new TezBytesComparator()) instanceof TezBytesComparator);
+    Assert.assertNull(PipelinedSorter.getProxyComparator(new CustomComparator()));
+  }
+
+  private void radixSortTest(String keyPrefix, int keyLen) throws IOException {
+    this.numOutputs = 1;
+    this.initialAvailableMem = 5 * 1024 * 1024;
+    Configuration conf = getConf();
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_PIPELINED_SORTER_RADIX_SORT_ENABLED, true);
+    conf.setInt(TezRuntimeConfiguration
+        .TEZ_RUNTIME_PIPELINED_SORTER_MIN_BLOCK_SIZE_IN_MB, 1);
+    PipelinedSorter sorter = new PipelinedSorter(this.outputContext, conf, numOutputs,
+        initialAvailableMem);
+
+    sortedDataMap.clear();
+    for (int i = 0; i < 50000; i++) {
+      Text key = new Text(keyPrefix + RandomStringUtils.randomAlphanumeric(keyLen));
+      Text value = new Text(RandomStringUtils.randomAlphanumeric(keyLen));
+      if (sortedDataMap.containsKey(key.toString())) {
+        continue;
+      }
+      sorter.write(key, value);
+      sortedDataMap.put(key.toString(), value.toString());
+    }
+    closeSorter(sorter);
+    verifyCounters(sorter, outputContext);
+
+    Path outputFile = sorter.finalOutputFile;
+    FileSystem fs = outputFile.getFileSystem(conf);
+    IFile.Reader reader = new IFile.Reader(fs, outputFile, null, null, null, false, -1, 4096);
+    verifyData(reader);
+    reader.close();
+  }
+
   public void basicTest2(int partitions, int[] numkeys, int[] keysize,
       long initialAvailableMem, int  blockSize) throws IOException {
     this.numOutputs = partitions; // single output
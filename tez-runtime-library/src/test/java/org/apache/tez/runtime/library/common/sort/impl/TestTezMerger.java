@@ -46,12 +46,17 @@ import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.InMemoryWrit
 import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.MergeManager;
 import org.apache.tez.runtime.library.common.shuffle.orderedgrouped.TestMergeManager;
 import org.junit.AfterClass;
+import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -60,6 +65,7 @@ import java.util.Random;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
+@RunWith(Parameterized.class)
 public class TestTezMerger {
 
   private static final Logger LOG = LoggerFactory.getLogger(TestTezMerger.class);
@@ -78,6 +84,23 @@ public class TestTezMerger {
 
   private MergeManager merger = mock(MergeManager.class);
 
+  private final boolean useLoserTree;
+
+  public TestTezMerger(boolean useLoserTree) {
+    this.useLoserTree = useLoserTree;
+  }
+
+  @Parameterized.Parameters(name = "test[{0}]")
+  public static Collection<Object[]> getParameters() {
+    return Arrays.asList(new Object[][] { { false }, { true } });
+  }
+
+  @Before
+  public void setup() {
+    defaultConf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_MERGE_LOSER_TREE_ENABLED,
+        useLoserTree);
+  }
+
   static {
     defaultConf.set("fs.defaultFS", "file:///");
     try {
@@ -701,6 +724,7 @@ public class TestTezMerger {
     TezMerger.MergeQueue mergeQueue = new TezMerger.MergeQueue(defaultConf, localFs, segmentList,
         comparator, new Reporter(), false, false);
 
+    assertTrue(useLoserTree == (mergeQueue.loserTree != null));
     TezRawKeyValueIterator records = mergeQueue.merge(IntWritable.class, LongWritable.class,
         mergeFactor, new Path(workDir, "tmp_"
         + System.nanoTime()), null, null, null, null);
@@ -24,6 +24,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
@@ -35,18 +36,24 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.protobuf.ByteString;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
 import org.apache.hadoop.util.StringInterner;
 import org.apache.tez.common.TezRuntimeFrameworkConfigs;
 import org.apache.tez.common.TezUtils;
@@ -60,14 +67,17 @@ import org.apache.tez.dag.api.UserPayload;
 import org.apache.tez.runtime.api.Event;
 import org.apache.tez.runtime.api.ExecutionContext;
 import org.apache.tez.runtime.api.MemoryUpdateCallback;
+import org.apache.tez.runtime.api.ObjectRegistry;
 import org.apache.tez.runtime.api.OutputContext;
 import org.apache.tez.runtime.api.OutputStatisticsReporter;
 import org.apache.tez.runtime.api.events.CompositeDataMovementEvent;
 import org.apache.tez.runtime.api.impl.ExecutionContextImpl;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.BufferPool;
 import org.apache.tez.runtime.library.common.MemoryUpdateCallbackHandler;
 import org.apache.tez.runtime.library.common.shuffle.ShuffleUtils;
 import org.apache.tez.runtime.library.common.sort.impl.ExternalSorter;
+import org.apache.tez.runtime.library.common.sort.impl.IFile;
 import org.apache.tez.runtime.library.common.sort.impl.TezIndexRecord;
 import org.apache.tez.runtime.library.common.sort.impl.TezSpillRecord;
 import org.apache.tez.runtime.library.conf.OrderedPartitionedKVOutputConfig.SorterImpl;
@@ -520,6 +530,171 @@ public class TestDefaultSorter {
     verifyCounters(sorter, context);
   }
 
+  @Test(timeout = 60000)
+  public void testParallelSpill() throws IOException {
+    OutputContext context = createTezOutputContext();
+
+    conf.setLong(TezRuntimeConfiguration.TEZ_RUNTIME_IO_SORT_MB, 1);
+    conf.setInt(TezRuntimeConfiguration.TEZ_RUNTIME_LEGACY_SORTER_SPILL_THREADS, 4);
+    MemoryUpdateCallbackHandler handler = new MemoryUpdateCallbackHandler();
+    context.requestInitialMemory(ExternalSorter.getInitialMemoryRequirement(conf,
+        context.getTotalMemoryAvailableToTask()), handler);
+    int numPartitions = 10;
+    int numKeys = 5000;
+    DefaultSorter sorter = new DefaultSorter(context, conf, numPartitions,
+        handler.getMemoryAssigned());
+    assertEquals(4, sorter.spillThreads);
+
+    writeData(sorter, numKeys, 100);
+    // every buffer spill is split into multiple spill files
+    assertTrue(sorter.getNumSpills() > 4);
+    verifyCounters(sorter, context);
+    // records are counted once by the spills and once by the final merge
+    assertEquals(2 * numKeys,
+        context.getCounters().findCounter(TaskCounter.SPILLED_RECORDS).getValue());
+    verifyOutput(sorter, numPartitions, numKeys);
+  }
+
+  @Test(timeout = 60000)
+  public void testParallelSpillComparatorPerRange() throws IOException {
+    OutputContext context = createTezOutputContext();
+
+    conf.setLong(TezRuntimeConfiguration.TEZ_RUNTIME_IO_SORT_MB, 1);
+    conf.setInt(TezRuntimeConfiguration.TEZ_RUNTIME_LEGACY_SORTER_SPILL_THREADS, 4);
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_KEY_COMPARATOR_CLASS,
+        ExclusiveTextComparator.class.getName());
+    MemoryUpdateCallbackHandler handler = new MemoryUpdateCallbackHandler();
+    context.requestInitialMemory(ExternalSorter.getInitialMemoryRequirement(conf,
+        context.getTotalMemoryAvailableToTask()), handler);
+    int numPartitions = 10;
+    int numKeys = 5000;
+    DefaultSorter sorter = new DefaultSorter(context, conf, numPartitions,
+        handler.getMemoryAssigned());
+
+    ExclusiveTextComparator.concurrentUse.set(false);
+    writeData(sorter, numKeys, 100);
+    assertTrue(sorter.getNumSpills() > 4);
+    Assert.assertFalse("A comparator was used by concurrent spill workers",
+        ExclusiveTextComparator.concurrentUse.get());
+    verifyOutput(sorter, numPartitions, numKeys);
+  }
+
+  @Test(timeout = 60000)
+  public void testSortBufferPooledAcrossTasks() throws IOException {
+    final Map<String, Object> cache = new HashMap<String, Object>();
+    ObjectRegistry registry = mock(ObjectRegistry.class);
+    doAnswer(new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) {
+        return cache.get(invocation.getArguments()[0]);
+      }
+    }).when(registry).get(anyString());
+    doAnswer(new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) {
+        Object[] args = invocation.getArguments();
+        return cache.put((String) args[0], args[1]);
+      }
+    }).when(registry).cacheForSession(anyString(), any());
+    conf.setFloat(TezRuntimeConfiguration.TEZ_RUNTIME_CONTAINER_BUFFER_POOL_FRACTION, 0.5f);
+
+    // tasks running one after the other in the same container
+    int numPartitions = 5;
+    int numKeys = 1000;
+    for (int sortMb : new int[] {1, 1, 2}) {
+      OutputContext context = createTezOutputContext();
+      doReturn(registry).when(context).getObjectRegistry();
+      conf.setLong(TezRuntimeConfiguration.TEZ_RUNTIME_IO_SORT_MB, sortMb);
+      MemoryUpdateCallbackHandler handler = new MemoryUpdateCallbackHandler();
+      context.requestInitialMemory(ExternalSorter.getInitialMemoryRequirement(conf,
+          context.getTotalMemoryAvailableToTask()), handler);
+      DefaultSorter sorter = new DefaultSorter(context, conf, numPartitions,
+          handler.getMemoryAssigned());
+
+      // the sort buffer of the previous task is taken over if it has the same size, and
+      // dropped otherwise, so the pool holds nothing next to the running sorter
+      BufferPool pool = BufferPool.get(context, conf);
+      assertEquals(0, pool.getRetainedBytes());
+      writeData(sorter, numKeys, 50);
+      verifyOutput(sorter, numPartitions, numKeys);
+      assertEquals((long) sortMb << 20, pool.getRetainedBytes());
+    }
+  }
+
+  /**
+   * Text comparator which records whether an instance is ever used by two threads at once,
+   * as the deserializing WritableComparator must not be.
+   */
+  public static class ExclusiveTextComparator extends WritableComparator {
+    static final AtomicBoolean concurrentUse = new AtomicBoolean(false);
+    private final AtomicBoolean inUse = new AtomicBoolean(false);
+
+    public ExclusiveTextComparator() {
+      super(Text.class, true);
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      if (!inUse.compareAndSet(false, true)) {
+        concurrentUse.set(true);
+        return super.compare(b1, s1, l1, b2, s2, l2);
+      }
+      try {
+        return super.compare(b1, s1, l1, b2, s2, l2);
+      } finally {
+        inUse.set(false);
+      }
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testParallelSpillDisabledWithFinalMergeDisabled() throws IOException {
+    OutputContext context = createTezOutputContext();
+
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_ENABLE_FINAL_MERGE_IN_OUTPUT, false);
+    conf.setLong(TezRuntimeConfiguration.TEZ_RUNTIME_IO_SORT_MB, 1);
+    conf.setInt(TezRuntimeConfiguration.TEZ_RUNTIME_LEGACY_SORTER_SPILL_THREADS, 4);
+    MemoryUpdateCallbackHandler handler = new MemoryUpdateCallbackHandler();
+    context.requestInitialMemory(ExternalSorter.getInitialMemoryRequirement(conf,
+        context.getTotalMemoryAvailableToTask()), handler);
+    DefaultSorter sorter = new DefaultSorter(context, conf, 10, handler.getMemoryAssigned());
+    assertEquals(1, sorter.spillThreads);
+    sorter.close();
+  }
+
+  private void verifyOutput(DefaultSorter sorter, int numPartitions, int numKeys)
+      throws IOException {
+    TezSpillRecord spillRecord = new TezSpillRecord(sorter.getFinalIndexFile(), conf);
+    HashPartitioner partitioner = new HashPartitioner();
+    Text key = new Text();
+    Text prevKey = new Text();
+    DataInputBuffer keyIn = new DataInputBuffer();
+    DataInputBuffer valIn = new DataInputBuffer();
+    int numRecords = 0;
+    FSDataInputStream in = localFs.open(sorter.getFinalOutputFile());
+    try {
+      for (int i = 0; i < numPartitions; i++) {
+        TezIndexRecord indexRecord = spillRecord.getIndex(i);
+        in.seek(indexRecord.getStartOffset());
+        IFile.Reader reader = new IFile.Reader(in, indexRecord.getPartLength(), null, null, null,
+            false, 0, -1);
+        boolean first = true;
+        while (reader.nextRawKey(keyIn)) {
+          reader.nextRawValue(valIn);
+          key.readFields(keyIn);
+          assertEquals(i, partitioner.getPartition(key, null, numPartitions));
+          assertTrue(first || prevKey.compareTo(key) <= 0);
+          prevKey.set(key);
+          first = false;
+          numRecords++;
+        }
+      }
+    } finally {
+      in.close();
+    }
+    assertEquals(numKeys, numRecords);
+  }
+
   private void verifyCounters(DefaultSorter sorter, OutputContext context) {
     TezCounter numShuffleChunks = context.getCounters().findCounter(TaskCounter.SHUFFLE_CHUNK_COUNT);
     TezCounter additionalSpills = context.getCounters().findCounter(TaskCounter.ADDITIONAL_SPILL_COUNT);
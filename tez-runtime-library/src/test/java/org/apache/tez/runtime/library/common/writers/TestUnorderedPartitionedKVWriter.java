@@ -290,6 +290,58 @@ public class TestUnorderedPartitionedKVWriter {
     baseTest(10, 1, null, shouldCompress, -1, 0);
   }
 
+  @Test(timeout = 10000)
+  public void testDataViaEvents_SinglePartition() throws IOException, InterruptedException {
+    // fits into the event
+    DataMovementEventPayloadProto eventProto = dataViaEventsTest(10, 1024);
+    assertTrue(eventProto.hasData());
+    // too large to be sent in the event
+    eventProto = dataViaEventsTest(1000, 1024);
+    assertFalse(eventProto.hasData());
+    // no data to send
+    eventProto = dataViaEventsTest(0, 1024);
+    assertFalse(eventProto.hasData());
+  }
+
+  private DataMovementEventPayloadProto dataViaEventsTest(int numRecords, int maxSize)
+      throws IOException, InterruptedException {
+    TezCounters counters = new TezCounters();
+    String uniqueId = UUID.randomUUID().toString();
+    String auxiliaryService = defaultConf.get(TezConfiguration.TEZ_AM_SHUFFLE_AUXILIARY_SERVICE_ID,
+        TezConfiguration.TEZ_AM_SHUFFLE_AUXILIARY_SERVICE_ID_DEFAULT);
+    OutputContext outputContext = createMockOutputContext(counters,
+        ApplicationId.newInstance(10000000, 1), uniqueId, auxiliaryService);
+    Configuration conf = createConfiguration(outputContext, IntWritable.class, LongWritable.class,
+        shouldCompress, -1);
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_TRANSFER_DATA_VIA_EVENTS_ENABLED, true);
+    conf.setInt(TezRuntimeConfiguration.TEZ_RUNTIME_TRANSFER_DATA_VIA_EVENTS_MAX_SIZE, maxSize);
+
+    UnorderedPartitionedKVWriter kvWriter = new UnorderedPartitionedKVWriterForTest(outputContext,
+        conf, 1, 2048);
+    for (int i = 0; i < numRecords; i++) {
+      kvWriter.write(new IntWritable(i), new LongWritable(i));
+    }
+    List<Event> events = kvWriter.close();
+    assertTrue(kvWriter.skipBuffers);
+    assertEquals(2, events.size());
+    CompositeDataMovementEvent cdme = (CompositeDataMovementEvent) events.get(1);
+    DataMovementEventPayloadProto eventProto =
+        DataMovementEventPayloadProto.parseFrom(ByteString.copyFrom(cdme.getUserPayload()));
+    if (eventProto.hasData()) {
+      // the data in the event is the same as the data which could be fetched
+      TezIndexRecord indexRecord = new TezSpillRecord(kvWriter.finalIndexPath, conf).getIndex(0);
+      assertEquals(indexRecord.getRawLength(), eventProto.getData().getRawLength());
+      assertEquals(indexRecord.getPartLength(), eventProto.getData().getCompressedLength());
+      byte[] fileData = new byte[(int) indexRecord.getPartLength()];
+      FSDataInputStream inStream = FileSystem.getLocal(conf).open(kvWriter.finalOutPath);
+      inStream.readFully(indexRecord.getStartOffset(), fileData);
+      inStream.close();
+      assertTrue(Arrays.equals(fileData, eventProto.getData().getData().toByteArray()));
+      assertTrue(fileData.length <= maxSize);
+    }
+    return eventProto;
+  }
+
 
   @Test(timeout = 10000)
   public void testRandomText() throws IOException, InterruptedException {
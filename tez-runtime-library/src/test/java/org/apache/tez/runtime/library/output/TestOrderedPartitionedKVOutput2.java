@@ -15,7 +15,10 @@
 package org.apache.tez.runtime.library.output;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -26,15 +29,26 @@ import com.google.protobuf.ByteString;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.Text;
 import org.apache.tez.common.TezCommonUtils;
 import org.apache.tez.common.TezRuntimeFrameworkConfigs;
 import org.apache.tez.common.TezUtilsInternal;
+import org.apache.tez.dag.api.TezConfiguration;
 import org.apache.tez.runtime.api.Event;
+import org.apache.tez.common.counters.TaskCounter;
+import org.apache.tez.common.counters.TezCounter;
+import org.apache.tez.common.counters.TezCounters;
 import org.apache.tez.runtime.api.OutputContext;
+import org.apache.tez.runtime.api.TaskContext;
 import org.apache.tez.runtime.api.events.CompositeDataMovementEvent;
 import org.apache.tez.runtime.api.events.VertexManagerEvent;
+import org.apache.tez.runtime.library.api.KeyValuesWriter;
 import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.combine.Combiner;
+import org.apache.tez.runtime.library.common.sort.impl.IFile.Writer;
+import org.apache.tez.runtime.library.common.sort.impl.TezRawKeyValueIterator;
+import org.apache.tez.runtime.library.conf.OrderedPartitionedKVOutputConfig.SorterImpl;
 import org.apache.tez.runtime.library.partitioner.HashPartitioner;
 import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads;
 import org.junit.After;
@@ -103,4 +117,109 @@ public class TestOrderedPartitionedKVOutput2 {
     output.start();
     output.close();
   }
+
+  @Test(timeout = 10000)
+  public void testHashAggregation() throws Exception {
+    localFs.mkdirs(workingDir);
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_ENABLED, true);
+    OutputContext outputContext = OutputTestHelpers.createOutputContext(conf, workingDir);
+    OrderedPartitionedKVOutput output = new OrderedPartitionedKVOutput(outputContext, 10);
+    output.initialize();
+    output.start();
+    // no combiner configured
+    assertNull(output.hashAggregator);
+    output.close();
+
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_COMBINER_CLASS,
+        PassThroughCombiner.class.getName());
+    outputContext = OutputTestHelpers.createOutputContext(conf, workingDir);
+    DataOutputBuffer serviceProviderMetaData = new DataOutputBuffer();
+    serviceProviderMetaData.writeInt(80);
+    doReturn(ByteBuffer.wrap(serviceProviderMetaData.getData())).when(outputContext)
+        .getServiceProviderMetaData(TezConfiguration.TEZ_AM_SHUFFLE_AUXILIARY_SERVICE_ID_DEFAULT);
+    output = new OrderedPartitionedKVOutput(outputContext, 10);
+    output.initialize();
+    output.start();
+    assertNotNull(output.hashAggregator);
+    KeyValuesWriter writer = output.getWriter();
+    for (int i = 0; i < 100; i++) {
+      writer.write(new Text("key_" + (i % 10)), new Text("value"));
+    }
+    List<Event> events = output.close();
+    assertNull(output.hashAggregator);
+    assertEquals(100, outputContext.getCounters().findCounter(TaskCounter.OUTPUT_RECORDS)
+        .getValue());
+    assertEquals(2, events.size());
+  }
+
+  @Test(timeout = 10000)
+  public void testHashAggregationCounters() throws Exception {
+    localFs.mkdirs(workingDir);
+    conf.setBoolean(TezRuntimeConfiguration.TEZ_RUNTIME_COMBINE_HASH_AGGREGATION_ENABLED, true);
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_COMBINER_CLASS,
+        FirstValueCombiner.class.getName());
+    // runs the combiner over all records of a spill
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_SORTER_CLASS, SorterImpl.LEGACY.name());
+    OutputContext outputContext = OutputTestHelpers.createOutputContext(conf, workingDir);
+    DataOutputBuffer serviceProviderMetaData = new DataOutputBuffer();
+    serviceProviderMetaData.writeInt(80);
+    doReturn(ByteBuffer.wrap(serviceProviderMetaData.getData())).when(outputContext)
+        .getServiceProviderMetaData(TezConfiguration.TEZ_AM_SHUFFLE_AUXILIARY_SERVICE_ID_DEFAULT);
+    OrderedPartitionedKVOutput output = new OrderedPartitionedKVOutput(outputContext, 10);
+    output.initialize();
+    output.start();
+    KeyValuesWriter writer = output.getWriter();
+    for (int i = 0; i < 100; i++) {
+      writer.write(new Text("key_" + (i % 10)), new Text("value"));
+    }
+    output.close();
+
+    // the output counters count what has been written, as they would without aggregation
+    TezCounters counters = outputContext.getCounters();
+    assertEquals(100, counters.findCounter(TaskCounter.OUTPUT_RECORDS).getValue());
+    // serialized Text of 5 characters for both key and value
+    assertEquals(100 * 12, counters.findCounter(TaskCounter.OUTPUT_BYTES).getValue());
+    // the combiner counts the records it runs over in front of the sorter, and again when the
+    // sorter spills the combined records
+    assertEquals(100 + 10, counters.findCounter(TaskCounter.COMBINE_INPUT_RECORDS).getValue());
+    assertEquals(10 + 10, counters.findCounter(TaskCounter.COMBINE_OUTPUT_RECORDS).getValue());
+  }
+
+  /**
+   * Writes the first value of each key, and counts its input and output records.
+   */
+  public static class FirstValueCombiner implements Combiner {
+    private final TezCounter combineInputRecords;
+    private final TezCounter combineOutputRecords;
+
+    public FirstValueCombiner(TaskContext taskContext) {
+      combineInputRecords = taskContext.getCounters().findCounter(
+          TaskCounter.COMBINE_INPUT_RECORDS);
+      combineOutputRecords = taskContext.getCounters().findCounter(
+          TaskCounter.COMBINE_OUTPUT_RECORDS);
+    }
+
+    @Override
+    public void combine(TezRawKeyValueIterator rawIter, Writer writer) throws IOException {
+      while (rawIter.next()) {
+        combineInputRecords.increment(1);
+        if (!rawIter.isSameKey()) {
+          writer.append(rawIter.getKey(), rawIter.getValue());
+          combineOutputRecords.increment(1);
+        }
+      }
+    }
+  }
+
+  public static class PassThroughCombiner implements Combiner {
+    public PassThroughCombiner(TaskContext taskContext) {
+    }
+
+    @Override
+    public void combine(TezRawKeyValueIterator rawIter, Writer writer) throws IOException {
+      while (rawIter.next()) {
+        writer.append(rawIter.getKey(), rawIter.getValue());
+      }
+    }
+  }
 }
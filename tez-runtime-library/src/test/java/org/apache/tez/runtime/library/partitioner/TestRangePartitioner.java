@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.tez.runtime.library.partitioner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.events.VertexManagerEvent;
+import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
+import org.apache.tez.runtime.library.common.KeySampler;
+import org.apache.tez.runtime.library.shuffle.impl.ShuffleUserPayloads.VertexManagerEventPayloadProto;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+public class TestRangePartitioner {
+
+  private static final RawComparator<?> COMPARATOR = WritableComparator.get(IntWritable.class);
+
+  private Configuration conf;
+  private Path splitPointsPath;
+
+  @Before
+  public void setup() throws IOException {
+    conf = new Configuration();
+    conf.set(TezRuntimeConfiguration.TEZ_RUNTIME_KEY_CLASS, IntWritable.class.getName());
+    Path testDir = FileSystem.getLocal(conf).makeQualified(new Path(
+        System.getProperty("test.build.data", System.getProperty("java.io.tmpdir")),
+        TestRangePartitioner.class.getName()));
+    FileSystem.getLocal(conf).delete(testDir, true);
+    splitPointsPath = new Path(testDir, "splitPoints");
+    conf.set(RangePartitioner.TEZ_RANGE_PARTITIONER_SPLIT_POINTS_PATH, splitPointsPath.toString());
+  }
+
+  @Test(timeout = 5000)
+  public void testComputeSplitPoints() throws IOException {
+    List<byte[]> samples = new ArrayList<byte[]>();
+    for (int i = 99; i >= 0; i--) {
+      samples.add(serialize(i));
+    }
+    List<byte[]> splitPoints = RangePartitioner.computeSplitPoints(samples, COMPARATOR, 4);
+    assertEquals(3, splitPoints.size());
+    assertArrayEquals(serialize(25), splitPoints.get(0));
+    assertArrayEquals(serialize(50), splitPoints.get(1));
+    assertArrayEquals(serialize(75), splitPoints.get(2));
+
+    // duplicate samples do not give duplicate split points
+    samples.clear();
+    for (int i = 0; i < 90; i++) {
+      samples.add(serialize(1));
+    }
+    for (int i = 0; i < 10; i++) {
+      samples.add(serialize(i + 2));
+    }
+    splitPoints = RangePartitioner.computeSplitPoints(samples, COMPARATOR, 4);
+    assertEquals(3, splitPoints.size());
+    assertArrayEquals(serialize(1), splitPoints.get(0));
+    assertArrayEquals(serialize(2), splitPoints.get(1));
+    assertArrayEquals(serialize(3), splitPoints.get(2));
+
+    assertTrue(RangePartitioner.computeSplitPoints(new ArrayList<byte[]>(), COMPARATOR, 4)
+        .isEmpty());
+    assertTrue(RangePartitioner.computeSplitPoints(samples, COMPARATOR, 1).isEmpty());
+  }
+
+  @Test(timeout = 5000)
+  public void testComputeWeightedSplitPoints() throws IOException {
+    // the samples of 5 to 9 stand for many more keys than the ones of 0 to 4
+    List<byte[]> samples = new ArrayList<byte[]>();
+    double[] weights = new double[10];
+    for (int i = 0; i < 10; i++) {
+      samples.add(serialize(i));
+      weights[i] = i < 5 ? 1 : 19;
+    }
+    List<byte[]> splitPoints = RangePartitioner.computeSplitPoints(samples, COMPARATOR, 2);
+    assertEquals(1, splitPoints.size());
+    assertArrayEquals(serialize(5), splitPoints.get(0));
+
+    // 43 of the 100 keys are below 7
+    splitPoints = RangePartitioner.computeSplitPoints(samples, weights, COMPARATOR, 2);
+    assertEquals(1, splitPoints.size());
+    assertArrayEquals(serialize(7), splitPoints.get(0));
+  }
+
+  @Test(timeout = 5000)
+  public void testGetPartition() throws IOException {
+    List<byte[]> splitPoints = new ArrayList<byte[]>();
+    splitPoints.add(serialize(10));
+    splitPoints.add(serialize(20));
+    RangePartitioner.writeSplitPoints(splitPoints, splitPointsPath, conf);
+    byte[][] read = RangePartitioner.readSplitPoints(splitPointsPath, conf);
+    assertEquals(2, read.length);
+    assertArrayEquals(serialize(20), read[1]);
+
+    RangePartitioner partitioner = new RangePartitioner(conf);
+    assertEquals(0, partitioner.getPartition(new IntWritable(-5), null, 4));
+    assertEquals(0, partitioner.getPartition(new IntWritable(9), null, 4));
+    assertEquals(1, partitioner.getPartition(new IntWritable(10), null, 4));
+    assertEquals(1, partitioner.getPartition(new IntWritable(19), null, 4));
+    assertEquals(2, partitioner.getPartition(new IntWritable(20), null, 4));
+    assertEquals(2, partitioner.getPartition(new IntWritable(1000), null, 4));
+  }
+
+  @Test(timeout = 5000)
+  public void testKeySamplesInVertexManagerEvent() throws IOException {
+    KeySampler sampler = new KeySampler(conf, 10);
+    for (int i = 0; i < 1000; i++) {
+      sampler.sample(new IntWritable(i));
+    }
+    assertEquals(10, sampler.getSamples().size());
+
+    VertexManagerEventPayloadProto payload = VertexManagerEventPayloadProto.newBuilder()
+        .setNumRecord(1000).build();
+    List<Event> events = new ArrayList<Event>();
+    events.add(VertexManagerEvent.create("Reducer",
+        payload.toByteString().asReadOnlyByteBuffer()));
+    sampler.addSamples(events);
+
+    ByteBuffer userPayload = ((VertexManagerEvent) events.get(0)).getUserPayload();
+    VertexManagerEventPayloadProto proto = VertexManagerEventPayloadProto.parseFrom(
+        ByteString.copyFrom(userPayload));
+    assertEquals(1000, proto.getNumRecord());
+    assertEquals(10, proto.getKeySamplesCount());
+    for (ByteString sample : proto.getKeySamplesList()) {
+      IntWritable key = new IntWritable();
+      key.readFields(new DataInputStream(sample.newInput()));
+      assertTrue(key.get() >= 0 && key.get() < 1000);
+    }
+  }
+
+  private static byte[] serialize(int i) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    new IntWritable(i).write(out);
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+}